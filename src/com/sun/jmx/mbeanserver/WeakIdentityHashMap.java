@@ -7,13 +7,8 @@
 
 package com.sun.jmx.mbeanserver;
 
-import static com.sun.jmx.mbeanserver.Util.*;
-
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.WeakReference;
-
 import java.util.Map;
+import java.util.concurrent.ConcurrentWeakIdentityHashMap;
 
 
 /**
@@ -31,12 +26,11 @@ import java.util.Map;
  * <p>This map does not support null keys.</p>
  */
 /*
- * The approach
- * is to wrap each key in a WeakReference and use the wrapped value as
- * a key in an ordinary HashMap.  The WeakReference has to be a
- * subclass IdentityWeakReference (IWR) where two IWRs are equal if
- * they refer to the same object.  This enables us to find the entry
- * again.
+ * The map delegates to a ConcurrentWeakIdentityHashMap, which wraps
+ * each key in a WeakReference that compares by the identity of its
+ * referent, and expunges the entries of cleared references a few at
+ * a time as the map is updated.  Since that map is thread-safe,
+ * callers need only synchronize to make compound actions atomic.
  */
 class WeakIdentityHashMap<K, V> {
     private WeakIdentityHashMap() {}
@@ -46,74 +40,18 @@ class WeakIdentityHashMap<K, V> {
     }
     
     V get(K key) {
-	expunge();
-	WeakReference<K> keyref = makeReference(key);
-	return map.get(keyref);
+	return (key == null) ? null : map.get(key);
     }
 
     public V put(K key, V value) {
-	expunge();
 	if (key == null)
 	    throw new IllegalArgumentException("Null key");
-	WeakReference<K> keyref = makeReference(key, refQueue);
-	return map.put(keyref, value);
+	return map.put(key, value);
     }
 
     public V remove(K key) {
-	expunge();
-	WeakReference<K> keyref = makeReference(key);
-	return map.remove(keyref);
-    }
-
-    private void expunge() {
-	Reference<? extends K> ref;
-	while ((ref = refQueue.poll()) != null)
-	    map.remove(ref);
-    }
-
-    private WeakReference<K> makeReference(K referent) {
-	return new IdentityWeakReference<K>(referent);
-    }
-
-    private WeakReference<K> makeReference(K referent, ReferenceQueue<K> q) {
-	return new IdentityWeakReference<K>(referent, q);
-    }
-
-    /**
-     * WeakReference where equals and hashCode are based on the
-     * referent.  More precisely, two objects are equal if they are
-     * identical or if they both have the same non-null referent.  The
-     * hashCode is the value the original referent had.  Even if the
-     * referent is cleared, the hashCode remains.  Thus, objects of
-     * this class can be used as keys in hash-based maps and sets.
-     */
-    private static class IdentityWeakReference<T> extends WeakReference<T> {
-	IdentityWeakReference(T o) {
-	    this(o, null);
-	}
-
-	IdentityWeakReference(T o, ReferenceQueue<T> q) {
-	    super(o, q);
-	    this.hashCode = (o == null) ? 0 : System.identityHashCode(o);
-	}
-
-	public boolean equals(Object o) {
-	    if (this == o)
-		return true;
-	    if (!(o instanceof IdentityWeakReference))
-		return false;
-	    IdentityWeakReference wr = (IdentityWeakReference) o;
-	    Object got = get();
-	    return (got != null && got == wr.get());
-	}
-
-	public int hashCode() {
-	    return hashCode;
-	}
-
-	private final int hashCode;
+	return (key == null) ? null : map.remove(key);
     }
 
-    private Map<WeakReference<K>, V> map = newMap();
-    private ReferenceQueue<K> refQueue = new ReferenceQueue<K>();
+    private final Map<K, V> map = new ConcurrentWeakIdentityHashMap<K, V>();
 }
@@ -6,7 +6,6 @@
  */
 
 package java.lang;
-import java.util.Random;
 import sun.misc.DoubleConsts;
 import sun.misc.FpUtils;
 
@@ -648,37 +647,27 @@ public final class StrictMath {
 	return (long)floor(a + 0.5d);
     }
 
-    private static Random randomNumberGenerator;
-
-    private static synchronized void initRNG() {
-        if (randomNumberGenerator == null) 
-            randomNumberGenerator = new Random();
-    }
-
     /**
      * Returns a <code>double</code> value with a positive sign, greater 
      * than or equal to <code>0.0</code> and less than <code>1.0</code>. 
      * Returned values are chosen pseudorandomly with (approximately) 
      * uniform distribution from that range. 
      * 
-     * <p>When this method is first called, it creates a single new
-     * pseudorandom-number generator, exactly as if by the expression
-     * <blockquote><pre>new java.util.Random</pre></blockquote> This
-     * new pseudorandom-number generator is used thereafter for all
-     * calls to this method and is used nowhere else.
-     * 
-     * <p>This method is properly synchronized to allow correct use by
-     * more than one thread. However, if many threads need to generate
-     * pseudorandom numbers at a great rate, it may reduce contention
-     * for each thread to have its own pseudorandom number generator.
+     * <p>Values are drawn from the calling thread's
+     * {@link java.util.concurrent.ThreadLocalRandom}, so that each
+     * thread uses its own pseudorandom-number generator, seeded as if
+     * by the expression
+     * <blockquote><pre>new java.util.Random</pre></blockquote>
+     * Because no generator state is shared, concurrent calls from
+     * many threads neither synchronize nor contend with each other.
      *  
      * @return  a pseudorandom <code>double</code> greater than or equal 
      * to <code>0.0</code> and less than <code>1.0</code>.
      * @see     java.util.Random#nextDouble()
+     * @see     java.util.concurrent.ThreadLocalRandom
      */
     public static double random() {
-        if (randomNumberGenerator == null) initRNG();
-        return randomNumberGenerator.nextDouble();
+        return java.util.concurrent.ThreadLocalRandom.current().nextDouble();
     }
 
     /**
@@ -0,0 +1,173 @@
+/*
+ * @(#)LockContentionInfo.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.lang.management;
+
+import javax.management.openmbean.CompositeData;
+import java.beans.ConstructorProperties;
+
+/**
+ * Contention statistics of a synchronizer, as recorded while
+ * {@linkplain LockContentionMXBean lock contention profiling} is
+ * enabled.  The synchronizer is identified in the same way as by a
+ * {@link LockInfo}: by the name of its class and its identity hash
+ * code.  For a {@link java.util.concurrent.locks.ReentrantLock
+ * ReentrantLock} or other lock built on
+ * {@link java.util.concurrent.locks.AbstractQueuedSynchronizer
+ * AbstractQueuedSynchronizer} this is the lock's internal
+ * synchronizer, which is also the object reported as the owned
+ * synchronizer or blocker of a thread in a {@link ThreadInfo}.
+ *
+ * <h4><a name="Histogram">Queue Length Histogram</a></h4>
+ * Each contended acquire records the number of threads found queued
+ * ahead of it in one of {@link #QUEUE_LENGTH_BUCKETS} buckets.
+ * Bucket <tt>0</tt> counts arrivals that found no other queued
+ * thread; bucket <i>i</i>, for <tt>0 &lt; </tt><i>i</i><tt> &lt;
+ * QUEUE_LENGTH_BUCKETS - 1</tt>, counts arrivals that found between
+ * <tt>2<sup><i>i</i>-1</sup></tt> and <tt>2<sup><i>i</i></sup> -
+ * 1</tt> queued threads; and the last bucket counts all longer
+ * queues.
+ *
+ * <h4><a name="MappedType">MXBean Mapping</a></h4>
+ * <tt>LockContentionInfo</tt> is mapped to a
+ * {@link CompositeData CompositeData} as specified in the
+ * <a href="../../../javax/management/MXBean.html#mapping-rules">
+ * type mapping rules</a> of {@linkplain javax.management.MXBean MXBeans}.
+ *
+ * @see LockContentionMXBean
+ *
+ * @since   1.7
+ */
+public class LockContentionInfo extends LockInfo {
+
+    /**
+     * The number of buckets in the
+     * <a href="#Histogram">queue length histogram</a>.
+     */
+    public static final int QUEUE_LENGTH_BUCKETS = 8;
+
+    private long slowPathAcquireCount;
+    private long contendedAcquireCount;
+    private long parkCount;
+    private long waitTime;
+    private long[] queueLengthHistogram;
+
+    /**
+     * Constructs a <tt>LockContentionInfo</tt> object.
+     *
+     * @param className the fully qualified name of the class of the
+     *                  synchronizer.
+     * @param identityHashCode the {@link System#identityHashCode
+     *                         identity hash code} of the synchronizer.
+     * @param slowPathAcquireCount the number of acquire attempts
+     *                             that reached the synchronizer.
+     * @param contendedAcquireCount the number of acquire attempts that
+     *                              queued.
+     * @param parkCount the number of times queued threads parked.
+     * @param waitTime the accumulated time spent queued, in nanoseconds.
+     * @param queueLengthHistogram the queue length histogram.
+     *
+     * @throws IllegalArgumentException if the length of
+     *         <tt>queueLengthHistogram</tt> is not
+     *         {@link #QUEUE_LENGTH_BUCKETS}.
+     */
+    @ConstructorProperties({"className", "identityHashCode",
+                            "slowPathAcquireCount", "contendedAcquireCount",
+                            "parkCount", "waitTime",
+                            "queueLengthHistogram"})
+    public LockContentionInfo(String className, int identityHashCode,
+                              long slowPathAcquireCount,
+                              long contendedAcquireCount,
+                              long parkCount, long waitTime,
+                              long[] queueLengthHistogram) {
+        super(className, identityHashCode);
+        if (queueLengthHistogram.length != QUEUE_LENGTH_BUCKETS)
+            throw new IllegalArgumentException("Invalid histogram length");
+        this.slowPathAcquireCount = slowPathAcquireCount;
+        this.contendedAcquireCount = contendedAcquireCount;
+        this.parkCount = parkCount;
+        this.waitTime = waitTime;
+        this.queueLengthHistogram = queueLengthHistogram.clone();
+    }
+
+    /**
+     * Returns the number of acquire attempts that reached the
+     * synchronizer's acquire methods, such as
+     * {@link java.util.concurrent.locks.AbstractQueuedSynchronizer#acquire
+     * AbstractQueuedSynchronizer.acquire}.  Many locks first try an
+     * uncontended acquire of their own, for example the barging
+     * acquire of a nonfair {@link java.util.concurrent.locks.ReentrantLock
+     * ReentrantLock}, and call these methods only when that fails, or
+     * not at all, as for <tt>tryLock()</tt>.  Acquires that complete
+     * in such a fast path are not counted, so this is the number of
+     * slow path attempts, not of all acquires.
+     *
+     * @return the number of slow path acquire attempts.
+     */
+    public long getSlowPathAcquireCount() {
+        return slowPathAcquireCount;
+    }
+
+    /**
+     * Returns the number of acquire attempts that could not complete
+     * immediately and had to queue.
+     *
+     * @return the number of contended acquire attempts.
+     */
+    public long getContendedAcquireCount() {
+        return contendedAcquireCount;
+    }
+
+    /**
+     * Returns the number of times queued threads parked while
+     * waiting to acquire the synchronizer.
+     *
+     * @return the number of parks.
+     */
+    public long getParkCount() {
+        return parkCount;
+    }
+
+    /**
+     * Returns the accumulated time, in nanoseconds, that threads
+     * spent queued for the synchronizer, including attempts that
+     * timed out or were interrupted.
+     *
+     * @return the accumulated wait time in nanoseconds.
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * Returns the <a href="#Histogram">queue length histogram</a>
+     * of the contended acquire attempts.
+     *
+     * @return an array of {@link #QUEUE_LENGTH_BUCKETS} counts.
+     */
+    public long[] getQueueLengthHistogram() {
+        return queueLengthHistogram.clone();
+    }
+
+    /**
+     * Returns a string representation of these statistics, consisting
+     * of the {@linkplain LockInfo#toString string representation} of
+     * the synchronizer followed by its counts.
+     *
+     * @return the string representation of these statistics.
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder(super.toString());
+        sb.append(" slowPathAcquires=").append(slowPathAcquireCount);
+        sb.append(" contended=").append(contendedAcquireCount);
+        sb.append(" parks=").append(parkCount);
+        sb.append(" waitTime=").append(waitTime).append("ns");
+        sb.append(" queueLengths=").append(
+            java.util.Arrays.toString(queueLengthHistogram));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * @(#)LockContentionMXBean.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.lang.management;
+
+/**
+ * The management interface for contention profiling of the
+ * synchronizers built on
+ * {@link java.util.concurrent.locks.AbstractQueuedSynchronizer
+ * AbstractQueuedSynchronizer}, such as
+ * {@link java.util.concurrent.locks.ReentrantLock ReentrantLock},
+ * {@link java.util.concurrent.locks.ReentrantReadWriteLock
+ * ReentrantReadWriteLock}, {@link java.util.concurrent.Semaphore
+ * Semaphore} and {@link java.util.concurrent.CountDownLatch
+ * CountDownLatch}.
+ *
+ * <p> A Java virtual machine has a single instance of the implementation
+ * class of this interface.  This instance implementing this interface is
+ * an <a href="ManagementFactory.html#MXBean">MXBean</a>
+ * that can be obtained by calling
+ * the {@link ManagementFactory#getLockContentionMXBean} method or
+ * from the {@link ManagementFactory#getPlatformMBeanServer
+ * platform <tt>MBeanServer</tt>} method.
+ *
+ * <p>The <tt>ObjectName</tt> for uniquely identifying the MXBean for
+ * lock contention profiling within an MBeanServer is:
+ * <blockquote>
+ *    {@link ManagementFactory#LOCK_CONTENTION_MXBEAN_NAME
+ *           <tt>java.lang:type=LockContention</tt>}
+ * </blockquote>
+ *
+ * <h4>Lock Contention Profiling</h4>
+ * {@link ThreadMXBean} reports contention only for object monitors,
+ * and {@link ThreadInfo} only identifies the lock a thread is
+ * currently blocked on.  When lock contention profiling is enabled,
+ * each synchronizer records the number of acquire attempts that
+ * reached it after any fast path of the lock built on it, the
+ * number of attempts that had to queue, the number of times queued
+ * threads parked, the accumulated time spent queued, and a histogram
+ * of the queue lengths found by arriving threads.  These statistics
+ * are returned in
+ * {@link LockContentionInfo} objects, which identify each synchronizer
+ * in the same way as the {@link LockInfo} objects in a <tt>ThreadInfo</tt>,
+ * so the hottest locks can be correlated with thread dumps.
+ *
+ * <p>Lock contention profiling is disabled by default.  It may be
+ * enabled with {@link #setLockContentionProfilingEnabled}, or by
+ * setting the system property
+ * <tt>java.util.concurrent.locks.contentionProfiling</tt> to
+ * <tt>true</tt>.  The property is read when this MXBean is first
+ * obtained, which happens at startup if the platform
+ * <tt>MBeanServer</tt> is created then, for example for remote
+ * management.  While disabled, synchronizers record nothing.
+ * Synchronizers are tracked only while they are otherwise reachable;
+ * statistics of synchronizers that have been garbage collected are
+ * discarded.
+ *
+ * @see ThreadMXBean
+ * @see LockContentionInfo
+ *
+ * @since   1.7
+ */
+public interface LockContentionMXBean {
+    /**
+     * Tests if lock contention profiling is enabled.
+     *
+     * @return <tt>true</tt> if lock contention profiling is enabled;
+     *         <tt>false</tt> otherwise.
+     */
+    public boolean isLockContentionProfilingEnabled();
+
+    /**
+     * Enables or disables lock contention profiling.
+     * Lock contention profiling is disabled by default.
+     * Disabling profiling does not discard the statistics
+     * recorded so far.
+     *
+     * @param enable <tt>true</tt> to enable;
+     *               <tt>false</tt> to disable.
+     *
+     * @throws java.lang.SecurityException if a security manager
+     *         exists and the caller does not have
+     *         ManagementPermission("control").
+     */
+    public void setLockContentionProfilingEnabled(boolean enable);
+
+    /**
+     * Returns the contention statistics of all profiled synchronizers
+     * that have had at least one contended acquire, hottest first.
+     * Synchronizers are ordered by decreasing accumulated wait time,
+     * then by decreasing number of contended acquires.
+     *
+     * @return an array of <tt>LockContentionInfo</tt> objects, one
+     *         per contended synchronizer.
+     *
+     * @throws java.lang.SecurityException if a security manager
+     *         exists and the caller does not have
+     *         ManagementPermission("monitor").
+     */
+    public LockContentionInfo[] getLockContentionInfo();
+
+    /**
+     * Returns the contention statistics of at most <tt>maxLocks</tt>
+     * of the hottest profiled synchronizers, ordered as by
+     * {@link #getLockContentionInfo()}.
+     *
+     * @param maxLocks the maximum number of entries to return.
+     *
+     * @return an array of at most <tt>maxLocks</tt>
+     *         <tt>LockContentionInfo</tt> objects.
+     *
+     * @throws IllegalArgumentException if <tt>maxLocks</tt> is negative.
+     * @throws java.lang.SecurityException if a security manager
+     *         exists and the caller does not have
+     *         ManagementPermission("monitor").
+     */
+    public LockContentionInfo[] getLockContentionInfo(int maxLocks);
+
+    /**
+     * Resets the contention statistics of all profiled synchronizers
+     * to zero.
+     *
+     * @throws java.lang.SecurityException if a security manager
+     *         exists and the caller does not have
+     *         ManagementPermission("control").
+     */
+    public void resetLockContentionStatistics();
+}
@@ -16,6 +16,9 @@ import java.util.List;
 import java.security.AccessController;
 import java.security.Permission;
 import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import javax.management.JMException;
 import javax.management.JMX;
 
 /**
@@ -208,6 +211,11 @@ import javax.management.JMX;
  * <td> {@link #OPERATING_SYSTEM_MXBEAN_NAME
  *             <tt>java.lang:type=OperatingSystem</tt>}</td>
  * </tr>
+ * <tr>
+ * <td> {@link LockContentionMXBean} </td>
+ * <td> {@link #LOCK_CONTENTION_MXBEAN_NAME
+ *             <tt>java.lang:type=LockContention</tt>}</td>
+ * </tr>
  * </table>
  * </blockquote>
  *
@@ -261,6 +269,7 @@ import javax.management.JMX;
  * @see <a href="package-summary.html#examples">
  *      Ways to Access Management Metrics</a>
  * @see java.util.logging.LoggingMXBean
+ * @see java.util.zip.ZlibMXBean
  * @see javax.management.MXBean
  *
  * @author  Mandy Chung
@@ -313,6 +322,15 @@ public class ManagementFactory {
     public final static String THREAD_MXBEAN_NAME = 
         "java.lang:type=Threading";
 
+    /**
+     * String representation of the
+     * <tt>ObjectName</tt> for the {@link LockContentionMXBean}.
+     *
+     * @since 1.7
+     */
+    public final static String LOCK_CONTENTION_MXBEAN_NAME =
+        "java.lang:type=LockContention";
+
     /**
      * The domain name and the type key property in 
      * the <tt>ObjectName</tt> for a {@link GarbageCollectorMXBean}.
@@ -451,6 +469,22 @@ public class ManagementFactory {
         return sun.management.ManagementFactory.getGarbageCollectorMXBeans();
     }
 
+    /**
+     * Returns the managed bean for contention profiling of the
+     * synchronizers based on
+     * {@link java.util.concurrent.locks.AbstractQueuedSynchronizer
+     * AbstractQueuedSynchronizer}.
+     *
+     * @return a {@link LockContentionMXBean} object for
+     * the Java virtual machine.
+     *
+     * @since 1.7
+     */
+    public static LockContentionMXBean getLockContentionMXBean() {
+        return java.util.concurrent.locks.AbstractQueuedSynchronizer
+            .getLockContentionMXBean();
+    }
+
     private static MBeanServer platformMBeanServer;
     /**
      * Returns the platform {@link javax.management.MBeanServer MBeanServer}.
@@ -503,10 +537,37 @@ public class ManagementFactory {
         if (platformMBeanServer == null) {
             platformMBeanServer = 
                 sun.management.ManagementFactory.createPlatformMBeanServer();
+            addMXBean(platformMBeanServer, getLockContentionMXBean(),
+                      LOCK_CONTENTION_MXBEAN_NAME);
+            addMXBean(platformMBeanServer,
+                      java.util.zip.Inflater.getZlibMXBean(),
+                      java.util.zip.Inflater.ZLIB_MXBEAN_NAME);
         }
         return platformMBeanServer;
     }
 
+    /**
+     * Registers a platform MXBean that is not registered by the
+     * platform <tt>MBeanServer</tt> implementation itself.
+     */
+    private static void addMXBean(final MBeanServer mbs,
+                                  final Object mxbean,
+                                  final String name) {
+        try {
+            AccessController.doPrivileged(new PrivilegedExceptionAction() {
+                public Object run() throws JMException {
+                    ObjectName on = new ObjectName(name);
+                    if (!mbs.isRegistered(on))
+                        mbs.registerMBean(mxbean, on);
+                    return null;
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            throw new IllegalStateException(name + " cannot be registered",
+                                            e.getException());
+        }
+    }
+
     /**
      * Returns a proxy for a platform MXBean interface of a 
      * given <a href="#MXBeanNames">MXBean name</a>
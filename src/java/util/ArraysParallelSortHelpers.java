@@ -0,0 +1,950 @@
+/*
+ * @(#)ArraysParallelSortHelpers.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Helper utilities for the parallel sort methods in Arrays.parallelSort.
+ *
+ * For each primitive type, plus Object, we define a static class to
+ * contain the Sorter and Merger implementations for that type:
+ *
+ * Sorter classes based mainly on CilkSort
+ * <A href="http://supertech.lcs.mit.edu/cilk/"> Cilk</A>:
+ * Basic algorithm:
+ * if array size is small, just use a sequential sort (via Arrays.sort)
+ *         Otherwise:
+ *         1. Break array in half.
+ *         2. Sort the two halves in parallel.
+ *         3. Merge together the two halves.
+ *
+ * To avoid copying back after each merge, the main and workspace
+ * arrays swap roles on each level: each Sorter is told in which of
+ * the two arrays to leave its result, and asks its subsorts to leave
+ * theirs in the other one, so that its merge reads from one array and
+ * writes to the other. Leaf-level sorts always sort in the main
+ * array, and copy to the workspace only when that is where the result
+ * is wanted.  The top-level sort leaves its result in the main array.
+ *
+ * Where possible, merges are themselves performed in parallel:
+ * the larger of the two runs is split in half, and the matching
+ * split point in the smaller run is located by binary search, so that
+ * the two pieces can be merged independently into disjoint ranges of
+ * the destination. For Object arrays, ties always resolve in favor of
+ * the left run, preserving stability. For float and double arrays,
+ * comparisons use Float.compare and Double.compare, matching the total
+ * order imposed by Arrays.sort, in which -0.0 precedes 0.0 and NaN is
+ * greater than all other values.
+ *
+ * Forked subtasks are joined in reverse order of forking, so that
+ * subtasks still sitting in the local queue are simply popped and run
+ * by the joining thread.
+ */
+/*package*/ class ArraysParallelSortHelpers {
+
+    /**
+     * Comparator using the natural ordering of its arguments, used for
+     * parallel sorts of arrays of Comparable elements.
+     */
+    static final class NaturalOrder implements Comparator<Object> {
+        static final NaturalOrder INSTANCE = new NaturalOrder();
+        @SuppressWarnings("unchecked")
+        public int compare(Object first, Object second) {
+            return ((Comparable<Object>)first).compareTo(second);
+        }
+    }
+
+    /** Object support class */
+    static final class FJObject {
+        static final class Sorter<T> extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final T[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            final Comparator<? super T> comparator;
+            Sorter(T[] a, T[] w, int base, int size, int wbase, int gran,
+                   boolean toW, Comparator<? super T> comparator) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+                this.comparator = comparator;
+            }
+            protected void compute() {
+                T[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                Comparator<? super T> c = this.comparator;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n, c);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter<T>(a, w, b, h, wb, g, !toW, c),
+                          new Sorter<T>(a, w, b + h, n - h, wb + h, g, !toW, c));
+                if (toW)
+                    new Merger<T>(a, w, b, h, b + h, n - h, wb, g, c).compute();
+                else
+                    new Merger<T>(w, a, wb, h, wb + h, n - h, b, g, c).compute();
+            }
+        }
+
+        static final class Merger<T> extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final T[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            final Comparator<? super T> comparator;
+            Merger<T> next; // link to next forked sibling
+            Merger(T[] a, T[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran,
+                   Comparator<? super T> comparator) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+                this.comparator = comparator;
+            }
+
+            protected void compute() {
+                Comparator<? super T> c = this.comparator;
+                T[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0 ||
+                    c == null)
+                    throw new IllegalStateException(); // hoist checks
+                Merger<T> forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        T split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (c.compare(split, a[rm + rb]) <= 0)
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        T split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (c.compare(split, a[lm + lb]) < 0)
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger<T> m = new Merger<T>(a, w, lb + lh, ln - lh,
+                                                rb + rh, rn - rh,
+                                                k + lh + rh, g, c);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    T t, al, ar;
+                    if (c.compare((al = a[lb]), (ar = a[rb])) <= 0) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJObject
+
+    /** Byte support class */
+    static final class FJByte {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final byte[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(byte[] a, byte[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                byte[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final byte[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(byte[] a, byte[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                byte[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        byte split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        byte split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split < a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    byte t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJByte
+
+    /** Char support class */
+    static final class FJChar {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final char[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(char[] a, char[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                char[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final char[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(char[] a, char[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                char[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        char split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        char split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split < a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    char t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJChar
+
+    /** Short support class */
+    static final class FJShort {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final short[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(short[] a, short[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                short[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final short[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(short[] a, short[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                short[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        short split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        short split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split < a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    short t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJShort
+
+    /** Int support class */
+    static final class FJInt {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final int[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(int[] a, int[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                int[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final int[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(int[] a, int[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                int[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        int split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        int split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split < a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    int t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJInt
+
+    /** Long support class */
+    static final class FJLong {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final long[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(long[] a, long[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                long[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final long[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(long[] a, long[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                long[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        long split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        long split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split < a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    long t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJLong
+
+    /** Float support class */
+    static final class FJFloat {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final float[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(float[] a, float[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                float[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final float[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(float[] a, float[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                float[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        float split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (Float.compare(split, a[rm + rb]) <= 0)
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        float split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (Float.compare(split, a[lm + lb]) < 0)
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    float t, al, ar;
+                    if (Float.compare((al = a[lb]), (ar = a[rb])) <= 0) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJFloat
+
+    /** Double support class */
+    static final class FJDouble {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final double[] a, w;
+            final int base, size, wbase, gran;
+            final boolean toW;
+            Sorter(double[] a, double[] w, int base, int size,
+                   int wbase, int gran, boolean toW) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran; this.toW = toW;
+            }
+            protected void compute() {
+                double[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    Arrays.sort(a, b, b + n);
+                    if (toW)
+                        System.arraycopy(a, b, w, wb, n);
+                    return;
+                }
+                int h = n >>> 1;
+                invokeAll(new Sorter(a, w, b, h, wb, g, !toW),
+                          new Sorter(a, w, b + h, n - h, wb + h, g, !toW));
+                if (toW)
+                    new Merger(a, w, b, h, b + h, n - h, wb, g).compute();
+                else
+                    new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final double[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next; // link to next forked sibling
+            Merger(double[] a, double[] w, int lbase, int lsize, int rbase,
+                   int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                double[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                if (a == null || w == null || lb < 0 || rb < 0 || k < 0)
+                    throw new IllegalStateException(); // hoist checks
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        double split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (Double.compare(split, a[rm + rb]) <= 0)
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        double split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (Double.compare(split, a[lm + lb]) < 0)
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    double t, al, ar;
+                    if (Double.compare((al = a[lb]), (ar = a[rb])) <= 0) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (; forked != null; forked = forked.next)
+                    forked.join();
+            }
+        }
+    } // FJDouble
+}
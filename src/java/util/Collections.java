@@ -94,12 +94,18 @@ public class Collections {
      *
      * The specified list must be modifiable, but need not be resizable.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
-     * n log(n) performance.
-     *
-     * This implementation dumps the specified list into an array, sorts
+     * <p>Implementation note: This implementation is a stable, adaptive,
+     * iterative mergesort that requires far fewer than n lg(n) comparisons
+     * when the input list is partially sorted, while offering the
+     * performance of a traditional mergesort when the input list is
+     * randomly ordered.  If the input list is nearly sorted, the
+     * implementation requires approximately n comparisons.  Temporary
+     * storage requirements vary from a small constant for nearly sorted
+     * input lists to n/2 object references for randomly ordered input
+     * lists.  It is adapted from Tim Peters's list sort for Python
+     * (TimSort); see {@link Arrays#sort(Object[])}.
+     *
+     * <p>This implementation dumps the specified list into an array, sorts
      * the array, and iterates over the list resetting each element
      * from the corresponding position in the array.  This avoids the
      * n<sup>2</sup> log(n) performance that would result from attempting
@@ -110,6 +116,9 @@ public class Collections {
      *	       <i>mutually comparable</i> (for example, strings and integers).
      * @throws UnsupportedOperationException if the specified list's
      *	       list-iterator does not support the <tt>set</tt> operation.
+     * @throws IllegalArgumentException (optional) if the natural
+     *         ordering of the list elements is found to violate the
+     *         {@link Comparable} contract
      * @see Comparable
      */
     public static <T extends Comparable<? super T>> void sort(List<T> list) {
@@ -132,12 +141,18 @@ public class Collections {
      * This sort is guaranteed to be <i>stable</i>:  equal elements will
      * not be reordered as a result of the sort.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
-     * n log(n) performance.
-     *
-     * The specified list must be modifiable, but need not be resizable.
+     * <p>Implementation note: This implementation is a stable, adaptive,
+     * iterative mergesort that requires far fewer than n lg(n) comparisons
+     * when the input list is partially sorted, while offering the
+     * performance of a traditional mergesort when the input list is
+     * randomly ordered.  If the input list is nearly sorted, the
+     * implementation requires approximately n comparisons.  Temporary
+     * storage requirements vary from a small constant for nearly sorted
+     * input lists to n/2 object references for randomly ordered input
+     * lists.  It is adapted from Tim Peters's list sort for Python
+     * (TimSort); see {@link Arrays#sort(Object[])}.
+     *
+     * <p>The specified list must be modifiable, but need not be resizable.
      * This implementation dumps the specified list into an array, sorts
      * the array, and iterates over the list resetting each element
      * from the corresponding position in the array.  This avoids the
@@ -152,6 +167,8 @@ public class Collections {
      *	       <i>mutually comparable</i> using the specified comparator.
      * @throws UnsupportedOperationException if the specified list's
      *	       list-iterator does not support the <tt>set</tt> operation.
+     * @throws IllegalArgumentException (optional) if the comparator is
+     *         found to violate the {@link Comparator} contract
      * @see Comparator
      */
     public static <T> void sort(List<T> list, Comparator<? super T> c) {
@@ -379,7 +396,9 @@ public class Collections {
     /**
      * Randomly permutes the specified list using a default source of
      * randomness.  All permutations occur with approximately equal
-     * likelihood.<p>
+     * likelihood.  The default source is the calling thread's
+     * {@link java.util.concurrent.ThreadLocalRandom}, so concurrent
+     * callers do not share generator state.<p>
      *
      * The hedge "approximately" is used in the foregoing description because
      * default source of randomness is only approximately an unbiased source
@@ -405,12 +424,8 @@ public class Collections {
      *         its list-iterator does not support the <tt>set</tt> operation.
      */
     public static void shuffle(List<?> list) {
-        if (r == null) {
-            r = new Random();
-        }
-        shuffle(list, r);
+        shuffle(list, java.util.concurrent.ThreadLocalRandom.current());
     }
-    private static Random r;
 
     /**
      * Randomly permute the specified list using the specified source of
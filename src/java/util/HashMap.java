@@ -47,6 +47,14 @@ import java.io.*;
  * than the maximum number of entries divided by the load factor, no
  * rehash operations will ever occur.
  *
+ * <p>Buckets that come to hold many mappings, as happens when keys have
+ * poorly distributed or deliberately colliding hash codes, are additionally
+ * indexed by a balanced tree ordered by hash code and then, for keys that
+ * are mutually {@link Comparable}, by their natural ordering.  This bounds
+ * the cost of lookups in such buckets to O(log n) rather than O(n).  The
+ * tree is discarded again when the bucket shrinks, and has no effect on
+ * iteration order or on the serialized form.
+ *
  * <p>If many mappings are to be stored in a <tt>HashMap</tt> instance,
  * creating it with a sufficiently large capacity will allow the mappings to
  * be stored more efficiently than letting it perform automatic rehashing as
@@ -126,11 +134,40 @@ public class HashMap<K,V>
      */
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    /**
+     * The bin length at which a bin is indexed by a tree rather than
+     * searched as a list.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The bin length at or below which a tree bin reverts to a plain
+     * list.  Smaller than TREEIFY_THRESHOLD so that a bin hovering
+     * around the threshold is not repeatedly converted.
+     */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The smallest table capacity for which bins may be treeified.
+     * Smaller tables are resized instead when a bin grows too long,
+     * since that is usually the cheaper cure for an overfull bin.
+     */
+    static final int MIN_TREEIFY_CAPACITY = 64;
+
     /**
      * The table, resized as necessary. Length MUST Always be a power of two.
      */
     transient Entry[] table;
 
+    /**
+     * Trees indexing the oversized bins of the table, or null if no bin
+     * is currently treeified.  When non-null, has the same length as
+     * table, and holds a TreeBin at each index whose bin is treeified.
+     * The list of entries in a treeified bin is kept in tree order, so
+     * that the list predecessor of an entry can be found from the tree.
+     */
+    transient TreeBin[] treeBins;
+
     /**
      * The number of key-value mappings contained in this map.
      */
@@ -298,9 +335,13 @@ public class HashMap<K,V>
         if (key == null)
             return getForNullKey();
         int hash = hash(key.hashCode());
-        for (Entry<K,V> e = table[indexFor(hash, table.length)];
-             e != null;
-             e = e.next) {
+        int i = indexFor(hash, table.length);
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(hash, key);
+            return (p == null ? null : p.entry.value);
+        }
+        for (Entry<K,V> e = table[i]; e != null; e = e.next) {
             Object k;
             if (e.hash == hash && ((k = e.key) == key || key.equals(k)))
                 return e.value;
@@ -316,6 +357,11 @@ public class HashMap<K,V>
      * others.
      */
     private V getForNullKey() {
+        TreeBin<K,V> tb = treeBinAt(0);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(0, null);
+            return (p == null ? null : p.entry.value);
+        }
         for (Entry<K,V> e = table[0]; e != null; e = e.next) {
             if (e.key == null)
                 return e.value;
@@ -342,9 +388,13 @@ public class HashMap<K,V>
      */
     final Entry<K,V> getEntry(Object key) {
         int hash = (key == null) ? 0 : hash(key.hashCode());
-        for (Entry<K,V> e = table[indexFor(hash, table.length)];
-             e != null;
-             e = e.next) {
+        int i = indexFor(hash, table.length);
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(hash, key);
+            return (p == null ? null : p.entry);
+        }
+        for (Entry<K,V> e = table[i]; e != null; e = e.next) {
             Object k;
             if (e.hash == hash &&
                 ((k = e.key) == key || (key != null && key.equals(k))))
@@ -371,14 +421,27 @@ public class HashMap<K,V>
             return putForNullKey(value);
         int hash = hash(key.hashCode());
         int i = indexFor(hash, table.length);
-        for (Entry<K,V> e = table[i]; e != null; e = e.next) {
-            Object k;
-            if (e.hash == hash && ((k = e.key) == key || key.equals(k))) {
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(hash, key);
+            if (p != null) {
+                Entry<K,V> e = p.entry;
                 V oldValue = e.value;
                 e.value = value;
                 e.recordAccess(this);
                 return oldValue;
             }
+        } else {
+            for (Entry<K,V> e = table[i]; e != null; e = e.next) {
+                Object k;
+                if (e.hash == hash &&
+                    ((k = e.key) == key || key.equals(k))) {
+                    V oldValue = e.value;
+                    e.value = value;
+                    e.recordAccess(this);
+                    return oldValue;
+                }
+            }
         }
 
         modCount++;
@@ -390,13 +453,25 @@ public class HashMap<K,V>
      * Offloaded version of put for null keys
      */
     private V putForNullKey(V value) {
-        for (Entry<K,V> e = table[0]; e != null; e = e.next) {
-            if (e.key == null) {
+        TreeBin<K,V> tb = treeBinAt(0);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(0, null);
+            if (p != null) {
+                Entry<K,V> e = p.entry;
                 V oldValue = e.value;
                 e.value = value;
                 e.recordAccess(this);
                 return oldValue;
             }
+        } else {
+            for (Entry<K,V> e = table[0]; e != null; e = e.next) {
+                if (e.key == null) {
+                    V oldValue = e.value;
+                    e.value = value;
+                    e.recordAccess(this);
+                    return oldValue;
+                }
+            }
         }
         modCount++;
         addEntry(0, null, value, 0);
@@ -418,13 +493,22 @@ public class HashMap<K,V>
          * clone or deserialize.  It will only happen for construction if the
          * input Map is a sorted map whose ordering is inconsistent w/ equals.
          */
-        for (Entry<K,V> e = table[i]; e != null; e = e.next) {
-            Object k;
-            if (e.hash == hash &&
-                ((k = e.key) == key || (key != null && key.equals(k)))) {
-                e.value = value;
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(hash, key);
+            if (p != null) {
+                p.entry.value = value;
                 return;
             }
+        } else {
+            for (Entry<K,V> e = table[i]; e != null; e = e.next) {
+                Object k;
+                if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && key.equals(k)))) {
+                    e.value = value;
+                    return;
+                }
+            }
         }
 
         createEntry(hash, key, value, i);
@@ -463,6 +547,16 @@ public class HashMap<K,V>
         transfer(newTable);
         table = newTable;
         threshold = (int)(newCapacity * loadFactor);
+
+        // Each new bin is a subset of an old one, so only the bins
+        // split from treeified bins can still be oversized.
+        if (treeBins != null) {
+            treeBins = null;
+            for (int j = 0; j < newCapacity; j++) {
+                if (binLength(newTable[j]) >= TREEIFY_THRESHOLD)
+                    treeify(j);
+            }
+        }
     }
 
     /**
@@ -547,6 +641,18 @@ public class HashMap<K,V>
     final Entry<K,V> removeEntryForKey(Object key) {
         int hash = (key == null) ? 0 : hash(key.hashCode());
         int i = indexFor(hash, table.length);
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(hash, key);
+            if (p == null)
+                return null;
+            Entry<K,V> e = p.entry;
+            modCount++;
+            size--;
+            removeTreeNode(tb, p, i);
+            e.recordRemoval(this);
+            return e;
+        }
         Entry<K,V> prev = table[i];
         Entry<K,V> e = prev;
 
@@ -582,6 +688,18 @@ public class HashMap<K,V>
         Object key = entry.getKey();
         int hash = (key == null) ? 0 : hash(key.hashCode());
         int i = indexFor(hash, table.length);
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> p = tb.find(hash, key);
+            if (p == null || !p.entry.equals(entry))
+                return null;
+            Entry<K,V> e = p.entry;
+            modCount++;
+            size--;
+            removeTreeNode(tb, p, i);
+            e.recordRemoval(this);
+            return e;
+        }
         Entry<K,V> prev = table[i];
         Entry<K,V> e = prev;
 
@@ -613,6 +731,7 @@ public class HashMap<K,V>
         Entry[] tab = table;
         for (int i = 0; i < tab.length; i++)
             tab[i] = null;
+        treeBins = null;
         size = 0;
     }
 
@@ -662,6 +781,7 @@ public class HashMap<K,V>
 	    // assert false;
 	}
         result.table = new Entry[table.length];
+        result.treeBins = null;
         result.entrySet = null;
         result.modCount = 0;
         result.size = 0;
@@ -751,6 +871,7 @@ public class HashMap<K,V>
     void addEntry(int hash, K key, V value, int bucketIndex) {
 	Entry<K,V> e = table[bucketIndex];
         table[bucketIndex] = new Entry<K,V>(hash, key, value, e);
+        binAdded(bucketIndex);
         if (size++ >= threshold)
             resize(2 * table.length);
     }
@@ -766,9 +887,556 @@ public class HashMap<K,V>
     void createEntry(int hash, K key, V value, int bucketIndex) {
 	Entry<K,V> e = table[bucketIndex];
         table[bucketIndex] = new Entry<K,V>(hash, key, value, e);
+        binAdded(bucketIndex);
         size++;
     }
 
+    /* ---------------- Tree bins -------------- */
+
+    /*
+     * Bins that grow to TREEIFY_THRESHOLD entries are indexed by a
+     * red-black tree (a TreeBin) held in treeBins at the same index as
+     * the bin.  The entries themselves stay linked through their next
+     * fields exactly as in ordinary bins, so iteration, transfer and
+     * the subclass hooks (LinkedHashMap's in particular) need not know
+     * about trees at all.  To allow an entry to be unlinked without a
+     * list scan, the list of a treeified bin is kept in tree order:
+     * the list predecessor of an entry is the entry of its tree
+     * predecessor.  New entries are linked at the head of their bin
+     * as usual and then moved into position by binAdded.
+     *
+     * Trees are ordered primarily by hash, then, for keys of the same
+     * class C implementing Comparable<C>, by compareTo, and otherwise
+     * by an arbitrary but consistent tie-breaking order.  Lookups
+     * that cannot be resolved by hash and compareTo search both
+     * subtrees, so tie-breaking never causes a key to be missed.
+     *
+     * Trees are built only in tables of at least MIN_TREEIFY_CAPACITY
+     * buckets, dropped on clear and clone, and rebuilt as needed after
+     * a resize.  They are never serialized.
+     */
+
+    /**
+     * Returns the tree indexing bin i, or null if the bin is a plain list.
+     */
+    final TreeBin<K,V> treeBinAt(int i) {
+        TreeBin[] tb = treeBins;
+        return (tb == null) ? null : (TreeBin<K,V>)tb[i];
+    }
+
+    /**
+     * Returns the length of the list starting at e, counting no
+     * further than TREEIFY_THRESHOLD.
+     */
+    static int binLength(Entry e) {
+        int n = 0;
+        for (; e != null && n < TREEIFY_THRESHOLD; e = e.next)
+            ++n;
+        return n;
+    }
+
+    /**
+     * Called by addEntry and createEntry (and their overrides) after
+     * a new entry has been linked at the head of bin i.  Adds the
+     * entry to the bin's tree, if it has one; otherwise treeifies the
+     * bin, or resizes the table if it is still small, once the bin has
+     * grown too long.  May resize the table, so must be called only
+     * once the entry is fully linked into any subclass structures.
+     */
+    final void binAdded(int i) {
+        Entry<K,V>[] tab = table;
+        Entry<K,V> e = tab[i];
+        TreeBin<K,V> tb = treeBinAt(i);
+        if (tb != null) {
+            TreeNode<K,V> pred = TreeBin.predecessor(tb.insert(e));
+            if (pred != null) {
+                tab[i] = e.next;
+                Entry<K,V> p = pred.entry;
+                e.next = p.next;
+                p.next = e;
+            }
+        } else if (binLength(e) >= TREEIFY_THRESHOLD) {
+            if (tab.length < MIN_TREEIFY_CAPACITY)
+                resize(2 * tab.length);
+            else
+                treeify(i);
+        }
+    }
+
+    /**
+     * Builds a tree for bin i and relinks the bin's list in tree order.
+     */
+    private void treeify(int i) {
+        Entry<K,V>[] tab = table;
+        TreeBin<K,V> tb = new TreeBin<K,V>();
+        for (Entry<K,V> e = tab[i]; e != null; e = e.next)
+            tb.insert(e);
+        Entry<K,V> last = null;
+        for (TreeNode<K,V> p = tb.first(); p != null;
+             p = TreeBin.successor(p)) {
+            Entry<K,V> e = p.entry;
+            if (last == null)
+                tab[i] = e;
+            else
+                last.next = e;
+            last = e;
+        }
+        last.next = null;
+        if (treeBins == null)
+            treeBins = new TreeBin[tab.length];
+        treeBins[i] = tb;
+    }
+
+    /**
+     * Unlinks the entry of node p from treeified bin i, reverting the
+     * bin to a plain list if it has become small enough.
+     */
+    private void removeTreeNode(TreeBin<K,V> tb, TreeNode<K,V> p, int i) {
+        TreeNode<K,V> pred = TreeBin.predecessor(p);
+        Entry<K,V> e = p.entry;
+        if (pred == null)
+            table[i] = e.next;
+        else
+            pred.entry.next = e.next;
+        tb.delete(p);
+        if (tb.size <= UNTREEIFY_THRESHOLD)
+            treeBins[i] = null;
+    }
+
+    /**
+     * Returns x's Class if it is of the form "class C implements
+     * Comparable<C>", else null.
+     */
+    static Class<?> comparableClassFor(Object x) {
+        if (x instanceof Comparable) {
+            Class<?> c = x.getClass();
+            if (c == String.class) // bypass checks
+                return c;
+            java.lang.reflect.Type[] ts = c.getGenericInterfaces();
+            if (ts != null) {
+                for (int i = 0; i < ts.length; ++i) {
+                    if (ts[i] instanceof java.lang.reflect.ParameterizedType) {
+                        java.lang.reflect.ParameterizedType p =
+                            (java.lang.reflect.ParameterizedType)ts[i];
+                        java.lang.reflect.Type[] as;
+                        if (p.getRawType() == Comparable.class &&
+                            (as = p.getActualTypeArguments()) != null &&
+                            as.length == 1 && as[0] == c)
+                            return c;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns k.compareTo(x) if x matches kc (k's screened comparable
+     * class), else 0.
+     */
+    static int compareComparables(Class<?> kc, Object k, Object x) {
+        return (x == null || x.getClass() != kc ? 0 :
+                ((Comparable)k).compareTo(x));
+    }
+
+    /**
+     * Orders keys that have equal hashes and are not comparable.  The
+     * order need not be total, only consistent within a single
+     * insertion.
+     */
+    static int tieBreakOrder(Object a, Object b) {
+        int d;
+        if (a == null || b == null ||
+            (d = a.getClass().getName().
+             compareTo(b.getClass().getName())) == 0)
+            d = (System.identityHashCode(a) <= System.identityHashCode(b) ?
+                 -1 : 1);
+        return d;
+    }
+
+    /**
+     * Node of a TreeBin, referring to the entry it indexes.
+     */
+    static final class TreeNode<K,V> {
+        Entry<K,V> entry;
+        TreeNode<K,V> left;
+        TreeNode<K,V> right;
+        TreeNode<K,V> parent;
+        boolean color = TreeBin.BLACK;
+
+        TreeNode(Entry<K,V> entry, TreeNode<K,V> parent) {
+            this.entry = entry;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Red-black tree indexing the entries of one oversized bin.  The
+     * balancing code follows that of TreeMap.
+     */
+    static final class TreeBin<K,V> {
+        static final boolean RED   = false;
+        static final boolean BLACK = true;
+
+        TreeNode<K,V> root;
+        int size;
+
+        /**
+         * Returns the node for the given hash and key, or null if none.
+         */
+        TreeNode<K,V> find(int h, Object k) {
+            return (root == null) ? null : find(root, h, k, null);
+        }
+
+        /**
+         * Finds the node for the given hash and key in the subtree
+         * rooted at p.  The kc argument caches comparableClassFor(k)
+         * the first time keys are compared.
+         */
+        static <K,V> TreeNode<K,V> find(TreeNode<K,V> p, int h, Object k,
+                                        Class<?> kc) {
+            do {
+                Entry<K,V> e = p.entry;
+                TreeNode<K,V> pl = p.left, pr = p.right, q;
+                int ph = e.hash, dir;
+                Object pk;
+                if (ph > h)
+                    p = pl;
+                else if (ph < h)
+                    p = pr;
+                else if ((pk = e.key) == k || (k != null && k.equals(pk)))
+                    return p;
+                else if (pl == null)
+                    p = pr;
+                else if (pr == null)
+                    p = pl;
+                else if ((kc != null ||
+                          (kc = comparableClassFor(k)) != null) &&
+                         (dir = compareComparables(kc, k, pk)) != 0)
+                    p = (dir < 0) ? pl : pr;
+                else if ((q = find(pr, h, k, kc)) != null)
+                    return q;
+                else
+                    p = pl;
+            } while (p != null);
+            return null;
+        }
+
+        /**
+         * Adds a node for an entry whose key is not already present,
+         * and returns it.
+         */
+        TreeNode<K,V> insert(Entry<K,V> e) {
+            TreeNode<K,V> t = root;
+            if (t == null) {
+                root = new TreeNode<K,V>(e, null);
+                size = 1;
+                return root;
+            }
+            int h = e.hash;
+            Object k = e.key;
+            Class<?> kc = null;
+            boolean screened = false;
+            TreeNode<K,V> parent;
+            int dir;
+            do {
+                parent = t;
+                int th = t.entry.hash;
+                if (h < th)
+                    dir = -1;
+                else if (h > th)
+                    dir = 1;
+                else {
+                    Object tk = t.entry.key;
+                    if (!screened) {
+                        kc = comparableClassFor(k);
+                        screened = true;
+                    }
+                    if (kc == null ||
+                        (dir = compareComparables(kc, k, tk)) == 0)
+                        dir = tieBreakOrder(k, tk);
+                }
+                t = (dir < 0) ? t.left : t.right;
+            } while (t != null);
+            TreeNode<K,V> x = new TreeNode<K,V>(e, parent);
+            if (dir < 0)
+                parent.left = x;
+            else
+                parent.right = x;
+            fixAfterInsertion(x);
+            size++;
+            return x;
+        }
+
+        /**
+         * Returns the first node in tree order, or null if empty.
+         */
+        TreeNode<K,V> first() {
+            TreeNode<K,V> p = root;
+            if (p != null)
+                while (p.left != null)
+                    p = p.left;
+            return p;
+        }
+
+        /**
+         * Returns the successor of the specified node, or null if no such.
+         */
+        static <K,V> TreeNode<K,V> successor(TreeNode<K,V> t) {
+            if (t.right != null) {
+                TreeNode<K,V> p = t.right;
+                while (p.left != null)
+                    p = p.left;
+                return p;
+            } else {
+                TreeNode<K,V> p = t.parent;
+                TreeNode<K,V> ch = t;
+                while (p != null && ch == p.right) {
+                    ch = p;
+                    p = p.parent;
+                }
+                return p;
+            }
+        }
+
+        /**
+         * Returns the predecessor of the specified node, or null if no such.
+         */
+        static <K,V> TreeNode<K,V> predecessor(TreeNode<K,V> t) {
+            if (t.left != null) {
+                TreeNode<K,V> p = t.left;
+                while (p.right != null)
+                    p = p.right;
+                return p;
+            } else {
+                TreeNode<K,V> p = t.parent;
+                TreeNode<K,V> ch = t;
+                while (p != null && ch == p.left) {
+                    ch = p;
+                    p = p.parent;
+                }
+                return p;
+            }
+        }
+
+        /**
+         * Deletes node p, and then rebalances the tree.  The tree
+         * order of the remaining entries is unchanged.
+         */
+        void delete(TreeNode<K,V> p) {
+            size--;
+
+            // If strictly internal, move successor's entry to p and then
+            // make p point to successor.
+            if (p.left != null && p.right != null) {
+                TreeNode<K,V> s = successor(p);
+                p.entry = s.entry;
+                p = s;
+            } // p has 2 children
+
+            // Start fixup at replacement node, if it exists.
+            TreeNode<K,V> replacement = (p.left != null ? p.left : p.right);
+
+            if (replacement != null) {
+                // Link replacement to parent
+                replacement.parent = p.parent;
+                if (p.parent == null)
+                    root = replacement;
+                else if (p == p.parent.left)
+                    p.parent.left  = replacement;
+                else
+                    p.parent.right = replacement;
+
+                // Null out links so they are OK to use by fixAfterDeletion.
+                p.left = p.right = p.parent = null;
+
+                // Fix replacement
+                if (p.color == BLACK)
+                    fixAfterDeletion(replacement);
+            } else if (p.parent == null) { // return if we are the only node.
+                root = null;
+            } else { // No children. Use self as phantom replacement, unlink.
+                if (p.color == BLACK)
+                    fixAfterDeletion(p);
+
+                if (p.parent != null) {
+                    if (p == p.parent.left)
+                        p.parent.left = null;
+                    else if (p == p.parent.right)
+                        p.parent.right = null;
+                    p.parent = null;
+                }
+            }
+            p.entry = null;
+        }
+
+        /*
+         * Balancing operations, as in TreeMap.
+         */
+
+        private static <K,V> boolean colorOf(TreeNode<K,V> p) {
+            return (p == null ? BLACK : p.color);
+        }
+
+        private static <K,V> TreeNode<K,V> parentOf(TreeNode<K,V> p) {
+            return (p == null ? null: p.parent);
+        }
+
+        private static <K,V> void setColor(TreeNode<K,V> p, boolean c) {
+            if (p != null)
+                p.color = c;
+        }
+
+        private static <K,V> TreeNode<K,V> leftOf(TreeNode<K,V> p) {
+            return (p == null) ? null: p.left;
+        }
+
+        private static <K,V> TreeNode<K,V> rightOf(TreeNode<K,V> p) {
+            return (p == null) ? null: p.right;
+        }
+
+        /** From CLR */
+        private void rotateLeft(TreeNode<K,V> p) {
+            if (p != null) {
+                TreeNode<K,V> r = p.right;
+                p.right = r.left;
+                if (r.left != null)
+                    r.left.parent = p;
+                r.parent = p.parent;
+                if (p.parent == null)
+                    root = r;
+                else if (p.parent.left == p)
+                    p.parent.left = r;
+                else
+                    p.parent.right = r;
+                r.left = p;
+                p.parent = r;
+            }
+        }
+
+        /** From CLR */
+        private void rotateRight(TreeNode<K,V> p) {
+            if (p != null) {
+                TreeNode<K,V> l = p.left;
+                p.left = l.right;
+                if (l.right != null) l.right.parent = p;
+                l.parent = p.parent;
+                if (p.parent == null)
+                    root = l;
+                else if (p.parent.right == p)
+                    p.parent.right = l;
+                else p.parent.left = l;
+                l.right = p;
+                p.parent = l;
+            }
+        }
+
+        /** From CLR */
+        private void fixAfterInsertion(TreeNode<K,V> x) {
+            x.color = RED;
+
+            while (x != null && x != root && x.parent.color == RED) {
+                if (parentOf(x) == leftOf(parentOf(parentOf(x)))) {
+                    TreeNode<K,V> y = rightOf(parentOf(parentOf(x)));
+                    if (colorOf(y) == RED) {
+                        setColor(parentOf(x), BLACK);
+                        setColor(y, BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        x = parentOf(parentOf(x));
+                    } else {
+                        if (x == rightOf(parentOf(x))) {
+                            x = parentOf(x);
+                            rotateLeft(x);
+                        }
+                        setColor(parentOf(x), BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        rotateRight(parentOf(parentOf(x)));
+                    }
+                } else {
+                    TreeNode<K,V> y = leftOf(parentOf(parentOf(x)));
+                    if (colorOf(y) == RED) {
+                        setColor(parentOf(x), BLACK);
+                        setColor(y, BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        x = parentOf(parentOf(x));
+                    } else {
+                        if (x == leftOf(parentOf(x))) {
+                            x = parentOf(x);
+                            rotateRight(x);
+                        }
+                        setColor(parentOf(x), BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        rotateLeft(parentOf(parentOf(x)));
+                    }
+                }
+            }
+            root.color = BLACK;
+        }
+
+        /** From CLR */
+        private void fixAfterDeletion(TreeNode<K,V> x) {
+            while (x != root && colorOf(x) == BLACK) {
+                if (x == leftOf(parentOf(x))) {
+                    TreeNode<K,V> sib = rightOf(parentOf(x));
+
+                    if (colorOf(sib) == RED) {
+                        setColor(sib, BLACK);
+                        setColor(parentOf(x), RED);
+                        rotateLeft(parentOf(x));
+                        sib = rightOf(parentOf(x));
+                    }
+
+                    if (colorOf(leftOf(sib))  == BLACK &&
+                        colorOf(rightOf(sib)) == BLACK) {
+                        setColor(sib, RED);
+                        x = parentOf(x);
+                    } else {
+                        if (colorOf(rightOf(sib)) == BLACK) {
+                            setColor(leftOf(sib), BLACK);
+                            setColor(sib, RED);
+                            rotateRight(sib);
+                            sib = rightOf(parentOf(x));
+                        }
+                        setColor(sib, colorOf(parentOf(x)));
+                        setColor(parentOf(x), BLACK);
+                        setColor(rightOf(sib), BLACK);
+                        rotateLeft(parentOf(x));
+                        x = root;
+                    }
+                } else { // symmetric
+                    TreeNode<K,V> sib = leftOf(parentOf(x));
+
+                    if (colorOf(sib) == RED) {
+                        setColor(sib, BLACK);
+                        setColor(parentOf(x), RED);
+                        rotateRight(parentOf(x));
+                        sib = leftOf(parentOf(x));
+                    }
+
+                    if (colorOf(rightOf(sib)) == BLACK &&
+                        colorOf(leftOf(sib)) == BLACK) {
+                        setColor(sib, RED);
+                        x = parentOf(x);
+                    } else {
+                        if (colorOf(leftOf(sib)) == BLACK) {
+                            setColor(rightOf(sib), BLACK);
+                            setColor(sib, RED);
+                            rotateLeft(sib);
+                            sib = leftOf(parentOf(x));
+                        }
+                        setColor(sib, colorOf(parentOf(x)));
+                        setColor(parentOf(x), BLACK);
+                        setColor(leftOf(sib), BLACK);
+                        rotateRight(parentOf(x));
+                        x = root;
+                    }
+                }
+            }
+
+            setColor(x, BLACK);
+        }
+    }
+
     private abstract class HashIterator<E> implements Iterator<E> {
         Entry<K,V> next;	// next entry to return
         int expectedModCount;	// For fast-fail
@@ -0,0 +1,616 @@
+/*
+ * @(#)IntArrayList.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+/**
+ * Resizable-array implementation of the <tt>List</tt> interface for
+ * <tt>int</tt> elements, stored unboxed in a primitive array.
+ * In addition to the <tt>List&lt;Integer&gt;</tt> operations, which
+ * box and unbox elements as they pass through, this class provides
+ * primitive counterparts (<tt>add(int)</tt>, <tt>getInt</tt>,
+ * <tt>setInt</tt>, <tt>removeInt</tt>, <tt>indexOf(int)</tt>,
+ * <tt>contains(int)</tt> and <tt>toIntArray</tt>) that never
+ * allocate wrapper objects.  A list of <i>n</i> elements
+ * occupies about <tt>4</tt><i>n</i> bytes, against roughly
+ * <tt>20</tt><i>n</i> for an <tt>ArrayList&lt;Integer&gt;</tt> of distinct
+ * boxed values.  The list does not permit <tt>null</tt> elements.<p>
+ *
+ * The <tt>size</tt>, <tt>isEmpty</tt>, <tt>get</tt>, <tt>set</tt>,
+ * <tt>iterator</tt>, and <tt>listIterator</tt> operations run in constant
+ * time.  The <tt>add</tt> operation runs in <i>amortized constant time</i>,
+ * that is, adding n elements requires O(n) time.  All of the other
+ * operations run in linear time (roughly speaking).<p>
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a <tt>IntArrayList</tt> instance concurrently,
+ * and at least one of the threads modifies the list structurally, it
+ * <i>must</i> be synchronized externally.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> and
+ * <tt>listIterator</tt> methods are <i>fail-fast</i>, as described for
+ * {@link ArrayList}.<p>
+ *
+ * This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see     ArrayList
+ * @see     IntIntHashMap
+ * @since   1.7
+ */
+
+public class IntArrayList extends AbstractList<Integer>
+        implements RandomAccess, Cloneable, java.io.Serializable
+{
+    private static final long serialVersionUID = -2845934165582137231L;
+
+    /**
+     * The array buffer into which the elements of the list are stored.
+     * The capacity of the list is the length of this array buffer.
+     */
+    private transient int[] elementData;
+
+    /**
+     * The size of the list (the number of elements it contains).
+     *
+     * @serial
+     */
+    private int size;
+
+    /**
+     * Constructs an empty list with the specified initial capacity.
+     *
+     * @param   initialCapacity   the initial capacity of the list
+     * @exception IllegalArgumentException if the specified initial capacity
+     *            is negative
+     */
+    public IntArrayList(int initialCapacity) {
+        super();
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                                               initialCapacity);
+        this.elementData = new int[initialCapacity];
+    }
+
+    /**
+     * Constructs an empty list with an initial capacity of ten.
+     */
+    public IntArrayList() {
+        this(10);
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection whose elements are to be placed into this list
+     * @throws NullPointerException if the specified collection is null,
+     *         or contains a null element
+     */
+    public IntArrayList(Collection<? extends Integer> c) {
+        this(c.size());
+        addAll(c);
+    }
+
+    /**
+     * Trims the capacity of this <tt>IntArrayList</tt> instance to be the
+     * list's current size.  An application can use this operation to minimize
+     * the storage of a <tt>IntArrayList</tt> instance.
+     */
+    public void trimToSize() {
+        modCount++;
+        int oldCapacity = elementData.length;
+        if (size < oldCapacity) {
+            elementData = Arrays.copyOf(elementData, size);
+        }
+    }
+
+    /**
+     * Increases the capacity of this <tt>IntArrayList</tt> instance, if
+     * necessary, to ensure that it can hold at least the number of elements
+     * specified by the minimum capacity argument.
+     *
+     * @param   minCapacity   the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        modCount++;
+        int oldCapacity = elementData.length;
+        if (minCapacity > oldCapacity) {
+            int newCapacity = (oldCapacity * 3)/2 + 1;
+            if (newCapacity < minCapacity)
+                newCapacity = minCapacity;
+            elementData = Arrays.copyOf(elementData, newCapacity);
+        }
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains no elements.
+     *
+     * @return <tt>true</tt> if this list contains no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified element
+     */
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified value.
+     *
+     * @param e value whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified value
+     */
+    public boolean contains(int e) {
+        return indexOf(e) >= 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     */
+    public int indexOf(Object o) {
+        return (o instanceof Integer) ? indexOf(((Integer)o).intValue()) : -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified value
+     * in this list, or -1 if this list does not contain the value.
+     *
+     * @param e the value to search for
+     * @return the lowest index of <tt>e</tt>, or -1 if none
+     */
+    public int indexOf(int e) {
+        int[] a = elementData;
+        for (int i = 0; i < size; i++)
+            if (a[i] == e)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     */
+    public int lastIndexOf(Object o) {
+        return (o instanceof Integer) ?
+            lastIndexOf(((Integer)o).intValue()) : -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified value
+     * in this list, or -1 if this list does not contain the value.
+     *
+     * @param e the value to search for
+     * @return the highest index of <tt>e</tt>, or -1 if none
+     */
+    public int lastIndexOf(int e) {
+        int[] a = elementData;
+        for (int i = size-1; i >= 0; i--)
+            if (a[i] == e)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns a copy of this <tt>IntArrayList</tt> instance.
+     *
+     * @return a clone of this <tt>IntArrayList</tt> instance
+     */
+    public Object clone() {
+        try {
+            IntArrayList v = (IntArrayList) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list
+     * in proper sequence (from first to last element), each boxed
+     * as a <tt>Integer</tt>.
+     *
+     * @return an array containing all of the elements in this list in
+     *         proper sequence
+     */
+    public Object[] toArray() {
+        Object[] r = new Object[size];
+        for (int i = 0; i < size; i++)
+            r[i] = Integer.valueOf(elementData[i]);
+        return r;
+    }
+
+    /**
+     * Returns a new <tt>int</tt> array containing all of the elements in
+     * this list in proper sequence (from first to last element).  The
+     * returned array is not referenced by this list.
+     *
+     * @return an array containing all of the elements in this list in
+     *         proper sequence
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    // Positional Access Operations
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param  index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public Integer get(int index) {
+        RangeCheck(index);
+        return Integer.valueOf(elementData[index]);
+    }
+
+    /**
+     * Returns the value at the specified position in this list,
+     * without boxing.
+     *
+     * @param  index index of the value to return
+     * @return the value at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    public int getInt(int index) {
+        RangeCheck(index);
+        return elementData[index];
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with
+     * the specified element.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws NullPointerException if the specified element is null
+     */
+    public Integer set(int index, Integer element) {
+        return Integer.valueOf(setInt(index, element.intValue()));
+    }
+
+    /**
+     * Replaces the value at the specified position in this list with
+     * the specified value.
+     *
+     * @param index index of the value to replace
+     * @param element value to be stored at the specified position
+     * @return the value previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    public int setInt(int index, int element) {
+        RangeCheck(index);
+        int oldValue = elementData[index];
+        elementData[index] = element;
+        return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return <tt>true</tt> (as specified by {@link Collection#add})
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean add(Integer e) {
+        return add(e.intValue());
+    }
+
+    /**
+     * Appends the specified value to the end of this list.
+     *
+     * @param e value to be appended to this list
+     * @return <tt>true</tt> (as specified by {@link Collection#add})
+     */
+    public boolean add(int e) {
+        ensureCapacity(size + 1);  // Increments modCount!!
+        elementData[size++] = e;
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list. Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param element element to be inserted
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws NullPointerException if the specified element is null
+     */
+    public void add(int index, Integer element) {
+        add(index, element.intValue());
+    }
+
+    /**
+     * Inserts the specified value at the specified position in this
+     * list. Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified value is to be inserted
+     * @param element value to be inserted
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     */
+    public void add(int index, int element) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(
+                "Index: "+index+", Size: "+size);
+
+        ensureCapacity(size+1);  // Increments modCount!!
+        System.arraycopy(elementData, index, elementData, index + 1,
+                         size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from their
+     * indices).
+     *
+     * @param index the index of the element to be removed
+     * @return the element that was removed from the list
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public Integer remove(int index) {
+        return Integer.valueOf(removeInt(index));
+    }
+
+    /**
+     * Removes the value at the specified position in this list, without
+     * boxing it.  Shifts any subsequent elements to the left (subtracts
+     * one from their indices).
+     *
+     * @param index the index of the value to be removed
+     * @return the value that was removed from the list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    public int removeInt(int index) {
+        RangeCheck(index);
+
+        modCount++;
+        int oldValue = elementData[index];
+
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index+1, elementData, index,
+                             numMoved);
+        --size;
+        return oldValue;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.  If the list does not contain the element, it is
+     * unchanged.
+     *
+     * @param o element to be removed from this list, if present
+     * @return <tt>true</tt> if this list contained the specified element
+     */
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0)
+            return false;
+        removeInt(index);
+        return true;
+    }
+
+    /**
+     * Removes all of the elements from this list.  The list will
+     * be empty after this call returns.
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    /**
+     * Appends all of the elements in the specified collection to the end of
+     * this list, in the order that they are returned by the
+     * specified collection's Iterator.  If the collection is itself a
+     * <tt>IntArrayList</tt>, its elements are copied without boxing.
+     *
+     * @param c collection containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null,
+     *         or contains a null element
+     */
+    public boolean addAll(Collection<? extends Integer> c) {
+        return addAll(size, c);
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this
+     * list, starting at the specified position.  Shifts the element
+     * currently at that position (if any) and any subsequent elements to
+     * the right (increases their indices).  The new elements will appear
+     * in the list in the order that they are returned by the
+     * specified collection's iterator.
+     *
+     * @param index index at which to insert the first element from the
+     *              specified collection
+     * @param c collection containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws NullPointerException if the specified collection is null,
+     *         or contains a null element
+     */
+    public boolean addAll(int index, Collection<? extends Integer> c) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(
+                "Index: " + index + ", Size: " + size);
+
+        int[] a;
+        if (c instanceof IntArrayList)
+            a = ((IntArrayList)c).toIntArray();
+        else {
+            Object[] o = c.toArray();
+            a = new int[o.length];
+            for (int i = 0; i < o.length; i++)
+                a[i] = ((Integer)o[i]).intValue();
+        }
+        int numNew = a.length;
+        ensureCapacity(size + numNew);  // Increments modCount
+
+        int numMoved = size - index;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index, elementData, index + numNew,
+                             numMoved);
+
+        System.arraycopy(a, 0, elementData, index, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * <tt>fromIndex</tt>, inclusive, and <tt>toIndex</tt>, exclusive.
+     * Shifts any succeeding elements to the left (reduces their index).
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex index after last element to be removed
+     */
+    protected void removeRange(int fromIndex, int toIndex) {
+        modCount++;
+        int numMoved = size - toIndex;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex,
+                         numMoved);
+        size -= toIndex - fromIndex;
+    }
+
+    /**
+     * Sorts the elements of this list into ascending numerical order,
+     * as if by {@link Arrays#sort(int[], int, int)}.
+     */
+    public void sort() {
+        modCount++;
+        Arrays.sort(elementData, 0, size);
+    }
+
+    /**
+     * Compares the specified object with this list for equality, as
+     * specified by {@link List#equals}.  Comparison with another
+     * <tt>IntArrayList</tt> proceeds without boxing.
+     *
+     * @param o the object to be compared for equality with this list
+     * @return <tt>true</tt> if the specified object is equal to this list
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntArrayList))
+            return super.equals(o);
+        IntArrayList other = (IntArrayList)o;
+        if (other.size != size)
+            return false;
+        int[] a = elementData, b = other.elementData;
+        for (int i = 0; i < size; i++)
+            if (a[i] != b[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this list, as specified by
+     * {@link List#hashCode}.
+     *
+     * @return the hash code value for this list
+     */
+    public int hashCode() {
+        int hashCode = 1;
+        int[] a = elementData;
+        for (int i = 0; i < size; i++)
+            hashCode = 31*hashCode + a[i];
+        return hashCode;
+    }
+
+    /**
+     * Checks if the given index is in range.  If not, throws an appropriate
+     * runtime exception.  This method does *not* check if the index is
+     * negative: It is always used immediately prior to an array access,
+     * which throws an ArrayIndexOutOfBoundsException if index is negative.
+     */
+    private void RangeCheck(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(
+                "Index: "+index+", Size: "+size);
+    }
+
+    /**
+     * Save the state of the <tt>IntArrayList</tt> instance to a stream (that
+     * is, serialize it).
+     *
+     * @serialData The length of the array backing the <tt>IntArrayList</tt>
+     *             instance is emitted (int), followed by all of its elements
+     *             (each a <tt>int</tt>) in the proper order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws java.io.IOException{
+        // Write out element count, and any hidden stuff
+        int expectedModCount = modCount;
+        s.defaultWriteObject();
+
+        // Write out array length
+        s.writeInt(elementData.length);
+
+        // Write out all elements in the proper order.
+        for (int i=0; i<size; i++)
+            s.writeInt(elementData[i]);
+
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Reconstitute the <tt>IntArrayList</tt> instance from a stream
+     * (that is, deserialize it).
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        // Read in size, and any hidden stuff
+        s.defaultReadObject();
+
+        // Read in array length and allocate array
+        int arrayLength = s.readInt();
+        int[] a = elementData = new int[arrayLength];
+
+        // Read in all elements in the proper order.
+        for (int i=0; i<size; i++)
+            a[i] = s.readInt();
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * @(#)IntHashSet.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+import java.io.*;
+
+/**
+ * Hash table based implementation of the <tt>Set</tt> interface for
+ * <tt>int</tt> elements, holding them unboxed.  In addition to the
+ * <tt>Set&lt;Integer&gt;</tt> operations, which box and unbox elements as
+ * they pass through, this class provides primitive counterparts
+ * (<tt>add(int)</tt>, <tt>remove(int)</tt>, <tt>contains(int)</tt> and
+ * <tt>toIntArray</tt>) that never allocate.  A set of <i>n</i>
+ * elements occupies about <tt>4</tt><i>n</i>/<i>load factor</i> bytes,
+ * where a <tt>HashSet&lt;Integer&gt;</tt> needs an entry object and a box
+ * per element.  This set does not permit the <tt>null</tt> element.
+ *
+ * <p>The table is laid out and behaves as described for {@link
+ * IntIntHashMap}: elements are spread by a multiplicative hash into a
+ * <i>linear-probe</i> table, removal closes up the gap it leaves
+ * behind, and the load factor must be less than one.  Assuming the
+ * hash function disperses the elements properly, the basic operations
+ * (<tt>add</tt>, <tt>remove</tt> and <tt>contains</tt>) run in
+ * constant time.  Iterating over this set requires time proportional
+ * to its capacity plus its size.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a hash set concurrently, and at least one
+ * of the threads modifies the set, it <i>must</i> be synchronized
+ * externally.
+ *
+ * <p>The iterators returned by this class's <tt>iterator</tt> method are
+ * <i>fail-fast</i>, as described for {@link HashSet}.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see     HashSet
+ * @see     IntIntHashMap
+ * @since   1.7
+ */
+
+public class IntHashSet
+    extends AbstractSet<Integer>
+    implements Set<Integer>, Cloneable, java.io.Serializable
+{
+    private static final long serialVersionUID = -1425786392173548613L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The element table, resized as necessary. Length MUST Always be a
+     * power of two.  A zero element marks a free slot; membership of
+     * zero itself is held in hasZero instead.
+     */
+    transient int[] table;
+
+    /**
+     * Whether the set contains zero.
+     */
+    transient boolean hasZero;
+
+    /**
+     * The number of elements contained in this set.
+     */
+    transient int size;
+
+    /**
+     * The next size value at which to resize.  Never more than
+     * capacity - 1, so that every probe sequence reaches a free slot.
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this set has been structurally modified.
+     * This field is used to make iterators fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs an empty <tt>IntHashSet</tt> with the specified initial
+     * capacity and load factor.  The initial capacity is the number of
+     * elements the set can hold before its table is first resized.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is not between zero and one, exclusive
+     */
+    public IntHashSet(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        init(tableSizeFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Constructs an empty <tt>IntHashSet</tt> with the specified initial
+     * capacity and the default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public IntHashSet(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty <tt>IntHashSet</tt> with the default initial
+     * capacity (16) and the default load factor (0.75).
+     */
+    public IntHashSet() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new set containing the elements in the specified
+     * collection, with the default load factor (0.75) and an initial
+     * capacity sufficient to hold them.
+     *
+     * @param c the collection whose elements are to be placed into this set
+     * @throws NullPointerException if the specified collection is null,
+     *         or contains a null element
+     */
+    public IntHashSet(Collection<? extends Integer> c) {
+        this(c.size(), DEFAULT_LOAD_FACTOR);
+        addAll(c);
+    }
+
+    /**
+     * Returns the smallest power of two table size that holds the
+     * given number of elements without resizing.
+     */
+    private static int tableSizeFor(int expected, float loadFactor) {
+        int capacity = 1;
+        while (capacity < MAXIMUM_CAPACITY &&
+               (int) (capacity * loadFactor) <= expected)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Allocates a table of the given power of two length and sets the
+     * resize threshold accordingly.
+     */
+    private void init(int capacity) {
+        table = new int[capacity];
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Returns the number of elements in this set (its cardinality).
+     *
+     * @return the number of elements in this set (its cardinality)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains no elements.
+     *
+     * @return <tt>true</tt> if this set contains no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the table index of the given nonzero element, or -1 if
+     * absent.
+     */
+    private int indexOf(int e) {
+        int[] tab = table;
+        int mask = tab.length - 1;
+        int i = IntIntHashMap.hash(e, mask);
+        int k;
+        while ((k = tab[i]) != 0) {
+            if (k == e)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified value.
+     *
+     * @param e value whose presence in this set is to be tested
+     * @return <tt>true</tt> if this set contains the specified value
+     */
+    public boolean contains(int e) {
+        return (e == 0) ? hasZero : indexOf(e) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified element.
+     */
+    public boolean contains(Object o) {
+        return (o instanceof Integer) && contains(((Integer)o).intValue());
+    }
+
+    /**
+     * Adds the specified value to this set if it is not already present.
+     *
+     * @param e value to be added to this set
+     * @return <tt>true</tt> if this set did not already contain the
+     *         specified value
+     * @throws IllegalStateException if the set is at maximum capacity
+     */
+    public boolean add(int e) {
+        if (e == 0) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            modCount++;
+            size++;
+            return true;
+        }
+        int[] tab = table;
+        int mask = tab.length - 1;
+        int i = IntIntHashMap.hash(e, mask);
+        int k;
+        while ((k = tab[i]) != 0) {
+            if (k == e)
+                return false;
+            i = (i + 1) & mask;
+        }
+        if (size >= threshold) {
+            resize();
+            return add(e);
+        }
+        modCount++;
+        size++;
+        tab[i] = e;
+        return true;
+    }
+
+    /**
+     * Adds the specified element to this set if it is not already present.
+     *
+     * @throws NullPointerException if the specified element is null
+     * @throws IllegalStateException if the set is at maximum capacity
+     */
+    public boolean add(Integer e) {
+        return add(e.intValue());
+    }
+
+    /**
+     * Doubles the capacity of the table and rehashes its contents.
+     * At maximum capacity the threshold is raised to capacity - 1,
+     * leaving one slot free; past that point no more elements fit.
+     */
+    private void resize() {
+        int[] oldTable = table;
+        int oldCapacity = oldTable.length;
+        if (oldCapacity == MAXIMUM_CAPACITY) {
+            if (threshold == MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("Capacity exhausted.");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        init(oldCapacity << 1);
+        int[] tab = table;
+        int mask = tab.length - 1;
+        for (int j = 0; j < oldCapacity; j++) {
+            int k = oldTable[j];
+            if (k != 0) {
+                int i = IntIntHashMap.hash(k, mask);
+                while (tab[i] != 0)
+                    i = (i + 1) & mask;
+                tab[i] = k;
+            }
+        }
+    }
+
+    /**
+     * Removes the specified value from this set if it is present.
+     *
+     * @param e value to be removed from this set, if present
+     * @return <tt>true</tt> if the set contained the specified value
+     */
+    public boolean remove(int e) {
+        if (e == 0) {
+            if (!hasZero)
+                return false;
+            hasZero = false;
+            modCount++;
+            size--;
+            return true;
+        }
+        int i = indexOf(e);
+        if (i < 0)
+            return false;
+        modCount++;
+        size--;
+        closeDeletion(i);
+        return true;
+    }
+
+    /**
+     * Removes the specified element from this set if it is present.
+     */
+    public boolean remove(Object o) {
+        return (o instanceof Integer) && remove(((Integer)o).intValue());
+    }
+
+    /**
+     * Vacates slot d and rehashes any possibly-colliding elements
+     * following it, as in IntIntHashMap.
+     *
+     * @param d the index of a newly empty deleted slot
+     */
+    private void closeDeletion(int d) {
+        int[] tab = table;
+        int mask = tab.length - 1;
+        tab[d] = 0;
+        int k;
+        for (int i = (d + 1) & mask; (k = tab[i]) != 0; i = (i + 1) & mask) {
+            int r = IntIntHashMap.hash(k, mask);
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                tab[d] = k;
+                tab[i] = 0;
+                d = i;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the elements from this set.
+     * The set will be empty after this call returns.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(table, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Returns a new <tt>int</tt> array containing all of the elements in
+     * this set, in no particular order.
+     *
+     * @return an array containing all of the elements in this set
+     */
+    public int[] toIntArray() {
+        int[] a = new int[size];
+        int j = 0;
+        if (hasZero)
+            a[j++] = 0;
+        int[] tab = table;
+        for (int i = 0; i < tab.length; i++)
+            if (tab[i] != 0)
+                a[j++] = tab[i];
+        return a;
+    }
+
+    /**
+     * Returns a copy of this <tt>IntHashSet</tt> instance.
+     *
+     * @return a copy of this set
+     */
+    public Object clone() {
+        try {
+            IntHashSet s = (IntHashSet) super.clone();
+            s.table = table.clone();
+            s.modCount = 0;
+            return s;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Compares the specified object with this set for equality, as
+     * specified by {@link Set#equals}.  Comparison with another
+     * <tt>IntHashSet</tt> proceeds without boxing.
+     *
+     * @param o object to be compared for equality with this set
+     * @return <tt>true</tt> if the specified object is equal to this set
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntHashSet))
+            return super.equals(o);
+        IntHashSet s = (IntHashSet)o;
+        if (s.size != size || s.hasZero != hasZero)
+            return false;
+        int[] tab = table;
+        for (int i = 0; i < tab.length; i++)
+            if (tab[i] != 0 && s.indexOf(tab[i]) < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this set, as specified by
+     * {@link Set#hashCode}.
+     *
+     * @return the hash code value for this set
+     */
+    public int hashCode() {
+        int h = 0;
+        int[] tab = table;
+        for (int i = 0; i < tab.length; i++)
+            h += tab[i];
+        return h;
+    }
+
+    /**
+     * Returns an iterator over the elements in this set.  The elements
+     * are returned in no particular order.
+     *
+     * @return an iterator over the elements in this set
+     */
+    public Iterator<Integer> iterator() {
+        return new SetIterator();
+    }
+
+    /**
+     * Iterator over the table, as for IntIntHashMap.  Zero, when present,
+     * is returned first as if it occupied a slot before the start of
+     * the table.
+     */
+    private class SetIterator implements Iterator<Integer> {
+        int index = (size != 0 ? 0 : table.length); // current slot.
+        int expectedModCount = modCount; // to support fast-fail
+        int lastReturnedIndex = -1;      // to allow remove()
+        boolean indexValid; // To avoid unnecessary next computation
+        boolean zeroPending = hasZero;
+        boolean lastReturnedZero;
+        int[] traversalTable = table; // reference to main table or copy
+
+        public boolean hasNext() {
+            if (zeroPending)
+                return true;
+            int[] tab = traversalTable;
+            for (int i = index; i < tab.length; i++) {
+                if (tab[i] != 0) {
+                    index = i;
+                    return indexValid = true;
+                }
+            }
+            index = tab.length;
+            return false;
+        }
+
+        public Integer next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (zeroPending) {
+                zeroPending = false;
+                lastReturnedZero = true;
+                return Integer.valueOf(0);
+            }
+            if (!indexValid && !hasNext())
+                throw new NoSuchElementException();
+
+            indexValid = false;
+            lastReturnedZero = false;
+            lastReturnedIndex = index;
+            index++;
+            return Integer.valueOf(traversalTable[lastReturnedIndex]);
+        }
+
+        public void remove() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (lastReturnedZero) {
+                lastReturnedZero = false;
+                IntHashSet.this.remove(0);
+                expectedModCount = modCount;
+                return;
+            }
+            if (lastReturnedIndex == -1)
+                throw new IllegalStateException();
+
+            expectedModCount = ++modCount;
+            int deletedSlot = lastReturnedIndex;
+            lastReturnedIndex = -1;
+            // back up index to revisit new contents after deletion
+            index = deletedSlot;
+            indexValid = false;
+
+            // Removal code proceeds as in IntIntHashMap, copying the rest
+            // of the table for traversal when an element already seen
+            // would otherwise be swapped into an unseen slot.
+
+            int[] tab = traversalTable;
+            int d = deletedSlot;
+            int e = tab[d];
+            tab[d] = 0;        // vacate the slot
+
+            // If traversing a copy, remove in real table.
+            // We can skip gap-closure on copy.
+            if (tab != IntHashSet.this.table) {
+                IntHashSet.this.remove(e);
+                expectedModCount = modCount;
+                return;
+            }
+
+            size--;
+
+            int mask = tab.length - 1;
+            int k;
+            for (int i = (d + 1) & mask; (k = tab[i]) != 0;
+                 i = (i + 1) & mask) {
+                int r = IntIntHashMap.hash(k, mask);
+                // See closeDeletion for explanation of this conditional
+                if ((i < r && (r <= d || d <= i)) ||
+                    (r <= d && d <= i)) {
+
+                    // If we are about to swap an already-seen element
+                    // into a slot that may later be returned by next(),
+                    // then clone the rest of table for use in future
+                    // next() calls.
+
+                    if (i < deletedSlot && d >= deletedSlot &&
+                        traversalTable == IntHashSet.this.table) {
+                        int remaining = tab.length - deletedSlot;
+                        int[] newTable = new int[remaining];
+                        System.arraycopy(tab, deletedSlot,
+                                         newTable, 0, remaining);
+                        traversalTable = newTable;
+                        index = 0;
+                    }
+
+                    tab[d] = k;
+                    tab[i] = 0;
+                    d = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the state of this <tt>IntHashSet</tt> instance to a stream
+     * (that is, serialize it).
+     *
+     * @serialData The capacity of the backing table is emitted (int),
+     *             followed by its size (the number of elements it
+     *             contains) (int), followed by all of its elements
+     *             (each a <tt>int</tt>) in no particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(table.length);
+        s.writeInt(size);
+        if (hasZero)
+            s.writeInt(0);
+        int[] tab = table;
+        for (int i = 0; i < tab.length; i++)
+            if (tab[i] != 0)
+                s.writeInt(tab[i]);
+    }
+
+    /**
+     * Reconstitute the <tt>IntHashSet</tt> instance from a stream
+     * (that is, deserialize it).
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        int capacity = s.readInt();
+        int n = s.readInt();
+        int minCapacity = tableSizeFor(n, loadFactor);
+        if (capacity < minCapacity || capacity > MAXIMUM_CAPACITY ||
+            (capacity & (capacity - 1)) != 0)
+            capacity = minCapacity;
+        init(capacity);
+        for (int i = 0; i < n; i++)
+            add(s.readInt());
+    }
+}
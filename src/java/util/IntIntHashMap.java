@@ -0,0 +1,1015 @@
+/*
+ * @(#)IntIntHashMap.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+import java.io.*;
+
+/**
+ * Hash table based implementation of the <tt>Map</tt> interface from
+ * <tt>int</tt> keys to <tt>int</tt> values, holding both unboxed in
+ * parallel arrays.  In addition to the <tt>Map&lt;Integer,Integer&gt;</tt>
+ * operations, which box and unbox keys and values as they pass
+ * through, this class provides primitive counterparts
+ * (<tt>get(int)</tt>, <tt>put(int, int)</tt>, <tt>remove(int)</tt>,
+ * <tt>containsKey(int)</tt>, <tt>containsValue(int)</tt> and
+ * <tt>addTo</tt>) that never allocate.  A map of <i>n</i> mappings
+ * occupies about <tt>8</tt><i>n</i>/<i>load factor</i> bytes, where a
+ * <tt>HashMap&lt;Integer,Integer&gt;</tt> needs an entry object and
+ * up to two boxes per mapping.  This map does not permit <tt>null</tt>
+ * keys or values.
+ *
+ * <p>Because a primitive value cannot be <tt>null</tt>, the primitive
+ * <tt>get</tt>, <tt>put</tt> and <tt>remove</tt> methods return
+ * <tt>0</tt> where the corresponding <tt>Map</tt> methods would return
+ * <tt>null</tt>.  A return value of <tt>0</tt> therefore does not
+ * <i>necessarily</i> indicate that the map contains no mapping for the
+ * key; it's also possible that the map explicitly maps the key to
+ * <tt>0</tt>.  The {@link #containsKey(int) containsKey} operation may
+ * be used to distinguish these two cases.
+ *
+ * <p>This is a simple <i>linear-probe</i> hash table, as described for
+ * example in texts by Sedgewick and Knuth.  Keys are spread by a
+ * multiplicative hash before being reduced to a table index, so
+ * clustered or sequential keys do not form long probe sequences.
+ * Removal closes up the gap it leaves behind rather than leaving a
+ * marker, so lookups never slow down as the map is churned.
+ * Assuming the hash function disperses the keys properly, the basic
+ * operations (<tt>get</tt>, <tt>put</tt> and <tt>remove</tt>) run in
+ * constant time.  Iteration over collection views requires time
+ * proportional to the capacity of the map plus its size.
+ *
+ * <p>An instance of <tt>IntIntHashMap</tt> has two parameters that
+ * affect its performance: <i>initial capacity</i> and <i>load
+ * factor</i>, as described for {@link HashMap}.  Because probe
+ * sequences lengthen quickly as an open-addressed table fills, the load
+ * factor must be less than one; the default (.75) offers a good
+ * tradeoff between time and space costs.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * <p>The iterators returned by all of this class's "collection view
+ * methods" are <i>fail-fast</i>, as described for {@link HashMap}.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see     HashMap
+ * @see     IntHashSet
+ * @see     LongHashMap
+ * @since   1.7
+ */
+
+public class IntIntHashMap
+    extends AbstractMap<Integer,Integer>
+    implements Map<Integer,Integer>, Cloneable, Serializable
+{
+    private static final long serialVersionUID = 362498820763181265L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key table, resized as necessary. Length MUST Always be a
+     * power of two.  A zero element marks a free slot; a zero key is
+     * held in hasZeroKey and zeroValue instead.
+     */
+    transient int[] keys;
+
+    /**
+     * The value table, parallel to keys.
+     */
+    transient int[] vals;
+
+    /**
+     * Whether the map contains a mapping for the key zero.
+     */
+    transient boolean hasZeroKey;
+
+    /**
+     * The value mapped to the key zero, if hasZeroKey.
+     */
+    transient int zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The next size value at which to resize.  Never more than
+     * capacity - 1, so that every probe sequence reaches a free slot.
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this map has been structurally modified.
+     * This field is used to make iterators on collection-views of the
+     * map fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs an empty <tt>IntIntHashMap</tt> with the specified
+     * initial capacity and load factor.  The initial capacity is the
+     * number of mappings the map can hold before its tables are first
+     * resized.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is not between zero and one, exclusive
+     */
+    public IntIntHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        init(tableSizeFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Constructs an empty <tt>IntIntHashMap</tt> with the specified
+     * initial capacity and the default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public IntIntHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty <tt>IntIntHashMap</tt> with the default
+     * initial capacity (16) and the default load factor (0.75).
+     */
+    public IntIntHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new <tt>IntIntHashMap</tt> with the same mappings as
+     * the specified <tt>Map</tt>, with the default load factor (0.75)
+     * and an initial capacity sufficient to hold them.
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null, or
+     *          contains a null key or value
+     */
+    public IntIntHashMap(Map<? extends Integer, ? extends Integer> m) {
+        this(m.size(), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /**
+     * Returns the smallest power of two table size that holds the
+     * given number of mappings without resizing.
+     */
+    private static int tableSizeFor(int expected, float loadFactor) {
+        int capacity = 1;
+        while (capacity < MAXIMUM_CAPACITY &&
+               (int) (capacity * loadFactor) <= expected)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Allocates tables of the given power of two length and sets the
+     * resize threshold accordingly.
+     */
+    private void init(int capacity) {
+        keys = new int[capacity];
+        vals = new int[capacity];
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Spreads the bits of a key and reduces it to a table index.  The
+     * multiplier is the golden-ratio constant used by Fibonacci hashing;
+     * folding in the high half keeps the low bits used for indexing
+     * dependent on every bit of the key.
+     */
+    static int hash(int x, int mask) {
+        int h = x * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the table index of the given nonzero key, or -1 if absent.
+     */
+    private int indexOf(int key) {
+        int[] tab = keys;
+        int mask = tab.length - 1;
+        int i = hash(key, mask);
+        int k;
+        while ((k = tab[i]) != 0) {
+            if (k == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or <tt>0</tt> if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or
+     *         <tt>0</tt> if this map contains no mapping for the key
+     */
+    public int get(int key) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : 0;
+        int i = indexOf(key);
+        return (i < 0) ? 0 : vals[i];
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     */
+    public Integer get(Object key) {
+        if (!(key instanceof Integer))
+            return null;
+        int k = ((Integer)key).intValue();
+        if (k == 0)
+            return hasZeroKey ? Integer.valueOf(zeroValue) : null;
+        int i = indexOf(k);
+        return (i < 0) ? null : Integer.valueOf(vals[i]);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     *
+     * @param   key   The key whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     */
+    public boolean containsKey(int key) {
+        return (key == 0) ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     */
+    public boolean containsKey(Object key) {
+        return (key instanceof Integer) &&
+            containsKey(((Integer)key).intValue());
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     */
+    public boolean containsValue(int value) {
+        if (hasZeroKey && zeroValue == value)
+            return true;
+        int[] tab = keys, vs = vals;
+        for (int i = 0; i < tab.length; i++)
+            if (tab[i] != 0 && vs[i] == value)
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     */
+    public boolean containsValue(Object value) {
+        return (value instanceof Integer) &&
+            containsValue(((Integer)value).intValue());
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>0</tt> if there was no mapping for <tt>key</tt>.
+     * @throws IllegalStateException if the map is at maximum capacity
+     */
+    public int put(int key, int value) {
+        if (key == 0) {
+            int oldValue = zeroValue;
+            zeroValue = value;
+            if (hasZeroKey)
+                return oldValue;
+            hasZeroKey = true;
+            modCount++;
+            size++;
+            return 0;
+        }
+        int[] tab = keys;
+        int mask = tab.length - 1;
+        int i = hash(key, mask);
+        int k;
+        while ((k = tab[i]) != 0) {
+            if (k == key) {
+                int oldValue = vals[i];
+                vals[i] = value;
+                return oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= threshold) {
+            resize();
+            return put(key, value);
+        }
+        modCount++;
+        size++;
+        tab[i] = key;
+        vals[i] = value;
+        return 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @throws NullPointerException if the key or value is null
+     * @throws IllegalStateException if the map is at maximum capacity
+     */
+    public Integer put(Integer key, Integer value) {
+        int k = key.intValue(), v = value.intValue();
+        boolean present = containsKey(k);
+        int oldValue = put(k, v);
+        return present ? Integer.valueOf(oldValue) : null;
+    }
+
+    /**
+     * Adds the given delta to the value mapped to the specified key,
+     * treating an absent mapping as <tt>0</tt>, and returns the new
+     * value.  This is the primitive counterpart of the common
+     * <tt>counts.put(k, counts.get(k) + delta)</tt> idiom, and probes
+     * the table only once.
+     *
+     * @param key the key whose value is to be adjusted
+     * @param delta the amount to add
+     * @return the new value associated with <tt>key</tt>
+     * @throws IllegalStateException if the map is at maximum capacity
+     */
+    public int addTo(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                modCount++;
+                size++;
+                zeroValue = 0;
+            }
+            return zeroValue += delta;
+        }
+        int[] tab = keys;
+        int mask = tab.length - 1;
+        int i = hash(key, mask);
+        int k;
+        while ((k = tab[i]) != 0) {
+            if (k == key)
+                return vals[i] += delta;
+            i = (i + 1) & mask;
+        }
+        if (size >= threshold) {
+            resize();
+            return addTo(key, delta);
+        }
+        modCount++;
+        size++;
+        tab[i] = key;
+        return vals[i] = delta;
+    }
+
+    /**
+     * Doubles the capacity of the tables and rehashes their contents.
+     * At maximum capacity the threshold is raised to capacity - 1,
+     * leaving one slot free; past that point no more keys fit.
+     */
+    private void resize() {
+        int[] oldKeys = keys, oldVals = vals;
+        int oldCapacity = oldKeys.length;
+        if (oldCapacity == MAXIMUM_CAPACITY) {
+            if (threshold == MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("Capacity exhausted.");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        init(oldCapacity << 1);
+        int[] tab = keys, vs = vals;
+        int mask = tab.length - 1;
+        for (int j = 0; j < oldCapacity; j++) {
+            int k = oldKeys[j];
+            if (k != 0) {
+                int i = hash(k, mask);
+                while (tab[i] != 0)
+                    i = (i + 1) & mask;
+                tab[i] = k;
+                vs[i] = oldVals[j];
+            }
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null, or
+     *         contains a null key or value
+     */
+    public void putAll(Map<? extends Integer, ? extends Integer> m) {
+        if (m instanceof IntIntHashMap) {
+            IntIntHashMap other = (IntIntHashMap)m;
+            if (other.hasZeroKey)
+                put(0, other.zeroValue);
+            int[] tab = other.keys, vs = other.vals;
+            for (int i = 0; i < tab.length; i++)
+                if (tab[i] != 0)
+                    put(tab[i], vs[i]);
+        } else {
+            for (Map.Entry<? extends Integer, ? extends Integer> e :
+                     m.entrySet())
+                put(e.getKey().intValue(), e.getValue().intValue());
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param  key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>0</tt> if there was no mapping for <tt>key</tt>.
+     */
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey)
+                return 0;
+            hasZeroKey = false;
+            modCount++;
+            size--;
+            return zeroValue;
+        }
+        int i = indexOf(key);
+        if (i < 0)
+            return 0;
+        int oldValue = vals[i];
+        modCount++;
+        size--;
+        closeDeletion(i);
+        return oldValue;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     */
+    public Integer remove(Object key) {
+        if (!containsKey(key))
+            return null;
+        return Integer.valueOf(remove(((Integer)key).intValue()));
+    }
+
+    /**
+     * Vacates slot d and rehashes any possibly-colliding entries
+     * following it, so that lookups never need to skip over deleted
+     * slots.  This is the same gap-closing deletion IdentityHashMap
+     * uses.
+     *
+     * @param d the index of a newly empty deleted slot
+     */
+    private void closeDeletion(int d) {
+        int[] tab = keys, vs = vals;
+        int mask = tab.length - 1;
+        tab[d] = 0;
+        int k;
+        for (int i = (d + 1) & mask; (k = tab[i]) != 0; i = (i + 1) & mask) {
+            // The following test triggers if the key at slot i (which
+            // hashes to be at slot r) should take the spot vacated by d.
+            // If so, we swap it in, and then continue with d now at the
+            // newly vacated i.  This process will terminate when we hit
+            // the null slot at the end of this run.
+            // The test is messy because we are using a circular table.
+            int r = hash(k, mask);
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                tab[d] = k;
+                vs[d] = vs[i];
+                tab[i] = 0;
+                d = i;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     * The map will be empty after this call returns.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>IntIntHashMap</tt> instance.
+     *
+     * @return a copy of this map
+     */
+    public Object clone() {
+        IntIntHashMap result = null;
+        try {
+            result = (IntIntHashMap)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // assert false;
+        }
+        result.keys = keys.clone();
+        result.vals = vals.clone();
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Compares the specified object with this map for equality, as
+     * specified by {@link Map#equals}.  Comparison with another
+     * <tt>IntIntHashMap</tt> proceeds without boxing.
+     *
+     * @param o object to be compared for equality with this map
+     * @return <tt>true</tt> if the specified object is equal to this map
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntIntHashMap))
+            return super.equals(o);
+        IntIntHashMap m = (IntIntHashMap)o;
+        if (m.size != size)
+            return false;
+        if (hasZeroKey && !(m.hasZeroKey && m.zeroValue == zeroValue))
+            return false;
+        int[] tab = keys, vs = vals;
+        for (int i = 0; i < tab.length; i++) {
+            int k = tab[i];
+            if (k != 0) {
+                int j = m.indexOf(k);
+                if (j < 0 || m.vals[j] != vs[i])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this map, as specified by
+     * {@link Map#hashCode}.
+     *
+     * @return the hash code value for this map
+     */
+    public int hashCode() {
+        int h = hasZeroKey ? zeroValue : 0;
+        int[] tab = keys, vs = vals;
+        for (int i = 0; i < tab.length; i++)
+            if (tab[i] != 0)
+                h += tab[i] ^ vs[i];
+        return h;
+    }
+
+    /**
+     * Iterator over the table, modelled on the IdentityHashMap
+     * iterator.  The zero key, when present, is returned first as if
+     * it occupied a slot before the start of the table.
+     */
+    private abstract class HashIterator<E> implements Iterator<E> {
+        int index = (size != 0 ? 0 : keys.length); // current slot.
+        int expectedModCount = modCount; // to support fast-fail
+        int lastReturnedIndex = -1;      // to allow remove()
+        boolean indexValid; // To avoid unnecessary next computation
+        boolean zeroPending = hasZeroKey;
+        boolean lastReturnedZero;
+        int[] traversalKeys = keys; // reference to main table or copy
+        int[] traversalVals = vals;
+
+        public boolean hasNext() {
+            if (zeroPending)
+                return true;
+            int[] tab = traversalKeys;
+            for (int i = index; i < tab.length; i++) {
+                if (tab[i] != 0) {
+                    index = i;
+                    return indexValid = true;
+                }
+            }
+            index = tab.length;
+            return false;
+        }
+
+        /**
+         * Advances to the next entry, returning its slot index, or -1
+         * for the zero key.
+         */
+        protected int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (zeroPending) {
+                zeroPending = false;
+                lastReturnedZero = true;
+                return -1;
+            }
+            if (!indexValid && !hasNext())
+                throw new NoSuchElementException();
+
+            indexValid = false;
+            lastReturnedZero = false;
+            lastReturnedIndex = index;
+            index++;
+            return lastReturnedIndex;
+        }
+
+        public void remove() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (lastReturnedZero) {
+                lastReturnedZero = false;
+                IntIntHashMap.this.remove(0);
+                expectedModCount = modCount;
+                return;
+            }
+            if (lastReturnedIndex == -1)
+                throw new IllegalStateException();
+
+            expectedModCount = ++modCount;
+            int deletedSlot = lastReturnedIndex;
+            lastReturnedIndex = -1;
+            // back up index to revisit new contents after deletion
+            index = deletedSlot;
+            indexValid = false;
+
+            // Removal code proceeds as in closeDeletion except that
+            // it must catch the rare case where an element already
+            // seen is swapped into a vacant slot that will be later
+            // traversed by this iterator. We cannot allow future
+            // next() calls to return it again.  When it does happen,
+            // we make a copy of the rest of the table to use for the
+            // rest of the traversal.  Since this can only happen when
+            // we are near the end of the table, even in these rare
+            // cases, this is not very expensive in time or space.
+
+            int[] tab = traversalKeys, vs = traversalVals;
+            int d = deletedSlot;
+            int key = tab[d];
+            tab[d] = 0;        // vacate the slot
+
+            // If traversing a copy, remove in real table.
+            // We can skip gap-closure on copy.
+            if (tab != IntIntHashMap.this.keys) {
+                IntIntHashMap.this.remove(key);
+                expectedModCount = modCount;
+                return;
+            }
+
+            size--;
+
+            int mask = tab.length - 1;
+            int k;
+            for (int i = (d + 1) & mask; (k = tab[i]) != 0;
+                 i = (i + 1) & mask) {
+                int r = hash(k, mask);
+                // See closeDeletion for explanation of this conditional
+                if ((i < r && (r <= d || d <= i)) ||
+                    (r <= d && d <= i)) {
+
+                    // If we are about to swap an already-seen element
+                    // into a slot that may later be returned by next(),
+                    // then clone the rest of table for use in future
+                    // next() calls. It is OK that our copy will have
+                    // a gap in the "wrong" place, since it will never
+                    // be used for searching anyway.
+
+                    if (i < deletedSlot && d >= deletedSlot &&
+                        traversalKeys == IntIntHashMap.this.keys) {
+                        int remaining = tab.length - deletedSlot;
+                        int[] newKeys = new int[remaining];
+                        int[] newVals = new int[remaining];
+                        System.arraycopy(tab, deletedSlot,
+                                         newKeys, 0, remaining);
+                        System.arraycopy(vs, deletedSlot,
+                                         newVals, 0, remaining);
+                        traversalKeys = newKeys;
+                        traversalVals = newVals;
+                        index = 0;
+                    }
+
+                    tab[d] = k;
+                    vs[d] = vs[i];
+                    tab[i] = 0;
+                    d = i;
+                }
+            }
+        }
+
+        /** Returns the key at the given index from nextIndex. */
+        final int keyAt(int i) {
+            return (i < 0) ? 0 : traversalKeys[i];
+        }
+
+        /** Returns the value at the given index from nextIndex. */
+        final int valueAt(int i) {
+            return (i < 0) ? zeroValue : traversalVals[i];
+        }
+    }
+
+    /**
+     * An iterator over the keys of this map that also returns them
+     * unboxed.
+     */
+    private class KeyIterator extends HashIterator<Integer> {
+        public Integer next() {
+            return Integer.valueOf(nextInt());
+        }
+
+        int nextInt() {
+            return keyAt(nextIndex());
+        }
+    }
+
+    private class ValueIterator extends HashIterator<Integer> {
+        public Integer next() {
+            return Integer.valueOf(valueAt(nextIndex()));
+        }
+    }
+
+    private class EntryIterator
+        extends HashIterator<Map.Entry<Integer,Integer>> {
+        public Map.Entry<Integer,Integer> next() {
+            int i = nextIndex();
+            return new Entry(keyAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * A snapshot of a mapping returned by the entry set iterator.
+     * Setting its value writes through to the map.
+     */
+    private class Entry implements Map.Entry<Integer,Integer> {
+        final int key;
+        int value;
+
+        Entry(int key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Integer getKey() {
+            return Integer.valueOf(key);
+        }
+
+        public Integer getValue() {
+            return Integer.valueOf(value);
+        }
+
+        public Integer setValue(Integer newValue) {
+            int v = newValue.intValue();
+            int oldValue = value;
+            value = v;
+            put(key, v);
+            return Integer.valueOf(oldValue);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            Object k = e.getKey(), v = e.getValue();
+            return (k instanceof Integer) && (v instanceof Integer) &&
+                ((Integer)k).intValue() == key &&
+                ((Integer)v).intValue() == value;
+        }
+
+        public int hashCode() {
+            return key ^ value;
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<Integer,Integer>> entrySet = null;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, but not the <tt>add</tt> or <tt>addAll</tt> operations.
+     */
+    public Set<Integer> keySet() {
+        Set<Integer> ks = keySet;
+        return (ks != null ? ks : (keySet = new KeySet()));
+    }
+
+    private final class KeySet extends AbstractSet<Integer> {
+        public Iterator<Integer> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            if (!containsKey(o))
+                return false;
+            IntIntHashMap.this.remove(((Integer)o).intValue());
+            return true;
+        }
+        public void clear() {
+            IntIntHashMap.this.clear();
+        }
+        public int hashCode() {
+            int h = 0;
+            for (KeyIterator it = new KeyIterator(); it.hasNext(); )
+                h += it.nextInt();
+            return h;
+        }
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this
+     * map.  The collection is backed by the map, so changes to the map
+     * are reflected in the collection, and vice-versa.  The collection
+     * supports element removal, but not the <tt>add</tt> or
+     * <tt>addAll</tt> operations.
+     */
+    public Collection<Integer> values() {
+        Collection<Integer> vs = values;
+        return (vs != null ? vs : (values = new Values()));
+    }
+
+    private final class Values extends AbstractCollection<Integer> {
+        public Iterator<Integer> iterator() {
+            return new ValueIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        public void clear() {
+            IntIntHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The entries returned by
+     * its iterator are snapshots whose <tt>setValue</tt> operation
+     * writes through to the map.  The set supports element removal,
+     * but not the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    public Set<Map.Entry<Integer,Integer>> entrySet() {
+        Set<Map.Entry<Integer,Integer>> es = entrySet;
+        return (es != null ? es : (entrySet = new EntrySet()));
+    }
+
+    private final class EntrySet
+        extends AbstractSet<Map.Entry<Integer,Integer>> {
+        public Iterator<Map.Entry<Integer,Integer>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            Object k = e.getKey(), v = e.getValue();
+            if (!(k instanceof Integer) || !(v instanceof Integer))
+                return false;
+            int key = ((Integer)k).intValue();
+            return containsKey(key) && get(key) == ((Integer)v).intValue();
+        }
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            IntIntHashMap.this.remove(
+                ((Integer)((Map.Entry)o).getKey()).intValue());
+            return true;
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            IntIntHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Save the state of the <tt>IntIntHashMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>capacity</i> of the IntIntHashMap (the length
+     *             of its tables) is emitted (int), followed by the
+     *             <i>size</i> (an int, the number of key-value
+     *             mappings), followed by the key (int) and value (int)
+     *             for each key-value mapping.  The key-value mappings
+     *             are emitted in no particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(keys.length);
+        s.writeInt(size);
+        if (hasZeroKey) {
+            s.writeInt(0);
+            s.writeInt(zeroValue);
+        }
+        int[] tab = keys, vs = vals;
+        for (int i = 0; i < tab.length; i++) {
+            if (tab[i] != 0) {
+                s.writeInt(tab[i]);
+                s.writeInt(vs[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the <tt>IntIntHashMap</tt> instance from a stream
+     * (i.e., deserialize it).
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        int capacity = s.readInt();
+        int n = s.readInt();
+        int minCapacity = tableSizeFor(n, loadFactor);
+        if (capacity < minCapacity || capacity > MAXIMUM_CAPACITY ||
+            (capacity & (capacity - 1)) != 0)
+            capacity = minCapacity;
+        init(capacity);
+        for (int i = 0; i < n; i++)
+            put(s.readInt(), s.readInt());
+    }
+}
@@ -51,7 +51,10 @@ import java.io.*;
  *
  * <p>The {@link #removeEldestEntry(Map.Entry)} method may be overridden to
  * impose a policy for removing stale mappings automatically when new mappings
- * are added to the map.
+ * are added to the map.  A bounded map in access order shared by many
+ * threads, such as a cache, may instead be a
+ * {@link java.util.concurrent.ConcurrentLinkedHashMap}, whose reads do not
+ * serialize on a lock to reorder entries.
  *
  * <p>This class provides all of the optional <tt>Map</tt> operations, and
  * permits null elements.  Like <tt>HashMap</tt>, it provides constant-time
@@ -424,6 +427,7 @@ public class LinkedHashMap<K,V>
 	Entry<K,V> e = new Entry<K,V>(hash, key, value, old);
         table[bucketIndex] = e;
         e.addBefore(header);
+        binAdded(bucketIndex);
         size++;
     }
 
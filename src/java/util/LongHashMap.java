@@ -0,0 +1,975 @@
+/*
+ * @(#)LongHashMap.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+import java.io.*;
+
+/**
+ * Hash table based implementation of the <tt>Map</tt> interface from
+ * <tt>long</tt> keys to object values, holding the keys unboxed.  In
+ * addition to the <tt>Map&lt;Long,V&gt;</tt> operations, which box and
+ * unbox keys as they pass through, this class provides primitive-keyed
+ * counterparts (<tt>get(long)</tt>, <tt>put(long, V)</tt>,
+ * <tt>remove(long)</tt> and <tt>containsKey(long)</tt>) that never
+ * allocate.  A map of <i>n</i> mappings occupies about
+ * <tt>12</tt><i>n</i>/<i>load factor</i> bytes (with compressed
+ * references) plus its values, where a <tt>HashMap&lt;Long,V&gt;</tt>
+ * needs an entry object and a box per mapping.  This map permits
+ * <tt>null</tt> values, but not <tt>null</tt> keys.
+ *
+ * <p>As in {@link HashMap}, a return value of <tt>null</tt> from
+ * <tt>get</tt> does not <i>necessarily</i> indicate that the map
+ * contains no mapping for the key; it's also possible that the map
+ * explicitly maps the key to <tt>null</tt>.  The {@link
+ * #containsKey(long) containsKey} operation may be used to distinguish
+ * these two cases.
+ *
+ * <p>This is a simple <i>linear-probe</i> hash table, laid out and
+ * behaving as described for {@link IntIntHashMap}: keys are spread by a
+ * multiplicative hash, removal closes up the gap it leaves behind, and
+ * the load factor must be less than one.  Assuming the hash function
+ * disperses the keys properly, the basic operations (<tt>get</tt>,
+ * <tt>put</tt> and <tt>remove</tt>) run in constant time.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * <p>The iterators returned by all of this class's "collection view
+ * methods" are <i>fail-fast</i>, as described for {@link HashMap}.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @see     IntIntHashMap
+ * @see     LongHashSet
+ * @since   1.7
+ */
+
+public class LongHashMap<V>
+    extends AbstractMap<Long,V>
+    implements Map<Long,V>, Cloneable, Serializable
+{
+    private static final long serialVersionUID = -4719347234180640591L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key table, resized as necessary. Length MUST Always be a
+     * power of two.  A zero element marks a free slot; a zero key is
+     * held in hasZeroKey and zeroValue instead.
+     */
+    transient long[] keys;
+
+    /**
+     * The value table, parallel to keys.
+     */
+    transient V[] vals;
+
+    /**
+     * Whether the map contains a mapping for the key zero.
+     */
+    transient boolean hasZeroKey;
+
+    /**
+     * The value mapped to the key zero, if hasZeroKey.
+     */
+    transient V zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The next size value at which to resize.  Never more than
+     * capacity - 1, so that every probe sequence reaches a free slot.
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this map has been structurally modified.
+     * This field is used to make iterators on collection-views of the
+     * map fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs an empty <tt>LongHashMap</tt> with the specified
+     * initial capacity and load factor.  The initial capacity is the
+     * number of mappings the map can hold before its tables are first
+     * resized.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is not between zero and one, exclusive
+     */
+    public LongHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        init(tableSizeFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Constructs an empty <tt>LongHashMap</tt> with the specified
+     * initial capacity and the default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public LongHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty <tt>LongHashMap</tt> with the default
+     * initial capacity (16) and the default load factor (0.75).
+     */
+    public LongHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new <tt>LongHashMap</tt> with the same mappings as
+     * the specified <tt>Map</tt>, with the default load factor (0.75)
+     * and an initial capacity sufficient to hold them.
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null, or
+     *          contains a null key
+     */
+    public LongHashMap(Map<? extends Long, ? extends V> m) {
+        this(m.size(), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /**
+     * Returns the smallest power of two table size that holds the
+     * given number of mappings without resizing.
+     */
+    private static int tableSizeFor(int expected, float loadFactor) {
+        int capacity = 1;
+        while (capacity < MAXIMUM_CAPACITY &&
+               (int) (capacity * loadFactor) <= expected)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Allocates tables of the given power of two length and sets the
+     * resize threshold accordingly.
+     */
+    private void init(int capacity) {
+        keys = new long[capacity];
+        vals = newValueArray(capacity);
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Allocates a value table.  The table never escapes as a V[], so
+     * the unchecked cast is safe.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V[] newValueArray(int capacity) {
+        return (V[]) new Object[capacity];
+    }
+
+    /**
+     * Spreads the bits of a key and reduces it to a table index, as
+     * for IntIntHashMap but with the 64-bit golden-ratio multiplier.
+     */
+    static int hash(long x, int mask) {
+        long h = x * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32));
+        return (i ^ (i >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the table index of the given nonzero key, or -1 if absent.
+     */
+    private int indexOf(long key) {
+        long[] tab = keys;
+        int mask = tab.length - 1;
+        int i = hash(key, mask);
+        long k;
+        while ((k = tab[i]) != 0) {
+            if (k == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or
+     *         {@code null} if this map contains no mapping for the key
+     */
+    public V get(long key) {
+        if (key == 0)
+            return zeroValue;
+        int i = indexOf(key);
+        return (i < 0) ? null : vals[i];
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     */
+    public V get(Object key) {
+        return (key instanceof Long) ? get(((Long)key).longValue()) : null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     *
+     * @param   key   The key whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     */
+    public boolean containsKey(long key) {
+        return (key == 0) ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     */
+    public boolean containsKey(Object key) {
+        return (key instanceof Long) && containsKey(((Long)key).longValue());
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     */
+    public boolean containsValue(Object value) {
+        if (hasZeroKey && eq(value, zeroValue))
+            return true;
+        long[] tab = keys;
+        V[] vs = vals;
+        for (int i = 0; i < tab.length; i++)
+            if (tab[i] != 0 && eq(value, vs[i]))
+                return true;
+        return false;
+    }
+
+    /**
+     * Tests two values for equality, allowing for nulls.
+     */
+    static boolean eq(Object o1, Object o2) {
+        return (o1 == null ? o2 == null : o1.equals(o2));
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     *         (A <tt>null</tt> return can also indicate that the map
+     *         previously associated <tt>null</tt> with <tt>key</tt>.)
+     * @throws IllegalStateException if the map is at maximum capacity
+     */
+    public V put(long key, V value) {
+        if (key == 0) {
+            V oldValue = zeroValue;
+            zeroValue = value;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                modCount++;
+                size++;
+            }
+            return oldValue;
+        }
+        long[] tab = keys;
+        int mask = tab.length - 1;
+        int i = hash(key, mask);
+        long k;
+        while ((k = tab[i]) != 0) {
+            if (k == key) {
+                V oldValue = vals[i];
+                vals[i] = value;
+                return oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= threshold) {
+            resize();
+            return put(key, value);
+        }
+        modCount++;
+        size++;
+        tab[i] = key;
+        vals[i] = value;
+        return null;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @throws NullPointerException if the key is null
+     * @throws IllegalStateException if the map is at maximum capacity
+     */
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    /**
+     * Doubles the capacity of the tables and rehashes their contents.
+     * At maximum capacity the threshold is raised to capacity - 1,
+     * leaving one slot free; past that point no more keys fit.
+     */
+    private void resize() {
+        long[] oldKeys = keys;
+        V[] oldVals = vals;
+        int oldCapacity = oldKeys.length;
+        if (oldCapacity == MAXIMUM_CAPACITY) {
+            if (threshold == MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("Capacity exhausted.");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        init(oldCapacity << 1);
+        long[] tab = keys;
+        V[] vs = vals;
+        int mask = tab.length - 1;
+        for (int j = 0; j < oldCapacity; j++) {
+            long k = oldKeys[j];
+            if (k != 0) {
+                int i = hash(k, mask);
+                while (tab[i] != 0)
+                    i = (i + 1) & mask;
+                tab[i] = k;
+                vs[i] = oldVals[j];
+            }
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null, or
+     *         contains a null key
+     */
+    public void putAll(Map<? extends Long, ? extends V> m) {
+        if (m instanceof LongHashMap) {
+            // A LongHashMap viewed as a Map<?, ? extends V> holds Vs
+            @SuppressWarnings("unchecked")
+            LongHashMap<? extends V> other = (LongHashMap<? extends V>)m;
+            if (other.hasZeroKey)
+                put(0L, other.zeroValue);
+            long[] tab = other.keys;
+            V[] vs = other.vals;
+            for (int i = 0; i < tab.length; i++)
+                if (tab[i] != 0)
+                    put(tab[i], vs[i]);
+        } else {
+            for (Map.Entry<? extends Long, ? extends V> e : m.entrySet())
+                put(e.getKey().longValue(), e.getValue());
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param  key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     *         (A <tt>null</tt> return can also indicate that the map
+     *         previously associated <tt>null</tt> with <tt>key</tt>.)
+     */
+    public V remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey)
+                return null;
+            V oldValue = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            modCount++;
+            size--;
+            return oldValue;
+        }
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V oldValue = vals[i];
+        modCount++;
+        size--;
+        closeDeletion(i);
+        return oldValue;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     */
+    public V remove(Object key) {
+        return (key instanceof Long) ?
+            remove(((Long)key).longValue()) : null;
+    }
+
+    /**
+     * Vacates slot d and rehashes any possibly-colliding entries
+     * following it, as in IntIntHashMap.
+     *
+     * @param d the index of a newly empty deleted slot
+     */
+    private void closeDeletion(int d) {
+        long[] tab = keys;
+        V[] vs = vals;
+        int mask = tab.length - 1;
+        tab[d] = 0;
+        vs[d] = null;
+        long k;
+        for (int i = (d + 1) & mask; (k = tab[i]) != 0; i = (i + 1) & mask) {
+            int r = hash(k, mask);
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                tab[d] = k;
+                vs[d] = vs[i];
+                tab[i] = 0;
+                vs[i] = null;
+                d = i;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     * The map will be empty after this call returns.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(keys, 0L);
+        Arrays.fill(vals, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>LongHashMap</tt> instance: the
+     * values themselves are not cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    public Object clone() {
+        LongHashMap<V> result = null;
+        try {
+            @SuppressWarnings("unchecked")
+            LongHashMap<V> copy = (LongHashMap<V>)super.clone();
+            result = copy;
+        } catch (CloneNotSupportedException e) {
+            // assert false;
+        }
+        result.keys = keys.clone();
+        result.vals = vals.clone();
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Compares the specified object with this map for equality, as
+     * specified by {@link Map#equals}.  Comparison with another
+     * <tt>LongHashMap</tt> proceeds without boxing keys.
+     *
+     * @param o object to be compared for equality with this map
+     * @return <tt>true</tt> if the specified object is equal to this map
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof LongHashMap))
+            return super.equals(o);
+        LongHashMap<?> m = (LongHashMap<?>)o;
+        if (m.size != size)
+            return false;
+        if (hasZeroKey && !(m.hasZeroKey && eq(zeroValue, m.zeroValue)))
+            return false;
+        long[] tab = keys;
+        V[] vs = vals;
+        for (int i = 0; i < tab.length; i++) {
+            long k = tab[i];
+            if (k != 0) {
+                int j = m.indexOf(k);
+                if (j < 0 || !eq(vs[i], m.vals[j]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this map, as specified by
+     * {@link Map#hashCode}.
+     *
+     * @return the hash code value for this map
+     */
+    public int hashCode() {
+        int h = 0;
+        if (hasZeroKey && zeroValue != null)
+            h = zeroValue.hashCode();
+        long[] tab = keys;
+        V[] vs = vals;
+        for (int i = 0; i < tab.length; i++) {
+            long k = tab[i];
+            if (k != 0) {
+                Object v = vs[i];
+                h += (int)(k ^ (k >>> 32)) ^ (v == null ? 0 : v.hashCode());
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Iterator over the table, as for IntIntHashMap.  The zero key,
+     * when present, is returned first as if it occupied a slot before
+     * the start of the table.
+     */
+    private abstract class HashIterator<E> implements Iterator<E> {
+        int index = (size != 0 ? 0 : keys.length); // current slot.
+        int expectedModCount = modCount; // to support fast-fail
+        int lastReturnedIndex = -1;      // to allow remove()
+        boolean indexValid; // To avoid unnecessary next computation
+        boolean zeroPending = hasZeroKey;
+        boolean lastReturnedZero;
+        long[] traversalKeys = keys; // reference to main table or copy
+        V[] traversalVals = vals;
+
+        public boolean hasNext() {
+            if (zeroPending)
+                return true;
+            long[] tab = traversalKeys;
+            for (int i = index; i < tab.length; i++) {
+                if (tab[i] != 0) {
+                    index = i;
+                    return indexValid = true;
+                }
+            }
+            index = tab.length;
+            return false;
+        }
+
+        /**
+         * Advances to the next entry, returning its slot index, or -1
+         * for the zero key.
+         */
+        protected int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (zeroPending) {
+                zeroPending = false;
+                lastReturnedZero = true;
+                return -1;
+            }
+            if (!indexValid && !hasNext())
+                throw new NoSuchElementException();
+
+            indexValid = false;
+            lastReturnedZero = false;
+            lastReturnedIndex = index;
+            index++;
+            return lastReturnedIndex;
+        }
+
+        public void remove() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (lastReturnedZero) {
+                lastReturnedZero = false;
+                LongHashMap.this.remove(0L);
+                expectedModCount = modCount;
+                return;
+            }
+            if (lastReturnedIndex == -1)
+                throw new IllegalStateException();
+
+            expectedModCount = ++modCount;
+            int deletedSlot = lastReturnedIndex;
+            lastReturnedIndex = -1;
+            // back up index to revisit new contents after deletion
+            index = deletedSlot;
+            indexValid = false;
+
+            // Removal code proceeds as in IntIntHashMap, copying the
+            // rest of the table for traversal when an element already
+            // seen would otherwise be swapped into an unseen slot.
+
+            long[] tab = traversalKeys;
+            V[] vs = traversalVals;
+            int d = deletedSlot;
+            long key = tab[d];
+            tab[d] = 0;        // vacate the slot
+            vs[d] = null;
+
+            // If traversing a copy, remove in real table.
+            // We can skip gap-closure on copy.
+            if (tab != LongHashMap.this.keys) {
+                LongHashMap.this.remove(key);
+                expectedModCount = modCount;
+                return;
+            }
+
+            size--;
+
+            int mask = tab.length - 1;
+            long k;
+            for (int i = (d + 1) & mask; (k = tab[i]) != 0;
+                 i = (i + 1) & mask) {
+                int r = hash(k, mask);
+                // See closeDeletion for explanation of this conditional
+                if ((i < r && (r <= d || d <= i)) ||
+                    (r <= d && d <= i)) {
+
+                    // If we are about to swap an already-seen element
+                    // into a slot that may later be returned by next(),
+                    // then clone the rest of table for use in future
+                    // next() calls.
+
+                    if (i < deletedSlot && d >= deletedSlot &&
+                        traversalKeys == LongHashMap.this.keys) {
+                        int remaining = tab.length - deletedSlot;
+                        long[] newKeys = new long[remaining];
+                        V[] newVals = newValueArray(remaining);
+                        System.arraycopy(tab, deletedSlot,
+                                         newKeys, 0, remaining);
+                        System.arraycopy(vs, deletedSlot,
+                                         newVals, 0, remaining);
+                        traversalKeys = newKeys;
+                        traversalVals = newVals;
+                        index = 0;
+                    }
+
+                    tab[d] = k;
+                    vs[d] = vs[i];
+                    tab[i] = 0;
+                    vs[i] = null;
+                    d = i;
+                }
+            }
+        }
+
+        /** Returns the key at the given index from nextIndex. */
+        final long keyAt(int i) {
+            return (i < 0) ? 0L : traversalKeys[i];
+        }
+
+        /** Returns the value at the given index from nextIndex. */
+        final V valueAt(int i) {
+            return (i < 0) ? zeroValue : traversalVals[i];
+        }
+    }
+
+    /**
+     * An iterator over the keys of this map that also returns them
+     * unboxed.
+     */
+    private class KeyIterator extends HashIterator<Long> {
+        public Long next() {
+            return Long.valueOf(nextLong());
+        }
+
+        long nextLong() {
+            return keyAt(nextIndex());
+        }
+    }
+
+    private class ValueIterator extends HashIterator<V> {
+        public V next() {
+            return valueAt(nextIndex());
+        }
+    }
+
+    private class EntryIterator extends HashIterator<Map.Entry<Long,V>> {
+        public Map.Entry<Long,V> next() {
+            int i = nextIndex();
+            return new Entry(keyAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * A snapshot of a mapping returned by the entry set iterator.
+     * Setting its value writes through to the map.
+     */
+    private class Entry implements Map.Entry<Long,V> {
+        final long key;
+        V value;
+
+        Entry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Long getKey() {
+            return Long.valueOf(key);
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V newValue) {
+            V oldValue = value;
+            value = newValue;
+            put(key, newValue);
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            Object k = e.getKey();
+            return (k instanceof Long) && ((Long)k).longValue() == key &&
+                eq(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return (int)(key ^ (key >>> 32)) ^
+                (value == null ? 0 : value.hashCode());
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    // Views
+
+    private transient Set<Map.Entry<Long,V>> entrySet = null;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, but not the <tt>add</tt> or <tt>addAll</tt> operations.
+     */
+    public Set<Long> keySet() {
+        Set<Long> ks = keySet;
+        return (ks != null ? ks : (keySet = new KeySet()));
+    }
+
+    private final class KeySet extends AbstractSet<Long> {
+        public Iterator<Long> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+        public boolean remove(Object o) {
+            if (!containsKey(o))
+                return false;
+            LongHashMap.this.remove(((Long)o).longValue());
+            return true;
+        }
+        public void clear() {
+            LongHashMap.this.clear();
+        }
+        public int hashCode() {
+            int h = 0;
+            for (KeyIterator it = new KeyIterator(); it.hasNext(); ) {
+                long k = it.nextLong();
+                h += (int)(k ^ (k >>> 32));
+            }
+            return h;
+        }
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this
+     * map.  The collection is backed by the map, so changes to the map
+     * are reflected in the collection, and vice-versa.  The collection
+     * supports element removal, but not the <tt>add</tt> or
+     * <tt>addAll</tt> operations.
+     */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null ? vs : (values = new Values()));
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+        public int size() {
+            return size;
+        }
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        public void clear() {
+            LongHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The entries returned by
+     * its iterator are snapshots whose <tt>setValue</tt> operation
+     * writes through to the map.  The set supports element removal,
+     * but not the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    public Set<Map.Entry<Long,V>> entrySet() {
+        Set<Map.Entry<Long,V>> es = entrySet;
+        return (es != null ? es : (entrySet = new EntrySet()));
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Long,V>> {
+        public Iterator<Map.Entry<Long,V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            Object k = e.getKey();
+            if (!(k instanceof Long))
+                return false;
+            long key = ((Long)k).longValue();
+            return containsKey(key) && eq(get(key), e.getValue());
+        }
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            LongHashMap.this.remove(
+                ((Long)((Map.Entry)o).getKey()).longValue());
+            return true;
+        }
+        public int size() {
+            return size;
+        }
+        public void clear() {
+            LongHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Save the state of the <tt>LongHashMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>capacity</i> of the LongHashMap (the length
+     *             of its tables) is emitted (int), followed by the
+     *             <i>size</i> (an int, the number of key-value
+     *             mappings), followed by the key (long) and value
+     *             (Object) for each key-value mapping.  The key-value
+     *             mappings are emitted in no particular order.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(keys.length);
+        s.writeInt(size);
+        if (hasZeroKey) {
+            s.writeLong(0L);
+            s.writeObject(zeroValue);
+        }
+        long[] tab = keys;
+        V[] vs = vals;
+        for (int i = 0; i < tab.length; i++) {
+            if (tab[i] != 0) {
+                s.writeLong(tab[i]);
+                s.writeObject(vs[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the <tt>LongHashMap</tt> instance from a stream
+     * (i.e., deserialize it).
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        int capacity = s.readInt();
+        int n = s.readInt();
+        int minCapacity = tableSizeFor(n, loadFactor);
+        if (capacity < minCapacity || capacity > MAXIMUM_CAPACITY ||
+            (capacity & (capacity - 1)) != 0)
+            capacity = minCapacity;
+        init(capacity);
+        for (int i = 0; i < n; i++) {
+            long key = s.readLong();
+            @SuppressWarnings("unchecked")
+            V value = (V)s.readObject();
+            put(key, value);
+        }
+    }
+}
@@ -59,8 +59,30 @@ class Random implements java.io.Serializable {
      * the seed of the random number generator to a value very likely
      * to be distinct from any other invocation of this constructor.
      */
-    public Random() { this(++seedUniquifier + System.nanoTime()); }
-    private static volatile long seedUniquifier = 8682522807148012L;
+    public Random() {
+        this(seedUniquifier() ^ System.nanoTime());
+    }
+
+    /**
+     * Advances the shared uniquifier by one multiplicative LCG step.
+     * A CAS loop rather than a racy increment of a volatile, so that
+     * threads constructing generators concurrently (for example, each
+     * initializing its own ThreadLocalRandom) never receive the same
+     * value.  The multiplier is from L'Ecuyer, "Tables of Linear
+     * Congruential Generators of Different Sizes and Good Lattice
+     * Structure", 1999.
+     */
+    private static long seedUniquifier() {
+        for (;;) {
+            long current = seedUniquifier.get();
+            long next = current * 181783497276652981L;
+            if (seedUniquifier.compareAndSet(current, next))
+                return next;
+        }
+    }
+
+    private static final AtomicLong seedUniquifier
+        = new AtomicLong(8682522807148012L);
 
     /**
      * Creates a new random number generator using a single {@code long} seed.
@@ -46,6 +46,11 @@ import java.util.Date;
  * scheduled tasks (thousands should present no problem).  Internally,
  * it uses a binary heap to represent its task queue, so the cost to schedule
  * a task is O(log n), where n is the number of concurrently scheduled tasks.
+ * Applications maintaining very large numbers of short-lived timeouts,
+ * most of which are cancelled before they expire, may prefer
+ * {@link java.util.concurrent.TimingWheelScheduledExecutor}, which
+ * schedules and cancels tasks in constant time at the price of a
+ * coarser timing resolution.
  *
  * <p>Implementation note: All constructors start a timer thread.
  *
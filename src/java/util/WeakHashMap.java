@@ -28,7 +28,10 @@ import java.lang.ref.ReferenceQueue;
  * <p> Like most collection classes, this class is not synchronized.
  * A synchronized <tt>WeakHashMap</tt> may be constructed using the
  * {@link Collections#synchronizedMap Collections.synchronizedMap}
- * method.
+ * method.  A map with weak keys that is shared by many threads may
+ * instead be a {@link java.util.concurrent.ConcurrentWeakHashMap}, or, for
+ * keys compared by identity, a
+ * {@link java.util.concurrent.ConcurrentWeakIdentityHashMap}.
  *
  * <p> This class is intended primarily for use with key objects whose
  * <tt>equals</tt> methods test for object identity using the
@@ -0,0 +1,1702 @@
+/*
+ * @(#)ConcurrentLinkedHashMap.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+/**
+ * A bounded hash table supporting full concurrency of retrievals and
+ * high expected concurrency for updates, that evicts entries when it
+ * grows beyond its capacity.  Like a {@link java.util.LinkedHashMap}
+ * in access order whose {@link java.util.LinkedHashMap#removeEldestEntry
+ * removeEldestEntry} method bounds its size, this map is suitable for
+ * building caches; unlike a synchronized <tt>LinkedHashMap</tt>,
+ * retrievals do not serialize on a lock to reorder entries.
+ *
+ * <p>Entries are held in a {@link ConcurrentHashMap}, so retrievals
+ * and updates run with that class's concurrency.  The bookkeeping
+ * that decides which entries to evict is guarded by a single lock,
+ * but threads do not wait for it: each retrieval records the entry
+ * it found in a small buffer, striped by thread, and each update
+ * records a task in a queue.  These buffers are applied in batches by
+ * whichever thread next acquires the lock without blocking.  Because
+ * the read buffers are lossy, the recency and frequency information
+ * used to choose victims is an approximation, and the map may
+ * transiently exceed its capacity until pending updates are applied.
+ *
+ * <p>The capacity bounds the sum of the <em>weights</em> of the
+ * entries.  By default each entry has weight one, so the capacity is
+ * the maximum number of entries; a {@link Weigher} may instead assign
+ * weights, for example the size in bytes of each value.  Victims are
+ * chosen by one of the {@link EvictionPolicy eviction policies}:
+ * {@link EvictionPolicy#LRU LRU}, which evicts the least recently
+ * used entry, or {@link EvictionPolicy#TINY_LFU TINY_LFU}, which also
+ * considers how frequently entries have been used and is more
+ * resistant to scans and other bursts of one-time accesses.
+ *
+ * <p>Entries may also be configured to expire a fixed duration after
+ * they were last written ({@link #setExpireAfterWrite}) or last read
+ * or written ({@link #setExpireAfterAccess}).  Expired entries are
+ * no longer returned by retrievals, but continue to be counted by
+ * {@link #size} until the map next performs its periodic maintenance
+ * or {@link #purge} is called.
+ *
+ * <p>The numbers of {@linkplain #getHitCount hits},
+ * {@linkplain #getMissCount misses} and {@linkplain #getEvictionCount
+ * evictions} are counted, using {@link LongAdder}s that do not
+ * contend among threads.
+ *
+ * <p>Like {@link ConcurrentHashMap}, this class does <em>not</em>
+ * allow <tt>null</tt> to be used as a key or value, and its
+ * iterators are weakly consistent: they never throw {@link
+ * java.util.ConcurrentModificationException}, and return elements
+ * reflecting the state of the map at some point at or since the
+ * creation of the iterator.  Iteration order is unspecified.
+ *
+ * <p>This class and its views and iterators implement all of the
+ * <em>optional</em> methods of the {@link Map} and {@link Iterator}
+ * interfaces.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @since 1.7
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V>, Serializable {
+    private static final long serialVersionUID = 3598152736547198214L;
+
+    /*
+     * Overview:
+     *
+     * The map is a ConcurrentHashMap from keys to Nodes.  Each Node
+     * holds an immutable WeightedValue, replaced by CAS, whose weight
+     * also encodes the node's life cycle: positive while the node is
+     * alive in the map, negated once it has been removed from the
+     * map ("retired") but not yet from the eviction lists, and zero
+     * once it is "dead" and unlinked.  Writers therefore never need
+     * the eviction lock: a put that finds a live node CASes in a new
+     * WeightedValue, while one that finds a retired or dead node
+     * retries until it can insert a fresh node.
+     *
+     * The eviction policy is kept in intrusive doubly-linked lists of
+     * Nodes that are guarded by evictionLock.  Changes to them are
+     * buffered:
+     *
+     * - Reads record the node found in one of several lossy ring
+     *   buffers, selected by thread id.  Each buffer is drained when
+     *   it reaches READ_BUFFER_THRESHOLD pending entries; if it wraps
+     *   before that, older entries are simply overwritten, which only
+     *   costs some precision of the policy.
+     *
+     * - Writes must not be lost, since they change the weighted size,
+     *   so each enqueues an AddTask, UpdateTask or RemovalTask on
+     *   writeBuffer, a ConcurrentLinkedQueue, and then tries to drain
+     *   all buffers.
+     *
+     * Draining uses only tryLock, so no caller ever blocks on the
+     * eviction lock except clear, purge and setCapacity.  A thread
+     * that fails to acquire the lock leaves drainStatus REQUIRED,
+     * which the lock holder's final CAS from PROCESSING to IDLE then
+     * preserves, so that the next operation drains again.
+     *
+     * Tasks of different threads may be applied out of order: a node
+     * may be removed before its AddTask runs, or updated before.
+     * Tasks therefore carry only the node, and consult its current
+     * WeightedValue and queue when run: AddTask links a node only if
+     * it is still alive and not yet linked, UpdateTask adjusts the
+     * weight of linked nodes only (an unlinked one is later linked
+     * with its current weight), and RemovalTask makes the node dead
+     * whatever its state.  The weight a node contributes to the
+     * weighted sizes is kept separately in policyWeight, so the sums
+     * stay exact whatever the order.
+     *
+     * Eviction policies.  LRU keeps all nodes in a single list,
+     * "probation", moving nodes to its tail when read and evicting
+     * from its head.  TINY_LFU is Window TinyLFU: new nodes enter a
+     * small LRU "window" of about 1% of the capacity; nodes leaving
+     * the window become candidates in the segmented-LRU main space,
+     * whose "probation" segment holds nodes not reused since entering
+     * it and whose "protected" segment, of up to 80% of the main
+     * space, holds nodes read while on probation.  When the map is
+     * over capacity, the candidate competes with the victim at the
+     * head of probation, and the one with the lower estimated
+     * frequency is evicted.  Frequencies are estimated by a
+     * FrequencySketch: a count-min sketch of 4-bit counters that are
+     * halved periodically, so that the history ages.  The window
+     * lets recent bursts of new entries survive long enough to build
+     * up frequency, while the admission filter keeps one-time entries
+     * from flushing the frequently used ones.
+     *
+     * Expiration.  Each node records the time of its last write and,
+     * when expiration after access is enabled, of its last read.
+     * Reads treat expired nodes as absent.  Maintenance removes
+     * expired nodes from the heads of a separate write-order list
+     * and of the access-order lists.  Since the access-order lists
+     * are only approximately ordered, maintenance stops at the first
+     * unexpired node, leaving any others to later passes.
+     */
+
+    /**
+     * The eviction policies supported by {@link ConcurrentLinkedHashMap}.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used entry.
+         */
+        LRU,
+
+        /**
+         * Evicts using the Window TinyLFU policy.  New entries are
+         * admitted to a small window of recently added entries; an
+         * entry leaving the window replaces the least recently used
+         * entry of the main space only if it has been used more
+         * frequently, as estimated from a compact sketch of the
+         * recent access history.  This policy attains higher hit
+         * rates than <tt>LRU</tt> for most workloads, in particular
+         * those mixing frequently used entries with scans.
+         */
+        TINY_LFU
+    }
+
+    /**
+     * A class that determines the weight of an entry, which counts
+     * against the capacity of a {@link ConcurrentLinkedHashMap}.
+     * Weights are computed when an entry is inserted or its value is
+     * replaced, and must be positive.  For the map to be
+     * serializable, its weigher must also be serializable.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    public interface Weigher<K, V> {
+        /**
+         * Returns the weight of an entry.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the weight of the entry; must be at least one
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * The weigher giving each entry a weight of one.
+     */
+    enum SingletonWeigher implements Weigher<Object, Object> {
+        INSTANCE;
+        public int weigh(Object key, Object value) { return 1; }
+    }
+
+    /* ---------------- Constants -------------- */
+
+    /** The number of CPUs, to size the read buffers */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** The number of read buffers; a power of two */
+    static final int NUMBER_OF_READ_BUFFERS = ceilingPowerOfTwo(NCPU);
+
+    static final int READ_BUFFERS_MASK = NUMBER_OF_READ_BUFFERS - 1;
+
+    /** The number of pending reads at which a read buffer is drained */
+    static final int READ_BUFFER_THRESHOLD = 32;
+
+    /** The maximum number of reads drained from a buffer at a time */
+    static final int READ_BUFFER_DRAIN_THRESHOLD = 2 * READ_BUFFER_THRESHOLD;
+
+    /** The size of each read buffer; a power of two */
+    static final int READ_BUFFER_SIZE = 2 * READ_BUFFER_DRAIN_THRESHOLD;
+
+    static final int READ_BUFFER_INDEX_MASK = READ_BUFFER_SIZE - 1;
+
+    /** The largest supported capacity */
+    static final long MAXIMUM_CAPACITY = Long.MAX_VALUE - Integer.MAX_VALUE;
+
+    /** Values of drainStatus */
+    static final int IDLE = 0, REQUIRED = 1, PROCESSING = 2;
+
+    /** Values of Node.queue: the list, if any, a node is linked in */
+    static final int NONE = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3,
+        DEAD = 4;
+
+    /** The percentage of the capacity given to the TinyLFU window */
+    static final int WINDOW_PERCENT = 1;
+
+    /** The percentage of the main space given to the protected segment */
+    static final int PROTECTED_PERCENT = 80;
+
+    static int ceilingPowerOfTwo(int x) {
+        // From Hacker's Delight, Chapter 3, Harry S. Warren Jr.
+        return 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(x - 1));
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /** The backing map from keys to nodes */
+    final ConcurrentHashMap<K, Node<K, V>> data;
+
+    final Weigher<? super K, ? super V> weigher;
+
+    final EvictionPolicy policy;
+
+    /** Guards the eviction lists and the fields marked below */
+    final ReentrantLock evictionLock;
+
+    /** Sentinels of the access-order lists; guarded by evictionLock */
+    final Node<K, V> window, probation, protectedSegment;
+
+    /** Sentinel of the write-order list; guarded by evictionLock */
+    final Node<K, V> writeOrder;
+
+    /** The frequency sketch of TINY_LFU; guarded by evictionLock */
+    final FrequencySketch sketch;
+
+    /** The maximum weighted size; written under evictionLock */
+    volatile long capacity;
+
+    /** The sum of policyWeights of linked nodes; written under evictionLock */
+    volatile long weightedSize;
+
+    /** Guarded by evictionLock */
+    long windowWeightedSize, protectedWeightedSize;
+    long windowMaximum, protectedMaximum;
+    int linkedCount;
+
+    final ConcurrentLinkedQueue<Runnable> writeBuffer;
+    final ReadBuffer<K, V>[] readBuffers;
+    final AtomicInteger drainStatus;
+
+    /** Expiration durations in nanoseconds, or zero if disabled */
+    volatile long expireAfterWriteNanos, expireAfterAccessNanos;
+
+    final LongAdder hitCount, missCount, evictionCount;
+
+    transient Set<K> keySet;
+    transient Collection<V> values;
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------- Constructors -------------- */
+
+    /**
+     * Creates a new, empty map holding at most the given number of
+     * entries, evicting the least recently used entry when full.
+     *
+     * @param maximumCapacity the maximum number of entries
+     * @throws IllegalArgumentException if <tt>maximumCapacity</tt>
+     *         is negative
+     */
+    public ConcurrentLinkedHashMap(long maximumCapacity) {
+        this(maximumCapacity, SingletonWeigher.INSTANCE, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Creates a new, empty map holding at most the given number of
+     * entries, evicting entries according to the given policy.
+     *
+     * @param maximumCapacity the maximum number of entries
+     * @param policy the eviction policy
+     * @throws IllegalArgumentException if <tt>maximumCapacity</tt>
+     *         is negative
+     * @throws NullPointerException if <tt>policy</tt> is null
+     */
+    public ConcurrentLinkedHashMap(long maximumCapacity,
+                                   EvictionPolicy policy) {
+        this(maximumCapacity, SingletonWeigher.INSTANCE, policy);
+    }
+
+    /**
+     * Creates a new, empty map whose entries, as weighed by the given
+     * weigher, weigh at most the given maximum weight in total,
+     * evicting entries according to the given policy.
+     *
+     * @param maximumWeight the maximum total weight of the entries
+     * @param weigher the weigher of the entries
+     * @param policy the eviction policy
+     * @throws IllegalArgumentException if <tt>maximumWeight</tt>
+     *         is negative
+     * @throws NullPointerException if <tt>weigher</tt> or
+     *         <tt>policy</tt> is null
+     */
+    public ConcurrentLinkedHashMap(long maximumWeight,
+                                   Weigher<? super K, ? super V> weigher,
+                                   EvictionPolicy policy) {
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException();
+        if (weigher == null || policy == null)
+            throw new NullPointerException();
+        this.weigher = weigher;
+        this.policy = policy;
+        data = new ConcurrentHashMap<K, Node<K, V>>();
+        evictionLock = new ReentrantLock();
+        window = new Node<K, V>();
+        probation = new Node<K, V>();
+        protectedSegment = new Node<K, V>();
+        writeOrder = new Node<K, V>();
+        sketch = (policy == EvictionPolicy.TINY_LFU) ?
+            new FrequencySketch() : null;
+        setMaximums(Math.min(maximumWeight, MAXIMUM_CAPACITY));
+        writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+        @SuppressWarnings("unchecked")
+        ReadBuffer<K, V>[] buffers = (ReadBuffer<K, V>[])
+            new ReadBuffer<?, ?>[NUMBER_OF_READ_BUFFERS];
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; ++i)
+            buffers[i] = new ReadBuffer<K, V>();
+        readBuffers = buffers;
+        drainStatus = new AtomicInteger(IDLE);
+        hitCount = new LongAdder();
+        missCount = new LongAdder();
+        evictionCount = new LongAdder();
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * A value and its weight.  The weight is positive while the node
+     * holding it is alive, negative once it is retired, and zero
+     * once it is dead.
+     */
+    static final class WeightedValue<V> {
+        final V value;
+        final int weight;
+
+        WeightedValue(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+        boolean contains(Object o) {
+            return (o == value) || value.equals(o);
+        }
+
+        boolean isAlive() {
+            return weight > 0;
+        }
+    }
+
+    /**
+     * An entry of the map, linked in at most one access-order list
+     * and in the write-order list.  Sentinels of the lists are
+     * Nodes with null keys.
+     */
+    static final class Node<K, V> {
+        final K key;
+        volatile WeightedValue<V> weightedValue;
+        volatile long writeTime;
+        volatile long accessTime;
+
+        // Guarded by evictionLock
+        Node<K, V> prev, next;
+        Node<K, V> writePrev, writeNext;
+        int queue;
+        int policyWeight;
+
+        Node(K key, WeightedValue<V> weightedValue, long now) {
+            this.key = key;
+            this.weightedValue = weightedValue;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+
+        /** Creates a list sentinel. */
+        Node() {
+            this.key = null;
+            prev = next = writePrev = writeNext = this;
+        }
+
+        V getValue() {
+            return weightedValue.value;
+        }
+
+        boolean casWeightedValue(WeightedValue<V> cmp, WeightedValue<V> val) {
+            return UNSAFE.compareAndSwapObject(this, weightedValueOffset,
+                                               cmp, val);
+        }
+
+        // Unsafe mechanics
+
+        private static final sun.misc.Unsafe UNSAFE =
+            sun.misc.Unsafe.getUnsafe();
+        private static final long weightedValueOffset =
+            objectFieldOffset(UNSAFE, "weightedValue", Node.class);
+    }
+
+    /**
+     * A lossy ring buffer of recently read nodes.  Readers race to
+     * claim slots, and may overwrite each other's entries.
+     */
+    static final class ReadBuffer<K, V> {
+        final AtomicLong writeCount = new AtomicLong();
+        final AtomicLong drainAtWriteCount = new AtomicLong();
+        final AtomicReferenceArray<Node<K, V>> slots =
+            new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+        long readCount; // guarded by evictionLock
+    }
+
+    /* ---------------- Access-order and write-order lists -------------- */
+
+    static <K, V> Node<K, V> first(Node<K, V> sentinel) {
+        Node<K, V> f = sentinel.next;
+        return (f == sentinel) ? null : f;
+    }
+
+    static <K, V> void linkLast(Node<K, V> sentinel, Node<K, V> node) {
+        Node<K, V> last = sentinel.prev;
+        node.prev = last;
+        node.next = sentinel;
+        last.next = node;
+        sentinel.prev = node;
+    }
+
+    static <K, V> void unlink(Node<K, V> node) {
+        Node<K, V> p = node.prev, n = node.next;
+        p.next = n;
+        n.prev = p;
+        node.prev = node.next = null;
+    }
+
+    static <K, V> void moveToLast(Node<K, V> sentinel, Node<K, V> node) {
+        if (sentinel.prev != node) {
+            unlink(node);
+            linkLast(sentinel, node);
+        }
+    }
+
+    void linkLastWrite(Node<K, V> node) {
+        Node<K, V> last = writeOrder.writePrev;
+        node.writePrev = last;
+        node.writeNext = writeOrder;
+        last.writeNext = node;
+        writeOrder.writePrev = node;
+    }
+
+    static <K, V> void unlinkWrite(Node<K, V> node) {
+        Node<K, V> p = node.writePrev, n = node.writeNext;
+        if (p != null) {
+            p.writeNext = n;
+            n.writePrev = p;
+            node.writePrev = node.writeNext = null;
+        }
+    }
+
+    /* ---------------- Frequency sketch -------------- */
+
+    /**
+     * A count-min sketch estimating the popularity of keys within a
+     * time window, for the TINY_LFU policy.  Each key selects one of
+     * the four 4-bit counters in each of four longs of the table,
+     * and its frequency is the minimum of those counters.  When the
+     * number of increments reaches ten times the table length, all
+     * counters are halved so that older accesses count for less.
+     * The table grows with the number of entries in the map, up to
+     * the next power of two; all methods are called under
+     * evictionLock.
+     */
+    static final class FrequencySketch {
+        static final long[] SEED = { // a mixture of seeds from FNV-1a, CityHash, and Murmur3
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        static final long RESET_MASK = 0x7777777777777777L;
+        static final long ONE_MASK = 0x1111111111111111L;
+        static final int MAXIMUM_LENGTH = 1 << 30;
+
+        long[] table;
+        int tableMask;
+        int sampleSize;
+        int size;
+
+        FrequencySketch() {
+            ensureCapacity(16);
+        }
+
+        /**
+         * Grows the table, discarding the counts, if it is shorter
+         * than the given number of entries.
+         */
+        void ensureCapacity(int entries) {
+            int length = ceilingPowerOfTwo(
+                Math.max(16, Math.min(entries, MAXIMUM_LENGTH)));
+            if (table == null || table.length < length) {
+                table = new long[length];
+                tableMask = length - 1;
+                sampleSize = 10 * Math.min(length, Integer.MAX_VALUE / 10);
+                size = 0;
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int)
+                    ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++)
+                added |= incrementAt(indexOf(hash, i), start + i);
+            if (added && ++size >= sampleSize)
+                reset();
+        }
+
+        /** Increments counter j of table[i] unless it is saturated. */
+        boolean incrementAt(int i, int j) {
+            int offset = j << 2;
+            long mask = 0xfL << offset;
+            if ((table[i] & mask) != mask) {
+                table[i] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        /** Halves all counters, and the size accordingly. */
+        void reset() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (odd >>> 2);
+        }
+
+        int indexOf(int hash, int i) {
+            long h = (hash + SEED[i]) * SEED[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+
+    /* ---------------- Eviction policy -------------- */
+
+    /**
+     * Sets the capacity and the derived maximums of the TINY_LFU
+     * segments.  Called in the constructor or under evictionLock.
+     */
+    void setMaximums(long maximumWeight) {
+        capacity = maximumWeight;
+        long w = maximumWeight / 100 * WINDOW_PERCENT;
+        windowMaximum = (w == 0L && maximumWeight != 0L) ? 1L : w;
+        long main = maximumWeight - windowMaximum;
+        protectedMaximum = main / 100 * PROTECTED_PERCENT;
+    }
+
+    /**
+     * Records the read of a node in the eviction policy.  Called
+     * under evictionLock.
+     */
+    void applyRead(Node<K, V> node) {
+        int q = node.queue;
+        if (q == NONE || q == DEAD)
+            return;
+        if (policy == EvictionPolicy.LRU) {
+            moveToLast(probation, node);
+            return;
+        }
+        sketch.increment(node.key);
+        if (q == WINDOW)
+            moveToLast(window, node);
+        else if (q == PROTECTED)
+            moveToLast(protectedSegment, node);
+        else {
+            unlink(node);
+            linkLast(protectedSegment, node);
+            node.queue = PROTECTED;
+            protectedWeightedSize += node.policyWeight;
+            demoteFromProtected();
+        }
+    }
+
+    /**
+     * Moves the least recently used protected nodes to probation
+     * while the protected segment is over its maximum.
+     */
+    void demoteFromProtected() {
+        while (protectedWeightedSize > protectedMaximum) {
+            Node<K, V> d = first(protectedSegment);
+            if (d == null)
+                break;
+            unlink(d);
+            protectedWeightedSize -= d.policyWeight;
+            linkLast(probation, d);
+            d.queue = PROBATION;
+        }
+    }
+
+    /**
+     * Links a newly added node into the eviction policy.  Called
+     * under evictionLock.
+     */
+    void link(Node<K, V> node, int weight) {
+        node.policyWeight = weight;
+        weightedSize += weight;
+        ++linkedCount;
+        linkLastWrite(node);
+        if (policy == EvictionPolicy.LRU) {
+            linkLast(probation, node);
+            node.queue = PROBATION;
+        } else {
+            sketch.ensureCapacity(linkedCount);
+            sketch.increment(node.key);
+            linkLast(window, node);
+            node.queue = WINDOW;
+            windowWeightedSize += weight;
+        }
+    }
+
+    /**
+     * Unlinks a node from the eviction policy and marks it dead.
+     * Called under evictionLock.
+     */
+    void makeDead(Node<K, V> node) {
+        int q = node.queue;
+        if (q != NONE && q != DEAD) {
+            unlink(node);
+            unlinkWrite(node);
+            int w = node.policyWeight;
+            if (q == WINDOW)
+                windowWeightedSize -= w;
+            else if (q == PROTECTED)
+                protectedWeightedSize -= w;
+            weightedSize -= w;
+            --linkedCount;
+            node.policyWeight = 0;
+        }
+        node.queue = DEAD;
+        for (;;) {
+            WeightedValue<V> current = node.weightedValue;
+            if (current.weight == 0 ||
+                node.casWeightedValue(current,
+                                      new WeightedValue<V>(current.value, 0)))
+                break;
+        }
+    }
+
+    /**
+     * Removes a node from the map, if still present, on behalf of
+     * the eviction policy, and marks it dead.
+     */
+    void evictEntry(Node<K, V> node) {
+        if (data.remove(node.key, node))
+            evictionCount.increment();
+        makeDead(node);
+    }
+
+    /**
+     * Evicts entries while the map is over capacity.  Called under
+     * evictionLock.
+     */
+    void evict() {
+        if (policy == EvictionPolicy.LRU) {
+            while (weightedSize > capacity) {
+                Node<K, V> victim = first(probation);
+                if (victim == null)
+                    break;
+                evictEntry(victim);
+            }
+            return;
+        }
+
+        // Move the overflow of the window to probation, remembering
+        // the first such node as the candidate for admission.
+        Node<K, V> candidate = null;
+        while (windowWeightedSize > windowMaximum) {
+            Node<K, V> n = first(window);
+            if (n == null)
+                break;
+            unlink(n);
+            windowWeightedSize -= n.policyWeight;
+            linkLast(probation, n);
+            n.queue = PROBATION;
+            if (candidate == null)
+                candidate = n;
+        }
+
+        while (weightedSize > capacity) {
+            Node<K, V> victim = first(probation);
+            if (victim == null && (victim = first(protectedSegment)) == null &&
+                (victim = first(window)) == null)
+                break;
+            if (candidate == null || candidate == victim ||
+                candidate.queue != PROBATION) {
+                if (victim == candidate)
+                    candidate = null;
+                evictEntry(victim);
+            } else if (admit(candidate, victim)) {
+                evictEntry(victim);
+            } else {
+                Node<K, V> next = candidate.next;
+                evictEntry(candidate);
+                candidate = (next == probation) ? null : next;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the candidate should replace the victim.  A
+     * candidate of moderate frequency that loses is still admitted
+     * occasionally, so that an attacker cannot pin a victim by
+     * flooding the sketch with colliding keys.
+     */
+    boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        int c = sketch.frequency(candidate.key);
+        int v = sketch.frequency(victim.key);
+        if (c > v)
+            return true;
+        if (c <= 5)
+            return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    /**
+     * Removes expired entries from the heads of the write-order and
+     * access-order lists.  Called under evictionLock.
+     */
+    void expireEntries() {
+        long ew = expireAfterWriteNanos, ea = expireAfterAccessNanos;
+        if ((ew | ea) == 0L)
+            return;
+        long now = System.nanoTime();
+        Node<K, V> n;
+        if (ew != 0L) {
+            while ((n = writeOrder.writeNext) != writeOrder &&
+                   now - n.writeTime >= ew)
+                evictEntry(n);
+        }
+        if (ea != 0L) {
+            while ((n = first(window)) != null && now - n.accessTime >= ea)
+                evictEntry(n);
+            while ((n = first(probation)) != null && now - n.accessTime >= ea)
+                evictEntry(n);
+            while ((n = first(protectedSegment)) != null &&
+                   now - n.accessTime >= ea)
+                evictEntry(n);
+        }
+    }
+
+    /* ---------------- Buffered maintenance -------------- */
+
+    /** Adds a node to the eviction policy, if it is still alive. */
+    final class AddTask implements Runnable {
+        final Node<K, V> node;
+        AddTask(Node<K, V> node) { this.node = node; }
+        public void run() {
+            WeightedValue<V> wv = node.weightedValue;
+            if (node.queue == NONE && wv.isAlive()) {
+                link(node, wv.weight);
+                evict();
+            }
+        }
+    }
+
+    /** Applies a new value and weight of a linked node. */
+    final class UpdateTask implements Runnable {
+        final Node<K, V> node;
+        UpdateTask(Node<K, V> node) { this.node = node; }
+        public void run() {
+            WeightedValue<V> wv = node.weightedValue;
+            int q = node.queue;
+            if (q == NONE || q == DEAD || !wv.isAlive())
+                return;
+            int delta = wv.weight - node.policyWeight;
+            node.policyWeight = wv.weight;
+            weightedSize += delta;
+            if (q == WINDOW)
+                windowWeightedSize += delta;
+            else if (q == PROTECTED)
+                protectedWeightedSize += delta;
+            unlinkWrite(node);
+            linkLastWrite(node);
+            applyRead(node);
+            evict();
+        }
+    }
+
+    /** Removes a node from the eviction policy. */
+    final class RemovalTask implements Runnable {
+        final Node<K, V> node;
+        RemovalTask(Node<K, V> node) { this.node = node; }
+        public void run() {
+            makeDead(node);
+        }
+    }
+
+    static int readBufferIndex() {
+        return (int) Thread.currentThread().getId() & READ_BUFFERS_MASK;
+    }
+
+    /**
+     * Records a read of the node, and drains the buffers if this
+     * thread's read buffer is due to be drained or a drain is
+     * pending.
+     */
+    void afterRead(Node<K, V> node) {
+        ReadBuffer<K, V> b = readBuffers[readBufferIndex()];
+        AtomicLong counter = b.writeCount;
+        long writeCount = counter.get();
+        counter.lazySet(writeCount + 1);
+        b.slots.lazySet((int) (writeCount & READ_BUFFER_INDEX_MASK), node);
+        long pending = writeCount - b.drainAtWriteCount.get();
+        int status = drainStatus.get();
+        if (status == REQUIRED ||
+            (status == IDLE && pending >= READ_BUFFER_THRESHOLD))
+            tryToDrainBuffers();
+    }
+
+    /**
+     * Enqueues the task, and drains the buffers if the eviction lock
+     * is free.
+     */
+    void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        drainStatus.lazySet(REQUIRED);
+        tryToDrainBuffers();
+    }
+
+    void tryToDrainBuffers() {
+        final ReentrantLock lock = evictionLock;
+        if (lock.tryLock()) {
+            try {
+                drainStatus.lazySet(PROCESSING);
+                drainBuffers();
+            } finally {
+                drainStatus.compareAndSet(PROCESSING, IDLE);
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies all buffered reads and writes, and removes expired
+     * entries.  Called under evictionLock.
+     */
+    void drainBuffers() {
+        int start = readBufferIndex();
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; ++i)
+            drainReadBuffer(readBuffers[(start + i) & READ_BUFFERS_MASK]);
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null)
+            task.run();
+        expireEntries();
+    }
+
+    void drainReadBuffer(ReadBuffer<K, V> b) {
+        long writeCount = b.writeCount.get();
+        AtomicReferenceArray<Node<K, V>> slots = b.slots;
+        for (int i = 0; i < READ_BUFFER_DRAIN_THRESHOLD; ++i) {
+            int index = (int) (b.readCount & READ_BUFFER_INDEX_MASK);
+            Node<K, V> node = slots.get(index);
+            if (node == null)
+                break;
+            slots.lazySet(index, null);
+            applyRead(node);
+            ++b.readCount;
+        }
+        b.drainAtWriteCount.lazySet(writeCount);
+    }
+
+    /* ---------------- Expiration -------------- */
+
+    boolean hasExpired(Node<K, V> node, long now) {
+        long ew = expireAfterWriteNanos, ea = expireAfterAccessNanos;
+        return (ew != 0L && now - node.writeTime >= ew) ||
+            (ea != 0L && now - node.accessTime >= ea);
+    }
+
+    /**
+     * Returns the current time if expiration is enabled, else zero.
+     */
+    long expirationTicker() {
+        return ((expireAfterWriteNanos | expireAfterAccessNanos) == 0L) ?
+            0L : System.nanoTime();
+    }
+
+    /**
+     * Returns the live, unexpired node for the key, or null, counting
+     * neither hits nor misses.
+     */
+    Node<K, V> getNode(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            long now = expirationTicker();
+            if (now != 0L && hasExpired(node, now))
+                return null;
+        }
+        return node;
+    }
+
+    /* ---------------- Capacity, expiration and statistics -------------- */
+
+    /**
+     * Returns the maximum total weight of the entries of this map.
+     *
+     * @return the capacity
+     * @see #setCapacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum total weight of the entries of this map,
+     * evicting entries as needed before returning.
+     *
+     * @param capacity the new capacity
+     * @throws IllegalArgumentException if <tt>capacity</tt> is negative
+     * @see #getCapacity
+     */
+    public void setCapacity(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+        final ReentrantLock lock = evictionLock;
+        lock.lock();
+        try {
+            setMaximums(Math.min(capacity, MAXIMUM_CAPACITY));
+            drainBuffers();
+            demoteFromProtected();
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total weight of the entries of this map, as of
+     * the last time pending updates were applied.
+     *
+     * @return the total weight of the entries
+     */
+    public long weightedSize() {
+        return Math.max(0L, weightedSize);
+    }
+
+    /**
+     * Sets the duration after which entries expire following the
+     * last write of their value.  A duration of zero disables
+     * expiration after write, which is the default.  The new
+     * duration applies to existing entries as well.
+     *
+     * @param duration the duration after which entries expire
+     * @param unit the time unit of the duration argument
+     * @throws IllegalArgumentException if <tt>duration</tt> is negative
+     * @throws NullPointerException if <tt>unit</tt> is null
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        if (duration < 0)
+            throw new IllegalArgumentException();
+        expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Returns the duration after which entries expire following the
+     * last write of their value, or zero if they do not.
+     *
+     * @param unit the desired time unit of the result
+     * @return the duration
+     * @see #setExpireAfterWrite
+     */
+    public long getExpireAfterWrite(TimeUnit unit) {
+        return unit.convert(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets the duration after which entries expire following their
+     * last read or write.  A duration of zero disables expiration
+     * after access, which is the default.  The new duration applies
+     * to existing entries as well; while it is zero, reads do not
+     * record their time, so entries enabled later are timed from
+     * their last write or from the last read while enabled.
+     *
+     * @param duration the duration after which entries expire
+     * @param unit the time unit of the duration argument
+     * @throws IllegalArgumentException if <tt>duration</tt> is negative
+     * @throws NullPointerException if <tt>unit</tt> is null
+     */
+    public void setExpireAfterAccess(long duration, TimeUnit unit) {
+        if (duration < 0)
+            throw new IllegalArgumentException();
+        expireAfterAccessNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Returns the duration after which entries expire following
+     * their last read or write, or zero if they do not.
+     *
+     * @param unit the desired time unit of the result
+     * @return the duration
+     * @see #setExpireAfterAccess
+     */
+    public long getExpireAfterAccess(TimeUnit unit) {
+        return unit.convert(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Applies all pending updates, evicting and removing expired
+     * entries as needed.  Maintenance is otherwise performed as a
+     * side effect of other operations, so this method may be called
+     * to release expired entries of a map that is seldom used.
+     */
+    public void purge() {
+        final ReentrantLock lock = evictionLock;
+        lock.lock();
+        try {
+            drainBuffers();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned <tt>null</tt>
+     * because the key was absent or its entry had expired.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to keep within the
+     * capacity, or removed because they had expired.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts to zero.
+     */
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map, including
+     * any that have expired but not yet been removed.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Tests if the specified object is a key in this map.
+     *
+     * @param  key   possible key
+     * @return <tt>true</tt> if and only if the specified object
+     *         is a key in this map, and its entry has not expired
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  Note: This method requires a full internal
+     * traversal of the map, and so is much slower than method
+     * <tt>containsKey</tt>.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        long now = expirationTicker();
+        for (Node<K, V> node : data.values()) {
+            if (node.weightedValue.contains(value) &&
+                (now == 0L || !hasExpired(node, now)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key
+     * or its entry has expired.  The read is recorded, so that the
+     * entry becomes less likely to be evicted.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        long now = expirationTicker();
+        if (now != 0L) {
+            if (hasExpired(node, now)) {
+                missCount.increment();
+                return null;
+            }
+            if (expireAfterAccessNanos != 0L)
+                node.accessTime = now;
+        }
+        hitCount.increment();
+        afterRead(node);
+        return node.getValue();
+    }
+
+    int weigh(K key, V value) {
+        int weight = weigher.weigh(key, value);
+        if (weight <= 0)
+            throw new IllegalArgumentException("Non-positive weight");
+        return weight;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this map.
+     * If the map is over its capacity as a result, entries are
+     * evicted.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     *         or it had expired
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a
+     *         non-positive weight
+     */
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>An expired entry for the key is treated as absent.
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a
+     *         non-positive weight
+     */
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    final V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int weight = weigh(key, value);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
+        long now = System.nanoTime();
+        Node<K, V> node = new Node<K, V>(key, weightedValue, now);
+        for (;;) {
+            Node<K, V> prior = data.putIfAbsent(key, node);
+            if (prior == null) {
+                afterWrite(new AddTask(node));
+                return null;
+            }
+            boolean expired = hasExpired(prior, now);
+            if (onlyIfAbsent && !expired) {
+                afterRead(prior);
+                return prior.getValue();
+            }
+            WeightedValue<V> old;
+            do {
+                old = prior.weightedValue;
+            } while (old.isAlive() &&
+                     !prior.casWeightedValue(old, weightedValue));
+            if (old.isAlive()) {
+                prior.writeTime = now;
+                prior.accessTime = now;
+                afterWrite(new UpdateTask(prior));
+                return expired ? null : old.value;
+            }
+            // prior has been removed; retry with a fresh node
+        }
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     * This method does nothing if the key is not in the map.
+     *
+     * @param  key the key that needs to be removed
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     *         or it had expired
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null)
+            return null;
+        WeightedValue<V> old = makeRetired(node);
+        afterWrite(new RemovalTask(node));
+        if (!old.isAlive())
+            return null; // already retired by remove(key, value)
+        long now = expirationTicker();
+        return (now != 0L && hasExpired(node, now)) ? null : old.value;
+    }
+
+    /**
+     * Atomically negates the weight of a node that has been removed
+     * from the map, returning the prior weighted value.
+     */
+    static <K, V> WeightedValue<V> makeRetired(Node<K, V> node) {
+        for (;;) {
+            WeightedValue<V> current = node.weightedValue;
+            if (!current.isAlive() ||
+                node.casWeightedValue(current,
+                    new WeightedValue<V>(current.value, -current.weight)))
+                return current;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        Node<K, V> node = getNode(key);
+        if (node == null || value == null)
+            return false;
+        for (;;) {
+            WeightedValue<V> current = node.weightedValue;
+            if (!current.isAlive() || !current.contains(value))
+                return false;
+            WeightedValue<V> retired =
+                new WeightedValue<V>(current.value, -current.weight);
+            if (node.casWeightedValue(current, retired)) {
+                if (data.remove(key, node))
+                    afterWrite(new RemovalTask(node));
+                return true;
+            }
+            // retry, as an intermediate update may have replaced the
+            // value with an equal instance of different identity
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a
+     *         non-positive weight
+     */
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int weight = weigh(key, value);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
+        Node<K, V> node = getNode(key);
+        if (node == null)
+            return null;
+        for (;;) {
+            WeightedValue<V> old = node.weightedValue;
+            if (!old.isAlive())
+                return null;
+            if (node.casWeightedValue(old, weightedValue)) {
+                long now = System.nanoTime();
+                node.writeTime = now;
+                node.accessTime = now;
+                afterWrite(new UpdateTask(node));
+                return old.value;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     * @throws IllegalArgumentException if the weigher returns a
+     *         non-positive weight
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        int weight = weigh(key, newValue);
+        WeightedValue<V> weightedValue =
+            new WeightedValue<V>(newValue, weight);
+        Node<K, V> node = getNode(key);
+        if (node == null)
+            return false;
+        for (;;) {
+            WeightedValue<V> old = node.weightedValue;
+            if (!old.isAlive() || !old.contains(oldValue))
+                return false;
+            if (node.casWeightedValue(old, weightedValue)) {
+                long now = System.nanoTime();
+                node.writeTime = now;
+                node.accessTime = now;
+                afterWrite(new UpdateTask(node));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        final ReentrantLock lock = evictionLock;
+        lock.lock();
+        try {
+            // Apply pending additions first, so that they are cleared
+            drainBuffers();
+            Node<K, V> node;
+            while ((node = first(window)) != null ||
+                   (node = first(probation)) != null ||
+                   (node = first(protectedSegment)) != null) {
+                data.remove(node.key, node);
+                makeDead(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, which removes the corresponding mapping from the map,
+     * but not element addition.  Reading keys through the set does
+     * not count as an access of their entries.
+     *
+     * <p>The view's <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw {@link
+     * java.util.ConcurrentModificationException}.
+     */
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks != null) ? ks : (keySet = new KeySet());
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in
+     * this map.  The collection is backed by the map, so changes to
+     * the map are reflected in the collection, and vice-versa.  The
+     * collection supports element removal, which removes the
+     * corresponding mapping from this map, but not element addition.
+     *
+     * <p>The view's <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw {@link
+     * java.util.ConcurrentModificationException}.
+     */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null) ? vs : (values = new Values());
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this
+     * map.  The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, which removes the corresponding mapping from the map,
+     * but not element addition.  Setting the value of an entry
+     * obtained from the set replaces the value in the map.
+     *
+     * <p>The view's <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw {@link
+     * java.util.ConcurrentModificationException}.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    /**
+     * Iterates over the live, unexpired nodes of the map.
+     */
+    abstract class NodeIterator {
+        final Iterator<Node<K, V>> it = data.values().iterator();
+        final long now = expirationTicker();
+        Node<K, V> nextNode;
+        Node<K, V> lastReturned;
+
+        NodeIterator() {
+            advance();
+        }
+
+        final void advance() {
+            nextNode = null;
+            while (it.hasNext()) {
+                Node<K, V> n = it.next();
+                if (now == 0L || !hasExpired(n, now)) {
+                    nextNode = n;
+                    break;
+                }
+            }
+        }
+
+        public final boolean hasNext() {
+            return nextNode != null;
+        }
+
+        final Node<K, V> nextNode() {
+            Node<K, V> n = nextNode;
+            if (n == null)
+                throw new NoSuchElementException();
+            lastReturned = n;
+            advance();
+            return n;
+        }
+
+        public final void remove() {
+            Node<K, V> n = lastReturned;
+            if (n == null)
+                throw new IllegalStateException();
+            lastReturned = null;
+            ConcurrentLinkedHashMap.this.remove(n.key, n.getValue());
+        }
+    }
+
+    final class KeyIterator extends NodeIterator implements Iterator<K> {
+        public K next() { return nextNode().key; }
+    }
+
+    final class ValueIterator extends NodeIterator implements Iterator<V> {
+        public V next() { return nextNode().getValue(); }
+    }
+
+    final class EntryIterator extends NodeIterator
+        implements Iterator<Map.Entry<K, V>> {
+        public Map.Entry<K, V> next() {
+            Node<K, V> n = nextNode();
+            return new WriteThroughEntry(n.key, n.getValue());
+        }
+    }
+
+    /**
+     * Custom Entry class used by EntryIterator.next(), that relays
+     * setValue changes to the underlying map.
+     */
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = -7482971038846561295L;
+
+        WriteThroughEntry(K k, V v) {
+            super(k, v);
+        }
+
+        /**
+         * Set our entry's value and write through to the map.  The
+         * value to return is somewhat arbitrary here.  Since a
+         * WriteThroughEntry does not necessarily track asynchronous
+         * changes, the most recent "previous" value could be
+         * different from what we return (or could even have been
+         * removed in which case the put will re-establish).  We do
+         * not and cannot guarantee more.
+         */
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            ConcurrentLinkedHashMap.this.put(getKey(), value);
+            return v;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return ConcurrentLinkedHashMap.this.size();
+        }
+        public boolean isEmpty() {
+            return ConcurrentLinkedHashMap.this.isEmpty();
+        }
+        public boolean contains(Object o) {
+            return ConcurrentLinkedHashMap.this.containsKey(o);
+        }
+        public boolean remove(Object o) {
+            return ConcurrentLinkedHashMap.this.remove(o) != null;
+        }
+        public void clear() {
+            ConcurrentLinkedHashMap.this.clear();
+        }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+        public int size() {
+            return ConcurrentLinkedHashMap.this.size();
+        }
+        public boolean isEmpty() {
+            return ConcurrentLinkedHashMap.this.isEmpty();
+        }
+        public boolean contains(Object o) {
+            return ConcurrentLinkedHashMap.this.containsValue(o);
+        }
+        public void clear() {
+            ConcurrentLinkedHashMap.this.clear();
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            if (k == null || v == null)
+                return false;
+            Node<K, V> node = getNode(k);
+            return node != null && node.weightedValue.contains(v);
+        }
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey();
+            return k != null &&
+                ConcurrentLinkedHashMap.this.remove(k, e.getValue());
+        }
+        public int size() {
+            return ConcurrentLinkedHashMap.this.size();
+        }
+        public boolean isEmpty() {
+            return ConcurrentLinkedHashMap.this.isEmpty();
+        }
+        public void clear() {
+            ConcurrentLinkedHashMap.this.clear();
+        }
+    }
+
+    /* ---------------- Serialization Support -------------- */
+
+    /**
+     * Replaces this map by a {@link SerializationProxy} holding its
+     * configuration and a snapshot of its unexpired entries.
+     *
+     * @return the proxy to be serialized in place of this map
+     */
+    Object writeReplace() {
+        return new SerializationProxy<K, V>(this);
+    }
+
+    private void readObject(ObjectInputStream stream)
+        throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * The serialized form of a {@link ConcurrentLinkedHashMap},
+     * consisting of its configuration and its entries.  The recency,
+     * frequency and statistics of the entries are not preserved.
+     */
+    static final class SerializationProxy<K, V> implements Serializable {
+        private static final long serialVersionUID = 6150367283469024891L;
+
+        final long capacity;
+        final Weigher<? super K, ? super V> weigher;
+        final EvictionPolicy policy;
+        final long expireAfterWriteNanos;
+        final long expireAfterAccessNanos;
+        final Map<K, V> data;
+
+        SerializationProxy(ConcurrentLinkedHashMap<K, V> map) {
+            capacity = map.capacity;
+            weigher = map.weigher;
+            policy = map.policy;
+            expireAfterWriteNanos = map.expireAfterWriteNanos;
+            expireAfterAccessNanos = map.expireAfterAccessNanos;
+            data = new HashMap<K, V>(map);
+        }
+
+        Object readResolve() {
+            ConcurrentLinkedHashMap<K, V> map =
+                new ConcurrentLinkedHashMap<K, V>(capacity, weigher, policy);
+            map.expireAfterWriteNanos = expireAfterWriteNanos;
+            map.expireAfterAccessNanos = expireAfterAccessNanos;
+            map.putAll(data);
+            return map;
+        }
+    }
+
+    // Unsafe mechanics
+
+    static long objectFieldOffset(sun.misc.Unsafe UNSAFE,
+                                  String field, Class<?> klazz) {
+        try {
+            return UNSAFE.objectFieldOffset(klazz.getDeclaredField(field));
+        } catch (NoSuchFieldException e) {
+            // Convert Exception to corresponding Error
+            NoSuchFieldError error = new NoSuchFieldError(field);
+            error.initCause(e);
+            throw error;
+        }
+    }
+}
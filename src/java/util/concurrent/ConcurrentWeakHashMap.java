@@ -0,0 +1,626 @@
+/*
+ * @(#)ConcurrentWeakHashMap.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.locks.ReentrantLock;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash table with <em>weak keys</em> supporting full concurrency of
+ * retrievals and high expected concurrency for updates.  Like a
+ * {@link java.util.WeakHashMap}, an entry is automatically removed
+ * when its key is no longer in ordinary use: the presence of a
+ * mapping for a key does not prevent the key from being discarded by
+ * the garbage collector.  Unlike a <tt>WeakHashMap</tt> wrapped by
+ * {@link java.util.Collections#synchronizedMap
+ * Collections.synchronizedMap}, this class does not serialize
+ * operations on a lock.
+ *
+ * <p>Entries are held in a {@link ConcurrentHashMap}, keyed by weak
+ * references to the keys.  Once a key has been discarded, its entry
+ * is no longer returned by retrievals or iterators, but it is only
+ * removed, or <em>expunged</em>, when its reference has been
+ * enqueued by the garbage collector.  Retrievals never expunge
+ * entries.  Updates expunge at most a few entries each, and only
+ * when no other thread is expunging, so that the cost of cleaning up
+ * after the collector is spread thinly and never makes threads wait
+ * for each other.  The methods {@link #size}, {@link #isEmpty} and
+ * {@link #purge} expunge all stale entries before returning.
+ *
+ * <p>Keys are compared using their <tt>equals</tt> method, as in a
+ * <tt>WeakHashMap</tt>.  A key whose equality is not identity, such
+ * as a <tt>String</tt>, may be discarded while an equal key is
+ * still in use, so that the map loses the entry; such keys are
+ * seldom useful in a weak map.  {@link ConcurrentWeakIdentityHashMap}
+ * compares keys by identity instead.
+ *
+ * <p>Like {@link ConcurrentHashMap}, this class does <em>not</em>
+ * allow <tt>null</tt> to be used as a key or value, and its
+ * iterators are weakly consistent: they never throw {@link
+ * java.util.ConcurrentModificationException}, and return elements
+ * reflecting the state of the map at some point at or since the
+ * creation of the iterator.
+ *
+ * <p>This class and its views and iterators implement all of the
+ * <em>optional</em> methods of the {@link Map} and {@link Iterator}
+ * interfaces.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @since 1.7
+ * @author Doug Lea
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentWeakHashMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V> {
+
+    /*
+     * The backing map is keyed by WeakKeys, which cache the hash of
+     * their referent and are equal to any other Key with an equal (or,
+     * for identity maps, the same) non-null referent.  Lookups probe
+     * with a LookupKey, a plain holder of the key that compares in
+     * the same way, so reads allocate no references.  A WeakKey
+     * whose referent has been cleared is equal only to itself, which
+     * is how the expunging of its entry finds it.
+     *
+     * Stale entries are expunged by polling the reference queue.  An
+     * update that polls a reference removes its entry, and then, if
+     * it can acquire expungeLock without waiting, up to
+     * EXPUNGE_BATCH - 1 more, so that updates bear a small bounded
+     * cost and do not contend on the queue.  ReferenceQueue.poll
+     * returns without locking when the queue is empty, which is the
+     * common case.
+     */
+
+    /** The maximum number of entries expunged by an update */
+    static final int EXPUNGE_BATCH = 16;
+
+    /** Keys of the backing map and the probes used to find them. */
+    interface Key {
+        Object get();
+    }
+
+    static final class WeakKey extends WeakReference<Object> implements Key {
+        final int hash;
+        final boolean identity;
+
+        WeakKey(Object key, int hash, boolean identity,
+                ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.identity = identity;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o == this ||
+                (o instanceof Key && matches(get(), ((Key) o).get(), identity));
+        }
+    }
+
+    static final class LookupKey implements Key {
+        final Object key;
+        final int hash;
+        final boolean identity;
+
+        LookupKey(Object key, int hash, boolean identity) {
+            this.key = key;
+            this.hash = hash;
+            this.identity = identity;
+        }
+
+        public Object get() {
+            return key;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o == this ||
+                (o instanceof Key && matches(key, ((Key) o).get(), identity));
+        }
+    }
+
+    static boolean matches(Object x, Object y, boolean identity) {
+        return x != null && (x == y || (!identity && x.equals(y)));
+    }
+
+    /** The backing map */
+    final ConcurrentHashMap<Key, V> map;
+
+    /** The queue of WeakKeys whose referents have been cleared */
+    final ReferenceQueue<Object> queue;
+
+    /** Held by the thread, if any, expunging more than one entry */
+    final ReentrantLock expungeLock;
+
+    /** True if keys are compared by identity */
+    final boolean identity;
+
+    transient Set<K> keySet;
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Creates a new, empty map comparing keys by equality or identity.
+     */
+    ConcurrentWeakHashMap(int initialCapacity, float loadFactor,
+                          int concurrencyLevel, boolean identity) {
+        this.map = new ConcurrentHashMap<Key, V>(initialCapacity, loadFactor,
+                                                 concurrencyLevel);
+        this.queue = new ReferenceQueue<Object>();
+        this.expungeLock = new ReentrantLock();
+        this.identity = identity;
+    }
+
+    /**
+     * Creates a new, empty map with the specified initial
+     * capacity, load factor and concurrency level.
+     *
+     * @param initialCapacity the initial capacity. The implementation
+     * performs internal sizing to accommodate this many elements.
+     * @param loadFactor  the load factor threshold, used to control resizing.
+     * @param concurrencyLevel the estimated number of concurrently
+     * updating threads. The implementation may use this value as
+     * a sizing hint.
+     * @throws IllegalArgumentException if the initial capacity is
+     * negative or the load factor or concurrencyLevel are
+     * nonpositive.
+     */
+    public ConcurrentWeakHashMap(int initialCapacity, float loadFactor,
+                                 int concurrencyLevel) {
+        this(initialCapacity, loadFactor, concurrencyLevel, false);
+    }
+
+    /**
+     * Creates a new, empty map with the specified initial capacity,
+     * and with default load factor (0.75) and concurrencyLevel (16).
+     *
+     * @param initialCapacity the initial capacity. The implementation
+     * performs internal sizing to accommodate this many elements.
+     * @throws IllegalArgumentException if the initial capacity of
+     * elements is negative.
+     */
+    public ConcurrentWeakHashMap(int initialCapacity) {
+        this(initialCapacity, 0.75f, 16, false);
+    }
+
+    /**
+     * Creates a new, empty map with a default initial capacity (16),
+     * load factor (0.75) and concurrencyLevel (16).
+     */
+    public ConcurrentWeakHashMap() {
+        this(16, 0.75f, 16, false);
+    }
+
+    /**
+     * Creates a new map with the same mappings as the given map.
+     *
+     * @param m the map
+     * @throws NullPointerException if the specified map, or any of
+     *         its keys or values, is null
+     */
+    public ConcurrentWeakHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max(m.size(), 16), 0.75f, 16, false);
+        putAll(m);
+    }
+
+    /* ---------------- Keys and expunging -------------- */
+
+    final int hash(Object key) {
+        return identity ? System.identityHashCode(key) : key.hashCode();
+    }
+
+    final LookupKey lookupKey(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        return new LookupKey(key, hash(key), identity);
+    }
+
+    final WeakKey weakKey(Object key) {
+        return new WeakKey(key, hash(key), identity, queue);
+    }
+
+    /**
+     * Expunges the entry of at most one stale key, and of up to
+     * EXPUNGE_BATCH - 1 more if no other thread is expunging.
+     */
+    final void expungeSomeStaleEntries() {
+        Object ref = queue.poll();
+        if (ref == null)
+            return;
+        map.remove(ref);
+        final ReentrantLock lock = expungeLock;
+        if (lock.tryLock()) {
+            try {
+                for (int i = 1; i < EXPUNGE_BATCH &&
+                         (ref = queue.poll()) != null; ++i)
+                    map.remove(ref);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Expunges the entries of all keys that have been discarded by
+     * the garbage collector and enqueued.  Stale entries are
+     * otherwise expunged a few at a time by updates, so this method
+     * may be called to release the values of a map that is seldom
+     * updated.
+     */
+    public void purge() {
+        final ReentrantLock lock = expungeLock;
+        lock.lock();
+        try {
+            Object ref;
+            while ((ref = queue.poll()) != null)
+                map.remove(ref);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value
+     * mappings, after expunging stale entries.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        purge();
+        return map.isEmpty();
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map, after
+     * expunging stale entries.  The result may still count entries
+     * whose keys have been discarded but not yet enqueued by the
+     * garbage collector.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        purge();
+        return map.size();
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        return map.get(lookupKey(key));
+    }
+
+    /**
+     * Tests if the specified object is a key in this map.
+     *
+     * @param  key   possible key
+     * @return <tt>true</tt> if and only if the specified object
+     *         is a key in this map
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        return map.containsKey(lookupKey(key));
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  Note: This method requires a full internal
+     * traversal of the map, and so is much slower than method
+     * <tt>containsKey</tt>.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (Map.Entry<Key, V> e : map.entrySet()) {
+            if (value.equals(e.getValue()) && e.getKey().get() != null)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this map.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V put(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        expungeSomeStaleEntries();
+        return map.put(weakKey(key), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        expungeSomeStaleEntries();
+        V v = map.get(lookupKey(key));
+        return (v != null) ? v : map.putIfAbsent(weakKey(key), value);
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     * This method does nothing if the key is not in the map.
+     *
+     * @param  key the key that needs to be removed
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        LookupKey k = lookupKey(key);
+        expungeSomeStaleEntries();
+        return map.remove(k);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        LookupKey k = lookupKey(key);
+        if (value == null)
+            return false;
+        expungeSomeStaleEntries();
+        return map.remove(k, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null)
+            throw new NullPointerException();
+        LookupKey k = lookupKey(key);
+        expungeSomeStaleEntries();
+        return map.replace(k, oldValue, newValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        LookupKey k = lookupKey(key);
+        expungeSomeStaleEntries();
+        return map.replace(k, value);
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        purge();
+        map.clear();
+    }
+
+    /* ---------------- Views -------------- */
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, which removes the corresponding mapping from the map,
+     * but not element addition.  The keys returned by its iterator
+     * are strongly held by the iterator only until the next one is
+     * returned.
+     *
+     * <p>The view's <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw {@link
+     * java.util.ConcurrentModificationException}.
+     */
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks != null) ? ks : (keySet = new KeySet());
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this
+     * map.  The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, which removes the corresponding mapping from the map,
+     * but not element addition.  Setting the value of an entry
+     * obtained from the set replaces the value in the map.
+     *
+     * <p>The view's <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw {@link
+     * java.util.ConcurrentModificationException}.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    /**
+     * Iterates over the entries of the backing map whose keys have
+     * not been cleared, holding the next key strongly so that
+     * hasNext remains true until it is returned.
+     */
+    abstract class HashIterator {
+        final Iterator<Map.Entry<Key, V>> it = map.entrySet().iterator();
+        K nextKey;
+        V nextValue;
+        K lastReturned;
+
+        HashIterator() {
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        final void advance() {
+            nextKey = null;
+            nextValue = null;
+            while (it.hasNext()) {
+                Map.Entry<Key, V> e = it.next();
+                Object k = e.getKey().get();
+                if (k != null) {
+                    nextKey = (K) k;
+                    nextValue = e.getValue();
+                    break;
+                }
+            }
+        }
+
+        public final boolean hasNext() {
+            return nextKey != null;
+        }
+
+        final K nextKey() {
+            K k = nextKey;
+            if (k == null)
+                throw new NoSuchElementException();
+            lastReturned = k;
+            return k;
+        }
+
+        public final void remove() {
+            K k = lastReturned;
+            if (k == null)
+                throw new IllegalStateException();
+            lastReturned = null;
+            ConcurrentWeakHashMap.this.remove(k);
+        }
+    }
+
+    final class KeyIterator extends HashIterator implements Iterator<K> {
+        public K next() {
+            K k = nextKey();
+            advance();
+            return k;
+        }
+    }
+
+    final class EntryIterator extends HashIterator
+        implements Iterator<Map.Entry<K, V>> {
+        public Map.Entry<K, V> next() {
+            K k = nextKey();
+            V v = nextValue;
+            advance();
+            return new WriteThroughEntry(k, v);
+        }
+    }
+
+    /**
+     * Custom Entry class used by EntryIterator.next(), that relays
+     * setValue changes to the underlying map.  The entry holds its
+     * key strongly.
+     */
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(K k, V v) {
+            super(k, v);
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            ConcurrentWeakHashMap.this.put(getKey(), value);
+            return v;
+        }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+        public int size() {
+            return ConcurrentWeakHashMap.this.size();
+        }
+        public boolean isEmpty() {
+            return ConcurrentWeakHashMap.this.isEmpty();
+        }
+        public boolean contains(Object o) {
+            return ConcurrentWeakHashMap.this.containsKey(o);
+        }
+        public boolean remove(Object o) {
+            return ConcurrentWeakHashMap.this.remove(o) != null;
+        }
+        public void clear() {
+            ConcurrentWeakHashMap.this.clear();
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey();
+            if (k == null)
+                return false;
+            V v = ConcurrentWeakHashMap.this.get(k);
+            return v != null && v.equals(e.getValue());
+        }
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey();
+            return k != null &&
+                ConcurrentWeakHashMap.this.remove(k, e.getValue());
+        }
+        public int size() {
+            return ConcurrentWeakHashMap.this.size();
+        }
+        public boolean isEmpty() {
+            return ConcurrentWeakHashMap.this.isEmpty();
+        }
+        public void clear() {
+            ConcurrentWeakHashMap.this.clear();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * @(#)ConcurrentWeakIdentityHashMap.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.Map;
+
+/**
+ * A {@link ConcurrentWeakHashMap} that compares keys using
+ * reference-equality in place of object-equality, like an
+ * {@link java.util.IdentityHashMap}.  An entry is removed when its
+ * key is no longer in ordinary use, which, unlike in a map comparing
+ * keys by <tt>equals</tt>, is exactly when the entry can no longer be
+ * retrieved.  Such a map is suited to associating data with objects
+ * that are owned elsewhere, such as classes, class loaders or
+ * threads, without extending their lifetime.
+ *
+ * <p><b>This class is <i>not</i> a general-purpose <tt>Map</tt>
+ * implementation!</b>  While this class implements the <tt>Map</tt>
+ * interface, it intentionally violates <tt>Map's</tt> general
+ * contract, which mandates the use of the <tt>equals</tt> method when
+ * comparing keys.
+ *
+ * @since 1.7
+ * @author Doug Lea
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentWeakIdentityHashMap<K, V>
+        extends ConcurrentWeakHashMap<K, V> {
+
+    /**
+     * Creates a new, empty map with the specified initial
+     * capacity, load factor and concurrency level.
+     *
+     * @param initialCapacity the initial capacity. The implementation
+     * performs internal sizing to accommodate this many elements.
+     * @param loadFactor  the load factor threshold, used to control resizing.
+     * @param concurrencyLevel the estimated number of concurrently
+     * updating threads. The implementation may use this value as
+     * a sizing hint.
+     * @throws IllegalArgumentException if the initial capacity is
+     * negative or the load factor or concurrencyLevel are
+     * nonpositive.
+     */
+    public ConcurrentWeakIdentityHashMap(int initialCapacity, float loadFactor,
+                                         int concurrencyLevel) {
+        super(initialCapacity, loadFactor, concurrencyLevel, true);
+    }
+
+    /**
+     * Creates a new, empty map with the specified initial capacity,
+     * and with default load factor (0.75) and concurrencyLevel (16).
+     *
+     * @param initialCapacity the initial capacity. The implementation
+     * performs internal sizing to accommodate this many elements.
+     * @throws IllegalArgumentException if the initial capacity of
+     * elements is negative.
+     */
+    public ConcurrentWeakIdentityHashMap(int initialCapacity) {
+        super(initialCapacity, 0.75f, 16, true);
+    }
+
+    /**
+     * Creates a new, empty map with a default initial capacity (16),
+     * load factor (0.75) and concurrencyLevel (16).
+     */
+    public ConcurrentWeakIdentityHashMap() {
+        super(16, 0.75f, 16, true);
+    }
+
+    /**
+     * Creates a new map with the same mappings as the given map,
+     * comparing its keys by identity.
+     *
+     * @param m the map
+     * @throws NullPointerException if the specified map, or any of
+     *         its keys or values, is null
+     */
+    public ConcurrentWeakIdentityHashMap(Map<? extends K, ? extends V> m) {
+        super(Math.max(m.size(), 16), 0.75f, 16, true);
+        putAll(m);
+    }
+}
@@ -0,0 +1,1833 @@
+/*
+ * @(#)ForkJoinPool.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link ExecutorService} for running {@link ForkJoinTask}s.
+ * A <tt>ForkJoinPool</tt> provides the entry point for submissions
+ * from non-<tt>ForkJoinTask</tt> clients, as well as management and
+ * monitoring operations.
+ *
+ * <p>A <tt>ForkJoinPool</tt> differs from other kinds of {@link
+ * ExecutorService} mainly by virtue of employing
+ * <em>work-stealing</em>: all threads in the pool attempt to find and
+ * execute tasks submitted to the pool and/or created by other active
+ * tasks (eventually blocking waiting for work if none exist). This
+ * enables efficient processing when most tasks spawn other subtasks
+ * (as do most <tt>ForkJoinTask</tt>s), as well as when many small
+ * tasks are submitted to the pool from external clients.  Especially
+ * when setting <em>asyncMode</em> to true in constructors,
+ * <tt>ForkJoinPool</tt>s may also be appropriate for use with
+ * event-style tasks that are never joined.
+ *
+ * <p>A static {@link #commonPool()} is available and appropriate for
+ * most applications. The common pool is used by any ForkJoinTask that
+ * is not explicitly submitted to a specified pool. Using the common
+ * pool normally reduces resource usage (its threads are slowly
+ * reclaimed during periods of non-use, and reinstated upon subsequent
+ * use).  The parallelism of the common pool may be set using the
+ * system property
+ * <tt>java.util.concurrent.ForkJoinPool.common.parallelism</tt>
+ * (a non-negative integer); by default it is one less than the number
+ * of available processors.
+ *
+ * <p>For applications that require separate or custom pools, a
+ * <tt>ForkJoinPool</tt> may be constructed with a given target
+ * parallelism level; by default, equal to the number of available
+ * processors. The pool attempts to maintain enough active (or
+ * available) threads by dynamically adding, suspending, or resuming
+ * internal worker threads, even if some tasks are stalled waiting to
+ * join others. However, no such adjustments are guaranteed in the
+ * face of blocked I/O or other unmanaged synchronization. The nested
+ * {@link ManagedBlocker} interface enables extension of the kinds of
+ * synchronization accommodated.
+ *
+ * <p>In addition to execution and lifecycle control methods, this
+ * class provides status check methods (for example
+ * {@link #getStealCount}) that are intended to aid in developing,
+ * tuning, and monitoring fork/join applications. Also, method
+ * {@link #toString} returns indications of pool state in a
+ * convenient form for informal monitoring.
+ *
+ * <p> As is the case with other ExecutorServices, there are three
+ * main task execution methods summarized in the following table.
+ * These are designed to be used primarily by clients not already
+ * engaged in fork/join computations in the current pool.  The main
+ * forms of these methods accept instances of <tt>ForkJoinTask</tt>,
+ * but overloaded forms also allow mixed execution of plain {@link
+ * Runnable}- or {@link Callable}- based activities as well.  However,
+ * tasks that are already executing in a pool should normally instead
+ * use the within-computation forms listed in the table unless using
+ * async event-style tasks that are not usually joined, in which case
+ * there is little difference among choice of methods.
+ *
+ * <table BORDER CELLPADDING=3 CELLSPACING=1>
+ *  <tr>
+ *    <td></td>
+ *    <td ALIGN=CENTER> <b>Call from non-fork/join clients</b></td>
+ *    <td ALIGN=CENTER> <b>Call from within fork/join computations</b></td>
+ *  </tr>
+ *  <tr>
+ *    <td> <b>Arrange async execution</b></td>
+ *    <td> {@link #execute(ForkJoinTask)}</td>
+ *    <td> {@link ForkJoinTask#fork}</td>
+ *  </tr>
+ *  <tr>
+ *    <td> <b>Await and obtain result</b></td>
+ *    <td> {@link #invoke(ForkJoinTask)}</td>
+ *    <td> {@link ForkJoinTask#invoke}</td>
+ *  </tr>
+ *  <tr>
+ *    <td> <b>Arrange exec and obtain Future</b></td>
+ *    <td> {@link #submit(ForkJoinTask)}</td>
+ *    <td> {@link ForkJoinTask#fork} (ForkJoinTasks <em>are</em> Futures)</td>
+ *  </tr>
+ * </table>
+ *
+ * <p><b>Implementation notes</b>: This implementation restricts the
+ * maximum number of running threads to 32767. Attempts to create
+ * pools with greater than the maximum number result in
+ * <tt>IllegalArgumentException</tt>.
+ *
+ * <p>This implementation rejects submitted tasks (that is, by throwing
+ * {@link RejectedExecutionException}) only when the pool is shut down
+ * or internal resources have been exhausted.
+ *
+ * @since 1.7
+ * @author Doug Lea
+ */
+public class ForkJoinPool extends AbstractExecutorService {
+
+    /*
+     * Implementation Overview
+     *
+     * This class provides the central bookkeeping and control for a
+     * set of worker threads: Submissions from non-FJ threads enter
+     * into a submission queue. Workers take these tasks and typically
+     * split them into subtasks that may be stolen by other workers.
+     *
+     * WorkQueues
+     * ==========
+     *
+     * Each worker owns a WorkQueue, a form of deque that supports
+     * only three of the four possible end-operations -- push, pop,
+     * and poll (aka steal), under the further constraints that push
+     * and pop are called only from the owning thread, while poll may
+     * be called from other threads.  The queue is a circular array
+     * indexed by "base" (next slot to poll) and "top" (next slot to
+     * push).  Both pop and poll claim a task by CASing its slot to
+     * null, so an owner and a thief racing for the last element are
+     * resolved by the slot CAS alone; only afterwards is top (by the
+     * owner) or base (by the winning thief) advanced.  This is the
+     * main source of efficiency: the owner never locks, and thieves
+     * contend only with each other, at the opposite end.
+     *
+     * Workers pop their own tasks in LIFO order (unless in asyncMode,
+     * in which case FIFO), but steal from others in FIFO order.
+     * Stealing the oldest tasks tends to grab large chunks of work
+     * that were split early on, which reduces the number of steals.
+     *
+     * Submissions from external threads are placed in a shared
+     * ConcurrentLinkedQueue, which workers scan along with each
+     * other's WorkQueues.  Scans start at a pseudo-random index per
+     * worker to spread contention.
+     *
+     * Management
+     * ==========
+     *
+     * Worker creation, registration, idling, and termination are
+     * coordinated under a single ReentrantLock. This lock is never
+     * held while running tasks, and is taken on fast paths only when
+     * some worker is idle (to wake it up), or when fewer workers than
+     * the target parallelism exist (to create one).  Workers with
+     * nothing to do advertise themselves by incrementing idleCount
+     * while holding the lock and then rescanning for work before
+     * awaiting on the "work" condition.  Producers first publish a
+     * task (via a volatile write of a queue index) and then read
+     * idleCount; so either the producer sees the idle worker and
+     * signals it, or the idle worker's rescan sees the task.
+     * Workers also signal others when they steal from a queue that
+     * still holds tasks, so that wakeups propagate without every
+     * push needing to signal.
+     *
+     * Joining Tasks
+     * =============
+     *
+     * A worker that joins a task it has not itself popped may need to
+     * wait. Rather than just blocking, it first tries to make
+     * progress on behalf of the task: If the task is still in the
+     * worker's own queue, it is removed and run directly. Otherwise,
+     * it locates the worker that stole the task (via that worker's
+     * currentSteal field) and steals back one of the tasks that the
+     * stealer has forked, which are necessarily subtasks of the
+     * joined task ("helping"). If the stealer has nothing queued, but
+     * is itself joining some other task, the chain is followed
+     * ("leapfrogging").  Only tasks known to descend from the joined
+     * task are run in this way, which avoids stacking unrelated work
+     * under a join that could then never complete.
+     *
+     * If no help is possible, the joiner blocks for a short time
+     * using the task's monitor, first counting itself as blocked
+     * and, if too few threads are left to keep the pool busy,
+     * creating a spare worker to compensate.  Spare workers beyond
+     * the target parallelism terminate after being idle for a short
+     * keep-alive period.  The same compensation mechanics are used
+     * for ManagedBlockers.
+     *
+     * Shutdown and Termination
+     * ========================
+     *
+     * After shutdown, the pool terminates once all workers are idle
+     * and no queued tasks remain. ShutdownNow additionally cancels
+     * all queued tasks and interrupts workers.  The common pool
+     * cannot be shut down.
+     */
+
+    // Static utilities
+
+    /**
+     * If there is a security manager, makes sure caller has
+     * permission to modify threads.
+     */
+    private static void checkPermission() {
+        SecurityManager security = System.getSecurityManager();
+        if (security != null)
+            security.checkPermission(modifyThreadPermission);
+    }
+
+    // Nested classes
+
+    /**
+     * Factory for creating new {@link ForkJoinWorkerThread}s.
+     * A <tt>ForkJoinWorkerThreadFactory</tt> must be defined and used
+     * for <tt>ForkJoinWorkerThread</tt> subclasses that extend base
+     * functionality or initialize threads with different contexts.
+     */
+    public static interface ForkJoinWorkerThreadFactory {
+        /**
+         * Returns a new worker thread operating in the given pool.
+         *
+         * @param pool the pool this thread works in
+         * @return the new worker thread
+         * @throws NullPointerException if the pool is null
+         */
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool);
+    }
+
+    /**
+     * Default ForkJoinWorkerThreadFactory implementation; creates a
+     * new ForkJoinWorkerThread.
+     */
+    static final class DefaultForkJoinWorkerThreadFactory
+        implements ForkJoinWorkerThreadFactory {
+        public final ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            return new ForkJoinWorkerThread(pool);
+        }
+    }
+
+    /**
+     * Class for artificial tasks that are used to replace the target
+     * of local joins if they are removed from an interior queue slot
+     * in WorkQueue.tryRemoveAndExec. We don't need the proxy to
+     * actually do anything beyond having a unique identity.
+     */
+    static final class EmptyTask extends ForkJoinTask<Void> {
+        private static final long serialVersionUID = -7721805057305804111L;
+        EmptyTask() { status = ForkJoinTask.NORMAL; } // force done
+        public final Void getRawResult() { return null; }
+        public final void setRawResult(Void x) {}
+        public final boolean exec() { return true; }
+    }
+
+    /**
+     * Queues supporting work-stealing as well as local task
+     * processing. See above for explanation.
+     */
+    static final class WorkQueue {
+        /**
+         * Capacity of work-stealing queue array upon initialization.
+         * Must be a power of two; at least 4, but should be larger to
+         * reduce or eliminate cacheline sharing among queues.
+         */
+        static final int INITIAL_QUEUE_CAPACITY = 1 << 8;
+
+        /**
+         * Maximum size for queue arrays. Must be a power of two less
+         * than or equal to 1 << (31 - width of array entry) to ensure
+         * lack of wraparound of index calculations, but defined to a
+         * value a bit less than this to help users trap runaway
+         * programs before saturating systems.
+         */
+        static final int MAXIMUM_QUEUE_CAPACITY = 1 << 26; // 64M
+
+        volatile int base;         // index of next slot for poll
+        volatile int top;          // index of next slot for push
+        ForkJoinTask<?>[] array;   // the elements (initially unallocated)
+        final ForkJoinPool pool;   // the containing pool
+        final ForkJoinWorkerThread owner; // owning thread
+        final int poolIndex;       // index of this queue in pool
+        final boolean fifo;        // true if locally processed in FIFO order
+        int seed;                  // for random scanning; never zero
+        int nsteals;               // number of steals
+        volatile ForkJoinTask<?> currentJoin;  // task being joined in awaitJoin
+        volatile ForkJoinTask<?> currentSteal; // current non-local task being executed
+
+        WorkQueue(ForkJoinPool pool, ForkJoinWorkerThread owner,
+                  int poolIndex, boolean fifo) {
+            this.pool = pool;
+            this.owner = owner;
+            this.poolIndex = poolIndex;
+            this.fifo = fifo;
+            this.seed = 0x9e3779b9 * (poolIndex + 1);
+            if (seed == 0)
+                seed = 1;
+        }
+
+        /**
+         * Returns the approximate number of tasks in the queue.
+         */
+        final int queueSize() {
+            int n = base - top; // non-owner callers must read base first
+            return (n >= 0) ? 0 : -n;
+        }
+
+        /**
+         * Provides a more accurate estimate of whether this queue has
+         * any tasks than does queueSize, by checking whether a
+         * near-empty queue has at least one unclaimed task.
+         */
+        final boolean isEmpty() {
+            ForkJoinTask<?>[] a; int m, s;
+            int n = base - (s = top);
+            return (n >= 0 ||
+                    (n == -1 &&
+                     ((a = array) == null ||
+                      (m = a.length - 1) < 0 ||
+                      UNSAFE.getObjectVolatile
+                      (a, ((long)(m & (s - 1)) << ASHIFT) + ABASE) == null)));
+        }
+
+        /**
+         * Returns next pseudo-random scan index, using xorshift.
+         */
+        final int nextSeed() {
+            int r = seed;
+            r ^= r << 13;
+            r ^= r >>> 17;
+            r ^= r << 5;
+            return seed = r;
+        }
+
+        /**
+         * Pushes a task. Call only by owner.
+         *
+         * @param task the task. Caller must ensure non-null.
+         * @throws RejectedExecutionException if array cannot be resized
+         */
+        final void push(ForkJoinTask<?> task) {
+            ForkJoinTask<?>[] a; int s = top, n;
+            if ((a = array) != null) {    // ignore if queue removed
+                int m = a.length - 1;
+                UNSAFE.putOrderedObject
+                    (a, ((long)(m & s) << ASHIFT) + ABASE, task);
+                top = s + 1;
+                if ((n = s - base) <= 1)
+                    pool.signalWork();
+                else if (n >= m)
+                    growArray();
+            }
+        }
+
+        /**
+         * Initializes or doubles the capacity of array. Call either
+         * by owner or with lock held -- it is OK for base, but not
+         * top, to move while resizings are in progress.
+         */
+        final ForkJoinTask<?>[] growArray() {
+            ForkJoinTask<?>[] oldA = array;
+            int size = oldA != null ? oldA.length << 1 : INITIAL_QUEUE_CAPACITY;
+            if (size > MAXIMUM_QUEUE_CAPACITY)
+                throw new RejectedExecutionException("Queue capacity exceeded");
+            int oldMask, t, b;
+            ForkJoinTask<?>[] a = array = new ForkJoinTask<?>[size];
+            if (oldA != null && (oldMask = oldA.length - 1) >= 0 &&
+                (t = top) - (b = base) > 0) {
+                int mask = size - 1;
+                do {
+                    ForkJoinTask<?> x;
+                    long oldj = ((long)(b & oldMask) << ASHIFT) + ABASE;
+                    long j    = ((long)(b &    mask) << ASHIFT) + ABASE;
+                    x = (ForkJoinTask<?>)UNSAFE.getObjectVolatile(oldA, oldj);
+                    if (x != null &&
+                        UNSAFE.compareAndSwapObject(oldA, oldj, x, null))
+                        UNSAFE.putObjectVolatile(a, j, x);
+                } while (++b != t);
+            }
+            return a;
+        }
+
+        /**
+         * Takes next task, if one exists, in LIFO order.  Call only
+         * by owner.
+         */
+        final ForkJoinTask<?> pop() {
+            ForkJoinTask<?>[] a; ForkJoinTask<?> t; int m;
+            if ((a = array) != null && (m = a.length - 1) >= 0) {
+                for (int s; (s = top - 1) - base >= 0;) {
+                    long j = ((long)(m & s) << ASHIFT) + ABASE;
+                    if ((t = (ForkJoinTask<?>)UNSAFE.getObject(a, j)) == null)
+                        break;
+                    if (UNSAFE.compareAndSwapObject(a, j, t, null)) {
+                        top = s;
+                        return t;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Takes next task, if one exists, in FIFO order.
+         */
+        final ForkJoinTask<?> poll() {
+            ForkJoinTask<?>[] a; int b; ForkJoinTask<?> t;
+            while ((b = base) - top < 0 && (a = array) != null) {
+                long j = ((long)((a.length - 1) & b) << ASHIFT) + ABASE;
+                t = (ForkJoinTask<?>)UNSAFE.getObjectVolatile(a, j);
+                if (base == b) {
+                    if (t != null) {
+                        if (UNSAFE.compareAndSwapObject(a, j, t, null)) {
+                            base = b + 1;
+                            return t;
+                        }
+                    }
+                    else if (b + 1 == top) // now empty
+                        break;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Takes next task, if one exists, in order specified by mode.
+         */
+        final ForkJoinTask<?> nextLocalTask() {
+            return fifo ? poll() : pop();
+        }
+
+        /**
+         * Pops the given task only if it is at the current top.
+         */
+        final boolean tryUnpush(ForkJoinTask<?> t) {
+            ForkJoinTask<?>[] a; int s;
+            if ((a = array) != null && (s = top) != base &&
+                UNSAFE.compareAndSwapObject
+                (a, ((long)((a.length - 1) & --s) << ASHIFT) + ABASE, t, null)) {
+                top = s;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * If present, removes the given task from this queue and runs
+         * it. If the task is not at the top, its slot is replaced by
+         * an EmptyTask so that the queue indices remain valid.
+         *
+         * @return true if the task was removed and run
+         */
+        final boolean tryRemoveAndExec(ForkJoinTask<?> task) {
+            ForkJoinTask<?>[] a; int m;
+            if (task != null && (a = array) != null &&
+                (m = a.length - 1) >= 0) {
+                int t = top, b = base;
+                for (int s = t - 1; s - b >= 0; --s) {
+                    long j = ((long)(m & s) << ASHIFT) + ABASE;
+                    Object x = UNSAFE.getObjectVolatile(a, j);
+                    if (x == null)
+                        break;             // the rest have been stolen
+                    if (x == task) {
+                        boolean removed;
+                        if (s == t - 1 && top == t) {
+                            if (removed =
+                                UNSAFE.compareAndSwapObject(a, j, task, null))
+                                top = s;
+                        }
+                        else
+                            removed = UNSAFE.compareAndSwapObject
+                                (a, j, task, new EmptyTask());
+                        if (removed)
+                            task.doExec();
+                        return removed;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Executes a non-local task, and then those of its subtasks
+         * that remain in the local queue.
+         */
+        final void runStolen(ForkJoinTask<?> task) {
+            ForkJoinTask<?> prevSteal = currentSteal;
+            currentSteal = task;
+            int s0 = top;
+            task.doExec();
+            ForkJoinTask<?> t;
+            if (fifo) {
+                while ((t = poll()) != null)
+                    t.doExec();
+            }
+            else {
+                while (top > s0 && (t = pop()) != null)
+                    t.doExec();
+            }
+            currentSteal = prevSteal;
+            ++nsteals;
+        }
+
+        /**
+         * Removes and cancels all known tasks, ignoring any exceptions.
+         */
+        final void cancelAll() {
+            for (ForkJoinTask<?> t; (t = poll()) != null; )
+                ForkJoinTask.cancelIgnoringExceptions(t);
+        }
+    }
+
+    /**
+     * Creates a new ForkJoinWorkerThread. This factory is used unless
+     * overridden in ForkJoinPool constructors.
+     */
+    public static final ForkJoinWorkerThreadFactory
+        defaultForkJoinWorkerThreadFactory;
+
+    /**
+     * Permission required for callers of methods that may start or
+     * kill threads.
+     */
+    private static final RuntimePermission modifyThreadPermission;
+
+    /**
+     * Common (static) pool. Non-null for public use unless a static
+     * construction exception, but internal usages null-check on use
+     * to paranoically avoid potential initialization circularities
+     * as well as to simplify generated code.
+     */
+    static final ForkJoinPool common;
+
+    /**
+     * Common pool parallelism. To allow simpler use and management
+     * when common pool threads are disabled, we allow the underlying
+     * common.parallelism field to be zero, but in that case still
+     * report parallelism as 1 to reflect resulting caller-runs
+     * mechanics.
+     */
+    static final int commonParallelism;
+
+    /**
+     * Sequence number for creating workerNamePrefix.
+     */
+    private static int poolNumberSequence;
+
+    /**
+     * Returns the next sequence number. We don't expect this to
+     * ever contend, so use simple builtin sync.
+     */
+    private static final synchronized int nextPoolId() {
+        return ++poolNumberSequence;
+    }
+
+    // static constants
+
+    /**
+     * Maximum parallelism, and bound on the number of spare
+     * threads.
+     */
+    static final int MAX_CAP = 0x7fff;
+
+    /**
+     * Maximum number of spare threads that may be created to
+     * compensate for blocked joins and ManagedBlockers, beyond the
+     * target parallelism.
+     */
+    static final int MAX_SPARES = 256;
+
+    /**
+     * Time in nanoseconds that spare workers remain idle before
+     * terminating.
+     */
+    static final long SPARE_KEEPALIVE = 2000L * 1000L * 1000L;
+
+    /**
+     * Milliseconds that a joining worker blocks before rechecking
+     * whether it can help complete the joined task.
+     */
+    static final long JOIN_WAIT = 10L;
+
+    /*
+     * Run states; only ever increase.
+     */
+    static final int RUNNING    = 0;
+    static final int SHUTDOWN   = 1;
+    static final int STOP       = 2;
+    static final int TERMINATED = 3;
+
+    // Instance fields
+
+    final int parallelism;                     // target number of workers
+    final boolean asyncMode;                   // FIFO local processing
+    final ForkJoinWorkerThreadFactory factory;
+    final Thread.UncaughtExceptionHandler ueh; // per-worker UEH
+    final String workerNamePrefix;             // to create worker name string
+    final boolean isCommon;                    // ignores shutdown
+
+    /** Lock protecting worker bookkeeping and idle waits */
+    final ReentrantLock lock = new ReentrantLock();
+    /** Wait condition for idle workers */
+    final Condition work = lock.newCondition();
+    /** Wait condition to support awaitTermination */
+    final Condition termination = lock.newCondition();
+
+    /** Queues of registered workers; slots may be null */
+    volatile WorkQueue[] workQueues = new WorkQueue[0];
+    /** Tasks submitted by non-worker threads */
+    final ConcurrentLinkedQueue<ForkJoinTask<?>> submissionQueue =
+        new ConcurrentLinkedQueue<ForkJoinTask<?>>();
+
+    volatile int runState;           // RUNNING, SHUTDOWN, STOP, TERMINATED
+    volatile int totalCount;         // registered workers; updated under lock
+    volatile int idleCount;          // workers in awaitWork; updated under lock
+    final AtomicInteger blockedCount = new AtomicInteger(); // in joins/blockers
+    final AtomicLong stealCount = new AtomicLong();  // from terminated workers
+
+    // Creating, registering and deregistering workers
+
+    /**
+     * Tries to construct and start one worker if there are fewer
+     * than the target number of unblocked workers.
+     *
+     * @return true if successful
+     */
+    private boolean tryAddWorker() {
+        Throwable ex = null;
+        ForkJoinWorkerThread wt = null;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int tc = totalCount;
+            if (runState >= STOP || tc - blockedCount.get() >= parallelism ||
+                tc >= parallelism + MAX_SPARES)
+                return false;
+            if ((wt = factory.newThread(this)) == null)
+                return false;
+            wt.start();
+            return true;
+        } catch (Throwable rex) {
+            ex = rex;
+        } finally {
+            lock.unlock();
+        }
+        deregisterWorker(wt, ex);
+        return false;
+    }
+
+    /**
+     * Callback from ForkJoinWorkerThread constructor to establish and
+     * record its WorkQueue.
+     *
+     * @param wt the worker thread
+     * @return the worker's queue
+     */
+    final WorkQueue registerWorker(ForkJoinWorkerThread wt) {
+        wt.setDaemon(true);                       // configure thread
+        if (ueh != null)
+            wt.setUncaughtExceptionHandler(ueh);
+        WorkQueue w;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            WorkQueue[] ws = workQueues;
+            int n = ws.length, i = 0;
+            while (i < n && ws[i] != null)
+                ++i;
+            if (i == n)
+                ws = Arrays.copyOf(ws, (n == 0) ? 4 : n << 1);
+            w = new WorkQueue(this, wt, i, asyncMode);
+            ws[i] = w;
+            workQueues = ws;
+            ++totalCount;
+        } finally {
+            lock.unlock();
+        }
+        wt.setName(workerNamePrefix.concat(Integer.toString(w.poolIndex)));
+        return w;
+    }
+
+    /**
+     * Final callback from terminating worker, as well as upon failure
+     * to construct or start a worker.  Removes record of worker from
+     * array, and adjusts counts. If pool is shutting down, tries to
+     * complete termination; otherwise resubmits the worker's
+     * remaining tasks and replaces the worker if needed.
+     *
+     * @param wt the worker thread, or null if construction failed
+     * @param ex the exception causing failure, or null if none
+     */
+    final void deregisterWorker(ForkJoinWorkerThread wt, Throwable ex) {
+        WorkQueue w = null;
+        if (wt != null && (w = wt.workQueue) != null) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                WorkQueue[] ws = workQueues;
+                int i = w.poolIndex;
+                if (i < ws.length && ws[i] == w) {
+                    ws[i] = null;
+                    --totalCount;
+                }
+                stealCount.addAndGet(w.nsteals);
+                tryTerminate();
+            } finally {
+                lock.unlock();
+            }
+            for (ForkJoinTask<?> t; (t = w.poll()) != null; ) {
+                if (runState >= STOP)
+                    ForkJoinTask.cancelIgnoringExceptions(t);
+                else
+                    submissionQueue.offer(t);
+            }
+            w.array = null;
+        }
+        if (runState < STOP && hasQueuedWork())
+            signalWork();                         // replace if needed
+        if (ex != null)
+            ForkJoinTask.rethrow(ex);
+    }
+
+    // Signalling
+
+    /**
+     * Tries to activate a worker if there is work to do: wakes an
+     * idle worker if one exists, else creates one if too few are
+     * running.
+     */
+    final void signalWork() {
+        if (idleCount > 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (idleCount > 0)
+                    work.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+        else if (totalCount - blockedCount.get() < parallelism)
+            tryAddWorker();
+    }
+
+    /**
+     * Returns true if any queue appears to hold tasks.
+     */
+    final boolean hasQueuedWork() {
+        if (!submissionQueue.isEmpty())
+            return true;
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue q = ws[i];
+            if (q != null && !q.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Advances run state as far as possible given current worker
+     * status.  Call only while holding lock.
+     */
+    private void tryTerminate() {
+        if (runState == SHUTDOWN && totalCount == idleCount &&
+            !hasQueuedWork()) {
+            runState = STOP;
+            work.signalAll();
+        }
+        if (runState == STOP && totalCount == 0) {
+            runState = TERMINATED;
+            termination.signalAll();
+        }
+    }
+
+    // Scanning for tasks
+
+    /**
+     * Top-level runloop for workers, called by ForkJoinWorkerThread.run.
+     */
+    final void runWorker(WorkQueue w) {
+        w.growArray();                            // allocate queue
+        for (ForkJoinTask<?> t;;) {
+            if (runState >= STOP)
+                break;
+            if ((t = scan(w)) != null)
+                w.runStolen(t);
+            else if (!awaitWork(w))
+                break;
+        }
+    }
+
+    /**
+     * Scans for and, if found, takes a task from some other worker's
+     * queue or from the submission queue, starting at a random
+     * index.  If the queue that yielded the task still appears
+     * nonempty, signals another worker to help.
+     *
+     * @return a task, or null if none found
+     */
+    private ForkJoinTask<?> scan(WorkQueue w) {
+        WorkQueue[] ws = workQueues;
+        int n = ws.length;
+        int r = w.nextSeed() & Integer.MAX_VALUE;
+        for (int k = 0; k <= n; ++k) {
+            int i = (r + k) % (n + 1);
+            ForkJoinTask<?> t;
+            if (i == n) {
+                if ((t = submissionQueue.poll()) != null) {
+                    if (!submissionQueue.isEmpty())
+                        signalWork();
+                    return t;
+                }
+            }
+            else {
+                WorkQueue q = ws[i];
+                if (q != null && q != w && (t = q.poll()) != null) {
+                    if (!q.isEmpty())
+                        signalWork();
+                    return t;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for work to become available, after advertising the
+     * calling worker as idle and rechecking for queued tasks.
+     *
+     * @return false if the worker should exit
+     */
+    private boolean awaitWork(WorkQueue w) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (runState >= STOP)
+                return false;
+            ++idleCount;
+            try {
+                if (hasQueuedWork())
+                    return true;
+                tryTerminate();
+                if (runState >= STOP)
+                    return false;
+                if (totalCount - blockedCount.get() > parallelism) {
+                    // surplus spare; exit if still surplus after keepalive
+                    if (work.awaitNanos(SPARE_KEEPALIVE) <= 0L &&
+                        totalCount - blockedCount.get() > parallelism &&
+                        !hasQueuedWork())
+                        return false;
+                }
+                else
+                    work.await();
+            } catch (InterruptedException ie) {
+                // recheck run state
+            } finally {
+                --idleCount;
+            }
+            return runState < STOP;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Joining tasks
+
+    /**
+     * Helps and/or blocks until the given task is done.
+     *
+     * @param w caller's queue
+     * @param task the task
+     * @return task status on exit
+     */
+    final int awaitJoin(WorkQueue w, ForkJoinTask<?> task) {
+        int s;
+        if (task == null || w == null || (s = task.status) < 0)
+            return (task == null) ? ForkJoinTask.NORMAL : task.status;
+        ForkJoinTask<?> prevJoin = w.currentJoin;
+        w.currentJoin = task;
+        try {
+            while ((s = task.status) >= 0) {
+                if (w.tryRemoveAndExec(task) || helpStealer(w, task))
+                    continue;
+                if ((s = task.status) < 0)
+                    break;
+                blockedCount.incrementAndGet();
+                try {
+                    tryCompensate();
+                    task.internalWait(JOIN_WAIT);
+                } finally {
+                    blockedCount.decrementAndGet();
+                }
+            }
+        } finally {
+            w.currentJoin = prevJoin;
+        }
+        return s;
+    }
+
+    /**
+     * Tries to locate and execute tasks for a stealer of the given
+     * task, or in turn one of its stealers. Traces currentSteal ->
+     * currentJoin links looking for a thread working on a descendant
+     * of the given task and with a non-empty queue to steal back and
+     * execute tasks from.
+     *
+     * @param w caller's queue
+     * @param task the task to join
+     * @return true if a task was run
+     */
+    private boolean helpStealer(WorkQueue w, ForkJoinTask<?> task) {
+        ForkJoinTask<?> subtask = task;
+        for (int depth = 0; depth < MAX_CAP && subtask.status >= 0; ++depth) {
+            WorkQueue stealer = null;
+            WorkQueue[] ws = workQueues;
+            for (int i = 0; i < ws.length; ++i) {
+                WorkQueue q = ws[i];
+                if (q != null && q != w && q.currentSteal == subtask) {
+                    stealer = q;
+                    break;
+                }
+            }
+            if (stealer == null)
+                return false;
+            ForkJoinTask<?> t;
+            if ((t = stealer.poll()) != null) {
+                w.runStolen(t);
+                return true;
+            }
+            ForkJoinTask<?> next = stealer.currentJoin;
+            if (next == null || next == subtask || stealer.currentSteal != subtask)
+                return false;
+            subtask = next;
+        }
+        return false;
+    }
+
+    /**
+     * Called by a blocking worker (after incrementing blockedCount)
+     * to create a spare worker if no idle workers are available and
+     * too few unblocked workers remain.
+     */
+    private void tryCompensate() {
+        if (idleCount == 0 && runState < STOP &&
+            totalCount - blockedCount.get() < parallelism)
+            tryAddWorker();
+    }
+
+    /**
+     * Runs tasks until the pool appears quiescent. Called only by
+     * workers, via ForkJoinTask.helpQuiesce.
+     */
+    final void helpQuiescePool(WorkQueue w) {
+        for (ForkJoinTask<?> t;;) {
+            if ((t = w.nextLocalTask()) != null)
+                t.doExec();
+            else if ((t = scan(w)) != null)
+                w.runStolen(t);
+            else if (totalCount - idleCount - blockedCount.get() <= 1 &&
+                     !hasQueuedWork())
+                break;
+            else
+                Thread.yield();
+        }
+    }
+
+    // Submissions
+
+    /**
+     * Adds the given task to the submission queue.
+     *
+     * @param task the task. Caller must ensure non-null.
+     */
+    final void externalPush(ForkJoinTask<?> task) {
+        if (runState != RUNNING)
+            throw new RejectedExecutionException();
+        submissionQueue.offer(task);
+        if (runState >= STOP && submissionQueue.remove(task))
+            throw new RejectedExecutionException();
+        signalWork();
+    }
+
+    /**
+     * Pushes the task locally if the caller is a worker of this pool,
+     * otherwise submits it.
+     */
+    private void doSubmit(ForkJoinTask<?> task) {
+        Thread t;
+        if (task == null)
+            throw new NullPointerException();
+        if ((t = Thread.currentThread()) instanceof ForkJoinWorkerThread &&
+            ((ForkJoinWorkerThread)t).pool == this)
+            ((ForkJoinWorkerThread)t).workQueue.push(task);
+        else
+            externalPush(task);
+    }
+
+    // Exported methods
+
+    // Constructors
+
+    /**
+     * Creates a <tt>ForkJoinPool</tt> with parallelism equal to {@link
+     * java.lang.Runtime#availableProcessors}, using the {@linkplain
+     * #defaultForkJoinWorkerThreadFactory default thread factory},
+     * no UncaughtExceptionHandler, and non-async LIFO processing mode.
+     *
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}<tt>("modifyThread")</tt>
+     */
+    public ForkJoinPool() {
+        this(Math.min(MAX_CAP, Runtime.getRuntime().availableProcessors()),
+             defaultForkJoinWorkerThreadFactory, null, false);
+    }
+
+    /**
+     * Creates a <tt>ForkJoinPool</tt> with the indicated parallelism
+     * level, the {@linkplain
+     * #defaultForkJoinWorkerThreadFactory default thread factory},
+     * no UncaughtExceptionHandler, and non-async LIFO processing mode.
+     *
+     * @param parallelism the parallelism level
+     * @throws IllegalArgumentException if parallelism less than or
+     *         equal to zero, or greater than implementation limit
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}<tt>("modifyThread")</tt>
+     */
+    public ForkJoinPool(int parallelism) {
+        this(parallelism, defaultForkJoinWorkerThreadFactory, null, false);
+    }
+
+    /**
+     * Creates a <tt>ForkJoinPool</tt> with the given parameters.
+     *
+     * @param parallelism the parallelism level. For default value,
+     * use {@link java.lang.Runtime#availableProcessors}.
+     * @param factory the factory for creating new threads. For default value,
+     * use {@link #defaultForkJoinWorkerThreadFactory}.
+     * @param handler the handler for internal worker threads that
+     * terminate due to unrecoverable errors encountered while executing
+     * tasks. For default value, use <tt>null</tt>.
+     * @param asyncMode if true,
+     * establishes local first-in-first-out scheduling mode for forked
+     * tasks that are never joined. This mode may be more appropriate
+     * than default locally stack-based mode in applications in which
+     * worker threads only process event-style asynchronous tasks.
+     * For default value, use <tt>false</tt>.
+     * @throws IllegalArgumentException if parallelism less than or
+     *         equal to zero, or greater than implementation limit
+     * @throws NullPointerException if the factory is null
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}<tt>("modifyThread")</tt>
+     */
+    public ForkJoinPool(int parallelism,
+                        ForkJoinWorkerThreadFactory factory,
+                        Thread.UncaughtExceptionHandler handler,
+                        boolean asyncMode) {
+        this(checkParallelism(parallelism), checkFactory(factory), handler,
+             asyncMode, "ForkJoinPool-" + nextPoolId() + "-worker-", false);
+        checkPermission();
+    }
+
+    private static int checkParallelism(int parallelism) {
+        if (parallelism <= 0 || parallelism > MAX_CAP)
+            throw new IllegalArgumentException();
+        return parallelism;
+    }
+
+    private static ForkJoinWorkerThreadFactory checkFactory
+        (ForkJoinWorkerThreadFactory factory) {
+        if (factory == null)
+            throw new NullPointerException();
+        return factory;
+    }
+
+    /**
+     * Creates a <tt>ForkJoinPool</tt> with the given parameters, without
+     * any security checks or parameter validation.  Invoked directly by
+     * the common pool construction.
+     */
+    private ForkJoinPool(int parallelism,
+                         ForkJoinWorkerThreadFactory factory,
+                         Thread.UncaughtExceptionHandler handler,
+                         boolean asyncMode,
+                         String workerNamePrefix,
+                         boolean isCommon) {
+        this.parallelism = parallelism;
+        this.factory = factory;
+        this.ueh = handler;
+        this.asyncMode = asyncMode;
+        this.workerNamePrefix = workerNamePrefix;
+        this.isCommon = isCommon;
+    }
+
+    /**
+     * Returns the common pool instance. This pool is statically
+     * constructed; its run state is unaffected by attempts to {@link
+     * #shutdown} or {@link #shutdownNow}. However this pool and any
+     * ongoing processing are automatically terminated upon program
+     * {@link System#exit}.  Any program that relies on asynchronous
+     * task processing to complete before program termination should
+     * invoke <tt>commonPool().</tt>{@link #awaitQuiescence awaitQuiescence},
+     * before exit.
+     *
+     * @return the common pool instance
+     */
+    public static ForkJoinPool commonPool() {
+        return common;
+    }
+
+    // Execution methods
+
+    /**
+     * Performs the given task, returning its result upon completion.
+     * If the computation encounters an unchecked Exception or Error,
+     * it is rethrown as the outcome of this invocation.  Rethrown
+     * exceptions behave in the same way as regular exceptions, but,
+     * when possible, contain stack traces (as displayed for example
+     * using <tt>ex.printStackTrace()</tt>) of both the current thread
+     * as well as the thread actually encountering the exception;
+     * minimally only the latter.
+     *
+     * @param task the task
+     * @return the task's result
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        doSubmit(task);
+        return task.join();
+    }
+
+    /**
+     * Arranges for (asynchronous) execution of the given task.
+     *
+     * @param task the task
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public void execute(ForkJoinTask<?> task) {
+        doSubmit(task);
+    }
+
+    // AbstractExecutorService methods
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public void execute(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        ForkJoinTask<?> job;
+        if (task instanceof ForkJoinTask<?>) // avoid re-wrap
+            job = (ForkJoinTask<?>) task;
+        else
+            job = new ForkJoinTask.RunnableExecuteAction(task);
+        doSubmit(job);
+    }
+
+    /**
+     * Submits a ForkJoinTask for execution.
+     *
+     * @param task the task to submit
+     * @return the task
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+        doSubmit(task);
+        return task;
+    }
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        ForkJoinTask<T> job = new ForkJoinTask.AdaptedCallable<T>(task);
+        doSubmit(job);
+        return job;
+    }
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+        ForkJoinTask<T> job = new ForkJoinTask.AdaptedRunnable<T>(task, result);
+        doSubmit(job);
+        return job;
+    }
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public ForkJoinTask<?> submit(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        ForkJoinTask<?> job;
+        if (task instanceof ForkJoinTask<?>) // avoid re-wrap
+            job = (ForkJoinTask<?>) task;
+        else
+            job = new ForkJoinTask.AdaptedRunnable<Void>(task, null);
+        doSubmit(job);
+        return job;
+    }
+
+    /**
+     * Returns a <tt>ForkJoinTask</tt>, so that tasks created by the
+     * inherited <tt>invokeAll</tt> and <tt>invokeAny</tt> methods are
+     * scheduled directly in this pool, and joins of them by workers
+     * help rather than block.
+     */
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new ForkJoinTask.AdaptedRunnable<T>(runnable, value);
+    }
+
+    /**
+     * Returns a <tt>ForkJoinTask</tt>, so that tasks created by the
+     * inherited <tt>invokeAll</tt> and <tt>invokeAny</tt> methods are
+     * scheduled directly in this pool, and joins of them by workers
+     * help rather than block.
+     */
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new ForkJoinTask.AdaptedCallable<T>(callable);
+    }
+
+    /**
+     * Returns the factory used for constructing new workers.
+     *
+     * @return the factory used for constructing new workers
+     */
+    public ForkJoinWorkerThreadFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Returns the handler for internal worker threads that terminate
+     * due to unrecoverable errors encountered while executing tasks.
+     *
+     * @return the handler, or <tt>null</tt> if none
+     */
+    public Thread.UncaughtExceptionHandler getUncaughtExceptionHandler() {
+        return ueh;
+    }
+
+    /**
+     * Returns the targeted parallelism level of this pool.
+     *
+     * @return the targeted parallelism level of this pool
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the targeted parallelism level of the common pool.
+     *
+     * @return the targeted parallelism level of the common pool
+     */
+    public static int getCommonPoolParallelism() {
+        return commonParallelism;
+    }
+
+    /**
+     * Returns the number of worker threads that have started but not
+     * yet terminated.  The result returned by this method may differ
+     * from {@link #getParallelism} when threads are created to
+     * maintain parallelism when others are cooperatively blocked.
+     *
+     * @return the number of worker threads
+     */
+    public int getPoolSize() {
+        return totalCount;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this pool uses local first-in-first-out
+     * scheduling mode for forked tasks that are never joined.
+     *
+     * @return <tt>true</tt> if this pool uses async mode
+     */
+    public boolean getAsyncMode() {
+        return asyncMode;
+    }
+
+    /**
+     * Returns an estimate of the number of worker threads that are
+     * not blocked waiting to join tasks or for other managed
+     * synchronization. This method may overestimate the
+     * number of running threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getRunningThreadCount() {
+        int r = totalCount - idleCount - blockedCount.get();
+        return (r <= 0) ? 0 : r; // suppress momentarily negative values
+    }
+
+    /**
+     * Returns an estimate of the number of threads that are currently
+     * stealing or executing tasks. This method may overestimate the
+     * number of active threads.
+     *
+     * @return the number of active threads
+     */
+    public int getActiveThreadCount() {
+        int r = totalCount - idleCount;
+        return (r <= 0) ? 0 : r; // suppress momentarily negative values
+    }
+
+    /**
+     * Returns <tt>true</tt> if all worker threads are currently idle.
+     * An idle worker is one that cannot obtain a task to execute
+     * because none are available to steal from other threads, and
+     * there are no pending submissions to the pool. This method is
+     * conservative; it might not return <tt>true</tt> immediately upon
+     * idleness of all threads, but will eventually become true if
+     * threads remain inactive.
+     *
+     * @return <tt>true</tt> if all threads are currently idle
+     */
+    public boolean isQuiescent() {
+        return totalCount - idleCount <= 0 && !hasQueuedWork();
+    }
+
+    /**
+     * Returns an estimate of the total number of tasks stolen from
+     * one thread's work queue by another. The reported value
+     * underestimates the actual total number of steals when the pool
+     * is not quiescent. This value may be useful for monitoring and
+     * tuning fork/join programs: in general, steal counts should be
+     * high enough to keep threads busy, but low enough to avoid
+     * overhead and contention across threads.
+     *
+     * @return the number of steals
+     */
+    public long getStealCount() {
+        long count = stealCount.get();
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue w = ws[i];
+            if (w != null)
+                count += w.nsteals;
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the total number of tasks currently held
+     * in queues by worker threads (but not including tasks submitted
+     * to the pool that have not begun executing). This value is only
+     * an approximation, obtained by iterating across all threads in
+     * the pool. This method may be useful for tuning task
+     * granularities.
+     *
+     * @return the number of queued tasks
+     */
+    public long getQueuedTaskCount() {
+        long count = 0;
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue w = ws[i];
+            if (w != null)
+                count += w.queueSize();
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the number of tasks submitted to this
+     * pool that have not yet begun executing.  This method may take
+     * time proportional to the number of submissions.
+     *
+     * @return the number of queued submissions
+     */
+    public int getQueuedSubmissionCount() {
+        return submissionQueue.size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if there are any tasks submitted to this
+     * pool that have not yet begun executing.
+     *
+     * @return <tt>true</tt> if there are any queued submissions
+     */
+    public boolean hasQueuedSubmissions() {
+        return !submissionQueue.isEmpty();
+    }
+
+    /**
+     * Removes and returns the next unexecuted submission if one is
+     * available.  This method may be useful in extensions to this
+     * class that re-assign work in systems with multiple pools.
+     *
+     * @return the next submission, or <tt>null</tt> if none
+     */
+    protected ForkJoinTask<?> pollSubmission() {
+        return submissionQueue.poll();
+    }
+
+    /**
+     * Removes all available unexecuted submitted and forked tasks
+     * from scheduling queues and adds them to the given collection,
+     * without altering their execution status. These may include
+     * artificially generated or wrapped tasks. This method is
+     * designed to be invoked only when the pool is known to be
+     * quiescent. Invocations at other times may not remove all
+     * tasks. A failure encountered while attempting to add elements
+     * to collection <tt>c</tt> may result in elements being in
+     * neither, either or both collections when the associated
+     * exception is thrown.  The behavior of this operation is
+     * undefined if the specified collection is modified while the
+     * operation is in progress.
+     *
+     * @param c the collection to transfer elements into
+     * @return the number of elements transferred
+     */
+    protected int drainTasksTo(Collection<? super ForkJoinTask<?>> c) {
+        int count = 0;
+        for (ForkJoinTask<?> t; (t = submissionQueue.poll()) != null; ) {
+            c.add(t);
+            ++count;
+        }
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue w = ws[i];
+            if (w != null) {
+                for (ForkJoinTask<?> t; (t = w.poll()) != null; ) {
+                    c.add(t);
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a string identifying this pool, as well as its state,
+     * including indications of run state, parallelism level, and
+     * worker and task counts.
+     *
+     * @return a string identifying this pool, as well as its state
+     */
+    public String toString() {
+        int rs = runState;
+        String level = ((rs == TERMINATED) ? "Terminated" :
+                        (rs == STOP)       ? "Terminating" :
+                        (rs == SHUTDOWN)   ? "Shutting down" :
+                        "Running");
+        return super.toString() +
+            "[" + level +
+            ", parallelism = " + parallelism +
+            ", size = " + getPoolSize() +
+            ", active = " + getActiveThreadCount() +
+            ", running = " + getRunningThreadCount() +
+            ", steals = " + getStealCount() +
+            ", tasks = " + getQueuedTaskCount() +
+            ", submissions = " + getQueuedSubmissionCount() +
+            "]";
+    }
+
+    /**
+     * Possibly initiates an orderly shutdown in which previously
+     * submitted tasks are executed, but no new tasks will be
+     * accepted. Invocation has no effect on execution state if this
+     * is the {@link #commonPool()}, and no additional effect if
+     * already shut down.  Tasks that are in the process of being
+     * submitted concurrently during the course of this method may or
+     * may not be rejected.
+     *
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}<tt>("modifyThread")</tt>
+     */
+    public void shutdown() {
+        checkPermission();
+        if (isCommon)
+            return;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (runState == RUNNING)
+                runState = SHUTDOWN;
+            tryTerminate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Possibly attempts to cancel and/or stop all tasks, and reject
+     * all subsequently submitted tasks.  Invocation has no effect on
+     * execution state if this is the {@link #commonPool()}, and no
+     * additional effect if already shut down. Otherwise, tasks that
+     * are in the process of being submitted or executed concurrently
+     * during the course of this method may or may not be
+     * rejected. This method cancels both existing and unexecuted
+     * tasks, in order to permit termination in the presence of task
+     * dependencies. So the method always returns an empty list
+     * (unlike the case for some other Executors).
+     *
+     * @return an empty list
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}<tt>("modifyThread")</tt>
+     */
+    public List<Runnable> shutdownNow() {
+        checkPermission();
+        if (isCommon)
+            return Collections.emptyList();
+        List<ForkJoinWorkerThread> threads =
+            new ArrayList<ForkJoinWorkerThread>();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (runState < STOP)
+                runState = STOP;
+            WorkQueue[] ws = workQueues;
+            for (int i = 0; i < ws.length; ++i) {
+                WorkQueue w = ws[i];
+                if (w != null)
+                    threads.add(w.owner);
+            }
+            work.signalAll();
+            tryTerminate();
+        } finally {
+            lock.unlock();
+        }
+        for (ForkJoinTask<?> t; (t = submissionQueue.poll()) != null; )
+            ForkJoinTask.cancelIgnoringExceptions(t);
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue w = ws[i];
+            if (w != null)
+                w.cancelAll();
+        }
+        for (ForkJoinWorkerThread wt : threads) {
+            try {
+                wt.interrupt();
+            } catch (SecurityException ignore) {
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns <tt>true</tt> if all tasks have completed following shut down.
+     *
+     * @return <tt>true</tt> if all tasks have completed following shut down
+     */
+    public boolean isTerminated() {
+        return runState == TERMINATED;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the process of termination has
+     * commenced but not yet completed.  This method may be useful for
+     * debugging. A return of <tt>true</tt> reported a sufficient
+     * period after shutdown may indicate that submitted tasks have
+     * ignored or suppressed interruption, or are waiting for I/O,
+     * causing this executor not to properly terminate. (See the
+     * advisory notes for class {@link ForkJoinTask} stating that
+     * tasks should not normally entail blocking operations.  But if
+     * they do, they must abort them on interrupt.)
+     *
+     * @return <tt>true</tt> if terminating but not yet terminated
+     */
+    public boolean isTerminating() {
+        return runState == STOP;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this pool has been shut down.
+     *
+     * @return <tt>true</tt> if this pool has been shut down
+     */
+    public boolean isShutdown() {
+        return runState >= SHUTDOWN;
+    }
+
+    /**
+     * Blocks until all tasks have completed execution after a
+     * shutdown request, or the timeout occurs, or the current thread
+     * is interrupted, whichever happens first. Because the {@link
+     * #commonPool()} never terminates until program shutdown, when
+     * applied to the common pool, this method is equivalent to {@link
+     * #awaitQuiescence} but always returns <tt>false</tt>.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return <tt>true</tt> if this executor terminated and
+     *         <tt>false</tt> if the timeout elapsed before termination
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (isCommon) {
+            awaitQuiescence(timeout, unit);
+            return false;
+        }
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (;;) {
+                if (runState == TERMINATED)
+                    return true;
+                if (nanos <= 0L)
+                    return false;
+                nanos = termination.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * If called by a ForkJoinTask operating in this pool, equivalent
+     * in effect to {@link ForkJoinTask#helpQuiesce}. Otherwise,
+     * waits and/or attempts to assist performing tasks until this
+     * pool {@link #isQuiescent} or the indicated timeout elapses.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return <tt>true</tt> if quiescent; <tt>false</tt> if the
+     * timeout elapsed.
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        Thread thread = Thread.currentThread();
+        if (thread instanceof ForkJoinWorkerThread &&
+            ((ForkJoinWorkerThread)thread).pool == this) {
+            helpQuiescePool(((ForkJoinWorkerThread)thread).workQueue);
+            return true;
+        }
+        long startTime = System.nanoTime();
+        for (ForkJoinTask<?> t;;) {
+            if (isQuiescent())
+                return true;
+            if ((System.nanoTime() - startTime) > nanos)
+                return false;
+            if ((t = submissionQueue.poll()) != null)
+                t.doExec();
+            else
+                Thread.yield();
+        }
+    }
+
+    /**
+     * Interface for extending managed parallelism for tasks running
+     * in {@link ForkJoinPool}s.
+     *
+     * <p>A <tt>ManagedBlocker</tt> provides two methods.  Method
+     * <tt>isReleasable</tt> must return <tt>true</tt> if blocking is
+     * not necessary. Method <tt>block</tt> blocks the current thread
+     * if necessary (perhaps internally invoking <tt>isReleasable</tt>
+     * before actually blocking). These actions are performed by any
+     * thread invoking {@link ForkJoinPool#managedBlock}.  The unusual
+     * methods in this API accommodate synchronizers that may, but
+     * don't usually, block for long periods. Similarly, they allow
+     * more efficient internal handling of cases in which additional
+     * workers may be, but usually are not, needed to ensure
+     * sufficient parallelism.  Toward this end, implementations of
+     * method <tt>isReleasable</tt> must be amenable to repeated
+     * invocation.
+     *
+     * <p>For example, here is a ManagedBlocker based on a
+     * ReentrantLock:
+     *  <pre> {@code
+     * class ManagedLocker implements ManagedBlocker {
+     *   final ReentrantLock lock;
+     *   boolean hasLock = false;
+     *   ManagedLocker(ReentrantLock lock) { this.lock = lock; }
+     *   public boolean block() {
+     *     if (!hasLock)
+     *       lock.lock();
+     *     return true;
+     *   }
+     *   public boolean isReleasable() {
+     *     return hasLock || (hasLock = lock.tryLock());
+     *   }
+     * }}</pre>
+     *
+     * <p>Here is a class that possibly blocks waiting for an
+     * item on a given queue:
+     *  <pre> {@code
+     * class QueueTaker<E> implements ManagedBlocker {
+     *   final BlockingQueue<E> queue;
+     *   volatile E item = null;
+     *   QueueTaker(BlockingQueue<E> q) { this.queue = q; }
+     *   public boolean block() throws InterruptedException {
+     *     if (item == null)
+     *       item = queue.take();
+     *     return true;
+     *   }
+     *   public boolean isReleasable() {
+     *     return item != null || (item = queue.poll()) != null;
+     *   }
+     *   public E getItem() { // call after pool.managedBlock completes
+     *     return item;
+     *   }
+     * }}</pre>
+     */
+    public static interface ManagedBlocker {
+        /**
+         * Possibly blocks the current thread, for example waiting for
+         * a lock or condition.
+         *
+         * @return <tt>true</tt> if no additional blocking is necessary
+         * (i.e., if isReleasable would return true)
+         * @throws InterruptedException if interrupted while waiting
+         * (the method is not required to do so, but is allowed to)
+         */
+        boolean block() throws InterruptedException;
+
+        /**
+         * Returns <tt>true</tt> if blocking is unnecessary.
+         * @return <tt>true</tt> if blocking is unnecessary
+         */
+        boolean isReleasable();
+    }
+
+    /**
+     * Blocks in accord with the given blocker.  If the current thread
+     * is a {@link ForkJoinWorkerThread}, this method possibly arranges
+     * for a spare thread to be activated if necessary to ensure
+     * sufficient parallelism while the current thread is blocked.
+     *
+     * <p>If the caller is not a {@link ForkJoinTask}, this method is
+     * behaviorally equivalent to
+     *  <pre> {@code
+     * while (!blocker.isReleasable())
+     *   if (blocker.block())
+     *     return;
+     * }</pre>
+     *
+     * If the caller is a <tt>ForkJoinTask</tt>, then the pool may
+     * first be expanded to ensure parallelism, and later adjusted.
+     *
+     * @param blocker the blocker
+     * @throws InterruptedException if blocker.block did so
+     */
+    public static void managedBlock(ManagedBlocker blocker)
+        throws InterruptedException {
+        Thread t = Thread.currentThread();
+        if (t instanceof ForkJoinWorkerThread) {
+            ForkJoinPool p = ((ForkJoinWorkerThread)t).pool;
+            if (!blocker.isReleasable()) {
+                p.blockedCount.incrementAndGet();
+                try {
+                    p.tryCompensate();
+                    do {} while (!blocker.isReleasable() && !blocker.block());
+                } finally {
+                    p.blockedCount.decrementAndGet();
+                }
+            }
+        }
+        else {
+            do {} while (!blocker.isReleasable() && !blocker.block());
+        }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final long ABASE;
+    private static final int ASHIFT;
+
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            Class<?> ak = ForkJoinTask[].class;
+            ABASE = UNSAFE.arrayBaseOffset(ak);
+            int scale = UNSAFE.arrayIndexScale(ak);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+
+        defaultForkJoinWorkerThreadFactory =
+            new DefaultForkJoinWorkerThreadFactory();
+        modifyThreadPermission = new RuntimePermission("modifyThread");
+
+        String pp = AccessController.doPrivileged(new PrivilegedAction<String>() {
+            public String run() {
+                return System.getProperty
+                    ("java.util.concurrent.ForkJoinPool.common.parallelism");
+            }
+        });
+        int par = 0;
+        if (pp != null) {
+            try {
+                par = Integer.parseInt(pp);
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        if (par <= 0)
+            par = Runtime.getRuntime().availableProcessors() - 1;
+        if (par <= 0)
+            par = 1;
+        if (par > MAX_CAP)
+            par = MAX_CAP;
+        commonParallelism = par;
+        common = new ForkJoinPool(par, defaultForkJoinWorkerThreadFactory,
+                                  null, false,
+                                  "ForkJoinPool.commonPool-worker-", true);
+    }
+}
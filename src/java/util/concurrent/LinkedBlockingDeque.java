@@ -707,6 +707,159 @@ public class LinkedBlockingDeque<E>
         }
     }
 
+    /**
+     * Removes available elements from the head of this deque and adds
+     * them to the given collection, waiting if necessary up to the
+     * specified wait time until at least <tt>minElements</tt> elements
+     * have been transferred, and transferring at most
+     * <tt>maxElements</tt>.  Elements are transferred in batches of
+     * those available, taking the lock once per batch rather than
+     * once per element, and without waiting for a batch to complete,
+     * so that producers blocked on a full deque may proceed while
+     * this method waits.
+     *
+     * <p>A failure encountered while attempting to add elements to
+     * collection <tt>c</tt> may result in elements being in neither,
+     * either or both collections when the associated exception is
+     * thrown.  If interrupted while waiting, the elements already
+     * transferred remain in <tt>c</tt>.
+     *
+     * @param c the collection to transfer elements into
+     * @param minElements the number of elements to wait for
+     * @param maxElements the maximum number of elements to transfer
+     * @param timeout how long to wait before giving up, in units of
+     *        <tt>unit</tt>
+     * @param unit a <tt>TimeUnit</tt> determining how to interpret the
+     *        <tt>timeout</tt> parameter
+     * @return the number of elements transferred, which is less than
+     *         <tt>minElements</tt> only if the waiting time elapsed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws UnsupportedOperationException if addition of elements
+     *         is not supported by the specified collection
+     * @throws ClassCastException if the class of an element of this deque
+     *         prevents it from being added to the specified collection
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the specified collection is this
+     *         deque, or <tt>minElements</tt> is negative or greater than
+     *         <tt>maxElements</tt>, or some property of an element of this
+     *         deque prevents it from being added to the specified collection
+     * @since 1.7
+     */
+    public int drainTo(Collection<? super E> c, int minElements,
+                       int maxElements, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this || minElements < 0 || maxElements < minElements)
+            throw new IllegalArgumentException();
+	long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            int n = 0;
+            for (;;) {
+                while (n < maxElements && first != null) {
+                    c.add(first.item);   // In this order, in case add() throws.
+                    unlinkFirst();
+                    ++n;
+                }
+                if (n >= minElements || nanos <= 0)
+                    return n;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the elements of the specified collection, in the order
+     * returned by its iterator, at the end of this deque while it is
+     * possible to do so immediately without exceeding the deque's
+     * capacity, taking the lock once rather than once per element.
+     * The elements inserted are the first ones of the collection; the
+     * rest, if any, are not inserted because the deque is full.
+     *
+     * @param c the collection of elements to insert
+     * @return the number of elements inserted
+     * @throws NullPointerException if the specified collection or any
+     *         of its elements is null, in which case no element is inserted
+     * @throws IllegalArgumentException if the collection is this deque
+     * @since 1.7
+     */
+    @SuppressWarnings("unchecked")
+    public int offerAll(Collection<? extends E> c) {
+        Object[] a = elementsOf(c);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < a.length && linkLast((E) a[n]))
+                ++n;
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the elements of the specified collection, in the order
+     * returned by its iterator, at the end of this deque, waiting if
+     * necessary up to the specified wait time for space to become
+     * available.  Elements are inserted in batches filling the space
+     * available, taking the lock once per batch rather than once per
+     * element.  The elements inserted are the first ones of the
+     * collection; the rest, if any, are not inserted because the
+     * waiting time elapsed.
+     *
+     * @param c the collection of elements to insert
+     * @param timeout how long to wait before giving up, in units of
+     *        <tt>unit</tt>
+     * @param unit a <tt>TimeUnit</tt> determining how to interpret the
+     *        <tt>timeout</tt> parameter
+     * @return the number of elements inserted
+     * @throws InterruptedException if interrupted while waiting, in
+     *         which case the elements already inserted remain queued
+     * @throws NullPointerException if the specified collection or any
+     *         of its elements is null, in which case no element is inserted
+     * @throws IllegalArgumentException if the collection is this deque
+     * @since 1.7
+     */
+    @SuppressWarnings("unchecked")
+    public int offerAll(Collection<? extends E> c, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        Object[] a = elementsOf(c);
+	long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            int n = 0;
+            for (;;) {
+                while (n < a.length && linkLast((E) a[n]))
+                    ++n;
+                if (n == a.length || nanos <= 0)
+                    return n;
+                nanos = notFull.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the elements of a collection to be inserted by
+     * offerAll, checking for null elements before any is inserted.
+     */
+    private Object[] elementsOf(Collection<? extends E> c) {
+        if (c == this)
+            throw new IllegalArgumentException();
+        Object[] a = c.toArray();
+        for (Object e : a)
+            if (e == null)
+                throw new NullPointerException();
+        return a;
+    }
+
     // Stack methods
 
     /**
@@ -685,6 +685,208 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * Removes available elements from this queue and adds them to the
+     * given collection, waiting if necessary up to the specified wait
+     * time until at least <tt>minElements</tt> elements have been
+     * transferred, and transferring at most <tt>maxElements</tt>.
+     * Elements are transferred in batches of those available, taking
+     * the lock once per batch rather than once per element, and
+     * without waiting for a batch to complete, so that producers
+     * blocked on a full queue may proceed while this method waits.
+     *
+     * <p>A failure encountered while attempting to add elements to
+     * collection <tt>c</tt> may result in elements being in neither,
+     * either or both collections when the associated exception is
+     * thrown.  If interrupted while waiting, the elements already
+     * transferred remain in <tt>c</tt>.
+     *
+     * @param c the collection to transfer elements into
+     * @param minElements the number of elements to wait for
+     * @param maxElements the maximum number of elements to transfer
+     * @param timeout how long to wait before giving up, in units of
+     *        <tt>unit</tt>
+     * @param unit a <tt>TimeUnit</tt> determining how to interpret the
+     *        <tt>timeout</tt> parameter
+     * @return the number of elements transferred, which is less than
+     *         <tt>minElements</tt> only if the waiting time elapsed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws UnsupportedOperationException if addition of elements
+     *         is not supported by the specified collection
+     * @throws ClassCastException if the class of an element of this queue
+     *         prevents it from being added to the specified collection
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the specified collection is this
+     *         queue, or <tt>minElements</tt> is negative or greater than
+     *         <tt>maxElements</tt>, or some property of an element of this
+     *         queue prevents it from being added to the specified collection
+     * @since 1.7
+     */
+    public int drainTo(Collection<? super E> c, int minElements,
+                       int maxElements, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this || minElements < 0 || maxElements < minElements)
+            throw new IllegalArgumentException();
+        long nanos = unit.toNanos(timeout);
+        final AtomicInteger count = this.count;
+        final ReentrantLock takeLock = this.takeLock;
+        int n = 0;
+        for (;;) {
+            boolean signalNotFull = false;
+            takeLock.lockInterruptibly();
+            try {
+                while (count.get() == 0) {
+                    if (n >= minElements || nanos <= 0)
+                        return n;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                int k = Math.min(maxElements - n, count.get());
+                Node<E> h = head;
+                int i = 0;
+                try {
+                    while (i < k) {
+                        Node<E> p = h.next;
+                        c.add(p.item);
+                        p.item = null;
+                        h.next = h;
+                        h = p;
+                        ++i;
+                    }
+                } finally {
+                    // Restore invariants even if c.add() threw
+                    if (i > 0) {
+                        head = h;
+                        int old = count.getAndAdd(-i);
+                        signalNotFull = (old == capacity);
+                        if (old > i)
+                            notEmpty.signal();
+                        n += i;
+                    }
+                }
+            } finally {
+                takeLock.unlock();
+                if (signalNotFull)
+                    signalNotFull();
+            }
+            if (n >= minElements)
+                return n;
+        }
+    }
+
+    /**
+     * Inserts the elements of the specified collection, in the order
+     * returned by its iterator, at the tail of this queue while it is
+     * possible to do so immediately without exceeding the queue's
+     * capacity, taking the lock once rather than once per element.
+     * The elements inserted are the first ones of the collection; the
+     * rest, if any, are not inserted because the queue is full.
+     *
+     * @param c the collection of elements to insert
+     * @return the number of elements inserted
+     * @throws NullPointerException if the specified collection or any
+     *         of its elements is null, in which case no element is inserted
+     * @throws IllegalArgumentException if the collection is this queue
+     * @since 1.7
+     */
+    @SuppressWarnings("unchecked")
+    public int offerAll(Collection<? extends E> c) {
+        Object[] a = elementsOf(c);
+        final AtomicInteger count = this.count;
+        if (a.length == 0 || count.get() == capacity)
+            return 0;
+        int n = 0;
+        int old = -1;
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            n = Math.min(a.length, capacity - count.get());
+            if (n > 0) {
+                for (int i = 0; i < n; ++i)
+                    enqueue((E) a[i]);
+                old = count.getAndAdd(n);
+                if (old + n < capacity)
+                    notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (old == 0)
+            signalNotEmpty();
+        return n;
+    }
+
+    /**
+     * Inserts the elements of the specified collection, in the order
+     * returned by its iterator, at the tail of this queue, waiting if
+     * necessary up to the specified wait time for space to become
+     * available.  Elements are inserted in batches filling the space
+     * available, taking the lock once per batch rather than once per
+     * element.  The elements inserted are the first ones of the
+     * collection; the rest, if any, are not inserted because the
+     * waiting time elapsed.
+     *
+     * @param c the collection of elements to insert
+     * @param timeout how long to wait before giving up, in units of
+     *        <tt>unit</tt>
+     * @param unit a <tt>TimeUnit</tt> determining how to interpret the
+     *        <tt>timeout</tt> parameter
+     * @return the number of elements inserted
+     * @throws InterruptedException if interrupted while waiting, in
+     *         which case the elements already inserted remain queued
+     * @throws NullPointerException if the specified collection or any
+     *         of its elements is null, in which case no element is inserted
+     * @throws IllegalArgumentException if the collection is this queue
+     * @since 1.7
+     */
+    @SuppressWarnings("unchecked")
+    public int offerAll(Collection<? extends E> c, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        Object[] a = elementsOf(c);
+        long nanos = unit.toNanos(timeout);
+        final AtomicInteger count = this.count;
+        final ReentrantLock putLock = this.putLock;
+        int n = 0;
+        while (n < a.length) {
+            int old = -1;
+            putLock.lockInterruptibly();
+            try {
+                while (count.get() == capacity) {
+                    if (nanos <= 0)
+                        return n;
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                int k = Math.min(a.length - n, capacity - count.get());
+                for (int i = 0; i < k; ++i)
+                    enqueue((E) a[n + i]);
+                old = count.getAndAdd(k);
+                if (old + k < capacity)
+                    notFull.signal();
+                n += k;
+            } finally {
+                putLock.unlock();
+                if (old == 0)
+                    signalNotEmpty();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the elements of a collection to be inserted by
+     * offerAll, checking for null elements before any is inserted.
+     */
+    private Object[] elementsOf(Collection<? extends E> c) {
+        if (c == this)
+            throw new IllegalArgumentException();
+        Object[] a = c.toArray();
+        for (Object e : a)
+            if (e == null)
+                throw new NullPointerException();
+        return a;
+    }
+
     /**
      * Returns an iterator over the elements in this queue in proper sequence.
      * The returned <tt>Iterator</tt> is a "weakly consistent" iterator that
@@ -7,7 +7,15 @@
 
 package java.util.concurrent;
 import java.util.concurrent.locks.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.*;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 /**
  * An {@link ExecutorService} that executes each submitted task using
@@ -232,6 +240,20 @@ import java.util.*;
  * reclamation when large numbers of queued tasks become
  * cancelled.</dd>
  *
+ * <dt>Monitoring</dt>
+ *
+ * <dd> The statistics methods, such as {@link
+ * ThreadPoolExecutor#getActiveCount}, {@link
+ * ThreadPoolExecutor#getTaskCount} and {@link
+ * ThreadPoolExecutor#getRejectedTaskCount}, do not acquire any
+ * locks, so may be polled freely.  These statistics, along with
+ * optional histograms of the time tasks spend queued and executing,
+ * are also available from the executor's {@link
+ * ThreadPoolExecutorMXBean} (see {@link ThreadPoolExecutor#getMXBean}),
+ * which may be published in the platform <tt>MBeanServer</tt> using
+ * {@link ThreadPoolExecutor#registerMXBean}. Task timing does not
+ * require overriding the hook methods.</dd>
+ *
  * <dt>Finalization</dt>
  *
  * <dd> A pool that is no longer referenced in a program <em>AND</em>
@@ -431,15 +453,58 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     private volatile ThreadFactory threadFactory;
 
     /**
-     * Tracks largest attained pool size.
+     * Tracks largest attained pool size. Updated only while holding
+     * mainLock, but volatile so that it can be read without it.
+     */
+    private volatile int largestPoolSize;
+
+    /**
+     * Number of workers currently running a task, maintained so that
+     * getActiveCount and getTaskCount need not traverse the workers
+     * under mainLock.
+     */
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    /**
+     * Counter for tasks passed to the rejected execution handler.
+     */
+    private final LongAdder rejectedTaskCount = new LongAdder();
+
+    /**
+     * If true, execute records when tasks are queued, and workers
+     * record their queue wait and execution times.
+     */
+    private volatile boolean taskTiming;
+
+    /**
+     * Histograms of task queue wait and execution times, and the
+     * enqueue times of queued tasks, created (under mainLock) when
+     * task timing is first enabled. Tasks themselves are never
+     * wrapped, so the work queue holds exactly what was submitted.
+     */
+    private volatile TimeHistogram queueWaitTimes;
+    private volatile TimeHistogram executionTimes;
+    private volatile ConcurrentHashMap<TaskKey, Long> enqueueTimes;
+
+    /**
+     * The MXBean of this executor, lazily created.
+     */
+    private volatile ThreadPoolExecutorMXBean mxbean;
+
+    /**
+     * The MBeanServer and name under which the MXBean is registered,
+     * or null if not registered. Accessed only under mainLock.
      */
-    private int largestPoolSize;
+    private MBeanServer mxbeanServer;
+    private ObjectName mxbeanName;
 
     /**
-     * Counter for completed tasks. Updated only on termination of
-     * worker threads.
+     * Counter for completed tasks, incremented by each worker after
+     * running a task.  A LongAdder rather than per-worker counts
+     * summed under mainLock, so that getCompletedTaskCount does not
+     * contend with workers being added or removed.
      */
-    private long completedTaskCount;
+    private final LongAdder completedTaskCount = new LongAdder();
 
     /**
      * The default rejected execution handler
@@ -650,12 +715,32 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         if (command == null)
             throw new NullPointerException();
         if (poolSize >= corePoolSize || !addIfUnderCorePoolSize(command)) {
+            /*
+             * The enqueue time is stamped before the offer, so that a
+             * worker taking the task at once still finds it, and is
+             * withdrawn if the offer fails, so that a task run
+             * directly by a new thread records no queue wait.
+             */
+            ConcurrentHashMap<TaskKey, Long> times =
+                taskTiming ? enqueueTimes : null;
+            TaskKey key = null;
+            if (times != null) {
+                TaskKey k = new TaskKey(command);
+                if (times.putIfAbsent(k, System.nanoTime()) == null)
+                    key = k;
+            }
             if (runState == RUNNING && workQueue.offer(command)) {
                 if (runState != RUNNING || poolSize == 0)
                     ensureQueuedTaskHandled(command);
+                if (times != null)
+                    sweepEnqueueTimes(times);
+            }
+            else {
+                if (key != null)
+                    times.remove(key);
+                if (!addIfUnderMaximumPoolSize(command))
+                    reject(command); // is shutdown or saturated
             }
-            else if (!addIfUnderMaximumPoolSize(command))
-                reject(command); // is shutdown or saturated
         }
     }
 
@@ -764,6 +849,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Invokes the rejected execution handler for the given command.
      */
     void reject(Runnable command) {
+        rejectedTaskCount.increment();
+        forgetEnqueueTime(command);
         handler.rejectedExecution(command, this);
     }
 
@@ -813,12 +900,6 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
          */
         private Runnable firstTask;
 
-        /**
-         * Per thread completed task counter; accumulated
-         * into completedTaskCount upon termination.
-         */
-        volatile long completedTasks;
-
         /**
          * Thread this worker is running in.  Acts as a final field,
          * but cannot be set until thread is created.
@@ -829,10 +910,6 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             this.firstTask = firstTask;
         }
 
-        boolean isActive() {
-            return runLock.isLocked();
-        }
-
         /**
          * Interrupts thread if not running a task.
          */
@@ -861,6 +938,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         private void runTask(Runnable task) {
             final ReentrantLock runLock = this.runLock;
             runLock.lock();
+            activeCount.incrementAndGet();
             try {
                 /*
                  * Ensure that unless pool is stopping, this thread
@@ -881,18 +959,31 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                  * which case we don't want to call it again.
                  */
                 boolean ran = false;
-                beforeExecute(thread, task);
+                long startTime = 0L;
+                if (taskTiming) {
+                    startTime = System.nanoTime();
+                    Long queued = enqueueTimes.remove(new TaskKey(task));
+                    if (queued != null)
+                        queueWaitTimes.record(startTime - queued);
+                }
                 try {
-                    task.run();
-                    ran = true;
-                    afterExecute(task, null);
-                    ++completedTasks;
-                } catch (RuntimeException ex) {
-                    if (!ran)
-                        afterExecute(task, ex);
-                    throw ex;
+                    beforeExecute(thread, task);
+                    try {
+                        task.run();
+                        ran = true;
+                        afterExecute(task, null);
+                        completedTaskCount.increment();
+                    } catch (RuntimeException ex) {
+                        if (!ran)
+                            afterExecute(task, ex);
+                        throw ex;
+                    }
+                } finally {
+                    if (startTime != 0L)
+                        executionTimes.record(System.nanoTime() - startTime);
                 }
             } finally {
+                activeCount.decrementAndGet();
                 runLock.unlock();
             }
         }
@@ -1005,7 +1096,6 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         final ReentrantLock mainLock = this.mainLock;
         mainLock.lock();
         try {
-            completedTaskCount += w.completedTasks;
             workers.remove(w);
             if (--poolSize == 0)
                 tryTerminate();
@@ -1039,6 +1129,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             if (state == STOP || state == SHUTDOWN) {
                 runState = TERMINATED;
                 termination.signalAll();
+                unregisterMXBean();
                 terminated();
             }
         }
@@ -1205,6 +1296,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             } catch (ConcurrentModificationException ignore) {
             }
         }
+        ConcurrentHashMap<TaskKey, Long> times = enqueueTimes;
+        if (times != null)
+            times.clear();
         return taskList;
     }
 
@@ -1546,7 +1640,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return true if the task was removed
      */
     public boolean remove(Runnable task) {
-        return getQueue().remove(task);
+        boolean removed = getQueue().remove(task);
+        if (removed)
+            forgetEnqueueTime(task);
+        return removed;
     }
 
     /**
@@ -1567,8 +1664,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 Runnable r = it.next();
                 if (r instanceof Future<?>) {
                     Future<?> c = (Future<?>)r;
-                    if (c.isCancelled())
+                    if (c.isCancelled()) {
                         it.remove();
+                        forgetEnqueueTime(r);
+                    }
                 }
             }
         }
@@ -1595,18 +1694,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of threads
      */
     public int getActiveCount() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            int n = 0;
-            for (Worker w : workers) {
-                if (w.isActive())
-                    ++n;
-            }
-            return n;
-        } finally {
-            mainLock.unlock();
-        }
+        return activeCount.get();
     }
 
     /**
@@ -1616,13 +1704,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of threads
      */
     public int getLargestPoolSize() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            return largestPoolSize;
-        } finally {
-            mainLock.unlock();
-        }
+        return largestPoolSize;
     }
 
     /**
@@ -1634,19 +1716,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of tasks
      */
     public long getTaskCount() {
-        final ReentrantLock mainLock = this.mainLock;
-        mainLock.lock();
-        try {
-            long n = completedTaskCount;
-            for (Worker w : workers) {
-                n += w.completedTasks;
-                if (w.isActive())
-                    ++n;
-            }
-            return n + workQueue.size();
-        } finally {
-            mainLock.unlock();
-        }
+        return completedTaskCount.sum() + activeCount.get() +
+            workQueue.size();
     }
 
     /**
@@ -1659,18 +1730,346 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return the number of tasks
      */
     public long getCompletedTaskCount() {
+        return completedTaskCount.sum();
+    }
+
+    /**
+     * Returns the approximate total number of tasks that have been
+     * passed to the {@link RejectedExecutionHandler}, because this
+     * executor was shut down or saturated.
+     *
+     * @return the number of tasks
+     * @since 1.7
+     */
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.sum();
+    }
+
+    /* Management */
+
+    /**
+     * Returns the {@link ThreadPoolExecutorMXBean} for monitoring
+     * this executor, and for controlling and reading its task timing.
+     *
+     * @return the MXBean of this executor
+     * @since 1.7
+     */
+    public ThreadPoolExecutorMXBean getMXBean() {
+        ThreadPoolExecutorMXBean m = mxbean;
+        if (m == null) {
+            final ReentrantLock mainLock = this.mainLock;
+            mainLock.lock();
+            try {
+                if ((m = mxbean) == null)
+                    mxbean = m = new MXBeanImpl();
+            } finally {
+                mainLock.unlock();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Registers the {@linkplain #getMXBean MXBean} of this executor
+     * in the {@linkplain ManagementFactory#getPlatformMBeanServer
+     * platform <tt>MBeanServer</tt>} under the <tt>ObjectName</tt>
+     * <tt>java.util.concurrent:type=ThreadPoolExecutor,name=</tt><i>name</i>.
+     * The MXBean is unregistered when this executor terminates.
+     *
+     * <p>The <tt>MBeanServer</tt> holds the MXBean, and through it this
+     * executor, until the MXBean is unregistered. A registered executor
+     * is therefore never shut down automatically when it is no longer
+     * referenced by the program, as described in the class
+     * documentation, and must be shut down explicitly.
+     *
+     * @param name the value of the <tt>name</tt> key property
+     * @throws IllegalArgumentException if <tt>name</tt> does not form
+     * a valid <tt>ObjectName</tt>
+     * @throws IllegalStateException if this executor's MXBean is
+     * already registered, if this executor has terminated, or if the
+     * MXBean cannot be registered, for example because another MBean
+     * is registered under the same name
+     * @throws SecurityException if a security manager exists and the
+     * caller does not have the permissions required to access the
+     * platform <tt>MBeanServer</tt> and register the MXBean
+     * @since 1.7
+     */
+    public void registerMXBean(String name) {
+        ObjectName on;
+        try {
+            on = new ObjectName("java.util.concurrent:type=ThreadPoolExecutor," +
+                                "name=" + name);
+        } catch (MalformedObjectNameException ex) {
+            throw new IllegalArgumentException("Invalid name: " + name, ex);
+        }
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ThreadPoolExecutorMXBean m = getMXBean();
         final ReentrantLock mainLock = this.mainLock;
         mainLock.lock();
         try {
-            long n = completedTaskCount;
-            for (Worker w : workers)
-                n += w.completedTasks;
-            return n;
+            if (runState == TERMINATED)
+                throw new IllegalStateException("Executor has terminated");
+            if (mxbeanName != null)
+                throw new IllegalStateException("Already registered as " +
+                                                mxbeanName);
+            mbs.registerMBean(m, on);
+            mxbeanServer = mbs;
+            mxbeanName = on;
+        } catch (JMException ex) {
+            throw new IllegalStateException("Cannot register " + on, ex);
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Unregisters the MXBean if it is registered. Call only while
+     * holding mainLock.
+     */
+    private void unregisterMXBean() {
+        ObjectName on = mxbeanName;
+        if (on != null) {
+            MBeanServer mbs = mxbeanServer;
+            mxbeanName = null;
+            mxbeanServer = null;
+            try {
+                mbs.unregisterMBean(on);
+            } catch (JMException ignore) {
+            } catch (SecurityException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Enables or disables task timing, creating the histograms when
+     * first enabled. Enqueue times left over from an earlier period
+     * of timing are discarded, so they can neither leak nor be
+     * reported as queue waits spanning the period timing was off.
+     */
+    private void setTaskTiming(boolean enable) {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (enable && queueWaitTimes == null) {
+                enqueueTimes = new ConcurrentHashMap<TaskKey, Long>();
+                executionTimes = new TimeHistogram();
+                queueWaitTimes = new TimeHistogram();
+            }
+            if (enqueueTimes != null && enable != taskTiming)
+                enqueueTimes.clear();
+            taskTiming = enable;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Discards the enqueue time of a task leaving the queue without
+     * being run.
+     */
+    private void forgetEnqueueTime(Runnable task) {
+        ConcurrentHashMap<TaskKey, Long> times = enqueueTimes;
+        if (times != null && task != null)
+            times.remove(new TaskKey(task));
+    }
+
+    /**
+     * Number of enqueue times below which sweepEnqueueTimes does not
+     * look at the work queue.
+     */
+    private static final int SWEEP_THRESHOLD = 1024;
+
+    /**
+     * Discards the enqueue times of tasks no longer in the work queue,
+     * once there are more than twice as many times as queued tasks.
+     * Tasks removed through getQueue(), for example by its remove or
+     * drainTo methods, bypass this class, so their times are otherwise
+     * never discarded. A task being queued or taken concurrently may
+     * lose its time, and so its queue wait sample, but never gains a
+     * wrong one. Sweeps are skipped while another thread holds
+     * mainLock, and retried on later calls.
+     */
+    private void sweepEnqueueTimes(ConcurrentHashMap<TaskKey, Long> times) {
+        int n = times.size();
+        if (n < SWEEP_THRESHOLD || n <= workQueue.size() * 2)
+            return;
+        final ReentrantLock mainLock = this.mainLock;
+        if (!mainLock.tryLock())
+            return;
+        try {
+            HashSet<TaskKey> queued = new HashSet<TaskKey>();
+            for (Runnable r : workQueue)
+                queued.add(new TaskKey(r));
+            Iterator<TaskKey> it = times.keySet().iterator();
+            while (it.hasNext()) {
+                if (!queued.contains(it.next()))
+                    it.remove();
+            }
         } finally {
             mainLock.unlock();
         }
     }
 
+    /**
+     * Identity key for enqueueTimes, so that tasks are matched by
+     * reference whatever their equals methods do. A task queued
+     * again before its first occurrence runs keeps its first
+     * enqueue time, and only that occurrence has its queue wait
+     * recorded.
+     */
+    static final class TaskKey {
+        final Runnable task;
+        TaskKey(Runnable task) { this.task = task; }
+        public int hashCode() { return System.identityHashCode(task); }
+        public boolean equals(Object o) {
+            return (o instanceof TaskKey) && ((TaskKey)o).task == task;
+        }
+    }
+
+    /**
+     * A concurrent histogram of nanosecond times.  Each power of two
+     * range of times is split into 2^SUB_BITS equal sub-buckets, so
+     * every recorded time is known to within a relative error of
+     * 2^-SUB_BITS, using a fixed array of counts covering all
+     * non-negative longs.
+     */
+    static final class TimeHistogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * Returns the bucket index for a time. Times below
+         * 2 * SUB_COUNT have a bucket each; above that, the bucket is
+         * determined by the position of the highest bit and the
+         * SUB_BITS bits following it.
+         */
+        static int indexFor(long nanos) {
+            if (nanos < SUB_COUNT)
+                return (nanos < 0L) ? 0 : (int)nanos;
+            int e = 63 - Long.numberOfLeadingZeros(nanos);
+            return ((e - SUB_BITS + 1) << SUB_BITS) +
+                (int)((nanos >>> (e - SUB_BITS)) & (SUB_COUNT - 1));
+        }
+
+        /**
+         * Returns the largest time mapped to the given bucket.
+         */
+        static long highestEquivalent(int index) {
+            if (index < 2 * SUB_COUNT)
+                return index;
+            int shift = (index >>> SUB_BITS) - 1;
+            long low = (long)(SUB_COUNT + (index & (SUB_COUNT - 1))) << shift;
+            return low + (1L << shift) - 1L;
+        }
+
+        void record(long nanos) {
+            if (nanos < 0L) // nanoTime is not necessarily monotonic
+                nanos = 0L;
+            counts.getAndIncrement(indexFor(nanos));
+            count.increment();
+            total.add(nanos);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long mean() {
+            long n = count.sum();
+            return (n == 0L) ? 0L : total.sum() / n;
+        }
+
+        long percentile(double percentile) {
+            if (!(percentile >= 0.0 && percentile <= 100.0))
+                throw new IllegalArgumentException();
+            long[] snapshot = new long[BUCKETS];
+            long n = 0L;
+            for (int i = 0; i < BUCKETS; ++i)
+                n += snapshot[i] = counts.get(i);
+            if (n == 0L)
+                return 0L;
+            long rank = (long)Math.ceil(percentile / 100.0 * n);
+            if (rank < 1L)
+                rank = 1L;
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; ++i) {
+                if ((seen += snapshot[i]) >= rank)
+                    return highestEquivalent(i);
+            }
+            return highestEquivalent(BUCKETS - 1);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; ++i)
+                counts.set(i, 0L);
+            count.reset();
+            total.reset();
+        }
+    }
+
+    /**
+     * The ThreadPoolExecutorMXBean implementation. All attributes are
+     * read without holding mainLock.
+     */
+    private final class MXBeanImpl implements ThreadPoolExecutorMXBean {
+        public int getCorePoolSize() { return corePoolSize; }
+        public int getMaximumPoolSize() { return maximumPoolSize; }
+        public int getPoolSize() { return poolSize; }
+        public int getActiveCount() { return activeCount.get(); }
+        public int getLargestPoolSize() { return largestPoolSize; }
+        public int getQueueSize() { return workQueue.size(); }
+        public long getTaskCount() {
+            return ThreadPoolExecutor.this.getTaskCount();
+        }
+        public long getCompletedTaskCount() {
+            return completedTaskCount.sum();
+        }
+        public long getRejectedTaskCount() {
+            return rejectedTaskCount.sum();
+        }
+        public boolean isShutdown() { return runState != RUNNING; }
+        public boolean isTaskTimingEnabled() { return taskTiming; }
+        public void setTaskTimingEnabled(boolean enable) {
+            setTaskTiming(enable);
+        }
+        public long getTimedTaskCount() {
+            TimeHistogram h = executionTimes;
+            return (h == null) ? 0L : h.count();
+        }
+        public long getQueueWaitTimePercentile(double percentile) {
+            return percentile(queueWaitTimes, percentile);
+        }
+        public long getExecutionTimePercentile(double percentile) {
+            return percentile(executionTimes, percentile);
+        }
+        public long getMeanQueueWaitTime() {
+            TimeHistogram h = queueWaitTimes;
+            return (h == null) ? 0L : h.mean();
+        }
+        public long getMeanExecutionTime() {
+            TimeHistogram h = executionTimes;
+            return (h == null) ? 0L : h.mean();
+        }
+        public void resetTaskTimes() {
+            TimeHistogram q = queueWaitTimes, e = executionTimes;
+            if (q != null) {
+                q.reset();
+                e.reset();
+            }
+        }
+        private long percentile(TimeHistogram h, double percentile) {
+            if (!(percentile >= 0.0 && percentile <= 100.0))
+                throw new IllegalArgumentException("Invalid percentile: " +
+                                                   percentile);
+            return (h == null) ? 0L : h.percentile(percentile);
+        }
+    }
+
     /* Extension hooks */
 
     /**
@@ -0,0 +1,206 @@
+/*
+ * @(#)ThreadPoolExecutorMXBean.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+
+/**
+ * The management interface for a {@link ThreadPoolExecutor}.
+ *
+ * <p>Each <tt>ThreadPoolExecutor</tt> has a single instance of the
+ * implementation class of this interface, which is an
+ * <a href="../../lang/management/ManagementFactory.html#MXBean">MXBean</a>
+ * that can be obtained by calling the
+ * {@link ThreadPoolExecutor#getMXBean} method, or, once the executor
+ * has been {@linkplain ThreadPoolExecutor#registerMXBean registered},
+ * from the {@link java.lang.management.ManagementFactory#getPlatformMBeanServer
+ * platform <tt>MBeanServer</tt>} under the
+ * {@link javax.management.ObjectName ObjectName}:
+ * <blockquote>
+ *    <tt>java.util.concurrent:type=ThreadPoolExecutor,name=</tt><i>name</i>
+ * </blockquote>
+ *
+ * <p>All attributes are read without holding the executor's main
+ * lock, so polling them does not contend with task submission or
+ * with workers being added or removed.  Because the states of tasks
+ * and threads may change dynamically, the values are approximations.
+ *
+ * <h4>Task Timing</h4>
+ * When task timing is enabled, the executor records, for each task
+ * entered via {@link ThreadPoolExecutor#execute execute} (including
+ * those of the <tt>submit</tt> and <tt>invoke</tt> methods), the
+ * <em>queue wait time</em> between its submission and the point at
+ * which a worker thread is about to call
+ * {@link ThreadPoolExecutor#beforeExecute beforeExecute}, and the
+ * <em>execution time</em> from there until
+ * {@link ThreadPoolExecutor#afterExecute afterExecute} returns.
+ * A task handed directly to a new worker thread, without being
+ * queued, has no queue wait time recorded.
+ * Times are kept in histograms with a relative precision of 12.5%,
+ * from which percentiles such as the 99th percentile queue wait,
+ * useful when deciding whether to resize the pool, are reported.
+ * Task timing is disabled by default, since it requires the
+ * executor to keep the submission time of each queued task. Tasks
+ * are not wrapped, so enabling it does not change what the
+ * {@linkplain ThreadPoolExecutor#getQueue queue} holds.
+ *
+ * @see ThreadPoolExecutor
+ * @since 1.7
+ */
+public interface ThreadPoolExecutorMXBean {
+    /**
+     * Returns the core number of threads.
+     *
+     * @return the core number of threads
+     * @see ThreadPoolExecutor#getCorePoolSize
+     */
+    int getCorePoolSize();
+
+    /**
+     * Returns the maximum allowed number of threads.
+     *
+     * @return the maximum allowed number of threads
+     * @see ThreadPoolExecutor#getMaximumPoolSize
+     */
+    int getMaximumPoolSize();
+
+    /**
+     * Returns the current number of threads in the pool.
+     *
+     * @return the number of threads
+     * @see ThreadPoolExecutor#getPoolSize
+     */
+    int getPoolSize();
+
+    /**
+     * Returns the approximate number of threads that are actively
+     * executing tasks.
+     *
+     * @return the number of threads
+     * @see ThreadPoolExecutor#getActiveCount
+     */
+    int getActiveCount();
+
+    /**
+     * Returns the largest number of threads that have ever
+     * simultaneously been in the pool.
+     *
+     * @return the number of threads
+     * @see ThreadPoolExecutor#getLargestPoolSize
+     */
+    int getLargestPoolSize();
+
+    /**
+     * Returns the number of tasks waiting in the queue.
+     *
+     * @return the number of queued tasks
+     */
+    int getQueueSize();
+
+    /**
+     * Returns the approximate total number of tasks that have ever
+     * been scheduled for execution.
+     *
+     * @return the number of tasks
+     * @see ThreadPoolExecutor#getTaskCount
+     */
+    long getTaskCount();
+
+    /**
+     * Returns the approximate total number of tasks that have
+     * completed execution.
+     *
+     * @return the number of tasks
+     * @see ThreadPoolExecutor#getCompletedTaskCount
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * Returns the number of tasks that have been passed to the
+     * executor's {@link RejectedExecutionHandler}.
+     *
+     * @return the number of rejected tasks
+     * @see ThreadPoolExecutor#getRejectedTaskCount
+     */
+    long getRejectedTaskCount();
+
+    /**
+     * Returns <tt>true</tt> if the executor has been shut down.
+     *
+     * @return <tt>true</tt> if the executor has been shut down
+     * @see ThreadPoolExecutor#isShutdown
+     */
+    boolean isShutdown();
+
+    /**
+     * Returns <tt>true</tt> if task timing is enabled.
+     *
+     * @return <tt>true</tt> if task timing is enabled
+     */
+    boolean isTaskTimingEnabled();
+
+    /**
+     * Enables or disables task timing.  Task timing is disabled by
+     * default.  Disabling it does not discard the times recorded so
+     * far.
+     *
+     * @param enable <tt>true</tt> to enable; <tt>false</tt> to disable
+     */
+    void setTaskTimingEnabled(boolean enable);
+
+    /**
+     * Returns the number of tasks whose times have been recorded
+     * since task timing was first enabled or last reset.
+     *
+     * @return the number of timed tasks
+     */
+    long getTimedTaskCount();
+
+    /**
+     * Returns the given percentile of the recorded queue wait times,
+     * in nanoseconds, or zero if no times have been recorded.
+     *
+     * @param percentile the percentile, for example <tt>99.0</tt>
+     * @return the queue wait time in nanoseconds below which the
+     * given percentage of recorded waits fall
+     * @throws IllegalArgumentException if <tt>percentile</tt> is
+     * not in the range <tt>0.0</tt> to <tt>100.0</tt>
+     */
+    long getQueueWaitTimePercentile(double percentile);
+
+    /**
+     * Returns the given percentile of the recorded execution times,
+     * in nanoseconds, or zero if no times have been recorded.
+     *
+     * @param percentile the percentile, for example <tt>99.0</tt>
+     * @return the execution time in nanoseconds below which the
+     * given percentage of recorded executions fall
+     * @throws IllegalArgumentException if <tt>percentile</tt> is
+     * not in the range <tt>0.0</tt> to <tt>100.0</tt>
+     */
+    long getExecutionTimePercentile(double percentile);
+
+    /**
+     * Returns the mean of the recorded queue wait times, in
+     * nanoseconds, or zero if no times have been recorded.
+     *
+     * @return the mean queue wait time in nanoseconds
+     */
+    long getMeanQueueWaitTime();
+
+    /**
+     * Returns the mean of the recorded execution times, in
+     * nanoseconds, or zero if no times have been recorded.
+     *
+     * @return the mean execution time in nanoseconds
+     */
+    long getMeanExecutionTime();
+
+    /**
+     * Discards all recorded queue wait and execution times.
+     */
+    void resetTaskTimes();
+}
@@ -0,0 +1,856 @@
+/*
+ * @(#)TimingWheelScheduledExecutor.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.*;
+
+/**
+ * A {@link ScheduledExecutorService} that keeps its delayed tasks in a
+ * hierarchical timing wheel, so that scheduling and cancelling a task
+ * take constant time regardless of how many tasks are pending.  This
+ * class is intended for very large numbers of timeouts that are mostly
+ * cancelled before they expire, such as per-connection idle or
+ * per-request deadlines, where the O(log n) queue operations of
+ * {@link java.util.Timer} and {@link ScheduledThreadPoolExecutor}
+ * dominate.
+ *
+ * <p>Time is divided into <i>ticks</i> of a fixed duration given at
+ * construction.  A single timer thread advances the wheel once per
+ * tick, so a task fires no sooner than its delay elapses, but possibly
+ * up to one tick later.  Tasks due in the same tick are not ordered
+ * among themselves.  A coarse tick makes the timer thread cheaper; a
+ * fine one makes timing more precise.
+ *
+ * <p>By default, expired tasks run in the timer thread itself.  Like
+ * {@link java.util.Timer} tasks, they should then complete quickly,
+ * since a slow task delays all others.  Alternatively, an
+ * {@link Executor} may be supplied to which expired tasks are handed
+ * off instead.
+ *
+ * <p>Tasks that are cancelled are removed from the wheel by the timer
+ * thread at its next tick, so cancelled tasks are not retained.  After
+ * {@link #shutdown}, remaining delayed tasks still run when due, but
+ * periodic tasks are cancelled; this matches the default policies of
+ * {@link ScheduledThreadPoolExecutor}.  Tasks submitted after shutdown
+ * are rejected by throwing {@link RejectedExecutionException}.
+ *
+ * @since 1.7
+ */
+public class TimingWheelScheduledExecutor extends AbstractExecutorService
+        implements ScheduledExecutorService {
+
+    /*
+     * The wheel is organized as in Varghese & Lauck's "Hashed and
+     * Hierarchical Timing Wheels" (SOSP 1987), in the form used by
+     * many operating system kernels.  There are several levels of
+     * 2^bits buckets each.  A bucket at level L covers 2^(L*bits)
+     * ticks, so level 0 holds tasks due within the next 2^bits ticks,
+     * level 1 those due within 2^(2*bits), and so on.  Each time the
+     * level-0 index wraps to zero, the current level-1 bucket is
+     * "cascaded": its tasks are re-placed relative to the current
+     * tick, which drops each of them to a lower level; the cascade
+     * continues upward whenever a level's own index wraps too.  Each
+     * task is thus moved at most once per level over its lifetime,
+     * and placing or unlinking one is O(1).  Deadlines beyond the
+     * range of the top level are clamped to its last bucket and
+     * re-placed from there.
+     *
+     * The wheel, its buckets, and the link fields of tasks are owned
+     * by the timer thread and are never touched by other threads, so
+     * they need no locking.  Other threads hand new tasks to the timer
+     * thread through the lock-free "pending" queue, and cancelled
+     * tasks through the "cancelled" queue; the timer thread drains
+     * both once per tick before expiring tasks.  A task that is
+     * cancelled before it reaches the wheel is simply dropped when it
+     * is drained.
+     *
+     * When no tasks are pending at all, the timer thread parks
+     * indefinitely instead of waking every tick; schedulers unpark it
+     * when they find it idle.  On resuming, an empty wheel can skip
+     * directly to the current tick.
+     *
+     * shutdownNow must return the tasks that never ran, but only the
+     * timer thread may traverse the wheel, so it drains the wheel as
+     * it stops and shutdownNow waits for it to do so (unless called
+     * from a task running in the timer thread, which drains directly).
+     */
+
+    /** Default tick duration, in milliseconds */
+    private static final long DEFAULT_TICK_MILLIS = 10L;
+
+    /** Default number of buckets per wheel level */
+    private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /** Maximum number of buckets per wheel level */
+    private static final int MAXIMUM_TICKS_PER_WHEEL = 1 << 16;
+
+    /*
+     * Run states, in increasing order.  RUNNING accepts new tasks;
+     * SHUTDOWN runs remaining one-shot tasks; STOP discards them; and
+     * TERMINATED means the timer thread has exited.
+     */
+    private static final int RUNNING    = 0;
+    private static final int SHUTDOWN   = 1;
+    private static final int STOP       = 2;
+    private static final int TERMINATED = 3;
+
+    /**
+     * Sequence number to break scheduling ties, and in turn to
+     * guarantee FIFO order among tied entries in compareTo.
+     */
+    private static final AtomicLong sequencer = new AtomicLong(0);
+
+    /** Base of nanosecond timings, to avoid wrapping */
+    private final long origin = System.nanoTime();
+
+    /** Tick duration in nanoseconds */
+    private final long tickNanos;
+
+    /** log2 of the number of buckets per level */
+    private final int bits;
+
+    /** Number of buckets per level, minus one */
+    private final int mask;
+
+    /** Number of levels; bits * levels never exceeds 62 */
+    private final int levels;
+
+    /** The wheel, indexed by level and then bucket. Timer thread only. */
+    private final Bucket[][] wheel;
+
+    /** Number of tasks in the wheel. Timer thread only. */
+    private int count;
+
+    /** The next tick to be processed. Timer thread only. */
+    private long tick;
+
+    /** Whether the timer thread has seen the shutdown. Timer thread only. */
+    private boolean shutdownSeen;
+
+    /** Tasks scheduled but not yet placed in the wheel */
+    private final ConcurrentLinkedQueue<WheelTask<?>> pending =
+        new ConcurrentLinkedQueue<WheelTask<?>>();
+
+    /** Tasks cancelled but possibly still linked into the wheel */
+    private final ConcurrentLinkedQueue<WheelTask<?>> cancelled =
+        new ConcurrentLinkedQueue<WheelTask<?>>();
+
+    /** Executor for expired tasks, or null to run them in the timer thread */
+    private final Executor executor;
+
+    /** Factory for the timer thread */
+    private final ThreadFactory threadFactory;
+
+    /** Lock held on run state transitions and thread start */
+    private final ReentrantLock mainLock = new ReentrantLock();
+
+    /** The timer thread, started lazily by the first scheduled task */
+    private volatile Thread thread;
+
+    /** Set by the timer thread before parking with no tasks */
+    private volatile boolean idle;
+
+    /** Run state, one of RUNNING, SHUTDOWN, STOP, TERMINATED */
+    private volatile int runState;
+
+    /** Tasks drained from the wheel on shutdownNow */
+    private List<Runnable> drained;
+
+    /** Released when the timer thread terminates */
+    private final CountDownLatch termination = new CountDownLatch(1);
+
+    /**
+     * Creates a new executor with a tick of 10 milliseconds, 512
+     * buckets per wheel level, a thread created by {@link
+     * Executors#defaultThreadFactory}, and tasks run in that thread.
+     */
+    public TimingWheelScheduledExecutor() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new executor with the given tick duration, 512 buckets
+     * per wheel level, a thread created by {@link
+     * Executors#defaultThreadFactory}, and tasks run in that thread.
+     *
+     * @param tickDuration the duration of one tick of the wheel
+     * @param unit the time unit of the tickDuration argument
+     * @throws IllegalArgumentException if tickDuration is not positive
+     * @throws NullPointerException if unit is null
+     */
+    public TimingWheelScheduledExecutor(long tickDuration, TimeUnit unit) {
+        this(tickDuration, unit, DEFAULT_TICKS_PER_WHEEL,
+             Executors.defaultThreadFactory(), null);
+    }
+
+    /**
+     * Creates a new executor with the given parameters.
+     *
+     * @param tickDuration the duration of one tick of the wheel
+     * @param unit the time unit of the tickDuration argument
+     * @param ticksPerWheel the number of buckets at each level of the
+     * wheel, rounded up to a power of two.  More buckets reduce
+     * cascading at the cost of space.
+     * @param threadFactory the factory to use to create the timer thread
+     * @param executor the executor to which expired tasks are handed,
+     * or <tt>null</tt> to run them in the timer thread
+     * @throws IllegalArgumentException if tickDuration or ticksPerWheel
+     * is not positive, or ticksPerWheel is greater than 65536
+     * @throws NullPointerException if unit or threadFactory is null
+     */
+    public TimingWheelScheduledExecutor(long tickDuration, TimeUnit unit,
+                                        int ticksPerWheel,
+                                        ThreadFactory threadFactory,
+                                        Executor executor) {
+        if (unit == null || threadFactory == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(tickDuration);
+        if (nanos <= 0 || ticksPerWheel <= 0 ||
+            ticksPerWheel > MAXIMUM_TICKS_PER_WHEEL)
+            throw new IllegalArgumentException();
+        int b = 0;
+        while ((1 << b) < ticksPerWheel)
+            ++b;
+        if (b == 0)
+            b = 1;
+        this.tickNanos = nanos;
+        this.bits = b;
+        this.mask = (1 << b) - 1;
+        this.levels = 62 / b;
+        this.wheel = new Bucket[levels][1 << b];
+        for (int i = 0; i < levels; ++i)
+            for (int j = 0; j <= mask; ++j)
+                wheel[i][j] = new Bucket();
+        this.threadFactory = threadFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns nanosecond time offset by origin
+     */
+    final long now() {
+        return System.nanoTime() - origin;
+    }
+
+    /**
+     * Returns the trigger time of a delayed action, guarding against
+     * overflow for very long delays.
+     */
+    private long triggerTime(long delay, TimeUnit unit) {
+        long d = unit.toNanos((delay < 0) ? 0 : delay);
+        long t = now() + d;
+        return (t < 0) ? Long.MAX_VALUE : t;
+    }
+
+    /**
+     * A doubly-linked list of the tasks due in one span of ticks.
+     */
+    static final class Bucket {
+        WheelTask<?> head;
+        WheelTask<?> tail;
+
+        void add(WheelTask<?> t) {
+            t.bucket = this;
+            WheelTask<?> p = tail;
+            t.prev = p;
+            t.next = null;
+            if (p == null)
+                head = t;
+            else
+                p.next = t;
+            tail = t;
+        }
+
+        void unlink(WheelTask<?> t) {
+            WheelTask<?> p = t.prev, n = t.next;
+            if (p == null)
+                head = n;
+            else
+                p.next = n;
+            if (n == null)
+                tail = p;
+            else
+                n.prev = p;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        /** Detaches and returns the list of tasks in this bucket. */
+        WheelTask<?> clear() {
+            WheelTask<?> h = head;
+            head = tail = null;
+            return h;
+        }
+    }
+
+    private class WheelTask<V>
+            extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        /** Sequence number to break ties FIFO */
+        private final long sequenceNumber;
+        /** The time the task is enabled to execute in nanoTime units */
+        private volatile long time;
+        /**
+         * Period in nanoseconds for repeating tasks.  A positive
+         * value indicates fixed-rate execution.  A negative value
+         * indicates fixed-delay execution.  A value of 0 indicates a
+         * non-repeating task.
+         */
+        private final long period;
+
+        // Wheel linkage, accessed only by the timer thread
+        Bucket bucket;
+        WheelTask<?> prev;
+        WheelTask<?> next;
+
+        WheelTask(Runnable r, V result, long ns, long period) {
+            super(r, result);
+            this.time = ns;
+            this.period = period;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        WheelTask(Callable<V> callable, long ns) {
+            super(callable);
+            this.time = ns;
+            this.period = 0;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        /**
+         * Returns the tick at or after which this task is due.
+         */
+        long deadlineTick() {
+            long t = time;
+            long k = t / tickNanos;
+            return (k * tickNanos == t) ? k : k + 1;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this) // compare zero ONLY if same object
+                return 0;
+            if (other instanceof WheelTask) {
+                WheelTask<?> x = (WheelTask<?>)other;
+                long diff = time - x.time;
+                if (diff < 0)
+                    return -1;
+                else if (diff > 0)
+                    return 1;
+                else if (sequenceNumber < x.sequenceNumber)
+                    return -1;
+                else
+                    return 1;
+            }
+            long d = (getDelay(TimeUnit.NANOSECONDS) -
+                      other.getDelay(TimeUnit.NANOSECONDS));
+            return (d == 0) ? 0 : ((d < 0) ? -1 : 1);
+        }
+
+        /**
+         * Returns true if this is a periodic (not a one-shot) action.
+         *
+         * @return true if periodic
+         */
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled)
+                TimingWheelScheduledExecutor.this.cancelled.offer(this);
+            return cancelled;
+        }
+
+        /**
+         * Overrides FutureTask version so as to reset/requeue if periodic.
+         */
+        public void run() {
+            if (!isPeriodic())
+                super.run();
+            else if (super.runAndReset() && runState == RUNNING) {
+                long p = period;
+                if (p > 0)
+                    time += p;
+                else
+                    time = triggerTime(-p, TimeUnit.NANOSECONDS);
+                enqueue(this);
+            }
+        }
+    }
+
+    /**
+     * Hands a task to the timer thread, starting the thread if
+     * necessary.
+     */
+    private void enqueue(WheelTask<?> task) {
+        pending.offer(task);
+        Thread t = thread;
+        if (t == null)
+            startThread();
+        else if (idle)
+            LockSupport.unpark(t);
+    }
+
+    /**
+     * Specialized variant of execute for delayed tasks.  Rechecks the
+     * run state after enqueuing, so that a task racing with shutdown
+     * is either rejected or seen by the timer thread.
+     */
+    private void delayedExecute(WheelTask<?> task) {
+        if (runState != RUNNING)
+            throw new RejectedExecutionException();
+        enqueue(task);
+        if (runState != RUNNING && pending.remove(task))
+            throw new RejectedExecutionException();
+    }
+
+    /**
+     * Creates and starts the timer thread unless already started or
+     * shut down.
+     */
+    private void startThread() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (thread == null && runState == RUNNING) {
+                Thread t = threadFactory.newThread(new Worker());
+                if (t == null)
+                    throw new RejectedExecutionException();
+                t.start();
+                thread = t;
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Places a task in the wheel relative to the given next tick.
+     */
+    private void place(WheelTask<?> t, long now) {
+        long d = t.deadlineTick();
+        long delta = d - now;
+        if (delta < 0) {
+            delta = 0;
+            d = now;
+        }
+        int level = 0;
+        while (level < levels - 1 && delta >= (1L << ((level + 1) * bits)))
+            ++level;
+        long span = 1L << ((level + 1) * bits);
+        if (delta >= span)             // clamp to end of top level
+            d = now + span - 1;
+        wheel[level][(int)(d >>> (level * bits)) & mask].add(t);
+    }
+
+    /**
+     * Moves newly scheduled tasks into the wheel and unlinks newly
+     * cancelled ones.
+     */
+    private void transfer() {
+        WheelTask<?> t;
+        while ((t = pending.poll()) != null) {
+            if (!t.isCancelled()) {
+                place(t, tick);
+                ++count;
+            }
+        }
+        while ((t = cancelled.poll()) != null) {
+            Bucket b = t.bucket;
+            if (b != null) {
+                b.unlink(t);
+                --count;
+            }
+        }
+    }
+
+    /**
+     * Cascades higher levels if due, then runs the tasks in the
+     * current level-0 bucket and advances to the next tick.  Tasks
+     * are unlinked one at a time so that any left when stopping are
+     * still found by drainAll.
+     */
+    private void expireTick() {
+        long k = tick;
+        int index = (int)k & mask;
+        if (index == 0) {
+            for (int level = 1; level < levels; ++level) {
+                int i = (int)(k >>> (level * bits)) & mask;
+                WheelTask<?> t = wheel[level][i].clear();
+                while (t != null) {
+                    WheelTask<?> n = t.next;
+                    t.prev = t.next = null;
+                    place(t, k);
+                    t = n;
+                }
+                if (i != 0)
+                    break;
+            }
+        }
+        tick = k + 1;
+        Bucket b = wheel[0][index];
+        WheelTask<?> t;
+        while (runState < STOP && (t = b.head) != null) {
+            b.unlink(t);
+            --count;
+            if (!t.isCancelled())
+                fire(t);
+        }
+    }
+
+    /**
+     * Runs or hands off an expired task.
+     */
+    private void fire(WheelTask<?> t) {
+        Executor e = executor;
+        if (e == null) {
+            t.run();
+            // Clear any interrupt from cancellation of the task
+            if (runState < STOP)
+                Thread.interrupted();
+        } else {
+            try {
+                e.execute(t);
+            } catch (RejectedExecutionException ex) {
+                t.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Cancels all periodic tasks in the wheel, on first noticing
+     * shutdown.
+     */
+    private void cancelPeriodicTasks() {
+        for (Bucket[] buckets : wheel) {
+            for (Bucket b : buckets) {
+                WheelTask<?> t = b.head;
+                while (t != null) {
+                    WheelTask<?> n = t.next;
+                    if (t.isPeriodic()) {
+                        b.unlink(t);
+                        --count;
+                        t.cancel(false);
+                    }
+                    t = n;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all tasks from the wheel and the pending queue, and
+     * returns those not cancelled.  Called only by the timer thread,
+     * or when there is none.
+     */
+    private List<Runnable> drainAll() {
+        ArrayList<Runnable> list = new ArrayList<Runnable>();
+        for (Bucket[] buckets : wheel) {
+            for (Bucket b : buckets) {
+                WheelTask<?> t = b.clear();
+                while (t != null) {
+                    WheelTask<?> n = t.next;
+                    t.prev = t.next = null;
+                    t.bucket = null;
+                    if (!t.isCancelled())
+                        list.add(t);
+                    t = n;
+                }
+            }
+        }
+        count = 0;
+        WheelTask<?> t;
+        while ((t = pending.poll()) != null)
+            if (!t.isCancelled())
+                list.add(t);
+        cancelled.clear();
+        return list;
+    }
+
+    /**
+     * Main loop of the timer thread.
+     */
+    private final class Worker implements Runnable {
+        public void run() {
+            try {
+                tick = now() / tickNanos;
+                while (runState < STOP) {
+                    if (runState == SHUTDOWN && !shutdownSeen) {
+                        shutdownSeen = true;
+                        transfer();
+                        cancelPeriodicTasks();
+                    }
+                    long target = now() / tickNanos;
+                    transfer();
+                    if (count == 0)
+                        tick = Math.max(tick, target + 1);
+                    while (tick <= target && runState < STOP) {
+                        expireTick();
+                        transfer();
+                    }
+                    if (runState >= STOP)
+                        break;
+                    if (count == 0) {
+                        if (runState != RUNNING && pending.isEmpty())
+                            break;
+                        idle = true;
+                        if (pending.isEmpty() && runState == RUNNING)
+                            LockSupport.park(this);
+                        idle = false;
+                    } else {
+                        long delay = tick * tickNanos - now();
+                        if (delay > 0)
+                            LockSupport.parkNanos(this, delay);
+                    }
+                }
+            } finally {
+                terminate();
+            }
+        }
+    }
+
+    /**
+     * Called by the timer thread on exit.  Drains remaining tasks if
+     * stopping, then releases waiters.
+     */
+    private void terminate() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            List<Runnable> list = drainAll();
+            if (drained == null)
+                drained = list;
+            else
+                drained.addAll(list);
+            runState = TERMINATED;
+        } finally {
+            mainLock.unlock();
+        }
+        termination.countDown();
+    }
+
+    /**
+     * Initiates an orderly shutdown in which delayed tasks are still
+     * executed when due, but periodic tasks are cancelled and no new
+     * tasks will be accepted.  Invocation has no additional effect if
+     * already shut down.
+     */
+    public void shutdown() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (runState == RUNNING)
+                runState = SHUTDOWN;
+            Thread t = thread;
+            if (t == null)
+                terminateWithoutThread();
+            else
+                LockSupport.unpark(t);
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Terminates when the timer thread was never started.  Call only
+     * while holding mainLock.
+     */
+    private void terminateWithoutThread() {
+        if (runState != TERMINATED) {
+            if (runState == STOP)
+                drained = drainAll();
+            runState = TERMINATED;
+            termination.countDown();
+        }
+    }
+
+    /**
+     * Attempts to stop all actively executing tasks, halts the
+     * processing of waiting tasks, and returns a list of the tasks
+     * that were awaiting execution.  Since only the timer thread may
+     * traverse the wheel, this method waits for it to stop, unless
+     * called from a task running in that thread.
+     *
+     * <p>There are no guarantees beyond best-effort attempts to stop
+     * processing actively executing tasks.  This implementation
+     * cancels tasks via {@link Thread#interrupt}, so any task that
+     * fails to respond to interrupts may never terminate.
+     *
+     * @return list of tasks that never commenced execution.  Each
+     * element of this list is a {@link ScheduledFuture}.
+     */
+    public List<Runnable> shutdownNow() {
+        Thread t;
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (runState < STOP)
+                runState = STOP;
+            t = thread;
+            if (t == null) {
+                terminateWithoutThread();
+                return takeDrained();
+            }
+            if (t == Thread.currentThread()) {
+                drained = drainAll();
+                return takeDrained();
+            }
+            t.interrupt();
+            LockSupport.unpark(t);
+        } finally {
+            mainLock.unlock();
+        }
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                termination.await();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        mainLock.lock();
+        try {
+            return takeDrained();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Returns and clears the list of drained tasks.  Call only while
+     * holding mainLock.
+     */
+    private List<Runnable> takeDrained() {
+        List<Runnable> list = drained;
+        drained = new ArrayList<Runnable>();
+        return (list == null) ? new ArrayList<Runnable>() : list;
+    }
+
+    public boolean isShutdown() {
+        return runState != RUNNING;
+    }
+
+    public boolean isTerminated() {
+        return runState == TERMINATED;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public ScheduledFuture<?> schedule(Runnable command,
+                                       long delay,
+                                       TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        WheelTask<Void> t =
+            new WheelTask<Void>(command, null, triggerTime(delay, unit), 0);
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable,
+                                           long delay,
+                                           TimeUnit unit) {
+        if (callable == null || unit == null)
+            throw new NullPointerException();
+        WheelTask<V> t =
+            new WheelTask<V>(callable, triggerTime(delay, unit));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command,
+                                                  long initialDelay,
+                                                  long period,
+                                                  TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (period <= 0)
+            throw new IllegalArgumentException();
+        WheelTask<Void> t =
+            new WheelTask<Void>(command, null,
+                                triggerTime(initialDelay, unit),
+                                unit.toNanos(period));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+                                                     long initialDelay,
+                                                     long delay,
+                                                     TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (delay <= 0)
+            throw new IllegalArgumentException();
+        WheelTask<Void> t =
+            new WheelTask<Void>(command, null,
+                                triggerTime(initialDelay, unit),
+                                -unit.toNanos(delay));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * Executes command with zero required delay, that is, at the next
+     * tick.  This has effect equivalent to
+     * <tt>schedule(command, 0, anyUnit)</tt>.
+     *
+     * @param command the task to execute
+     * @throws RejectedExecutionException if this executor has been
+     * shut down
+     * @throws NullPointerException if command is null
+     */
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    // Override AbstractExecutorService methods
+
+    public Future<?> submit(Runnable task) {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> Future<T> submit(Runnable task, T result) {
+        return schedule(Executors.callable(task, result),
+                        0, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+}
@@ -450,6 +450,13 @@ public abstract class AbstractQueuedSynchronizer
          */
         Node nextWaiter;
 
+        /**
+         * The System.nanoTime at which the node was enqueued by
+         * addWaiter while contention profiling was enabled, else
+         * zero.  Accessed only by the enqueuing thread.
+         */
+        long enqueueTime;
+
         /**
          * Returns true if node is waiting in shared mode
          */
@@ -582,6 +589,8 @@ public abstract class AbstractQueuedSynchronizer
      */
     private Node addWaiter(Node mode) {
         Node node = new Node(Thread.currentThread(), mode);
+        if (contentionProfiling)
+            profileEnqueue(node);
         // Try the fast path of enq; backup to full enq on failure
         Node pred = tail;
         if (pred != null) {
@@ -603,6 +612,8 @@ public abstract class AbstractQueuedSynchronizer
      * @param node the node
      */
     private void setHead(Node node) {
+        if (node.enqueueTime != 0L)
+            profileWait(node);
         head = node;
         node.thread = null;
         node.prev = null;
@@ -719,6 +730,8 @@ public abstract class AbstractQueuedSynchronizer
         if (node == null)
 	    return;
 
+        if (node.enqueueTime != 0L)
+            profileWait(node);
 	node.thread = null;
 
 	// Skip cancelled predecessors
@@ -808,6 +821,8 @@ public abstract class AbstractQueuedSynchronizer
      * @return {@code true} if interrupted
      */
     private final boolean parkAndCheckInterrupt() {
+        if (contentionProfiling)
+            profilePark();
         LockSupport.park(this);
         return Thread.interrupted();
     }
@@ -901,8 +916,11 @@ public abstract class AbstractQueuedSynchronizer
                     return false;
                 }
                 if (nanosTimeout > spinForTimeoutThreshold &&
-                    shouldParkAfterFailedAcquire(p, node))
+                    shouldParkAfterFailedAcquire(p, node)) {
+                    if (contentionProfiling)
+                        profilePark();
                     LockSupport.parkNanos(this, nanosTimeout);
+                }
                 long now = System.nanoTime();
                 nanosTimeout -= now - lastTime;
                 lastTime = now;
@@ -1007,8 +1025,11 @@ public abstract class AbstractQueuedSynchronizer
                     return false;
                 }
                 if (nanosTimeout > spinForTimeoutThreshold &&
-                    shouldParkAfterFailedAcquire(p, node))
+                    shouldParkAfterFailedAcquire(p, node)) {
+                    if (contentionProfiling)
+                        profilePark();
                     LockSupport.parkNanos(this, nanosTimeout);
+                }
                 long now = System.nanoTime();
                 nanosTimeout -= now - lastTime;
                 lastTime = now;
@@ -1175,6 +1196,8 @@ public abstract class AbstractQueuedSynchronizer
      *        can represent anything you like.
      */
     public final void acquire(int arg) {
+        if (contentionProfiling)
+            profileAcquire();
         if (!tryAcquire(arg) &&
             acquireQueued(addWaiter(Node.EXCLUSIVE), arg))
             selfInterrupt();
@@ -1197,6 +1220,8 @@ public abstract class AbstractQueuedSynchronizer
     public final void acquireInterruptibly(int arg) throws InterruptedException {
         if (Thread.interrupted())
             throw new InterruptedException();
+        if (contentionProfiling)
+            profileAcquire();
         if (!tryAcquire(arg))
             doAcquireInterruptibly(arg);
     }
@@ -1221,6 +1246,8 @@ public abstract class AbstractQueuedSynchronizer
     public final boolean tryAcquireNanos(int arg, long nanosTimeout) throws InterruptedException {
 	if (Thread.interrupted())
 	    throw new InterruptedException();
+        if (contentionProfiling)
+            profileAcquire();
 	return tryAcquire(arg) ||
 	    doAcquireNanos(arg, nanosTimeout);
     }
@@ -1257,6 +1284,8 @@ public abstract class AbstractQueuedSynchronizer
      *        and can represent anything you like.
      */
     public final void acquireShared(int arg) {
+        if (contentionProfiling)
+            profileAcquire();
         if (tryAcquireShared(arg) < 0)
             doAcquireShared(arg);
     }
@@ -1277,6 +1306,8 @@ public abstract class AbstractQueuedSynchronizer
     public final void acquireSharedInterruptibly(int arg) throws InterruptedException {
         if (Thread.interrupted())
             throw new InterruptedException();
+        if (contentionProfiling)
+            profileAcquire();
         if (tryAcquireShared(arg) < 0)
             doAcquireSharedInterruptibly(arg);
     }
@@ -1300,6 +1331,8 @@ public abstract class AbstractQueuedSynchronizer
     public final boolean tryAcquireSharedNanos(int arg, long nanosTimeout) throws InterruptedException {
 	if (Thread.interrupted())
 	    throw new InterruptedException();
+        if (contentionProfiling)
+            profileAcquire();
 	return tryAcquireShared(arg) >= 0 ||
 	    doAcquireSharedNanos(arg, nanosTimeout);
     }
@@ -1564,6 +1597,102 @@ public abstract class AbstractQueuedSynchronizer
             "[State = " + s + ", " + q + "empty queue]";
     }
 
+    // Contention profiling
+
+    /**
+     * True if acquires record contention statistics. Off until
+     * enabled through the LockContentionMXBean, which also reads the
+     * system property that enables it at startup, so that nothing is
+     * read here during VM bootstrap.
+     */
+    static volatile boolean contentionProfiling;
+
+    /**
+     * Contention statistics of this synchronizer, lazily created by
+     * the first acquire while contention profiling is enabled.
+     */
+    private transient volatile LockContention.Stats contentionStats;
+
+    /**
+     * Returns the platform {@link java.lang.management.LockContentionMXBean
+     * LockContentionMXBean}, which controls contention profiling of
+     * synchronizers based on this class, and reports their statistics.
+     * The MXBean can also be obtained from {@link
+     * java.lang.management.ManagementFactory#getLockContentionMXBean}
+     * or the {@link
+     * java.lang.management.ManagementFactory#getPlatformMBeanServer
+     * platform <tt>MBeanServer</tt>}.
+     *
+     * @return the {@code LockContentionMXBean}
+     * @since 1.7
+     */
+    public static java.lang.management.LockContentionMXBean
+        getLockContentionMXBean() {
+        return LockContention.getInstance();
+    }
+
+    /**
+     * Returns the contention statistics of this synchronizer,
+     * creating and registering them if necessary.
+     */
+    private LockContention.Stats contentionStats() {
+        LockContention.Stats s = contentionStats;
+        if (s == null) {
+            s = new LockContention.Stats(this);
+            if (unsafe.compareAndSwapObject(this, contentionStatsOffset,
+                                            null, s))
+                LockContention.register(s);
+            else
+                s = contentionStats;
+        }
+        return s;
+    }
+
+    /**
+     * Records an acquire attempt made through one of the acquire
+     * methods. Attempts that subclasses or their locks complete
+     * without calling these, such as the barging CAS of
+     * ReentrantLock.lock, are not seen. Called only when profiling.
+     */
+    private void profileAcquire() {
+        contentionStats().slowPathAcquires.increment();
+    }
+
+    /**
+     * Records a park of a queued thread. Called only when profiling.
+     */
+    private void profilePark() {
+        contentionStats().parks.increment();
+    }
+
+    /**
+     * Records a contended acquire about to enqueue the given node,
+     * along with the (bounded, and possibly stale) number of threads
+     * already queued, and stamps the node so its wait time is
+     * recorded when it leaves the queue. Called only when profiling.
+     */
+    private void profileEnqueue(Node node) {
+        int queued = 0;
+        Node h = head;
+        for (Node p = tail; p != null && p != h &&
+                 queued < LockContention.MAX_COUNTED_QUEUE_LENGTH;
+             p = p.prev)
+            ++queued;
+        contentionStats().enqueued(queued);
+        long now = System.nanoTime();
+        node.enqueueTime = (now == 0L) ? 1L : now;
+    }
+
+    /**
+     * Records the time the given stamped node spent queued, upon its
+     * acquire or cancellation.
+     */
+    private void profileWait(Node node) {
+        long waited = System.nanoTime() - node.enqueueTime;
+        node.enqueueTime = 0L;
+        contentionStats().waitTime.add(waited);
+    }
+
 
     // Internal support methods for Conditions
 
@@ -2218,6 +2347,7 @@ public abstract class AbstractQueuedSynchronizer
     private static final long tailOffset;
     private static final long waitStatusOffset;
     private static final long nextOffset;
+    private static final long contentionStatsOffset;
 
     static {
         try {
@@ -2231,6 +2361,9 @@ public abstract class AbstractQueuedSynchronizer
                 (Node.class.getDeclaredField("waitStatus"));
             nextOffset = unsafe.objectFieldOffset
                 (Node.class.getDeclaredField("next"));
+            contentionStatsOffset = unsafe.objectFieldOffset
+                (AbstractQueuedSynchronizer.class.getDeclaredField
+                 ("contentionStats"));
 
         } catch (Exception ex) { throw new Error(ex); }
     }
@@ -0,0 +1,205 @@
+/*
+ * @(#)LockContention.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent.locks;
+
+import java.lang.management.LockContentionInfo;
+import java.lang.management.LockContentionMXBean;
+import java.lang.management.ManagementPermission;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LockContention is the implementation class of LockContentionMXBean,
+ * and holds the contention statistics that AbstractQueuedSynchronizer
+ * records while contention profiling is enabled.
+ *
+ * @see java.lang.management.LockContentionMXBean
+ * @see AbstractQueuedSynchronizer
+ * @since 1.7
+ */
+class LockContention implements LockContentionMXBean {
+
+    private static final int BUCKETS = LockContentionInfo.QUEUE_LENGTH_BUCKETS;
+
+    /**
+     * Queues are counted no further than this when recording queue
+     * lengths, which is enough to select the last histogram bucket.
+     */
+    static final int MAX_COUNTED_QUEUE_LENGTH = 1 << (BUCKETS - 2);
+
+    /**
+     * Statistics of one synchronizer.  Each Stats weakly refers to its
+     * synchronizer, so profiling does not retain otherwise unreachable
+     * locks; Stats of collected synchronizers are expunged from the
+     * registry via the reference queue.  Counts are LongAdders since
+     * the synchronizers worth profiling are, by definition, contended.
+     */
+    static final class Stats extends WeakReference<AbstractQueuedSynchronizer> {
+        final String className;
+        final int identityHashCode;
+        final LongAdder slowPathAcquires = new LongAdder();
+        final LongAdder contended = new LongAdder();
+        final LongAdder parks = new LongAdder();
+        final LongAdder waitTime = new LongAdder();
+        final LongAdder[] queueLengths = new LongAdder[BUCKETS];
+
+        Stats(AbstractQueuedSynchronizer sync) {
+            super(sync, collected);
+            className = sync.getClass().getName();
+            identityHashCode = System.identityHashCode(sync);
+            for (int i = 0; i < BUCKETS; ++i)
+                queueLengths[i] = new LongAdder();
+        }
+
+        /**
+         * Records a contended acquire that found the given number of
+         * threads queued ahead of it.
+         */
+        void enqueued(int queued) {
+            contended.increment();
+            int b = 32 - Integer.numberOfLeadingZeros(queued);
+            queueLengths[b < BUCKETS ? b : BUCKETS - 1].increment();
+        }
+
+        void reset() {
+            slowPathAcquires.reset();
+            contended.reset();
+            parks.reset();
+            waitTime.reset();
+            for (LongAdder a : queueLengths)
+                a.reset();
+        }
+
+        LockContentionInfo toInfo() {
+            long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i)
+                histogram[i] = queueLengths[i].sum();
+            return new LockContentionInfo(className, identityHashCode,
+                                          slowPathAcquires.sum(),
+                                          contended.sum(),
+                                          parks.sum(), waitTime.sum(),
+                                          histogram);
+        }
+    }
+
+    /** Stats of all synchronizers profiled so far */
+    private static final Set<Stats> registry =
+        Collections.newSetFromMap(new ConcurrentHashMap<Stats,Boolean>());
+
+    /** Queue of Stats whose synchronizers have been collected */
+    private static final ReferenceQueue<AbstractQueuedSynchronizer> collected =
+        new ReferenceQueue<AbstractQueuedSynchronizer>();
+
+    /**
+     * Adds newly created Stats to the registry.
+     */
+    static void register(Stats s) {
+        expungeStaleStats();
+        registry.add(s);
+    }
+
+    private static void expungeStaleStats() {
+        Object r;
+        while ((r = collected.poll()) != null)
+            registry.remove(r);
+    }
+
+    /**
+     * Orders hottest first: by decreasing wait time, then by
+     * decreasing number of contended acquires.
+     */
+    private static final Comparator<LockContentionInfo> HOTTEST_FIRST =
+        new Comparator<LockContentionInfo>() {
+            public int compare(LockContentionInfo a, LockContentionInfo b) {
+                long x = a.getWaitTime(), y = b.getWaitTime();
+                if (x == y) {
+                    x = a.getContendedAcquireCount();
+                    y = b.getContendedAcquireCount();
+                }
+                return (x > y) ? -1 : ((x == y) ? 0 : 1);
+            }
+        };
+
+    private static LockContention instance;
+
+    static synchronized LockContention getInstance() {
+        if (instance == null)
+            instance = new LockContention();
+        return instance;
+    }
+
+    /** Constructor of LockContention which is the implementation class
+     *  of LockContentionMXBean.  Enables profiling if requested by
+     *  the system property, which is read here rather than when
+     *  AbstractQueuedSynchronizer is initialized early in VM startup.
+     */
+    private LockContention() {
+        boolean enable =
+            AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+                public Boolean run() {
+                    return Boolean.getBoolean
+                        ("java.util.concurrent.locks.contentionProfiling");
+                }
+            });
+        if (enable)
+            AbstractQueuedSynchronizer.contentionProfiling = true;
+    }
+
+    private static void checkAccess(String name) {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(new ManagementPermission(name));
+    }
+
+    public boolean isLockContentionProfilingEnabled() {
+        return AbstractQueuedSynchronizer.contentionProfiling;
+    }
+
+    public void setLockContentionProfilingEnabled(boolean enable) {
+        checkAccess("control");
+        AbstractQueuedSynchronizer.contentionProfiling = enable;
+    }
+
+    public LockContentionInfo[] getLockContentionInfo() {
+        return getLockContentionInfo(Integer.MAX_VALUE);
+    }
+
+    public LockContentionInfo[] getLockContentionInfo(int maxLocks) {
+        if (maxLocks < 0)
+            throw new IllegalArgumentException("Invalid maxLocks parameter: "
+                                               + maxLocks);
+        checkAccess("monitor");
+        expungeStaleStats();
+        ArrayList<LockContentionInfo> infos =
+            new ArrayList<LockContentionInfo>();
+        for (Stats s : registry) {
+            if (s.get() != null && s.contended.sum() != 0L)
+                infos.add(s.toInfo());
+        }
+        LockContentionInfo[] a =
+            infos.toArray(new LockContentionInfo[infos.size()]);
+        Arrays.sort(a, HOTTEST_FIRST);
+        return (a.length <= maxLocks) ? a : Arrays.copyOf(a, maxLocks);
+    }
+
+    public void resetLockContentionStatistics() {
+        checkAccess("control");
+        expungeStaleStats();
+        for (Stats s : registry)
+            s.reset();
+    }
+}
@@ -48,6 +48,13 @@ class JarFile extends ZipFile {
     private boolean verify;
     private boolean computedHasClassPathAttribute;
     private boolean hasClassPathAttribute;
+    // true if ZipFile reads this file without the native zip library
+    private boolean javaCentralDirectory;
+
+    // Mirrors the choice made by ZipFile for OPEN_READ files
+    private static final boolean useJavaCentralDirectory =
+        Boolean.parseBoolean(AccessController.doPrivileged(
+            new GetPropertyAction("sun.zip.javaCentralDirectory")));
 
     // Set up JavaUtilJarAccess in SharedSecrets
     static {
@@ -134,6 +141,7 @@ class JarFile extends ZipFile {
     public JarFile(File file, boolean verify, int mode) throws IOException {
 	super(file, mode);
 	this.verify = verify;
+	this.javaCentralDirectory = useJavaCentralDirectory && mode == OPEN_READ;
     }
 
     /**
@@ -174,6 +182,26 @@ class JarFile extends ZipFile {
 
     private native String[] getMetaInfEntryNames();
 
+    /*
+     * Returns the names of the "META-INF/" entries, or null if there
+     * are none.  The native implementation reads the native zip
+     * library's data, so it cannot be used if there is none.
+     */
+    private String[] metaInfEntryNames() {
+        if (!javaCentralDirectory) {
+            return getMetaInfEntryNames();
+        }
+        List<String> names = new ArrayList<String>();
+        Enumeration<? extends ZipEntry> e = super.entries();
+        while (e.hasMoreElements()) {
+            String name = e.nextElement().getName();
+            if (name.regionMatches(true, 0, "META-INF/", 0, 9)) {
+                names.add(name);
+            }
+        }
+        return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+    }
+
     /**
      * Returns the <code>JarEntry</code> for the given entry name or
      * <code>null</code> if not found.
@@ -276,7 +304,7 @@ class JarFile extends ZipFile {
         }
 
         if (verify) {
-            String[] names = getMetaInfEntryNames();
+            String[] names = metaInfEntryNames();
             if (names != null) {
                 for (int i = 0; i < names.length; i++) {
                     String name = names[i].toUpperCase(Locale.ENGLISH);
@@ -307,7 +335,7 @@ class JarFile extends ZipFile {
 
 	// Verify "META-INF/" entries...
 	try {
-	    String[] names = getMetaInfEntryNames();
+	    String[] names = metaInfEntryNames();
 	    if (names != null) {
 		for (int i = 0; i < names.length; i++) {
 		    JarEntry e = getJarEntry(names[i]);
@@ -433,7 +461,7 @@ class JarFile extends ZipFile {
             if (manEntry == null) {
                 // If not found, then iterate through all the "META-INF/"
                 // entries to find a match.
-                String[] names = getMetaInfEntryNames();
+                String[] names = metaInfEntryNames();
                 if (names != null) {
                     for (int i = 0; i < names.length; i++) {
                         if (MANIFEST_NAME.equals(
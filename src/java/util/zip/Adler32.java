@@ -7,6 +7,8 @@
 
 package java.util.zip;
 
+import java.nio.ByteBuffer;
+
 /**
  * A class that can be used to compute the Adler-32 checksum of a data
  * stream. An Adler-32 checksum is almost as reliable as a CRC-32 but
@@ -56,6 +58,41 @@ class Adler32 implements Checksum {
 	adler = updateBytes(adler, b, 0, b.length);
     }
 
+    /**
+     * Updates the checksum with the bytes from the specified buffer.
+     *
+     * The checksum is updated using
+     * buffer.{@link java.nio.Buffer#remaining() remaining()}
+     * bytes starting at
+     * buffer.{@link java.nio.Buffer#position() position()}
+     * Upon return, the buffer's position will be updated to its
+     * limit; its limit will not have been changed.  A direct or
+     * read-only buffer is not read in place: its contents are copied
+     * into a heap array, a bounded chunk at a time.
+     *
+     * @param buffer the ByteBuffer to update the checksum with
+     * @since 1.7
+     */
+    public void update(ByteBuffer buffer) {
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        int rem = limit - pos;
+        if (rem <= 0)
+            return;
+        if (buffer.hasArray()) {
+            adler = updateBytes(adler, buffer.array(),
+                                pos + buffer.arrayOffset(), rem);
+        } else {
+            byte[] b = new byte[Math.min(rem, 4096)];
+            while (buffer.hasRemaining()) {
+                int n = Math.min(buffer.remaining(), b.length);
+                buffer.get(b, 0, n);
+                adler = updateBytes(adler, b, 0, n);
+            }
+        }
+        buffer.position(limit);
+    }
+
     /**
      * Resets checksum to initial value.
      */
@@ -70,6 +107,38 @@ class Adler32 implements Checksum {
 	return (long)adler & 0xffffffffL;
     }
 
+    /**
+     * Returns the Adler-32 checksum of the concatenation of two byte
+     * sequences, given the checksum of each and the length of the
+     * second.  This allows the checksum of a large stream to be
+     * computed in independent pieces, for example in parallel, and
+     * then combined in order.
+     *
+     * @param adler1 the Adler-32 value of the first sequence
+     * @param adler2 the Adler-32 value of the second sequence
+     * @param len2 the length in bytes of the second sequence
+     * @return the Adler-32 value of the first sequence followed by the
+     *         second
+     * @throws IllegalArgumentException if <tt>len2</tt> is negative
+     * @since 1.7
+     */
+    public static long combine(long adler1, long adler2, long len2) {
+        if (len2 < 0)
+            throw new IllegalArgumentException("negative length");
+        final long BASE = 65521;    // largest prime smaller than 65536
+        long rem = len2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) +
+            BASE - rem;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+        if (sum2 >= BASE) sum2 -= BASE;
+        return sum1 | (sum2 << 16);
+    }
+
     private native static int update(int adler, int b);
     private native static int updateBytes(int adler, byte[] b, int off,
 					  int len);
@@ -7,6 +7,8 @@
 
 package java.util.zip;
 
+import java.nio.ByteBuffer;
+
 /**
  * A class that can be used to compute the CRC-32 of a data stream.
  *
@@ -54,6 +56,41 @@ class CRC32 implements Checksum {
 	crc = updateBytes(crc, b, 0, b.length);
     }
 
+    /**
+     * Updates the CRC-32 with the bytes from the specified buffer.
+     *
+     * The checksum is updated using
+     * buffer.{@link java.nio.Buffer#remaining() remaining()}
+     * bytes starting at
+     * buffer.{@link java.nio.Buffer#position() position()}
+     * Upon return, the buffer's position will be updated to its
+     * limit; its limit will not have been changed.  A direct or
+     * read-only buffer is not read in place: its contents are copied
+     * into a heap array, a bounded chunk at a time.
+     *
+     * @param buffer the ByteBuffer to update the checksum with
+     * @since 1.7
+     */
+    public void update(ByteBuffer buffer) {
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        int rem = limit - pos;
+        if (rem <= 0)
+            return;
+        if (buffer.hasArray()) {
+            crc = updateBytes(crc, buffer.array(),
+                              pos + buffer.arrayOffset(), rem);
+        } else {
+            byte[] b = new byte[Math.min(rem, 4096)];
+            while (buffer.hasRemaining()) {
+                int n = Math.min(buffer.remaining(), b.length);
+                buffer.get(b, 0, n);
+                crc = updateBytes(crc, b, 0, n);
+            }
+        }
+        buffer.position(limit);
+    }
+
     /**
      * Resets CRC-32 to initial value.
      */
@@ -68,6 +105,72 @@ class CRC32 implements Checksum {
 	return (long)crc & 0xffffffffL;
     }
 
+    /**
+     * Returns the CRC-32 of the concatenation of two byte sequences,
+     * given the CRC-32 of each and the length of the second.  This
+     * allows the checksum of a large stream to be computed in
+     * independent pieces, for example in parallel, and then combined
+     * in order.  The running time is logarithmic in <tt>len2</tt>.
+     *
+     * @param crc1 the CRC-32 value of the first sequence
+     * @param crc2 the CRC-32 value of the second sequence
+     * @param len2 the length in bytes of the second sequence
+     * @return the CRC-32 value of the first sequence followed by the
+     *         second
+     * @throws IllegalArgumentException if <tt>len2</tt> is negative
+     * @since 1.7
+     */
+    public static long combine(long crc1, long crc2, long len2) {
+        if (len2 < 0)
+            throw new IllegalArgumentException("negative length");
+        // Apply len2 zero bytes to crc1, using the operator for one
+        // zero bit (odd) squared repeatedly to get those for powers of
+        // two zero bytes, as in zlib's crc32_combine
+        int c = (int) crc1;
+        if (len2 != 0) {
+            int[] even = new int[32];
+            int[] odd = new int[32];
+            odd[0] = 0xedb88320;        // CRC-32 polynomial
+            for (int n = 1, row = 1; n < 32; n++, row <<= 1)
+                odd[n] = row;
+            square(even, odd);          // two zero bits
+            square(odd, even);          // four zero bits
+            for (;;) {
+                square(even, odd);
+                if ((len2 & 1) != 0)
+                    c = times(even, c);
+                if ((len2 >>>= 1) == 0)
+                    break;
+                square(odd, even);
+                if ((len2 & 1) != 0)
+                    c = times(odd, c);
+                if ((len2 >>>= 1) == 0)
+                    break;
+            }
+        }
+        return ((long) (c ^ (int) crc2)) & 0xffffffffL;
+    }
+
+    /*
+     * Multiplies the GF(2) 32x32 matrix mat by the vector vec.
+     */
+    private static int times(int[] mat, int vec) {
+        int sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0)
+                sum ^= mat[i];
+        }
+        return sum;
+    }
+
+    /*
+     * Sets square to the square of the GF(2) 32x32 matrix mat.
+     */
+    private static void square(int[] square, int[] mat) {
+        for (int n = 0; n < 32; n++)
+            square[n] = times(mat, mat[n]);
+    }
+
     private native static int update(int crc, int b);
     private native static int updateBytes(int crc, byte[] b, int off, int len);
 }
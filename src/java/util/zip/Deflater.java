@@ -7,6 +7,9 @@
 
 package java.util.zip;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 /**
  * This class provides support for general purpose compression using the
  * popular ZLIB compression library. The ZLIB compression library was
@@ -56,11 +59,14 @@ public
 class Deflater {
 
     private final ZStreamRef zsRef;
+    final boolean nowrap;       // for ZStreamPool
     private byte[] buf = new byte[0];
     private int off, len;
+    private ByteBuffer input;   // input set as a ByteBuffer, or null
     private int level, strategy;
     private boolean setParams;
     private boolean finish, finished;
+    private boolean pooled;     // idle in ZStreamPool
 
     /**
      * Compression method for the deflate algorithm (the only one currently
@@ -121,7 +127,9 @@ class Deflater {
     public Deflater(int level, boolean nowrap) {
 	this.level = level;
 	this.strategy = DEFAULT_STRATEGY;
+        this.nowrap = nowrap;
         this.zsRef = new ZStreamRef(init(level, DEFAULT_STRATEGY, nowrap));
+        ZStreamPool.deflaterCreated();
     }
 
     /** 
@@ -157,9 +165,11 @@ class Deflater {
             throw new ArrayIndexOutOfBoundsException();
         }
         synchronized (zsRef) {
+            ensureNotPooled();
             this.buf = b;
             this.off = off;
             this.len = len;
+            this.input = null;
         }
     }
 
@@ -173,6 +183,42 @@ class Deflater {
 	setInput(b, 0, b.length);
     }
 
+    /**
+     * Sets input data for compression. This should be called whenever
+     * needsInput() returns true indicating that more input data is required.
+     * <p>
+     * The given buffer's position will be advanced as deflate
+     * operations are performed, up to the buffer's limit. The input
+     * buffer may be modified (refilled) between deflate operations;
+     * doing so is equivalent to creating a new buffer and setting it
+     * with this method.
+     * <p>
+     * The array of a heap buffer is passed to the native zlib library
+     * directly.  A direct or read-only buffer is not read in place: its
+     * contents are copied into a heap array, a bounded chunk at a time,
+     * so a direct buffer saves no copying over a heap buffer.
+     * <p>
+     * Modifying the input buffer's contents, position, or limit
+     * concurrently with a deflate operation will result in undefined
+     * behavior, which may include incorrect operation results or
+     * operation failure.
+     *
+     * @param input the input data bytes
+     * @see Deflater#needsInput
+     * @since 1.7
+     */
+    public void setInput(ByteBuffer input) {
+        if (input == null) {
+            throw new NullPointerException();
+        }
+        synchronized (zsRef) {
+            ensureNotPooled();
+            this.input = input;
+            this.buf = new byte[0];
+            this.off = this.len = 0;
+        }
+    }
+
     /**
      * Sets preset dictionary for compression. A preset dictionary is used
      * when the history buffer can be predetermined. When the data is later
@@ -228,6 +274,7 @@ class Deflater {
 	    throw new IllegalArgumentException();
 	}
         synchronized (zsRef) {
+            ensureOpen();
             if (this.strategy != strategy) {
                 this.strategy = strategy;
                 setParams = true;
@@ -245,6 +292,7 @@ class Deflater {
 	    throw new IllegalArgumentException("invalid compression level");
 	}
         synchronized (zsRef) {
+            ensureOpen();
             if (this.level != level) {
                 this.level = level;
                 setParams = true;
@@ -259,7 +307,10 @@ class Deflater {
      * should be called in order to provide more input
      */
     public boolean needsInput() {
-	return len <= 0;
+        synchronized (zsRef) {
+            ByteBuffer input = this.input;
+            return input == null ? len <= 0 : !input.hasRemaining();
+        }
     }
 
     /**
@@ -268,6 +319,7 @@ class Deflater {
      */
     public void finish() {
         synchronized (zsRef) {
+            ensureNotPooled();
             finish = true;
         }
     }
@@ -302,8 +354,7 @@ class Deflater {
 	    throw new ArrayIndexOutOfBoundsException();
 	}
         synchronized (zsRef) {
-            ensureOpen();
-	    return deflateBytes(zsRef.address(), b, off, len);
+            return deflate0(b, off, len);
         }
     }
 
@@ -319,6 +370,109 @@ class Deflater {
 	return deflate(b, 0, b.length);
     }
 
+    /**
+     * Compresses the input data and fills the specified buffer with
+     * compressed data. Returns actual number of bytes of compressed
+     * data. A return value of 0 indicates that needsInput() should be
+     * called in order to determine if more input data is required.
+     *
+     * <p>On success, the position of the given {@code output} byte buffer
+     * will be advanced by as many bytes as were produced by the
+     * operation, which is equal to the number returned by this method.
+     * A direct buffer is not written in place: the data is produced
+     * into a heap array and then copied into it.
+     *
+     * <p>If the {@link #setInput(ByteBuffer)} method was called to provide
+     * a buffer for input, the input buffer's position will be advanced by
+     * the number of bytes consumed by this operation.
+     *
+     * @param output the buffer for the compressed data
+     * @return the actual number of bytes of compressed data written to the
+     *         output buffer
+     * @throws ReadOnlyBufferException if the given output buffer is read-only
+     * @since 1.7
+     */
+    public int deflate(ByteBuffer output) {
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        synchronized (zsRef) {
+            int pos = output.position();
+            int rem = Math.max(output.limit() - pos, 0);
+            if (output.hasArray()) {
+                int n = deflate0(output.array(), output.arrayOffset() + pos,
+                                 rem);
+                output.position(pos + n);
+                return n;
+            }
+            // Fill a direct buffer a chunk at a time, stopping at the
+            // first chunk not filled, as a caller of deflate would
+            byte[] b = new byte[Math.min(rem, COPY_CHUNK)];
+            int n = 0;
+            int k, want;
+            do {
+                want = Math.min(b.length, rem - n);
+                k = deflate0(b, 0, want);
+                output.put(b, 0, k);
+                n += k;
+            } while (k == want && n < rem);
+            return n;
+        }
+    }
+
+    /*
+     * Deflates into b[off, off+len) from whichever input was last set,
+     * as Inflater.inflate does.  A direct or read-only input buffer is
+     * copied a chunk at a time; the finish request applies only to the
+     * chunk holding the end of the input, so that it takes effect only
+     * once all of it has been consumed.  Call only while holding zsRef.
+     */
+    private int deflate0(byte[] b, int off, int len) {
+        ensureOpen();
+        long addr = zsRef.address();
+        ByteBuffer in = input;
+        if (in == null)
+            return deflateBytes(addr, b, off, len);
+        int pos = in.position();
+        int rem = Math.max(in.limit() - pos, 0);
+        byte[] saved = this.buf;
+        boolean savedFinish = this.finish;
+        try {
+            if (in.hasArray()) {
+                this.buf = in.array();
+                this.off = in.arrayOffset() + pos;
+                this.len = rem;
+                int n = deflateBytes(addr, b, off, len);
+                in.position(pos + (rem - this.len));
+                return n;
+            }
+            int total = 0;
+            for (;;) {
+                int chunk = Math.min(rem, COPY_CHUNK);
+                boolean last = (chunk == rem);
+                this.buf = new byte[chunk];
+                this.off = 0;
+                this.len = chunk;
+                in.duplicate().get(this.buf);
+                this.finish = savedFinish && last;
+                total += deflateBytes(addr, b, off + total, len - total);
+                int used = chunk - this.len;
+                pos += used;
+                rem -= used;
+                in.position(pos);
+                if (last || this.len != 0 || total == len)
+                    return total;
+            }
+        } finally {
+            this.buf = saved;
+            this.off = this.len = 0;
+            this.finish = savedFinish;
+        }
+    }
+
+    /** Most bytes of a direct or read-only input buffer copied per call. */
+    private static final int COPY_CHUNK = 8192;
+
     /**
      * Returns the ADLER-32 value of the uncompressed data.
      * @return the ADLER-32 value of the uncompressed data
@@ -393,6 +547,7 @@ class Deflater {
             finish = false;
             finished = false;
             off = len = 0;
+            input = null;
         }
     }
 
@@ -410,6 +565,8 @@ class Deflater {
             if (addr != 0) {
                 end(addr);
                 buf = null;
+                input = null;
+                ZStreamPool.deflaterEnded();
             }
         }
     }
@@ -421,10 +578,42 @@ class Deflater {
 	end();
     }
 
+    boolean isEnded() {
+        synchronized (zsRef) {
+            return zsRef.address() == 0;
+        }
+    }
+
+    /*
+     * Marks this deflater as idle in, or taken from, ZStreamPool.
+     * While idle it is treated as closed, so that a stream that still
+     * uses it after releasing it fails, as it would have when streams
+     * ended their deflaters, rather than disturbing the stream that
+     * takes it next.
+     */
+    void setPooled(boolean pooled) {
+        synchronized (zsRef) {
+            this.pooled = pooled;
+        }
+    }
+
+    boolean isPooled() {
+        synchronized (zsRef) {
+            return pooled;
+        }
+    }
+
     private void ensureOpen() {
         assert Thread.holdsLock(zsRef);
 	if (zsRef.address() == 0)
             throw new NullPointerException("Deflater has been closed");
+        ensureNotPooled();
+    }
+
+    private void ensureNotPooled() {
+        assert Thread.holdsLock(zsRef);
+        if (pooled)
+            throw new NullPointerException("Deflater has been closed");
     }
 
     private static native void initIDs();
@@ -37,7 +37,7 @@ class DeflaterOutputStream extends FilterOutputStream {
      * Indicates that the stream has been closed.
      */
 
-    private boolean closed = false;
+    boolean closed = false;
 
     /**
      * Creates a new output stream with the specified compressor and
@@ -68,6 +68,21 @@ class DeflaterOutputStream extends FilterOutputStream {
 	this(out, def, 512);
     }
 
+    /*
+     * Creates a new output stream without a compressor, for
+     * ParallelZipOutputStream, which compresses most data elsewhere
+     * and sets def only while data is compressed through this class.
+     */
+    DeflaterOutputStream(OutputStream out, int size) {
+        super(out);
+        if (out == null) {
+            throw new NullPointerException();
+        } else if (size <= 0) {
+            throw new IllegalArgumentException("buffer size <= 0");
+        }
+        buf = new byte[size];
+    }
+
     boolean usesDefaultDeflater = false;
 
     /**
@@ -75,7 +90,7 @@ class DeflaterOutputStream extends FilterOutputStream {
      * @param out the output stream
      */
     public DeflaterOutputStream(OutputStream out) {
-	this(out, new Deflater());
+	this(out, ZStreamPool.getDeflater(Deflater.DEFAULT_COMPRESSION, false));
         usesDefaultDeflater = true;
     }
 
@@ -100,7 +115,7 @@ class DeflaterOutputStream extends FilterOutputStream {
      * @exception IOException if an I/O error has occurred
      */
     public void write(byte[] b, int off, int len) throws IOException {
-	if (def.finished()) {
+	if (closed || def.finished()) {
 	    throw new IOException("write beyond end of stream");
 	}
         if ((off | len | (off + len) | (b.length - (off + len))) < 0) {
@@ -128,7 +143,7 @@ class DeflaterOutputStream extends FilterOutputStream {
      * @exception IOException if an I/O error has occurred
      */
     public void finish() throws IOException {
-	if (!def.finished()) {
+	if (!closed && !def.finished()) {
 	    def.finish();
 	    while (!def.finished()) {
 		deflate();
@@ -144,10 +159,10 @@ class DeflaterOutputStream extends FilterOutputStream {
     public void close() throws IOException {
         if (!closed) {
             finish();
+            closed = true;
             if (usesDefaultDeflater)
-                def.end();
+                ZStreamPool.releaseDeflater(def);
             out.close();
-            closed = true;
         }
     }
 
@@ -53,7 +53,7 @@ class GZIPInputStream extends InflaterInputStream {
      * @exception IllegalArgumentException if size is <= 0
      */
     public GZIPInputStream(InputStream in, int size) throws IOException {
-	super(in, new Inflater(true), size);
+	super(in, ZStreamPool.getInflater(true), size);
         usesDefaultInflater = true;
 	readHeader();
 	crc.reset();
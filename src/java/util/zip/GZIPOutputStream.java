@@ -43,7 +43,8 @@ class GZIPOutputStream extends DeflaterOutputStream {
      * @exception IllegalArgumentException if size is <= 0
      */
     public GZIPOutputStream(OutputStream out, int size) throws IOException {
-	super(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true), size);
+	super(out, ZStreamPool.getDeflater(Deflater.DEFAULT_COMPRESSION, true),
+	      size);
         usesDefaultDeflater = true;
 	writeHeader();
 	crc.reset();
@@ -80,7 +81,7 @@ class GZIPOutputStream extends DeflaterOutputStream {
      * @exception IOException if an I/O error has occurred
      */
     public void finish() throws IOException {
-	if (!def.finished()) {
+	if (!closed && !def.finished()) {
 	    def.finish();
 	    while (!def.finished()) {
                 int len = def.deflate(buf, 0, buf.length);
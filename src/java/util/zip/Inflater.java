@@ -7,6 +7,9 @@
 
 package java.util.zip;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 /**
  * This class provides support for general purpose decompression using the
  * popular ZLIB compression library. The ZLIB compression library was
@@ -56,10 +59,13 @@ package java.util.zip;
 public
 class Inflater {
     private final ZStreamRef zsRef;
+    final boolean nowrap;       // for ZStreamPool
     private byte[] buf = emptyBuf;
     private int off, len;
+    private ByteBuffer input;   // input set as a ByteBuffer, or null
     private boolean finished;
     private boolean needDict;
+    private boolean pooled;     // idle in ZStreamPool
 
     private static byte[] emptyBuf = new byte[0];
 
@@ -80,7 +86,9 @@ class Inflater {
      * @param nowrap if true then support GZIP compatible compression
      */
     public Inflater(boolean nowrap) {
+        this.nowrap = nowrap;
         zsRef = new ZStreamRef(init(nowrap));
+        ZStreamPool.inflaterCreated();
     }
 
     /**
@@ -107,9 +115,11 @@ class Inflater {
             throw new ArrayIndexOutOfBoundsException();
         }
         synchronized (zsRef) {
+            ensureNotPooled();
             this.buf = b;
             this.off = off;
             this.len = len;
+            this.input = null;
         }
     }
 
@@ -124,6 +134,43 @@ class Inflater {
 	setInput(b, 0, b.length);
     }
 
+    /**
+     * Sets input data for decompression. Should be called whenever
+     * needsInput() returns true indicating that more input data is
+     * required.
+     * <p>
+     * The given buffer's position will be advanced as inflate
+     * operations are performed, up to the buffer's limit. The input
+     * buffer may be modified (refilled) between inflate operations;
+     * doing so is equivalent to creating a new buffer and setting it
+     * with this method.
+     * <p>
+     * The array of a heap buffer is passed to the native zlib library
+     * directly.  A direct or read-only buffer is not read in place: its
+     * contents are copied into a heap array, a bounded chunk at a time,
+     * so a direct buffer saves no copying over a heap buffer.
+     * <p>
+     * Modifying the input buffer's contents, position, or limit
+     * concurrently with an inflate operation will result in undefined
+     * behavior, which may include incorrect operation results or
+     * operation failure.
+     *
+     * @param input the input data bytes
+     * @see Inflater#needsInput
+     * @since 1.7
+     */
+    public void setInput(ByteBuffer input) {
+        if (input == null) {
+            throw new NullPointerException();
+        }
+        synchronized (zsRef) {
+            ensureNotPooled();
+            this.input = input;
+            this.buf = emptyBuf;
+            this.off = this.len = 0;
+        }
+    }
+
     /**
      * Sets the preset dictionary to the given array of bytes. Should be
      * called when inflate() returns 0 and needsDictionary() returns true
@@ -170,7 +217,8 @@ class Inflater {
      */
     public int getRemaining() {
         synchronized (zsRef) {
-            return len;
+            ByteBuffer input = this.input;
+            return input == null ? len : input.remaining();
         }
     }
 
@@ -182,7 +230,8 @@ class Inflater {
      */
     public boolean needsInput() {
         synchronized (zsRef) {
-            return len <= 0;
+            ByteBuffer input = this.input;
+            return input == null ? len <= 0 : !input.hasRemaining();
         }
     }
 
@@ -234,8 +283,7 @@ class Inflater {
             throw new ArrayIndexOutOfBoundsException();
         }
         synchronized (zsRef) {
-            ensureOpen();
-            return inflateBytes(zsRef.address(), b, off, len);
+            return inflate0(b, off, len);
         }
     }
 
@@ -256,6 +304,100 @@ class Inflater {
 	return inflate(b, 0, b.length);
     }
 
+    /**
+     * Uncompresses bytes into specified buffer. Returns actual number
+     * of bytes uncompressed. A return value of 0 indicates that
+     * needsInput() or needsDictionary() should be called in order to
+     * determine if more input data or a preset dictionary is required.
+     * In the latter case, getAdler() can be used to get the Adler-32
+     * value of the dictionary required.
+     * <p>
+     * On success, the position of the given {@code output} byte buffer
+     * will be advanced by as many bytes as were produced by the
+     * operation, which is equal to the number returned by this method.
+     * A direct buffer is not written in place: the data is produced
+     * into a heap array and then copied into it.
+     * <p>
+     * If the {@link #setInput(ByteBuffer)} method was called to provide
+     * a buffer for input, the input buffer's position will be advanced
+     * by the number of bytes consumed by this operation.
+     *
+     * @param output the buffer for the uncompressed data
+     * @return the actual number of uncompressed bytes
+     * @exception DataFormatException if the compressed data format is invalid
+     * @exception ReadOnlyBufferException if the given output buffer is
+     *            read-only
+     * @see Inflater#needsInput
+     * @see Inflater#needsDictionary
+     * @since 1.7
+     */
+    public int inflate(ByteBuffer output) throws DataFormatException {
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        synchronized (zsRef) {
+            int pos = output.position();
+            int rem = Math.max(output.limit() - pos, 0);
+            if (output.hasArray()) {
+                int n = inflate0(output.array(), output.arrayOffset() + pos,
+                                 rem);
+                output.position(pos + n);
+                return n;
+            }
+            // Fill a direct buffer a chunk at a time, stopping at the
+            // first chunk not filled, as a caller of inflate would
+            byte[] b = new byte[Math.min(rem, COPY_CHUNK)];
+            int n = 0;
+            int k, want;
+            do {
+                want = Math.min(b.length, rem - n);
+                k = inflate0(b, 0, want);
+                output.put(b, 0, k);
+                n += k;
+            } while (k == want && n < rem);
+            return n;
+        }
+    }
+
+    /*
+     * Inflates into b[off, off+len) from whichever input was last set.
+     * A heap input buffer lends its array as the byte[] input for the
+     * duration of the call; a direct or read-only one must be copied,
+     * which is done a bounded chunk at a time.  Call only while
+     * holding zsRef.
+     */
+    private int inflate0(byte[] b, int off, int len)
+        throws DataFormatException
+    {
+        ensureOpen();
+        long addr = zsRef.address();
+        ByteBuffer in = input;
+        if (in == null)
+            return inflateBytes(addr, b, off, len);
+        int pos = in.position();
+        int rem = Math.max(in.limit() - pos, 0);
+        if (in.hasArray()) {
+            this.buf = in.array();
+            this.off = in.arrayOffset() + pos;
+        } else {
+            rem = Math.min(rem, COPY_CHUNK);
+            this.buf = new byte[rem];
+            this.off = 0;
+            in.duplicate().get(this.buf);
+        }
+        this.len = rem;
+        try {
+            return inflateBytes(addr, b, off, len);
+        } finally {
+            in.position(pos + (rem - this.len));
+            this.buf = emptyBuf;
+            this.off = this.len = 0;
+        }
+    }
+
+    /** Most bytes of a direct or read-only input buffer copied per call. */
+    private static final int COPY_CHUNK = 8192;
+
     /**
      * Returns the ADLER-32 value of the uncompressed data.
      * @return the ADLER-32 value of the uncompressed data
@@ -327,6 +469,7 @@ class Inflater {
             ensureOpen();
             reset(zsRef.address());
             buf = emptyBuf;
+            input = null;
             finished = false;
             needDict = false;
             off = len = 0;
@@ -347,6 +490,8 @@ class Inflater {
             if (addr != 0) {
                 end(addr);
                 buf = null;
+                input = null;
+                ZStreamPool.inflaterEnded();
             }
         }
     }
@@ -358,10 +503,67 @@ class Inflater {
 	end();
     }
 
+    /**
+     * String representation of the <tt>ObjectName</tt> for the
+     * {@link ZlibMXBean}.
+     *
+     * @since 1.7
+     */
+    public static final String ZLIB_MXBEAN_NAME = "java.util.zip:type=Zlib";
+
+    /**
+     * Returns the {@link ZlibMXBean}, which reports the native zlib
+     * streams held by <tt>Inflater</tt> and <tt>Deflater</tt> instances,
+     * and controls the pool of idle instances used by default by
+     * {@link ZipFile} and the stream classes of this package.  The
+     * MXBean can also be obtained from the {@link
+     * java.lang.management.ManagementFactory#getPlatformMBeanServer
+     * platform <tt>MBeanServer</tt>} under the name {@link
+     * #ZLIB_MXBEAN_NAME}.
+     *
+     * @return the {@code ZlibMXBean}
+     * @since 1.7
+     */
+    public static ZlibMXBean getZlibMXBean() {
+        return ZStreamPool.getInstance();
+    }
+
+    boolean isEnded() {
+        synchronized (zsRef) {
+            return zsRef.address() == 0;
+        }
+    }
+
+    /*
+     * Marks this inflater as idle in, or taken from, ZStreamPool.
+     * While idle it is treated as closed, so that a stream that still
+     * uses it after releasing it fails, as it would have when streams
+     * ended their inflaters, rather than disturbing the stream that
+     * takes it next.
+     */
+    void setPooled(boolean pooled) {
+        synchronized (zsRef) {
+            this.pooled = pooled;
+        }
+    }
+
+    boolean isPooled() {
+        synchronized (zsRef) {
+            return pooled;
+        }
+    }
+
     private void ensureOpen () {
         assert Thread.holdsLock(zsRef);
         if (zsRef.address() == 0)
             throw new NullPointerException("Inflater has been closed");
+        ensureNotPooled();
+    }
+
+    private void ensureNotPooled() {
+        assert Thread.holdsLock(zsRef);
+        if (pooled)
+            throw new NullPointerException("Inflater has been closed");
     }
 
     private native static void initIDs();
@@ -88,7 +88,7 @@ class InflaterInputStream extends FilterInputStream {
      * @param in the input stream
      */
     public InflaterInputStream(InputStream in) {
-	this(in, new Inflater());
+	this(in, ZStreamPool.getInflater(false));
         usesDefaultInflater = true;
     }
 
@@ -205,10 +205,10 @@ class InflaterInputStream extends FilterInputStream {
      */
     public void close() throws IOException {
         if (!closed) {
+            closed = true;
             if (usesDefaultInflater)
-                inf.end();
+                ZStreamPool.releaseInflater(inf);
 	    in.close();
-            closed = true;
         }
     }
 
@@ -0,0 +1,491 @@
+/*
+ * @(#)ParallelZipOutputStream.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.zip;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ZipOutputStream} that compresses entries using several
+ * threads.  The data of each entry is buffered until the entry is
+ * closed, and then compressed (or, for STORED entries, checksummed)
+ * by a task run on an {@link Executor}, while the writing thread goes
+ * on to the entries that follow.  The compressed entries are written
+ * to the underlying stream strictly in order, each preceded by its
+ * local header, followed by the central directory, so the result is
+ * an ordinary ZIP file.
+ *
+ * <p>An entry whose data grows beyond a buffer limit of one megabyte
+ * is not compressed by a task: once all entries before it have been
+ * written out, it is written through this stream as by
+ * <tt>ZipOutputStream</tt>, compressing on the writing thread.  A
+ * single deflate stream cannot be split among threads without
+ * support for flushing from the native zip library, so archives
+ * dominated by a few large entries gain little from this class.
+ *
+ * <p>The uncompressed data of the entries in progress is bounded in
+ * proportion to the number of processors.  When the bound is reached,
+ * the writing thread waits for the oldest entry to be compressed and
+ * writes it out.  The writing thread waits through {@link
+ * ForkJoinPool#managedBlock}, so a stream may be written from a task
+ * running in the same <tt>ForkJoinPool</tt> that compresses its
+ * entries.  Streams created without an executor use a shared pool of
+ * daemon threads reserved for compression, not the common pool.
+ *
+ * <p>Entries compressed by tasks have their size, compressed size and
+ * CRC-32 in their local headers.  If the size or CRC-32 of such an
+ * entry was set before it was put, it is verified.  A compressed size
+ * set for a DEFLATED entry is always replaced.  STORED entries, as with
+ * <tt>ZipOutputStream</tt>, must have their size and CRC-32 set before
+ * they are put.
+ *
+ * <p>Unlike with <tt>ZipOutputStream</tt>, the sizes and CRC-32 of an
+ * entry compressed by a task are set in its <tt>ZipEntry</tt> only
+ * once the entry has been written out, and an error detected while
+ * compressing or verifying the entry may be reported by a later method
+ * invocation rather than by {@link #closeEntry}.  After such an error
+ * the stream can only be closed.  Instances of this class are not safe
+ * for use by multiple concurrent writing threads.
+ *
+ * @see ZipOutputStream
+ * @since 1.7
+ */
+public class ParallelZipOutputStream extends ZipOutputStream {
+
+    /**
+     * The most data of an entry that is buffered for compression by a
+     * task.  Larger entries are compressed on the writing thread.
+     */
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+
+    private final Executor executor;
+
+    /**
+     * Maximum number of uncompressed bytes of the entries submitted
+     * but not yet written.  When exceeded, the writing thread waits
+     * for the oldest entry.
+     */
+    private final long maxPendingBytes;
+
+    /** Entries submitted but not yet written, in file order. */
+    private final ArrayDeque<FutureTask<Compression>> pending =
+        new ArrayDeque<FutureTask<Compression>>();
+    private long pendingBytes;  // uncompressed bytes of pending entries
+
+    private ZipEntry current;   // the entry being buffered, if any
+    private byte[] buf;         // data of the current entry
+    private int count;          // bytes in buf
+    private boolean streaming;  // an entry is being written through super
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private boolean finished;
+    private boolean closed = false;
+    private boolean failed;     // an entry failed, so the output is incomplete
+
+    /**
+     * Checks to make sure that this stream has not been closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (failed) {
+            throw new IOException("Stream closed after an earlier failure");
+        }
+    }
+
+    /**
+     * Creates a new ZIP output stream, compressing using the shared
+     * compression threads.
+     *
+     * @param out the actual output stream
+     */
+    public ParallelZipOutputStream(OutputStream out) {
+        this(out, defaultExecutor());
+    }
+
+    /**
+     * Creates a new ZIP output stream, compressing using the given
+     * executor.
+     *
+     * @param out the actual output stream
+     * @param executor the executor running compression tasks
+     */
+    public ParallelZipOutputStream(OutputStream out, Executor executor) {
+        super(out, 512);
+        if (executor == null)
+            throw new NullPointerException();
+        this.executor = executor;
+        this.maxPendingBytes = (long) MAX_BUFFER_SIZE *
+            Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the compression level for subsequent entries which are DEFLATED.
+     * The default setting is DEFAULT_COMPRESSION.
+     * @param level the compression level (0-9)
+     * @exception IllegalArgumentException if the compression level is invalid
+     */
+    public void setLevel(int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level");
+        }
+        this.level = level;
+    }
+
+    /**
+     * Begins writing a new ZIP file entry. Closes the current entry if
+     * still active.  The default compression method will be used if no
+     * compression method was specified for the entry, and the current
+     * time will be used if the entry has no set modification time.
+     * @param e the ZIP entry to be written
+     * @exception ZipException if a ZIP format error has occurred
+     * @exception IOException if an I/O error has occurred
+     */
+    public void putNextEntry(ZipEntry e) throws IOException {
+        ensureOpen();
+        closeEntry();           // close previous entry
+        checkEntry(e);
+        current = e;
+        count = 0;
+        if (e.size > MAX_BUFFER_SIZE) {
+            startStreaming();
+        } else {
+            buf = new byte[(int) Math.max(e.size, MIN_BUFFER_SIZE)];
+        }
+    }
+
+    /**
+     * Closes the current ZIP entry and positions the stream for writing
+     * the next entry.  Unless it was too large to buffer, the entry is
+     * written out once it has been compressed.
+     * @exception ZipException if a ZIP format error has occurred
+     * @exception IOException if an I/O error has occurred
+     */
+    public void closeEntry() throws IOException {
+        ensureOpen();
+        if (streaming) {
+            try {
+                super.closeEntry();
+            } finally {
+                streaming = false;
+                releaseDeflater();
+            }
+        } else if (current != null) {
+            ZipEntry e = current;
+            if (e.method == STORED && count != e.size) {
+                throw new ZipException(
+                    "invalid entry size (expected " + e.size +
+                    " but got " + count + " bytes)");
+            }
+            FutureTask<Compression> task = new FutureTask<Compression>(
+                new Compression(e, level, buf, count));
+            current = null;
+            buf = null;
+            executor.execute(task);
+            pending.add(task);
+            pendingBytes += count;
+            while (pendingBytes > maxPendingBytes)
+                writeEntry(pending.poll());
+        }
+    }
+
+    /**
+     * Writes an array of bytes to the current ZIP entry data. This method
+     * blocks only if too many entries are already being compressed, or
+     * while writing out compressed entries.
+     * @param b the data to be written
+     * @param off the start offset in the data
+     * @param len the number of bytes that are written
+     * @exception ZipException if a ZIP file error has occurred
+     * @exception IOException if an I/O error has occurred
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return;
+        }
+        if (!streaming) {
+            if (current == null) {
+                throw new ZipException("no current ZIP entry");
+            }
+            if (current.method == STORED && count + len > current.size) {
+                throw new ZipException(
+                    "attempt to write past end of STORED entry");
+            }
+            if (len <= MAX_BUFFER_SIZE - count) {
+                if (count + len > buf.length) {
+                    int n = Math.max(buf.length << 1, count + len);
+                    byte[] a = new byte[Math.min(n, MAX_BUFFER_SIZE)];
+                    System.arraycopy(buf, 0, a, 0, count);
+                    buf = a;
+                }
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+                return;
+            }
+            startStreaming();
+        }
+        super.write(b, off, len);
+    }
+
+    /**
+     * Writes out all entries whose compression is in progress, and
+     * flushes the underlying stream.  The current entry, if any, is not
+     * closed, and the data written to it may remain buffered.
+     * @exception IOException if an I/O error has occurred
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!pending.isEmpty())
+            writeEntry(pending.poll());
+        out.flush();
+    }
+
+    /**
+     * Finishes writing the contents of the ZIP output stream without closing
+     * the underlying stream, after waiting for all entries in progress.
+     * @exception ZipException if a ZIP file error has occurred
+     * @exception IOException if an I/O exception has occurred
+     */
+    public void finish() throws IOException {
+        ensureOpen();
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        while (!pending.isEmpty())
+            writeEntry(pending.poll());
+        super.finish();
+        finished = true;
+    }
+
+    /**
+     * Closes the ZIP output stream as well as the stream being filtered.
+     * The stream being filtered is closed even if the ZIP file cannot be
+     * finished, and a stream that has already failed is closed without
+     * finishing the ZIP file.
+     * @exception ZipException if a ZIP file error has occurred
+     * @exception IOException if an I/O error has occurred
+     */
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                if (!failed) {
+                    finish();
+                }
+            } finally {
+                closed = true;
+                pending.clear();
+                releaseDeflater();
+                out.close();
+            }
+        }
+    }
+
+    /*
+     * Writes out the entries before the current one, then starts
+     * writing the current entry through ZipOutputStream, beginning
+     * with the data buffered so far.  A DEFLATED entry then has its
+     * sizes in a data descriptor, so a ZIP64 extra field is requested
+     * for it in case it reaches 4GB.
+     */
+    private void startStreaming() throws IOException {
+        ZipEntry e = current;
+        while (!pending.isEmpty())
+            writeEntry(pending.poll());
+        if (e.method == DEFLATED) {
+            e.csize = -1;       // replaced, as for entries compressed by tasks
+            def = ZStreamPool.getDeflater(level, true);
+        }
+        streaming = true;
+        current = null;
+        startEntry(e, true);
+        if (count > 0)
+            super.write(buf, 0, count);
+        buf = null;
+    }
+
+    private void releaseDeflater() {
+        if (def != null) {
+            ZStreamPool.releaseDeflater(def);
+            def = null;
+        }
+    }
+
+    /*
+     * Waits for the given entry to be compressed, then verifies it and
+     * writes it out.  If this fails, the stream can only be closed.
+     */
+    private void writeEntry(FutureTask<Compression> task) throws IOException {
+        boolean ok = false;
+        try {
+            Compression c = await(task);
+            pendingBytes -= c.count;
+            ZipEntry e = c.entry;
+            if (e.size != -1 && e.size != c.count) {
+                throw new ZipException(
+                    "invalid entry size (expected " + e.size +
+                    " but got " + c.count + " bytes)");
+            }
+            if (e.crc != -1 && e.crc != c.crc) {
+                throw new ZipException(
+                    "invalid entry crc-32 (expected 0x" +
+                    Long.toHexString(e.crc) + " but got 0x" +
+                    Long.toHexString(c.crc) + ")");
+            }
+            e.size = c.count;
+            e.csize = c.outputCount;
+            e.crc = c.crc;
+            writeEntry(e, c.output, 0, c.outputCount);
+            ok = true;
+        } finally {
+            if (!ok) {
+                failed = true;
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * The data of an entry, compressed (unless the entry is STORED)
+     * and checksummed by call().
+     */
+    private static final class Compression implements Callable<Compression> {
+        final ZipEntry entry;
+        final int level;
+        final byte[] input;
+        final int count;
+        byte[] output;
+        int outputCount;
+        long crc;
+
+        Compression(ZipEntry entry, int level, byte[] input, int count) {
+            this.entry = entry;
+            this.level = level;
+            this.input = input;
+            this.count = count;
+        }
+
+        public Compression call() {
+            CRC32 sum = new CRC32();
+            sum.update(input, 0, count);
+            crc = sum.getValue();
+            if (entry.method == STORED) {
+                output = input;
+                outputCount = count;
+                return this;
+            }
+
+            Deflater def = ZStreamPool.getDeflater(level, true);
+            try {
+                def.setInput(input, 0, count);
+                def.finish();
+                // Stored blocks add 5 bytes per 16K; leave some slack
+                output = new byte[count + (count >> 10) + 64];
+                while (!def.finished()) {
+                    if (outputCount == output.length) {
+                        byte[] a = new byte[output.length << 1];
+                        System.arraycopy(output, 0, a, 0, outputCount);
+                        output = a;
+                    }
+                    outputCount += def.deflate(output, outputCount,
+                                               output.length - outputCount);
+                }
+                ZStreamPool.releaseDeflater(def);
+                def = null;
+            } finally {
+                if (def != null)
+                    def.end();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Waits for a compression task and returns its result, blocking
+     * through {@link ForkJoinPool#managedBlock} so that a pool running
+     * the waiting thread can compensate for it.
+     */
+    private static <T> T await(final FutureTask<T> task) throws IOException {
+        try {
+            if (!task.isDone()) {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    public boolean block() throws InterruptedException {
+                        try {
+                            task.get();
+                        } catch (ExecutionException ignore) {
+                        }
+                        return true;
+                    }
+                    public boolean isReleasable() {
+                        return task.isDone();
+                    }
+                });
+            }
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            IOException ioe = new IOException(String.valueOf(cause));
+            ioe.initCause(cause);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Returns the executor used by streams created without one: a
+     * pool of daemon threads, one per processor, that time out when
+     * idle.  A dedicated pool is used rather than the common pool,
+     * whose parallelism may be as low as one, and whose threads may
+     * themselves be the ones writing to the stream.
+     */
+    private static Executor defaultExecutor() {
+        return DefaultExecutorHolder.executor;
+    }
+
+    private static final class DefaultExecutorHolder {
+        static final ThreadPoolExecutor executor;
+        static {
+            int n = Runtime.getRuntime().availableProcessors();
+            executor = new ThreadPoolExecutor(
+                n, n, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ParallelZip-" +
+                                              count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+}
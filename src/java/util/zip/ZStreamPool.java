@@ -0,0 +1,222 @@
+/*
+ * @(#)ZStreamPool.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.zip;
+
+import java.lang.management.ManagementPermission;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import sun.security.action.GetPropertyAction;
+
+/**
+ * ZStreamPool is the process-wide pool of idle Inflaters and Deflaters
+ * used by default in this package, and the implementation class of
+ * ZlibMXBean.  It also counts the live native zlib streams, which
+ * Inflater and Deflater report on creation and on end().
+ *
+ * @see ZlibMXBean
+ * @since 1.7
+ */
+final class ZStreamPool implements ZlibMXBean {
+
+    /*
+     * Estimated native memory of each z_stream, from zlib's
+     * documented requirements for windowBits 15 and memLevel 8:
+     * inflate state plus a 32K window, and deflate state plus
+     * (1 << (windowBits+2)) + (1 << (memLevel+9)) bytes.
+     */
+    private static final long INFLATER_BYTES = (7 + 32) * 1024;
+    private static final long DEFLATER_BYTES = (6 + 256) * 1024;
+
+    /**
+     * Idle instances of one kind.  The count is maintained separately
+     * since ConcurrentLinkedQueue.size is not constant-time; it may
+     * transiently overshoot the bound by the number of racing returns,
+     * which is harmless.
+     */
+    static final class Idle<T> {
+        final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
+        final AtomicInteger count = new AtomicInteger();
+
+        T poll() {
+            T t = queue.poll();
+            if (t != null)
+                count.decrementAndGet();
+            return t;
+        }
+
+        boolean offer(T t, int max) {
+            if (count.get() >= max)
+                return false;
+            count.incrementAndGet();
+            queue.offer(t);
+            return true;
+        }
+    }
+
+    private static final Idle<Inflater> inflaters = new Idle<Inflater>();
+    private static final Idle<Inflater> nowrapInflaters = new Idle<Inflater>();
+    private static final Idle<Deflater> deflaters = new Idle<Deflater>();
+    private static final Idle<Deflater> nowrapDeflaters = new Idle<Deflater>();
+
+    private static final AtomicLong liveInflaters = new AtomicLong();
+    private static final AtomicLong liveDeflaters = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static volatile int maxIdle = initialMaxIdle();
+
+    private static final ZStreamPool instance = new ZStreamPool();
+
+    private ZStreamPool() {
+    }
+
+    static ZStreamPool getInstance() {
+        return instance;
+    }
+
+    private static int initialMaxIdle() {
+        String s = java.security.AccessController.doPrivileged(
+            new GetPropertyAction("sun.zip.poolSize"));
+        if (s != null) {
+            try {
+                int n = Integer.parseInt(s.trim());
+                if (n >= 0)
+                    return n;
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /*
+     * Called by Inflater and Deflater for each native stream they
+     * create and end.
+     */
+    static void inflaterCreated() { liveInflaters.incrementAndGet(); }
+    static void inflaterEnded()   { liveInflaters.decrementAndGet(); }
+    static void deflaterCreated() { liveDeflaters.incrementAndGet(); }
+    static void deflaterEnded()   { liveDeflaters.decrementAndGet(); }
+
+    /**
+     * Returns an idle Inflater of the given kind, or a new one.
+     */
+    static Inflater getInflater(boolean nowrap) {
+        Inflater inf = (nowrap ? nowrapInflaters : inflaters).poll();
+        if (inf != null) {
+            hits.incrementAndGet();
+            inf.setPooled(false);
+            return inf;
+        }
+        misses.incrementAndGet();
+        return new Inflater(nowrap);
+    }
+
+    /**
+     * Resets the given Inflater and returns it to the pool, or ends
+     * it if the pool is full.  Once released, the Inflater behaves as
+     * if ended until it is taken from the pool again.
+     */
+    static void releaseInflater(Inflater inf) {
+        if (inf.isEnded() || inf.isPooled())
+            return;
+        inf.reset();
+        inf.setPooled(true);
+        if (!(inf.nowrap ? nowrapInflaters : inflaters).offer(inf, maxIdle))
+            inf.end();
+    }
+
+    /**
+     * Returns an idle Deflater of the given kind, set to the given
+     * level and the default strategy, or a new one.
+     */
+    static Deflater getDeflater(int level, boolean nowrap) {
+        Deflater def = (nowrap ? nowrapDeflaters : deflaters).poll();
+        if (def != null) {
+            hits.incrementAndGet();
+            def.setPooled(false);
+            def.setLevel(level);
+            def.setStrategy(Deflater.DEFAULT_STRATEGY);
+            return def;
+        }
+        misses.incrementAndGet();
+        return new Deflater(level, nowrap);
+    }
+
+    /**
+     * Resets the given Deflater and returns it to the pool, or ends
+     * it if the pool is full.  Once released, the Deflater behaves as
+     * if ended until it is taken from the pool again.
+     */
+    static void releaseDeflater(Deflater def) {
+        if (def.isEnded() || def.isPooled())
+            return;
+        def.reset();
+        def.setPooled(true);
+        if (!(def.nowrap ? nowrapDeflaters : deflaters).offer(def, maxIdle))
+            def.end();
+    }
+
+    private static void trim(Idle<?> idle, int max) {
+        Object o;
+        while (idle.count.get() > max && (o = idle.poll()) != null) {
+            if (o instanceof Inflater)
+                ((Inflater) o).end();
+            else
+                ((Deflater) o).end();
+        }
+    }
+
+    // ZlibMXBean
+
+    public long getInflaterCount() {
+        return liveInflaters.get();
+    }
+
+    public long getDeflaterCount() {
+        return liveDeflaters.get();
+    }
+
+    public int getIdleInflaterCount() {
+        return inflaters.count.get() + nowrapInflaters.count.get();
+    }
+
+    public int getIdleDeflaterCount() {
+        return deflaters.count.get() + nowrapDeflaters.count.get();
+    }
+
+    public long getEstimatedNativeMemoryUsed() {
+        return liveInflaters.get() * INFLATER_BYTES +
+            liveDeflaters.get() * DEFLATER_BYTES;
+    }
+
+    public long getPoolHitCount() {
+        return hits.get();
+    }
+
+    public long getPoolMissCount() {
+        return misses.get();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int max) {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(new ManagementPermission("control"));
+        if (max < 0)
+            throw new IllegalArgumentException("maxIdle < 0");
+        maxIdle = max;
+        trim(inflaters, max);
+        trim(nowrapInflaters, max);
+        trim(deflaters, max);
+        trim(nowrapDeflaters, max);
+    }
+}
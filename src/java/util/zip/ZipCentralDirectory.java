@@ -0,0 +1,442 @@
+/*
+ * @(#)ZipCentralDirectory.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.util.zip.ZipConstants64.*;
+
+/*
+ * A read-only index over the central directory (CEN) of a zip file,
+ * used by ZipFile in place of the native zip library when the
+ * "sun.zip.javaCentralDirectory" system property is set.
+ *
+ * The CEN is memory-mapped and never copied: each entry is
+ * represented only by the offset of its CEN header within the mapping,
+ * together with the hash of its name, so that opening a file with
+ * many entries allocates a few int arrays and no per-entry objects.
+ * Names are hashed exactly as String.hashCode would hash the decoded
+ * name, which lets a lookup compare hashes before decoding anything,
+ * and lets ZipEntry objects be created lazily, only for entries that
+ * are actually requested.
+ *
+ * Once constructed, the index is immutable, and the mapped buffer is
+ * only accessed with absolute gets, so lookups need no locking.  Entry
+ * data is read by seeking the RandomAccessFile under its lock rather
+ * than with positional FileChannel reads: a FileChannel is closed for
+ * good when a thread blocked in it is interrupted, which would break
+ * the shared ZipFile for every other thread.  The channel is used only
+ * to map the central directory while the file is being opened.
+ *
+ * @since 1.7
+ */
+final class ZipCentralDirectory implements ZipConstants {
+
+    private final RandomAccessFile file;
+    private volatile MappedByteBuffer cen;  // the mapped central directory
+    private final long locpos;           // position of the first LOC header
+    private final int total;             // number of entries
+
+    /*
+     * Entry i starts at cen offset positions[i], its name hashes to
+     * hashes[i], and the next entry in its hash chain is next[i] - 1.
+     * Bucket chains start at table[h & (table.length - 1)] - 1, so that
+     * the zero-filled arrays need no initialization.
+     */
+    private final int[] positions;
+    private final int[] hashes;
+    private final int[] next;
+    private final int[] table;
+
+    ZipCentralDirectory(String name) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(name, "r");
+        boolean ok = false;
+        try {
+            file = raf;
+            long length = raf.length();
+
+            // Locate the END header, and possibly the ZIP64 END header
+            long endpos = findEND(length);
+            ByteBuffer end = readFully(endpos, ENDHDR);
+            long cenlen = u32(end, ENDSIZ);
+            long cenoff = u32(end, ENDOFF);
+            if (cenlen == ZIP64_MAGICVAL || cenoff == ZIP64_MAGICVAL ||
+                u16(end, ENDTOT) == ZIP64_MAGICCOUNT) {
+                long z64end = findZIP64END(endpos);
+                if (z64end >= 0) {
+                    ByteBuffer z64 = readFully(z64end, ZIP64_ENDHDR);
+                    cenlen = z64.getLong(ZIP64_ENDSIZ);
+                    cenoff = z64.getLong(ZIP64_ENDOFF);
+                    endpos = z64end;
+                }
+            }
+            long cenpos = endpos - cenlen;
+            locpos = cenpos - cenoff;
+            if (cenlen < 0 || cenoff < 0 || locpos < 0)
+                throw new ZipException(
+                    "invalid END header (bad central directory offset)");
+            if (cenlen > Integer.MAX_VALUE)
+                throw new ZipException(
+                    "invalid END header (central directory too large)");
+            MappedByteBuffer cen = raf.getChannel().map(
+                FileChannel.MapMode.READ_ONLY, cenpos, cenlen);
+            cen.order(ByteOrder.LITTLE_ENDIAN);
+            this.cen = cen;
+
+            // Walk the CEN, counting entries rather than trusting END
+            int limit = (int) cenlen;
+            int[] pos = new int[Math.max(16, Math.min(u16(end, ENDTOT),
+                                                      limit / CENHDR))];
+            int[] hs = new int[pos.length];
+            int n = 0;
+            for (int p = 0; p < limit; ) {
+                if (p + CENHDR > limit || u32(cen, p) != CENSIG)
+                    throw new ZipException("invalid CEN header (bad signature)");
+                int nlen = u16(cen, p + CENNAM);
+                int hlen = CENHDR + nlen + u16(cen, p + CENEXT) +
+                    u16(cen, p + CENCOM);
+                if (p + hlen > limit)
+                    throw new ZipException("invalid CEN header (bad header size)");
+                if (n == pos.length) {
+                    int[] a = new int[n << 1];
+                    System.arraycopy(pos, 0, a, 0, n);
+                    pos = a;
+                    a = new int[n << 1];
+                    System.arraycopy(hs, 0, a, 0, n);
+                    hs = a;
+                }
+                pos[n] = p;
+                hs[n] = hash(p + CENHDR, p + CENHDR + nlen);
+                n++;
+                p += hlen;
+            }
+
+            int cap = 1;
+            while (cap < n)
+                cap <<= 1;
+            int[] tab = new int[cap];
+            int[] nx = new int[n];
+            for (int i = 0; i < n; i++) {
+                int b = hs[i] & (cap - 1);
+                nx[i] = tab[b];
+                tab[b] = i + 1;
+            }
+            total = n;
+            positions = pos;
+            hashes = hs;
+            next = nx;
+            table = tab;
+            ok = true;
+        } finally {
+            if (!ok)
+                raf.close();
+        }
+    }
+
+    /*
+     * Returns the position of the END header, searching backwards from
+     * the end of the file over the longest possible zip file comment.
+     */
+    private long findEND(long length) throws IOException {
+        if (length < ENDHDR)
+            throw new ZipException("zip file is empty");
+        int len = (int) Math.min(length, ENDHDR + 0xFFFF);
+        long base = length - len;
+        ByteBuffer buf = readFully(base, len);
+        for (int p = len - ENDHDR; p >= 0; p--) {
+            if (buf.get(p) == 'P' && u32(buf, p) == ENDSIG &&
+                p + ENDHDR + u16(buf, p + ENDCOM) <= len)
+                return base + p;
+        }
+        throw new ZipException("error in opening zip file");
+    }
+
+    /*
+     * Returns the position of the ZIP64 END header referenced by the
+     * ZIP64 END locator immediately preceding the END header at
+     * endpos, or -1 if there is no such locator.
+     */
+    private long findZIP64END(long endpos) throws IOException {
+        if (endpos < ZIP64_LOCHDR + ZIP64_ENDHDR)
+            return -1;
+        ByteBuffer loc = readFully(endpos - ZIP64_LOCHDR, ZIP64_LOCHDR);
+        if (u32(loc, 0) != ZIP64_LOCSIG)
+            return -1;
+        long z64end = loc.getLong(ZIP64_LOCOFF);
+        if (z64end < 0 || z64end > endpos - ZIP64_LOCHDR - ZIP64_ENDHDR ||
+            u32(readFully(z64end, ZIP64_ENDHDR), 0) != ZIP64_ENDSIG)
+            throw new ZipException("invalid ZIP64 END header");
+        return z64end;
+    }
+
+    /*
+     * Reads len bytes at the given file position into a new
+     * little-endian buffer.
+     */
+    private ByteBuffer readFully(long pos, int len) throws IOException {
+        byte[] b = new byte[len];
+        synchronized (file) {
+            file.seek(pos);
+            try {
+                file.readFully(b);
+            } catch (EOFException e) {
+                throw new ZipException("unexpected end of zip file");
+            }
+        }
+        return ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     * Returns the mapped central directory, which is dropped on close.
+     */
+    private ByteBuffer cen() {
+        ByteBuffer b = cen;
+        if (b == null)
+            throw new IllegalStateException("zip file closed");
+        return b;
+    }
+
+    /*
+     * Decodes the modified UTF-8 character at cen offset p, returning
+     * the char in the low 16 bits and the number of bytes it occupies
+     * in the high bits.  Malformed sequences decode to U+FFFD, one
+     * byte at a time, so that every name has some decoding and hashing
+     * always agrees with decoding.
+     */
+    private int decodeChar(int p, int end) {
+        ByteBuffer cen = cen();
+        int c = cen.get(p) & 0xff;
+        if (c < 0x80)
+            return c | (1 << 16);
+        if ((c >> 5) == 0x6 && p + 1 < end) {
+            int c2 = cen.get(p + 1);
+            if ((c2 & 0xc0) == 0x80)
+                return (((c & 0x1f) << 6) | (c2 & 0x3f)) | (2 << 16);
+        } else if ((c >> 4) == 0xe && p + 2 < end) {
+            int c2 = cen.get(p + 1);
+            int c3 = cen.get(p + 2);
+            if ((c2 & 0xc0) == 0x80 && (c3 & 0xc0) == 0x80)
+                return (((c & 0x0f) << 12) | ((c2 & 0x3f) << 6) |
+                        (c3 & 0x3f)) | (3 << 16);
+        }
+        return 0xfffd | (1 << 16);
+    }
+
+    /*
+     * Returns the String.hashCode of the name encoded in [p, end).
+     */
+    private int hash(int p, int end) {
+        int h = 0;
+        while (p < end) {
+            int c = decodeChar(p, end);
+            h = 31 * h + (char) c;
+            p += c >>> 16;
+        }
+        return h;
+    }
+
+    /*
+     * Returns the string encoded in [p, end).
+     */
+    private String decode(int p, int end) {
+        char[] cs = new char[end - p];
+        int n = 0;
+        while (p < end) {
+            int c = decodeChar(p, end);
+            cs[n++] = (char) c;
+            p += c >>> 16;
+        }
+        return new String(cs, 0, n);
+    }
+
+    /*
+     * Returns true if the name encoded in [p, end) equals name,
+     * followed by a '/' if slash is true.
+     */
+    private boolean nameEquals(int p, int end, String name, boolean slash) {
+        ByteBuffer cen = cen();
+        int len = name.length();
+        for (int i = 0; i < len; i++) {
+            if (p >= end)
+                return false;
+            int c = decodeChar(p, end);
+            if ((char) c != name.charAt(i))
+                return false;
+            p += c >>> 16;
+        }
+        if (slash) {
+            if (p >= end || cen.get(p) != '/')
+                return false;
+            p++;
+        }
+        return p == end;
+    }
+
+    private int find(int h, String name, boolean slash) {
+        ByteBuffer cen = cen();
+        for (int i = table[h & (table.length - 1)] - 1; i >= 0;
+             i = next[i] - 1) {
+            if (hashes[i] == h) {
+                int p = positions[i] + CENHDR;
+                if (nameEquals(p, p + u16(cen, positions[i] + CENNAM),
+                               name, slash))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the entry with the given name, or -1 if
+     * there is none.  If addSlash is true and there is no such entry,
+     * also tries the name with a trailing '/', as the native library
+     * does when looking up directories.
+     */
+    int lookup(String name, boolean addSlash) {
+        int h = name.hashCode();
+        int i = find(h, name, false);
+        if (i < 0 && addSlash && name.length() != 0 &&
+            name.charAt(name.length() - 1) != '/')
+            i = find(31 * h + '/', name, true);
+        return i;
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    int size() {
+        return total;
+    }
+
+    /**
+     * Returns a new ZipEntry describing entry i.  If name is null, the
+     * entry's own name is used.
+     */
+    ZipEntry entry(int i, String name) {
+        ByteBuffer cen = cen();
+        int p = positions[i];
+        int nlen = u16(cen, p + CENNAM);
+        int elen = u16(cen, p + CENEXT);
+        int clen = u16(cen, p + CENCOM);
+        int np = p + CENHDR;
+        ZipEntry e = new ZipEntry(name != null ? name : decode(np, np + nlen));
+        e.time = u32(cen, p + CENTIM);
+        e.crc = u32(cen, p + CENCRC);
+        e.size = size(i);
+        e.csize = csize(i);
+        e.method = u16(cen, p + CENHOW);
+        if (elen != 0) {
+            byte[] extra = new byte[elen];
+            for (int k = 0; k < elen; k++)
+                extra[k] = cen.get(np + nlen + k);
+            e.extra = extra;
+        }
+        if (clen != 0) {
+            int cp = np + nlen + elen;
+            e.comment = decode(cp, cp + clen);
+        }
+        return e;
+    }
+
+    int method(int i) {
+        return u16(cen(), positions[i] + CENHOW);
+    }
+
+    long size(int i) {
+        return zip64(i, 0);
+    }
+
+    long csize(int i) {
+        return zip64(i, 1);
+    }
+
+    /*
+     * Returns the uncompressed size (field 0), compressed size (field
+     * 1) or LOC header offset (field 2) of entry i, taking the value
+     * from the ZIP64 extra field when the CEN header holds the magic
+     * value.  The ZIP64 extra field stores only the values that
+     * overflowed, in this order.
+     */
+    private long zip64(int i, int field) {
+        ByteBuffer cen = cen();
+        int p = positions[i];
+        long[] v = { u32(cen, p + CENLEN), u32(cen, p + CENSIZ),
+                     u32(cen, p + CENOFF) };
+        if (v[field] != ZIP64_MAGICVAL)
+            return v[field];
+        int off = 4;
+        for (int f = 0; f < field; f++) {
+            if (v[f] == ZIP64_MAGICVAL)
+                off += 8;
+        }
+        int ep = p + CENHDR + u16(cen, p + CENNAM);
+        int end = ep + u16(cen, p + CENEXT);
+        while (ep + 4 <= end) {
+            int tag = u16(cen, ep);
+            int sz = u16(cen, ep + 2);
+            if (tag == ZIP64_EXTID) {
+                if (off + 8 > sz + 4 || ep + off + 8 > end)
+                    break;
+                return cen.getLong(ep + off);
+            }
+            ep += 4 + sz;
+        }
+        return v[field];
+    }
+
+    /**
+     * Returns the file position of the data of entry i, which follows
+     * its LOC header.
+     */
+    long dataOffset(int i) throws IOException {
+        long loc = locpos + zip64(i, 2);
+        ByteBuffer hdr = readFully(loc, LOCHDR);
+        if (u32(hdr, 0) != LOCSIG)
+            throw new ZipException("invalid LOC header (bad signature)");
+        return loc + LOCHDR + u16(hdr, LOCNAM) + u16(hdr, LOCEXT);
+    }
+
+    /**
+     * Reads up to len bytes at the given file position, returning the
+     * number of bytes read.
+     */
+    int read(long pos, byte[] b, int off, int len) throws IOException {
+        int n;
+        synchronized (file) {
+            file.seek(pos);
+            n = file.read(b, off, len);
+        }
+        if (n < 0)
+            throw new ZipException("unexpected end of zip file");
+        return n;
+    }
+
+    /*
+     * Drops the mapping along with the file.  It is not unmapped
+     * eagerly, since lookups racing with close may still be reading
+     * it, but once unreachable it is released by the next GC rather
+     * than living as long as the ZipFile.
+     */
+    void close() throws IOException {
+        cen = null;
+        file.close();
+    }
+
+    private static int u16(ByteBuffer b, int p) {
+        return b.getShort(p) & 0xffff;
+    }
+
+    private static long u32(ByteBuffer b, int p) {
+        return b.getInt(p) & 0xffffffffL;
+    }
+}
@@ -11,9 +11,9 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.EOFException;
 import java.io.File;
-import java.util.Vector;
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
+import sun.security.action.GetPropertyAction;
 
 /**
  * This class is used to read entries from a zip file.
@@ -22,6 +22,13 @@ import java.util.NoSuchElementException;
  * or method in this class will cause a {@link NullPointerException} to be
  * thrown.
  *
+ * <p> If the system property <tt>sun.zip.javaCentralDirectory</tt> is
+ * set to <tt>true</tt>, zip files opened with mode <tt>OPEN_READ</tt>
+ * are read without the native zip library: the central directory is
+ * memory-mapped and indexed in Java, so that {@link #getEntry getEntry},
+ * {@link #entries entries} and reads from entry streams proceed without
+ * locking the <tt>ZipFile</tt>.
+ *
  * @version   1.78, 07/31/06
  * @author	David Connelly
  */
@@ -30,7 +37,8 @@ class ZipFile implements ZipConstants {
     private long jzfile;  // address of jzfile data
     private String name;  // zip file name
     private int total;	  // total number of entries
-    private boolean closeRequested;
+    private volatile boolean closeRequested;
+    private ZipCentralDirectory cen;  // non-null if read without native code
 
     private static final int STORED = ZipEntry.STORED;
     private static final int DEFLATED = ZipEntry.DEFLATED;
@@ -56,6 +64,11 @@ class ZipFile implements ZipConstants {
 
     private static native void initIDs();
 
+    // Whether to read OPEN_READ zip files with ZipCentralDirectory
+    private static final boolean javaCentralDirectory =
+        Boolean.parseBoolean(java.security.AccessController.doPrivileged(
+            new GetPropertyAction("sun.zip.javaCentralDirectory")));
+
     /**
      * Opens a zip file for reading.
      *
@@ -111,9 +124,13 @@ class ZipFile implements ZipConstants {
 		sm.checkDelete(name);
 	    }
 	}
-	jzfile = open(name, mode, file.lastModified());
-
 	this.name = name;
+	if (javaCentralDirectory && mode == OPEN_READ) {
+	    cen = new ZipCentralDirectory(name);
+	    this.total = cen.size();
+	    return;
+	}
+	jzfile = open(name, mode, file.lastModified());
 	this.total = getTotal(jzfile);
     }
 
@@ -143,6 +160,11 @@ class ZipFile implements ZipConstants {
         if (name == null) {
             throw new NullPointerException("name");
         }
+        if (cen != null) {
+            ensureOpen();
+            int i = cen.lookup(name, true);
+            return i < 0 ? null : cen.entry(i, name);
+        }
         long jzentry = 0;
         synchronized (this) {
             ensureOpen();
@@ -190,23 +212,36 @@ class ZipFile implements ZipConstants {
 	}
         long jzentry = 0;
         ZipFileInputStream in = null;
-        synchronized (this) {
+        int method;
+        if (cen != null) {
             ensureOpen();
-            jzentry = getEntry(jzfile, name, false);
-            if (jzentry == 0) {
+            int i = cen.lookup(name, false);
+            if (i < 0) {
                 return null;
             }
+            method = cen.method(i);
+            in = new ZipFileInputStream(cen.dataOffset(i), cen.csize(i),
+                                        cen.size(i));
+        } else {
+            synchronized (this) {
+                ensureOpen();
+                jzentry = getEntry(jzfile, name, false);
+                if (jzentry == 0) {
+                    return null;
+                }
 
-	    in = new ZipFileInputStream(jzentry);
+                in = new ZipFileInputStream(jzentry);
 
+            }
+            method = getMethod(jzentry);
         }
         final ZipFileInputStream zfin = in;
-	switch (getMethod(jzentry)) {
+	switch (method) {
 	case STORED:
 	    return zfin;
 	case DEFLATED:
 	    // MORE: Compute good size for inflater stream:
-	    long size = getSize(jzentry) + 2; // Inflater likes a bit of slack
+	    long size = zfin.size() + 2; // Inflater likes a bit of slack
             if (size > 65536) size = 8192;
             if (size <= 0) size = 4096;
 	    return new InflaterInputStream(zfin, getInflater(), (int)size) {
@@ -214,9 +249,11 @@ class ZipFile implements ZipConstants {
 
 		public void close() throws IOException {
                     if (!isClosed) {
-                         releaseInflater(inf);
-                        this.in.close();
                         isClosed = true;
+                        releaseInflater(inf);
+                        // Marks this stream closed, so that it no
+                        // longer reads with the released inflater
+                        super.close();
                     }
 		}
 		// Override fill() method to provide an extra "dummy" byte
@@ -253,34 +290,21 @@ class ZipFile implements ZipConstants {
     private static native int getMethod(long jzentry);
 
     /*
-     * Gets an inflater from the list of available inflaters or allocates
-     * a new one.
+     * Gets an inflater from the shared pool of available inflaters or
+     * allocates a new one.
      */
     private Inflater getInflater() {
-	synchronized (inflaters) {
-	    int size = inflaters.size();
-	    if (size > 0) {
-		Inflater inf = (Inflater)inflaters.remove(size - 1);
-		return inf;
-	    } else {
-		return new Inflater(true);
-	    }
-	}
+	return ZStreamPool.getInflater(true);
     }
 
     /*
-     * Releases the specified inflater to the list of available inflaters.
+     * Releases the specified inflater to the shared pool of available
+     * inflaters.
      */
     private void releaseInflater(Inflater inf) {
-	synchronized (inflaters) {
-            inf.reset();
-	    inflaters.add(inf);
-	}
+	ZStreamPool.releaseInflater(inf);
     }
 
-    // List of available Inflater objects for decompression
-    private Vector inflaters = new Vector();
-
     /**
      * Returns the path name of the ZIP file.
      * @return the path name of the ZIP file
@@ -296,6 +320,22 @@ class ZipFile implements ZipConstants {
      */
     public Enumeration<? extends ZipEntry> entries() {
         ensureOpen();
+        if (cen != null) {
+            return new Enumeration<ZipEntry>() {
+                    private int i = 0;
+                    public boolean hasMoreElements() {
+                        ensureOpen();
+                        return i < total;
+                    }
+                    public ZipEntry nextElement() throws NoSuchElementException {
+                        ensureOpen();
+                        if (i >= total) {
+                            throw new NoSuchElementException();
+                        }
+                        return cen.entry(i++, null);
+                    }
+                };
+        }
         return new Enumeration<ZipEntry>() {
                 private int i = 0;
                 public boolean hasMoreElements() {
@@ -358,21 +398,14 @@ class ZipFile implements ZipConstants {
         synchronized (this) {
 	    closeRequested = true;
 
-	    if (jzfile != 0) {
-		// Close the zip file
+	    // Close the zip file
+	    if (cen != null) {
+		cen.close();
+	    } else if (jzfile != 0) {
 		long zf = this.jzfile;
 		jzfile = 0;
 
 		close(zf);
-
-		// Release inflaters
-		synchronized (inflaters) {
-		    int size = inflaters.size();
-		    for (int i = 0; i < size; i++) {
-			Inflater inf = (Inflater)inflaters.get(i);
-			inf.end();
-		    }
-		}
 	    }
         }
     }
@@ -403,7 +436,7 @@ class ZipFile implements ZipConstants {
 	    throw new IllegalStateException("zip file closed");
 	}
 
-	if (jzfile == 0) {
+	if (jzfile == 0 && cen == null) {
 	    throw new IllegalStateException("The object is not initialized.");
 	}
     }
@@ -423,6 +456,7 @@ class ZipFile implements ZipConstants {
 	private   long pos;	// current position within entry data
 	protected long rem;	// number of remaining bytes within entry
         protected long size;    // uncompressed size of this entry
+        private   long start;   // file position of entry data, if cen != null
 
 	ZipFileInputStream(long jzentry) {
 	    pos = 0;
@@ -431,6 +465,13 @@ class ZipFile implements ZipConstants {
 	    this.jzentry = jzentry;
 	}
 
+        ZipFileInputStream(long start, long csize, long size) {
+            pos = 0;
+            rem = csize;
+            this.size = size;
+            this.start = start;
+        }
+
 	public int read(byte b[], int off, int len) throws IOException {
 	    if (rem == 0) {
 		return -1;
@@ -441,11 +482,16 @@ class ZipFile implements ZipConstants {
 	    if (len > rem) {
 		len = (int) rem;
 	    }
-            synchronized (ZipFile.this) {
-		ensureOpenOrZipException();
-
-		len = ZipFile.read(ZipFile.this.jzfile, jzentry, pos, b,
-				   off, len);
+            if (cen != null) {
+                ensureOpenOrZipException();
+                len = cen.read(start + pos, b, off, len);
+            } else {
+                synchronized (ZipFile.this) {
+                    ensureOpenOrZipException();
+
+                    len = ZipFile.read(ZipFile.this.jzfile, jzentry, pos, b,
+                                       off, len);
+                }
             }
 	    if (len > 0) {
 		pos += len;
@@ -487,6 +533,9 @@ class ZipFile implements ZipConstants {
 
         public void close() {
             rem = 0;
+            if (cen != null) {
+                return;
+            }
             synchronized (ZipFile.this) {
                 if (jzentry != 0 && ZipFile.this.jzfile != 0) {
                     freeEntry(ZipFile.this.jzfile, jzentry);
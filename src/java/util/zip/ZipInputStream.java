@@ -14,6 +14,7 @@ import java.io.UnsupportedEncodingException;
 import java.io.PushbackInputStream;
 import sun.security.action.GetPropertyAction;
 import java.util.jar.JarInputStream;
+import static java.util.zip.ZipConstants64.*;
 
 
 /**
@@ -28,6 +29,7 @@ public
 class ZipInputStream extends InflaterInputStream implements ZipConstants {
     private ZipEntry entry;
     private int flag;
+    private boolean zip64;  // LOC header has a ZIP64 extra field
     private CRC32 crc = new CRC32();
     private long remaining;
     private byte[] tmpbuf = new byte[512];
@@ -58,7 +60,7 @@ class ZipInputStream extends InflaterInputStream implements ZipConstants {
      * @param in the actual input stream
      */
     public ZipInputStream(InputStream in) {
-	super(new PushbackInputStream(in, 512), new Inflater(true), 512);
+	super(new PushbackInputStream(in, 512), ZStreamPool.getInflater(true), 512);
         usesDefaultInflater = true;
         if(in == null) {
             throw new NullPointerException("in is null");
@@ -274,14 +276,45 @@ class ZipInputStream extends InflaterInputStream implements ZipConstants {
 	    e.size = get32(tmpbuf, LOCLEN);
 	}
 	len = get16(tmpbuf, LOCEXT);
+	zip64 = false;
 	if (len > 0) {
 	    byte[] bb = new byte[len];
 	    readFully(bb, 0, len);
 	    e.setExtra(bb);
+	    if (get32(tmpbuf, LOCSIZ) == ZIP64_MAGICVAL ||
+		get32(tmpbuf, LOCLEN) == ZIP64_MAGICVAL) {
+		readZip64Extra(e, bb);
+	    }
 	}
 	return e;
     }
 
+    /*
+     * Reads the sizes of an entry from the ZIP64 extra field of its LOC
+     * header, if there is one.  The sizes are zero, and are instead in
+     * an EXT descriptor with 8-byte sizes, if the entry has one.
+     */
+    private void readZip64Extra(ZipEntry e, byte[] extra) {
+	int off = 0;
+	while (off + 4 <= extra.length) {
+	    int tag = get16(extra, off);
+	    int sz = get16(extra, off + 2);
+	    off += 4;
+	    if (off + sz > extra.length) {
+		break;
+	    }
+	    if (tag == ZIP64_EXTID && sz >= 16) {
+		zip64 = true;
+		if ((flag & 8) == 0) {
+		    e.size = get64(extra, off);
+		    e.csize = get64(extra, off + 8);
+		}
+		break;
+	    }
+	    off += sz;
+	}
+    }
+
     /*
      * Fetches a UTF8-encoded String from the specified byte array.
      */
@@ -366,7 +399,22 @@ class ZipInputStream extends InflaterInputStream implements ZipConstants {
 	if (n > 0) {
 	    ((PushbackInputStream)in).unread(buf, len - n, n);
 	}
-	if ((flag & 8) == 8) {
+	if ((flag & 8) == 8 && zip64) {
+	    /* "Data Descriptor" with 8-byte sizes present */
+	    readFully(tmpbuf, 0, ZIP64_EXTHDR);
+	    long sig = get32(tmpbuf, 0);
+	    if (sig != EXTSIG) { // no EXTSIG present
+		e.crc = sig;
+		e.csize = get64(tmpbuf, ZIP64_EXTSIZ - ZIP64_EXTCRC);
+		e.size = get64(tmpbuf, ZIP64_EXTLEN - ZIP64_EXTCRC);
+		((PushbackInputStream)in).unread(
+		    tmpbuf, ZIP64_EXTHDR - ZIP64_EXTCRC, ZIP64_EXTCRC);
+	    } else {
+		e.crc = get32(tmpbuf, ZIP64_EXTCRC);
+		e.csize = get64(tmpbuf, ZIP64_EXTSIZ);
+		e.size = get64(tmpbuf, ZIP64_EXTLEN);
+	    }
+	} else if ((flag & 8) == 8) {
 	    /* "Data Descriptor" present */
 	    readFully(tmpbuf, 0, EXTHDR);
 	    long sig = get32(tmpbuf, 0);
@@ -429,6 +477,14 @@ class ZipInputStream extends InflaterInputStream implements ZipConstants {
 	return get16(b, off) | ((long)get16(b, off+2) << 16);
     }
 
+    /*
+     * Fetches signed 64-bit value from byte array at specified offset.
+     * The bytes are assumed to be in Intel (little-endian) byte order.
+     */
+    private static final long get64(byte b[], int off) {
+	return get32(b, off) | (get32(b, off+4) << 32);
+    }
+
     private String getFileName(byte[] b, int len) throws IOException {
 	String name;
 	try {
@@ -11,6 +11,7 @@ import java.io.OutputStream;
 import java.io.IOException;
 import java.util.Vector;
 import java.util.HashSet;
+import static java.util.zip.ZipConstants64.*;
 
 /**
  * This class implements an output stream filter for writing files in the
@@ -27,7 +28,8 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	public final ZipEntry entry;
 	public final long offset;
 	public final int flag;
-	public XEntry(ZipEntry entry, long offset) {
+	public final boolean zip64;	// LOC header has a ZIP64 extra field
+	public XEntry(ZipEntry entry, long offset, boolean zip64) {
 	    this.entry = entry;
 	    this.offset = offset;
 	    this.flag = (entry.method == DEFLATED &&
@@ -39,6 +41,11 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 		? 8
 		// store size, compressed size, and crc-32 in LOC header
 		: 0;
+	    // a data descriptor has 8-byte sizes only if the LOC header
+	    // has a ZIP64 extra field, so the caller must request one if
+	    // the entry may reach 4GB; known sizes decide for themselves
+	    this.zip64 = (flag == 8) ? zip64
+		: (entry.size >= ZIP64_MAGICVAL || entry.csize >= ZIP64_MAGICVAL);
 	}
     }
 
@@ -85,10 +92,19 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
      * @param out the actual output stream
      */
     public ZipOutputStream(OutputStream out) {
-	super(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+	super(out, ZStreamPool.getDeflater(Deflater.DEFAULT_COMPRESSION, true));
         usesDefaultDeflater = true;
     }
 
+    /*
+     * Creates a new ZIP output stream without a compressor, for
+     * ParallelZipOutputStream, which sets def only while it writes an
+     * entry's data through this class.
+     */
+    ZipOutputStream(OutputStream out, int size) {
+	super(out, size);
+    }
+
     /**
      * Sets the ZIP file comment.
      * @param comment the comment string
@@ -125,7 +141,10 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
      * @exception IllegalArgumentException if the compression level is invalid
      */
     public void setLevel(int level) {
-	def.setLevel(level);
+	if (!closed) {
+	    // the deflater is back in the shared pool once closed
+	    def.setLevel(level);
+	}
     }
 
     /**
@@ -143,6 +162,16 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	if (current != null) {
 	    closeEntry();	// close previous entry
 	}
+	checkEntry(e);
+	startEntry(e, e.size >= ZIP64_MAGICVAL);
+    }
+
+    /*
+     * Sets the defaults of a new entry, and checks that its method is
+     * supported, that a STORED entry has its sizes and crc-32 set, and
+     * that its name is not a duplicate.
+     */
+    void checkEntry(ZipEntry e) throws ZipException {
 	if (e.time == -1) {
 	    e.setTime(System.currentTimeMillis());
 	}
@@ -174,11 +203,34 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	if (! names.add(e.name)) {
 	    throw new ZipException("duplicate entry: " + e.name);
 	}
-	current = new XEntry(e, written);
+    }
+
+    /*
+     * Writes the LOC header of a checked entry and makes it the current
+     * entry, whose data is then written through this class.  If the
+     * sizes are left to a data descriptor, zip64 requests a ZIP64 extra
+     * field in the LOC header, so that the descriptor can hold sizes of
+     * 4GB or more.
+     */
+    void startEntry(ZipEntry e, boolean zip64) throws IOException {
+	current = new XEntry(e, written, zip64);
 	xentries.add(current);
         writeLOC(current);
     }
 
+    /*
+     * Writes out a checked entry whose data was compressed elsewhere,
+     * and whose size, compressed size and crc-32 are set.
+     */
+    void writeEntry(ZipEntry e, byte[] b, int off, int len)
+	throws IOException
+    {
+	XEntry xentry = new XEntry(e, written, false);
+	xentries.add(xentry);
+	writeLOC(xentry);
+	writeBytes(b, off, len);
+    }
+
     /**
      * Closes the current ZIP entry and positions the stream for writing
      * the next entry.
@@ -217,7 +269,7 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 		    e.size  = def.getBytesRead();
 		    e.csize = def.getBytesWritten();
 		    e.crc = crc.getValue();
-		    writeEXT(e);
+		    writeEXT(current);
 		}
 		def.reset();
 		written += e.csize;
@@ -329,8 +381,17 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
     private void writeLOC(XEntry xentry) throws IOException {
 	ZipEntry e = xentry.entry;
 	int flag = xentry.flag;
+	boolean hasZip64 = xentry.zip64;
+	int elen = (e.extra != null) ? e.extra.length : 0;
+	if (hasZip64) {
+	    elen += 20;		    // headid(2) + size(2) + size(16)
+	}
 	writeInt(LOCSIG);	    // LOC header signature
-	writeShort(version(e));     // version needed to extract
+	if (hasZip64) {
+	    writeShort(45);	    // ver 4.5 for zip64
+	} else {
+	    writeShort(version(e)); // version needed to extract
+	}
 	writeShort(flag);           // general purpose bit flag
 	writeShort(e.method);       // compression method
 	writeInt(e.time);           // last modification time
@@ -338,17 +399,30 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	    // store size, uncompressed size, and crc-32 in data descriptor
 	    // immediately following compressed entry data
 	    writeInt(0);
+	} else {
+	    writeInt(e.crc);        // crc-32
+	}
+	if (hasZip64) {
+	    writeInt(ZIP64_MAGICVAL);
+	    writeInt(ZIP64_MAGICVAL);
+	} else if ((flag & 8) == 8) {
 	    writeInt(0);
 	    writeInt(0);
 	} else {
-	    writeInt(e.crc);        // crc-32
 	    writeInt(e.csize);      // compressed size
 	    writeInt(e.size);       // uncompressed size
 	}
 	byte[] nameBytes = getUTF8Bytes(e.name);
 	writeShort(nameBytes.length);
-	writeShort(e.extra != null ? e.extra.length : 0);
+	writeShort(elen);
 	writeBytes(nameBytes, 0, nameBytes.length);
+	if (hasZip64) {
+	    // zero sizes if they follow in the data descriptor
+	    writeShort(ZIP64_EXTID);
+	    writeShort(16);
+	    writeLong((flag & 8) == 8 ? 0 : e.size);
+	    writeLong((flag & 8) == 8 ? 0 : e.csize);
+	}
 	if (e.extra != null) {
 	    writeBytes(e.extra, 0, e.extra.length);
 	}
@@ -356,13 +430,21 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
     }
 
     /*
-     * Writes extra data descriptor (EXT) for specified entry.
+     * Writes extra data descriptor (EXT) for specified entry.  Without
+     * a ZIP64 extra field in the LOC header, sizes of 4GB or more are
+     * truncated here; the central directory still has them in full.
      */
-    private void writeEXT(ZipEntry e) throws IOException {
+    private void writeEXT(XEntry xentry) throws IOException {
+	ZipEntry e = xentry.entry;
 	writeInt(EXTSIG);	    // EXT header signature
 	writeInt(e.crc);	    // crc-32
-	writeInt(e.csize);	    // compressed size
-	writeInt(e.size);	    // uncompressed size
+	if (xentry.zip64) {
+	    writeLong(e.csize);
+	    writeLong(e.size);
+	} else {
+	    writeInt(e.csize);	    // compressed size
+	    writeInt(e.size);	    // uncompressed size
+	}
     }
 
     /*
@@ -373,18 +455,49 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	ZipEntry e  = xentry.entry;
 	int flag = xentry.flag;
 	int version = version(e);
+
+	long csize = e.csize;
+	long size = e.size;
+	long offset = xentry.offset;
+	int e64len = 0;
+	boolean hasZip64 = false;
+	if (e.csize >= ZIP64_MAGICVAL) {
+	    csize = ZIP64_MAGICVAL;
+	    e64len += 8;	    // csize(8)
+	    hasZip64 = true;
+	}
+	if (e.size >= ZIP64_MAGICVAL) {
+	    size = ZIP64_MAGICVAL;  // size(8)
+	    e64len += 8;
+	    hasZip64 = true;
+	}
+	if (xentry.offset >= ZIP64_MAGICVAL) {
+	    offset = ZIP64_MAGICVAL;
+	    e64len += 8;	    // offset(8)
+	    hasZip64 = true;
+	}
 	writeInt(CENSIG);	    // CEN header signature
-	writeShort(version);	    // version made by
-	writeShort(version);	    // version needed to extract
+	if (hasZip64) {
+	    writeShort(45);	    // ver 4.5 for zip64
+	    writeShort(45);
+	} else {
+	    writeShort(version);    // version made by
+	    writeShort(version);    // version needed to extract
+	}
 	writeShort(flag);	    // general purpose bit flag
 	writeShort(e.method);	    // compression method
 	writeInt(e.time);	    // last modification time
 	writeInt(e.crc);	    // crc-32
-	writeInt(e.csize);	    // compressed size
-	writeInt(e.size);	    // uncompressed size
+	writeInt(csize);	    // compressed size
+	writeInt(size);		    // uncompressed size
 	byte[] nameBytes = getUTF8Bytes(e.name);
 	writeShort(nameBytes.length);
-	writeShort(e.extra != null ? e.extra.length : 0);
+	int elen = (e.extra != null) ? e.extra.length : 0;
+	if (hasZip64) {
+	    writeShort(e64len + 4 + elen); // + headid(2) + datasize(2)
+	} else {
+	    writeShort(elen);
+	}
 	byte[] commentBytes;
 	if (e.comment != null) {
 	    commentBytes = getUTF8Bytes(e.comment);
@@ -396,8 +509,18 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	writeShort(0);		    // starting disk number
 	writeShort(0);		    // internal file attributes (unused)
 	writeInt(0);		    // external file attributes (unused)
-	writeInt(xentry.offset);    // relative offset of local header
+	writeInt(offset);	    // relative offset of local header
 	writeBytes(nameBytes, 0, nameBytes.length);
+	if (hasZip64) {
+	    writeShort(ZIP64_EXTID);// Zip64 extra
+	    writeShort(e64len);
+	    if (size == ZIP64_MAGICVAL)
+		writeLong(e.size);
+	    if (csize == ZIP64_MAGICVAL)
+		writeLong(e.csize);
+	    if (offset == ZIP64_MAGICVAL)
+		writeLong(xentry.offset);
+	}
 	if (e.extra != null) {
 	    writeBytes(e.extra, 0, e.extra.length);
 	}
@@ -407,17 +530,53 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
     }
 
     /*
-     * Writes end of central directory (END) header.
+     * Writes end of central directory (END) header, preceded by the
+     * ZIP64 end of central directory record and locator if needed.
      */
     private void writeEND(long off, long len) throws IOException {
+	boolean hasZip64 = false;
+	long xlen = len;
+	long xoff = off;
+	if (xlen >= ZIP64_MAGICVAL) {
+	    xlen = ZIP64_MAGICVAL;
+	    hasZip64 = true;
+	}
+	if (xoff >= ZIP64_MAGICVAL) {
+	    xoff = ZIP64_MAGICVAL;
+	    hasZip64 = true;
+	}
 	int count = xentries.size();
+	if (count >= ZIP64_MAGICCOUNT) {
+	    count = ZIP64_MAGICCOUNT;
+	    hasZip64 = true;
+	}
+	if (hasZip64) {
+	    long off64 = written;
+	    // zip64 end of central directory record
+	    writeInt(ZIP64_ENDSIG);	    // zip64 END record signature
+	    writeLong(ZIP64_ENDHDR - 12);   // size of zip64 end
+	    writeShort(45);		    // version made by
+	    writeShort(45);		    // version needed to extract
+	    writeInt(0);		    // number of this disk
+	    writeInt(0);		    // central directory start disk
+	    writeLong(xentries.size());	    // number of directory entries on disk
+	    writeLong(xentries.size());	    // number of directory entries
+	    writeLong(len);		    // length of central directory
+	    writeLong(off);		    // offset of central directory
+
+	    // zip64 end of central directory locator
+	    writeInt(ZIP64_LOCSIG);	    // zip64 END locator signature
+	    writeInt(0);		    // zip64 END start disk
+	    writeLong(off64);		    // offset of zip64 END
+	    writeInt(1);		    // total number of disks
+	}
 	writeInt(ENDSIG);	    // END record signature
 	writeShort(0);		    // number of this disk
 	writeShort(0);		    // central directory start disk
 	writeShort(count);	    // number of directory entries on disk
 	writeShort(count);	    // total number of directory entries
-	writeInt(len);		    // length of central directory
-	writeInt(off);		    // offset of central directory
+	writeInt(xlen);		    // length of central directory
+	writeInt(xoff);		    // offset of central directory
 	if (comment != null) {	    // zip file comment
 	    byte[] b = getUTF8Bytes(comment);
 	    writeShort(b.length);
@@ -449,6 +608,14 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
 	written += 4;
     }
 
+    /*
+     * Writes a 64-bit long to the output stream in little-endian byte order.
+     */
+    private void writeLong(long v) throws IOException {
+	writeInt(v & 0xffffffffL);
+	writeInt(v >>> 32);
+    }
+
     /*
      * Writes an array of bytes to the output stream.
      */
@@ -479,7 +646,7 @@ class ZipOutputStream extends DeflaterOutputStream implements ZipConstants {
      * Returns an array of bytes representing the UTF8 encoding
      * of the specified String.
      */
-    private static byte[] getUTF8Bytes(String s) {
+    static byte[] getUTF8Bytes(String s) {
 	char[] c = s.toCharArray();
 	int len = c.length;
 	// Count the number of encoded bytes...
@@ -0,0 +1,125 @@
+/*
+ * @(#)ZlibMXBean.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.zip;
+
+/**
+ * The management interface for the native zlib streams used by
+ * {@link Inflater} and {@link Deflater}, and for the process-wide pool
+ * of idle instances shared by the classes of this package.
+ *
+ * <p>There is a single instance of the implementation class of this
+ * interface, which is an
+ * <a href="../../lang/management/ManagementFactory.html#MXBean">MXBean</a>
+ * that can be obtained by calling the {@link Inflater#getZlibMXBean}
+ * method, or from the {@link
+ * java.lang.management.ManagementFactory#getPlatformMBeanServer platform
+ * <tt>MBeanServer</tt>} under the {@link javax.management.ObjectName
+ * ObjectName} {@link Inflater#ZLIB_MXBEAN_NAME
+ * <tt>java.util.zip:type=Zlib</tt>}.
+ *
+ * <h4>Pooling</h4>
+ * {@link ZipFile}, and the stream classes of this package when
+ * constructed without an explicit <tt>Inflater</tt> or
+ * <tt>Deflater</tt>, take one from the pool and return it, {@linkplain
+ * Inflater#reset reset}, when the stream is closed, instead of
+ * allocating a new native stream each time and releasing it only when
+ * it is ended or finalized.  For each kind of instance (an inflater
+ * or deflater, with or without the ZLIB header) the pool keeps at most
+ * {@link #getMaxIdle MaxIdle} idle instances; instances returned
+ * beyond that are ended at once.  The initial value is taken from the
+ * system property <tt>sun.zip.poolSize</tt>, and defaults to the number
+ * of available processors.  A stream that is never closed never
+ * returns its instance, which is then ended by finalization as before.
+ *
+ * <h4>Native memory</h4>
+ * The counts of {@link #getInflaterCount inflaters} and {@link
+ * #getDeflaterCount deflaters} include every instance that has been
+ * created and not yet ended, whether in use, idle in the pool, or
+ * unreachable and awaiting finalization.  The memory estimate is
+ * derived from these counts and zlib's documented allocation sizes
+ * for the default window and memory levels; it does not include any
+ * input being buffered by the native code.
+ *
+ * @see Inflater#getZlibMXBean
+ * @since 1.7
+ */
+public interface ZlibMXBean {
+    /**
+     * Returns the number of <tt>Inflater</tt> instances that have
+     * been created and not yet ended.
+     *
+     * @return the number of live inflaters
+     */
+    long getInflaterCount();
+
+    /**
+     * Returns the number of <tt>Deflater</tt> instances that have
+     * been created and not yet ended.
+     *
+     * @return the number of live deflaters
+     */
+    long getDeflaterCount();
+
+    /**
+     * Returns the number of idle inflaters held by the pool.
+     *
+     * @return the number of idle inflaters
+     */
+    int getIdleInflaterCount();
+
+    /**
+     * Returns the number of idle deflaters held by the pool.
+     *
+     * @return the number of idle deflaters
+     */
+    int getIdleDeflaterCount();
+
+    /**
+     * Returns an estimate of the native memory, in bytes, held by
+     * the live inflaters and deflaters.
+     *
+     * @return the estimated native memory in bytes
+     */
+    long getEstimatedNativeMemoryUsed();
+
+    /**
+     * Returns the number of requests to the pool that were satisfied
+     * by an idle instance.
+     *
+     * @return the number of pool hits
+     */
+    long getPoolHitCount();
+
+    /**
+     * Returns the number of requests to the pool that required a new
+     * instance to be created.
+     *
+     * @return the number of pool misses
+     */
+    long getPoolMissCount();
+
+    /**
+     * Returns the maximum number of idle instances of each kind kept
+     * by the pool.
+     *
+     * @return the maximum number of idle instances of each kind
+     */
+    int getMaxIdle();
+
+    /**
+     * Sets the maximum number of idle instances of each kind kept by
+     * the pool.  Idle instances in excess of a reduced maximum are
+     * ended.  A value of zero disables pooling.
+     *
+     * @param maxIdle the new maximum
+     * @throws IllegalArgumentException if <tt>maxIdle</tt> is negative
+     * @throws SecurityException if a security manager exists and the
+     * caller does not have <tt>ManagementPermission("control")</tt>
+     */
+    void setMaxIdle(int maxIdle);
+}
@@ -0,0 +1,176 @@
+/*
+ * @(#)ParallelSortBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares Arrays.parallelSort with the sequential Arrays.sort on
+ * random arrays of primitives and objects.  This is a benchmark to be
+ * run by hand, not a regression test:
+ *
+ *   java ParallelSortBenchmark [maxSize [rounds]]
+ *
+ * For each element type and each size from 1000 up to maxSize,
+ * growing tenfold, it reports the best time over the given number of
+ * rounds for sorting a fresh copy of the same random array with each
+ * method, and the speedup of parallelSort.  Sizes at or below the
+ * sort granularity of parallelSort (8192 elements) show the cost of
+ * its sequential fallback.  parallelSort runs in the ForkJoinPool
+ * common pool, whose parallelism may be set with the system property
+ * java.util.concurrent.ForkJoinPool.common.parallelism.  The default
+ * maxSize of ten million needs a heap of about -Xmx1g for the object
+ * arrays.
+ */
+
+import java.util.*;
+
+public class ParallelSortBenchmark {
+
+    /**
+     * An element type under test: create makes a random array, copy
+     * clones it, and sort sorts a copy sequentially or in parallel.
+     */
+    static abstract class Subject {
+        final String name;
+        Subject(String name) { this.name = name; }
+        abstract Object create(Random rnd, int n);
+        abstract Object copy(Object a);
+        abstract void sort(Object a, boolean parallel);
+    }
+
+    static final Comparator<String> BY_LENGTH_THEN_VALUE =
+        new Comparator<String>() {
+            public int compare(String x, String y) {
+                int d = x.length() - y.length();
+                return (d != 0) ? d : x.compareTo(y);
+            }
+        };
+
+    static final Subject[] SUBJECTS = {
+        new Subject("int[]") {
+            Object create(Random rnd, int n) {
+                int[] a = new int[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = rnd.nextInt();
+                return a;
+            }
+            Object copy(Object a) { return ((int[]) a).clone(); }
+            void sort(Object a, boolean parallel) {
+                if (parallel)
+                    Arrays.parallelSort((int[]) a);
+                else
+                    Arrays.sort((int[]) a);
+            }
+        },
+        new Subject("long[]") {
+            Object create(Random rnd, int n) {
+                long[] a = new long[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = rnd.nextLong();
+                return a;
+            }
+            Object copy(Object a) { return ((long[]) a).clone(); }
+            void sort(Object a, boolean parallel) {
+                if (parallel)
+                    Arrays.parallelSort((long[]) a);
+                else
+                    Arrays.sort((long[]) a);
+            }
+        },
+        new Subject("double[]") {
+            Object create(Random rnd, int n) {
+                double[] a = new double[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = rnd.nextGaussian();
+                return a;
+            }
+            Object copy(Object a) { return ((double[]) a).clone(); }
+            void sort(Object a, boolean parallel) {
+                if (parallel)
+                    Arrays.parallelSort((double[]) a);
+                else
+                    Arrays.sort((double[]) a);
+            }
+        },
+        new Subject("Integer[]") {
+            Object create(Random rnd, int n) {
+                Integer[] a = new Integer[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = rnd.nextInt();
+                return a;
+            }
+            Object copy(Object a) { return ((Integer[]) a).clone(); }
+            void sort(Object a, boolean parallel) {
+                if (parallel)
+                    Arrays.parallelSort((Integer[]) a);
+                else
+                    Arrays.sort((Integer[]) a);
+            }
+        },
+        new Subject("String[], Comparator") {
+            Object create(Random rnd, int n) {
+                String[] a = new String[n];
+                for (int i = 0; i < n; i++)
+                    a[i] = Integer.toString(rnd.nextInt() >>> rnd.nextInt(32),
+                                            36);
+                return a;
+            }
+            Object copy(Object a) { return ((String[]) a).clone(); }
+            void sort(Object a, boolean parallel) {
+                if (parallel)
+                    Arrays.parallelSort((String[]) a, BY_LENGTH_THEN_VALUE);
+                else
+                    Arrays.sort((String[]) a, BY_LENGTH_THEN_VALUE);
+            }
+        },
+    };
+
+    public static void main(String[] args) {
+        int maxSize = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        System.out.printf("best of %d rounds%n", rounds);
+        System.out.printf("%-22s %10s %12s %12s %8s%n",
+                          "", "size", "sort ms", "parallel ms", "speedup");
+        for (Subject s : SUBJECTS) {
+            // Warm up both methods before the smallest sizes are timed
+            Object warm = s.create(new Random(7), Math.min(maxSize, 100000));
+            for (int i = 0; i < 10; i++) {
+                s.sort(s.copy(warm), false);
+                s.sort(s.copy(warm), true);
+            }
+            for (int n = 1000; n <= maxSize; n *= 10) {
+                Object source = s.create(new Random(42), n);
+                Object expected = s.copy(source);
+                s.sort(expected, false);
+                long seq = time(s, source, false, rounds, expected);
+                long par = time(s, source, true, rounds, expected);
+                System.out.printf("%-22s %10d %12.3f %12.3f %8.2f%n",
+                                  s.name, n, seq / 1e6, par / 1e6,
+                                  (double) seq / par);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Returns the best time for sorting a copy of the source array,
+     * checking each result against the expected sorted array.
+     */
+    static long time(Subject s, Object source, boolean parallel,
+                     int rounds, Object expected) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            Object a = s.copy(source);
+            long t0 = System.nanoTime();
+            s.sort(a, parallel);
+            best = Math.min(best, System.nanoTime() - t0);
+            if (!Arrays.deepEquals(new Object[] { a },
+                                   new Object[] { expected }))
+                throw new AssertionError(s.name + " not sorted");
+        }
+        return best;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * @(#)SortingBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Times Arrays.sort on random, sorted, reverse-sorted, sawtooth and
+ * nearly sorted inputs.  This is a benchmark to be run by hand, not a
+ * regression test:
+ *
+ *   java SortingBenchmark [size [rounds]]
+ *
+ * For int[] it compares the dual-pivot quicksort of Arrays.sort with
+ * a copy of the single-pivot Bentley-McIlroy quicksort it replaced.
+ * For Integer[] it times Arrays.sort, which sorts objects with
+ * TimSort, or with the legacy merge sort when the system property
+ * java.util.Arrays.useLegacyMergeSort is true; run the benchmark once
+ * with each setting to compare them.  Each time is the best over the
+ * given number of rounds for sorting a fresh copy of the input, in
+ * milliseconds.  Every result is checked to be sorted.
+ */
+
+import java.util.*;
+
+public class SortingBenchmark {
+
+    /** An input pattern, filled in from a seeded Random. */
+    static abstract class Pattern {
+        final String name;
+        Pattern(String name) { this.name = name; }
+        abstract void fill(int[] a, Random rnd);
+    }
+
+    static final Pattern[] PATTERNS = {
+        new Pattern("random") {
+            void fill(int[] a, Random rnd) {
+                for (int i = 0; i < a.length; i++)
+                    a[i] = rnd.nextInt();
+            }
+        },
+        new Pattern("sorted") {
+            void fill(int[] a, Random rnd) {
+                for (int i = 0; i < a.length; i++)
+                    a[i] = i;
+            }
+        },
+        new Pattern("reverse sorted") {
+            void fill(int[] a, Random rnd) {
+                for (int i = 0; i < a.length; i++)
+                    a[i] = a.length - i;
+            }
+        },
+        new Pattern("sawtooth, 16 runs") {
+            void fill(int[] a, Random rnd) {
+                int period = Math.max(a.length / 16, 1);
+                for (int i = 0; i < a.length; i++)
+                    a[i] = i % period;
+            }
+        },
+        new Pattern("sorted, 1% swapped") {
+            void fill(int[] a, Random rnd) {
+                for (int i = 0; i < a.length; i++)
+                    a[i] = i;
+                for (int k = a.length / 100; k > 0; k--) {
+                    int i = rnd.nextInt(a.length), j = rnd.nextInt(a.length);
+                    int t = a[i]; a[i] = a[j]; a[j] = t;
+                }
+            }
+        },
+    };
+
+    public static void main(String[] args) {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        String legacy = System.getProperty("java.util.Arrays.useLegacyMergeSort");
+        System.out.printf("%d elements, best of %d rounds, ms, " +
+                          "java.util.Arrays.useLegacyMergeSort=%s%n",
+                          size, rounds, legacy);
+        System.out.printf("%-20s %14s %14s %14s%n", "",
+                          "int[] legacy", "int[] sort", "Integer[] sort");
+        int[] a = new int[size];
+        for (int w = 0; w < 3; w++) {   // warm up on random input
+            PATTERNS[0].fill(a, new Random(w));
+            timeLegacy(a, 1);
+            timeSort(a, 1);
+            timeSort(box(a), 1);
+        }
+        for (Pattern p : PATTERNS) {
+            p.fill(a, new Random(42));
+            System.out.printf("%-20s %14.2f %14.2f %14.2f%n", p.name,
+                              timeLegacy(a, rounds) / 1e6,
+                              timeSort(a, rounds) / 1e6,
+                              timeSort(box(a), rounds) / 1e6);
+        }
+    }
+
+    static Integer[] box(int[] a) {
+        Integer[] b = new Integer[a.length];
+        for (int i = 0; i < a.length; i++)
+            b[i] = a[i];
+        return b;
+    }
+
+    static long timeLegacy(int[] source, int rounds) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            int[] a = source.clone();
+            long t0 = System.nanoTime();
+            LegacySort.sort1(a, 0, a.length);
+            best = Math.min(best, System.nanoTime() - t0);
+            checkSorted(a);
+        }
+        return best;
+    }
+
+    static long timeSort(int[] source, int rounds) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            int[] a = source.clone();
+            long t0 = System.nanoTime();
+            Arrays.sort(a);
+            best = Math.min(best, System.nanoTime() - t0);
+            checkSorted(a);
+        }
+        return best;
+    }
+
+    static long timeSort(Integer[] source, int rounds) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            Integer[] a = source.clone();
+            long t0 = System.nanoTime();
+            Arrays.sort(a);
+            best = Math.min(best, System.nanoTime() - t0);
+            for (int i = 1; i < a.length; i++)
+                if (a[i - 1] > a[i])
+                    throw new AssertionError("not sorted at " + i);
+        }
+        return best;
+    }
+
+    static void checkSorted(int[] a) {
+        for (int i = 1; i < a.length; i++)
+            if (a[i - 1] > a[i])
+                throw new AssertionError("not sorted at " + i);
+    }
+
+    /**
+     * The tuned quicksort formerly used by Arrays.sort(int[]), adapted
+     * from Jon L. Bentley and M. Douglas McIlroy's "Engineering a Sort
+     * Function", Software-Practice and Experience, Vol. 23(11)
+     * P. 1249-1265 (November 1993).
+     */
+    static final class LegacySort {
+        static void sort1(int x[], int off, int len) {
+            // Insertion sort on smallest arrays
+            if (len < 7) {
+                for (int i=off; i<len+off; i++)
+                    for (int j=i; j>off && x[j-1]>x[j]; j--)
+                        swap(x, j, j-1);
+                return;
+            }
+
+            // Choose a partition element, v
+            int m = off + (len >> 1);       // Small arrays, middle element
+            if (len > 7) {
+                int l = off;
+                int n = off + len - 1;
+                if (len > 40) {        // Big arrays, pseudomedian of 9
+                    int s = len/8;
+                    l = med3(x, l,     l+s, l+2*s);
+                    m = med3(x, m-s,   m,   m+s);
+                    n = med3(x, n-2*s, n-s, n);
+                }
+                m = med3(x, l, m, n); // Mid-size, med of 3
+            }
+            int v = x[m];
+
+            // Establish Invariant: v* (<v)* (>v)* v*
+            int a = off, b = a, c = off + len - 1, d = c;
+            while(true) {
+                while (b <= c && x[b] <= v) {
+                    if (x[b] == v)
+                        swap(x, a++, b);
+                    b++;
+                }
+                while (c >= b && x[c] >= v) {
+                    if (x[c] == v)
+                        swap(x, c, d--);
+                    c--;
+                }
+                if (b > c)
+                    break;
+                swap(x, b++, c--);
+            }
+
+            // Swap partition elements back to middle
+            int s, n = off + len;
+            s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
+            s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
+
+            // Recursively sort non-partition-elements
+            if ((s = b-a) > 1)
+                sort1(x, off, s);
+            if ((s = d-c) > 1)
+                sort1(x, n-s, s);
+        }
+
+        static void swap(int x[], int a, int b) {
+            int t = x[a];
+            x[a] = x[b];
+            x[b] = t;
+        }
+
+        static void vecswap(int x[], int a, int b, int n) {
+            for (int i=0; i<n; i++, a++, b++)
+                swap(x, a, b);
+        }
+
+        static int med3(int x[], int a, int b, int c) {
+            return (x[a] < x[b] ?
+                    (x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
+                    (x[b] > x[c] ? b : x[a] > x[c] ? c : a));
+        }
+    }
+}
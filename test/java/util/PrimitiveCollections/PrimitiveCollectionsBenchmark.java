@@ -0,0 +1,297 @@
+/*
+ * @(#)PrimitiveCollectionsBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares the footprint and throughput of the primitive-specialized
+ * collections (IntIntHashMap, LongHashMap, IntHashSet, IntArrayList,
+ * LongArrayList) with the boxed HashMap, HashSet and ArrayList they
+ * replace.  This is a benchmark to be run by hand, not a regression
+ * test:
+ *
+ *   java PrimitiveCollectionsBenchmark [size [rounds]]
+ *
+ * For each pair it reports the retained heap per element, measured as
+ * the growth of the used heap after full collections, and the best
+ * time per element over the given number of rounds for filling a
+ * collection and for querying every element of it.  Keys are drawn
+ * from a seeded Random, so runs are repeatable.  Use a heap large
+ * enough that the boxed collections of the given size fit comfortably,
+ * for example -Xmx1g for the default size of one million.
+ */
+
+import java.util.*;
+
+public class PrimitiveCollectionsBenchmark {
+
+    /**
+     * A collection type under test: fill builds a collection from the
+     * keys, and query visits every key in it, returning a checksum so
+     * that the work cannot be optimized away.
+     */
+    static abstract class Subject {
+        final String name;
+        Subject(String name) { this.name = name; }
+        abstract Object fill(int[] keys);
+        abstract long query(Object c, int[] keys);
+    }
+
+    static final Subject[][] PAIRS = {
+        {
+            new Subject("HashMap<Integer,Integer>") {
+                Object fill(int[] keys) {
+                    HashMap<Integer,Integer> m = new HashMap<Integer,Integer>();
+                    for (int i = 0; i < keys.length; i++)
+                        m.put(keys[i], i);
+                    return m;
+                }
+                long query(Object c, int[] keys) {
+                    @SuppressWarnings("unchecked")
+                    HashMap<Integer,Integer> m = (HashMap<Integer,Integer>) c;
+                    long sum = 0;
+                    for (int k : keys)
+                        sum += m.get(k);
+                    return sum;
+                }
+            },
+            new Subject("IntIntHashMap") {
+                Object fill(int[] keys) {
+                    IntIntHashMap m = new IntIntHashMap();
+                    for (int i = 0; i < keys.length; i++)
+                        m.put(keys[i], i);
+                    return m;
+                }
+                long query(Object c, int[] keys) {
+                    IntIntHashMap m = (IntIntHashMap) c;
+                    long sum = 0;
+                    for (int k : keys)
+                        sum += m.get(k);
+                    return sum;
+                }
+            }
+        },
+        {
+            new Subject("HashMap<Long,String>") {
+                Object fill(int[] keys) {
+                    HashMap<Long,String> m = new HashMap<Long,String>();
+                    for (int k : keys)
+                        m.put(wide(k), VALUE);
+                    return m;
+                }
+                long query(Object c, int[] keys) {
+                    @SuppressWarnings("unchecked")
+                    HashMap<Long,String> m = (HashMap<Long,String>) c;
+                    long sum = 0;
+                    for (int k : keys)
+                        sum += m.get(wide(k)).length();
+                    return sum;
+                }
+            },
+            new Subject("LongHashMap<String>") {
+                Object fill(int[] keys) {
+                    LongHashMap<String> m = new LongHashMap<String>();
+                    for (int k : keys)
+                        m.put(wide(k), VALUE);
+                    return m;
+                }
+                long query(Object c, int[] keys) {
+                    @SuppressWarnings("unchecked")
+                    LongHashMap<String> m = (LongHashMap<String>) c;
+                    long sum = 0;
+                    for (int k : keys)
+                        sum += m.get(wide(k)).length();
+                    return sum;
+                }
+            }
+        },
+        {
+            new Subject("HashSet<Integer>") {
+                Object fill(int[] keys) {
+                    HashSet<Integer> s = new HashSet<Integer>();
+                    for (int k : keys)
+                        s.add(k);
+                    return s;
+                }
+                long query(Object c, int[] keys) {
+                    @SuppressWarnings("unchecked")
+                    HashSet<Integer> s = (HashSet<Integer>) c;
+                    long sum = 0;
+                    for (int k : keys)
+                        if (s.contains(k))
+                            sum++;
+                    return sum;
+                }
+            },
+            new Subject("IntHashSet") {
+                Object fill(int[] keys) {
+                    IntHashSet s = new IntHashSet();
+                    for (int k : keys)
+                        s.add(k);
+                    return s;
+                }
+                long query(Object c, int[] keys) {
+                    IntHashSet s = (IntHashSet) c;
+                    long sum = 0;
+                    for (int k : keys)
+                        if (s.contains(k))
+                            sum++;
+                    return sum;
+                }
+            }
+        },
+        {
+            new Subject("ArrayList<Integer>") {
+                Object fill(int[] keys) {
+                    ArrayList<Integer> l = new ArrayList<Integer>();
+                    for (int k : keys)
+                        l.add(k);
+                    return l;
+                }
+                long query(Object c, int[] keys) {
+                    @SuppressWarnings("unchecked")
+                    ArrayList<Integer> l = (ArrayList<Integer>) c;
+                    long sum = 0;
+                    for (int i = 0, n = l.size(); i < n; i++)
+                        sum += l.get(i);
+                    return sum;
+                }
+            },
+            new Subject("IntArrayList") {
+                Object fill(int[] keys) {
+                    IntArrayList l = new IntArrayList();
+                    for (int k : keys)
+                        l.add(k);
+                    return l;
+                }
+                long query(Object c, int[] keys) {
+                    IntArrayList l = (IntArrayList) c;
+                    long sum = 0;
+                    for (int i = 0, n = l.size(); i < n; i++)
+                        sum += l.getInt(i);
+                    return sum;
+                }
+            }
+        },
+        {
+            new Subject("ArrayList<Long>") {
+                Object fill(int[] keys) {
+                    ArrayList<Long> l = new ArrayList<Long>();
+                    for (int k : keys)
+                        l.add(wide(k));
+                    return l;
+                }
+                long query(Object c, int[] keys) {
+                    @SuppressWarnings("unchecked")
+                    ArrayList<Long> l = (ArrayList<Long>) c;
+                    long sum = 0;
+                    for (int i = 0, n = l.size(); i < n; i++)
+                        sum += l.get(i);
+                    return sum;
+                }
+            },
+            new Subject("LongArrayList") {
+                Object fill(int[] keys) {
+                    LongArrayList l = new LongArrayList();
+                    for (int k : keys)
+                        l.add(wide(k));
+                    return l;
+                }
+                long query(Object c, int[] keys) {
+                    LongArrayList l = (LongArrayList) c;
+                    long sum = 0;
+                    for (int i = 0, n = l.size(); i < n; i++)
+                        sum += l.getLong(i);
+                    return sum;
+                }
+            }
+        }
+    };
+
+    static final String VALUE = "v";
+
+    /** Widens a key to a long outside the Long cache and int range. */
+    static long wide(int k) {
+        return ((long) k << 20) ^ k;
+    }
+
+    static volatile long sink;
+
+    public static void main(String[] args) {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        // Distinct nonzero keys, so that every collection holds size
+        // elements and every query hits
+        Random rnd = new Random(42);
+        IntHashSet seen = new IntHashSet(size);
+        int[] keys = new int[size];
+        for (int i = 0; i < size; ) {
+            int k = rnd.nextInt();
+            if (k != 0 && seen.add(k))
+                keys[i++] = k;
+        }
+        seen = null;
+
+        System.out.printf("%d elements, best of %d rounds%n", size, rounds);
+        System.out.printf("%-26s %12s %12s %12s%n",
+                          "", "bytes/elt", "fill ns/elt", "query ns/elt");
+        for (Subject[] pair : PAIRS) {
+            for (Subject s : pair)
+                report(s, keys, rounds);
+            System.out.println();
+        }
+    }
+
+    static void report(Subject s, int[] keys, int rounds) {
+        double bytes = footprint(s, keys);
+        long bestFill = Long.MAX_VALUE, bestQuery = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            Object c = s.fill(keys);
+            long t1 = System.nanoTime();
+            sink += s.query(c, keys);
+            long t2 = System.nanoTime();
+            bestFill = Math.min(bestFill, t1 - t0);
+            bestQuery = Math.min(bestQuery, t2 - t1);
+        }
+        System.out.printf("%-26s %12.1f %12.1f %12.1f%n", s.name, bytes,
+                          (double) bestFill / keys.length,
+                          (double) bestQuery / keys.length);
+    }
+
+    /**
+     * Returns the heap retained by a filled collection, per element.
+     * The collection is built once to warm up and discarded, then
+     * built again between measurements of the used heap.
+     */
+    static double footprint(Subject s, int[] keys) {
+        sink += s.query(s.fill(keys), keys);
+        long before = usedMemory();
+        Object c = s.fill(keys);
+        long after = usedMemory();
+        sink += s.query(c, keys);       // keeps c reachable until here
+        return (double) (after - before) / keys.length;
+    }
+
+    static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collect until the used heap stops shrinking
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long u = rt.totalMemory() - rt.freeMemory();
+            if (u >= used)
+                break;
+            used = u;
+        }
+        return used;
+    }
+}
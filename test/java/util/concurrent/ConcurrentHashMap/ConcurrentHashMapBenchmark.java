@@ -0,0 +1,389 @@
+/*
+ * @(#)ConcurrentHashMapBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares the throughput of ConcurrentHashMap, which locks individual
+ * bins and counts its size in striped cells, with SegmentedHashMap, a
+ * model of the design it replaced: a fixed array of 16 segments, each
+ * a ReentrantLock guarding its own table, read without locking, with
+ * size() retrying unlocked sums before locking every segment.  This
+ * is a benchmark to be run by hand, not a regression test:
+ *
+ *   java ConcurrentHashMapBenchmark [maxThreads [keys [millis [rounds]]]]
+ *
+ * For each operation mix and each thread count from 1 up to
+ * maxThreads, doubling, every thread performs randomly chosen
+ * operations on keys drawn from a preloaded key space for the given
+ * number of milliseconds.  The best throughput over the given number
+ * of rounds is reported in operations per microsecond, summed over all
+ * threads.  maxThreads defaults to the number of processors.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+public class ConcurrentHashMapBenchmark {
+
+    /**
+     * A mix of operations, in percent of all operations.  Operations
+     * that are neither gets nor puts are removes.  If sizeEvery, a
+     * divisor of 64, is nonzero, every sizeEvery'th operation of a
+     * thread is followed by a size() call, counted as part of that
+     * operation.
+     */
+    static final class Mix {
+        final String name;
+        final int getPct, putPct, sizeEvery;
+        Mix(String name, int getPct, int putPct, int sizeEvery) {
+            this.name = name;
+            this.getPct = getPct;
+            this.putPct = putPct;
+            this.sizeEvery = sizeEvery;
+        }
+    }
+
+    static final Mix[] MIXES = {
+        new Mix("get 100%",                     100,  0,  0),
+        new Mix("get 90% put 9% remove 1%",      90,  9,  0),
+        new Mix("put 50% remove 50%",             0, 50,  0),
+        new Mix("get 90% put 10% + size()/64",   90, 10, 64),
+    };
+
+    /** A map under test. */
+    static abstract class Subject {
+        final String name;
+        Subject(String name) { this.name = name; }
+        abstract Map<Integer,Integer> create(int capacity);
+    }
+
+    static final Subject[] SUBJECTS = {
+        new Subject("ConcurrentHashMap") {
+            Map<Integer,Integer> create(int capacity) {
+                return new ConcurrentHashMap<Integer,Integer>(capacity);
+            }
+        },
+        new Subject("SegmentedHashMap") {
+            Map<Integer,Integer> create(int capacity) {
+                return new SegmentedHashMap<Integer,Integer>(capacity);
+            }
+        },
+    };
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : ncpu;
+        int nkeys = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+        long millis = (args.length > 2) ? Long.parseLong(args[2]) : 1000;
+        int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 3;
+
+        Integer[] keys = new Integer[nkeys];
+        for (int i = 0; i < nkeys; i++)
+            keys[i] = Integer.valueOf(i * 0x9E3779B9);
+
+        System.out.printf("%d keys, %d ms per run, best of %d rounds, " +
+                          "ops/us over all threads%n",
+                          nkeys, millis, rounds);
+        for (Mix mix : MIXES) {
+            System.out.printf("%n%s%n%-20s", mix.name, "threads");
+            for (int n = 1; n <= maxThreads; n <<= 1)
+                System.out.printf(" %8d", n);
+            System.out.println();
+            for (Subject s : SUBJECTS) {
+                System.out.printf("%-20s", s.name);
+                for (int n = 1; n <= maxThreads; n <<= 1) {
+                    double best = 0;
+                    for (int r = 0; r < rounds; r++)
+                        best = Math.max(best, run(s, mix, n, keys, millis));
+                    System.out.printf(" %8.1f", best);
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Runs the given mix on a new, half-full map in the given number
+     * of threads, returning operations per microsecond.
+     */
+    static double run(Subject s, final Mix mix, int nthreads,
+                      final Integer[] keys, long millis) throws Exception {
+        final Map<Integer,Integer> map = s.create(keys.length);
+        for (int i = 0; i < keys.length; i += 2)
+            map.put(keys[i], keys[i]);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(nthreads);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int t = 0; t < nthreads; t++) {
+            final int seed = t * 0x61C88647 + 1;
+            threads[t] = new Thread() {
+                public void run() {
+                    int r = seed;
+                    long n = 0, sum = 0;
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (!stop.get()) {
+                        // Batches of operations between checks of stop
+                        for (int i = 0; i < 64; i++) {
+                            r ^= r << 13; r ^= r >>> 17; r ^= r << 5;
+                            Integer k = keys[(r >>> 1) % keys.length];
+                            int op = (r >>> 8) % 100;
+                            if (op < mix.getPct) {
+                                Integer v = map.get(k);
+                                if (v != null)
+                                    sum += v;
+                            } else if (op < mix.getPct + mix.putPct) {
+                                map.put(k, k);
+                            } else {
+                                map.remove(k);
+                            }
+                            if (mix.sizeEvery != 0 &&
+                                (i + 1) % mix.sizeEvery == 0)
+                                sum += map.size();
+                        }
+                        n += 64;
+                    }
+                    ops.addAndGet(n);
+                    sink += sum;
+                }
+            };
+            threads[t].start();
+        }
+        ready.await();
+        long t0 = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - t0;
+        return ops.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * A condensed model of the segmented ConcurrentHashMap design, with
+     * only the operations used here.  Keys are hashed to one of 16
+     * segments, each a ReentrantLock guarding its own open hash table.
+     * Reads are made without locking through immutable entry chains
+     * and a volatile count; writes lock their segment, and entries
+     * preceding a removed one are cloned.
+     */
+    static final class SegmentedHashMap<K,V> extends AbstractMap<K,V> {
+        static final int SEGMENTS = 16;
+        static final int SEGMENT_SHIFT = 28;
+        static final int RETRIES_BEFORE_LOCK = 2;
+
+        static final class HashEntry<K,V> {
+            final K key;
+            final int hash;
+            volatile V value;
+            final HashEntry<K,V> next;
+            HashEntry(K key, int hash, HashEntry<K,V> next, V value) {
+                this.key = key;
+                this.hash = hash;
+                this.next = next;
+                this.value = value;
+            }
+        }
+
+        @SuppressWarnings("serial")
+        static final class Segment<K,V> extends ReentrantLock {
+            transient volatile int count;
+            transient int modCount;
+            transient int threshold;
+            transient volatile HashEntry<K,V>[] table;
+
+            Segment(int capacity) {
+                setTable(Segment.<K,V>newTable(capacity));
+            }
+
+            @SuppressWarnings({"rawtypes","unchecked"})
+            static <K,V> HashEntry<K,V>[] newTable(int n) {
+                return (HashEntry<K,V>[]) new HashEntry[n];
+            }
+
+            void setTable(HashEntry<K,V>[] t) {
+                threshold = (int)(t.length * 0.75f);
+                table = t;
+            }
+
+            V get(Object key, int hash) {
+                if (count != 0) {
+                    HashEntry<K,V>[] t = table;
+                    for (HashEntry<K,V> e = t[hash & (t.length - 1)];
+                         e != null; e = e.next) {
+                        if (e.hash == hash && key.equals(e.key)) {
+                            V v = e.value;
+                            if (v != null)
+                                return v;
+                            lock();
+                            try {
+                                return e.value;
+                            } finally {
+                                unlock();
+                            }
+                        }
+                    }
+                }
+                return null;
+            }
+
+            V put(K key, int hash, V value) {
+                lock();
+                try {
+                    int c = count;
+                    if (c++ > threshold)
+                        rehash();
+                    HashEntry<K,V>[] t = table;
+                    int i = hash & (t.length - 1);
+                    HashEntry<K,V> first = t[i], e = first;
+                    while (e != null && (e.hash != hash || !key.equals(e.key)))
+                        e = e.next;
+                    if (e != null) {
+                        V old = e.value;
+                        e.value = value;
+                        return old;
+                    }
+                    ++modCount;
+                    t[i] = new HashEntry<K,V>(key, hash, first, value);
+                    count = c;
+                    return null;
+                } finally {
+                    unlock();
+                }
+            }
+
+            void rehash() {
+                HashEntry<K,V>[] old = table;
+                HashEntry<K,V>[] t = newTable(old.length << 1);
+                int mask = t.length - 1;
+                for (HashEntry<K,V> head : old) {
+                    for (HashEntry<K,V> p = head; p != null; p = p.next) {
+                        int k = p.hash & mask;
+                        t[k] = new HashEntry<K,V>(p.key, p.hash, t[k], p.value);
+                    }
+                }
+                setTable(t);
+            }
+
+            V remove(Object key, int hash) {
+                lock();
+                try {
+                    HashEntry<K,V>[] t = table;
+                    int i = hash & (t.length - 1);
+                    HashEntry<K,V> first = t[i], e = first;
+                    while (e != null && (e.hash != hash || !key.equals(e.key)))
+                        e = e.next;
+                    if (e == null)
+                        return null;
+                    V old = e.value;
+                    ++modCount;
+                    HashEntry<K,V> n = e.next;
+                    for (HashEntry<K,V> p = first; p != e; p = p.next)
+                        n = new HashEntry<K,V>(p.key, p.hash, n, p.value);
+                    t[i] = n;
+                    count = count - 1;
+                    return old;
+                } finally {
+                    unlock();
+                }
+            }
+        }
+
+        final Segment<K,V>[] segments;
+
+        @SuppressWarnings({"rawtypes","unchecked"})
+        SegmentedHashMap(int capacity) {
+            segments = (Segment<K,V>[]) new Segment[SEGMENTS];
+            int cap = 1;
+            while (cap * SEGMENTS < capacity)
+                cap <<= 1;
+            for (int i = 0; i < SEGMENTS; i++)
+                segments[i] = new Segment<K,V>(cap);
+        }
+
+        static int hash(int h) {
+            h += (h <<  15) ^ 0xffffcd7d;
+            h ^= (h >>> 10);
+            h += (h <<   3);
+            h ^= (h >>>  6);
+            h += (h <<   2) + (h << 14);
+            return h ^ (h >>> 16);
+        }
+
+        Segment<K,V> segmentFor(int hash) {
+            return segments[hash >>> SEGMENT_SHIFT];
+        }
+
+        public V get(Object key) {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).get(key, hash);
+        }
+
+        public V put(K key, V value) {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).put(key, hash, value);
+        }
+
+        public V remove(Object key) {
+            int hash = hash(key.hashCode());
+            return segmentFor(hash).remove(key, hash);
+        }
+
+        /**
+         * Sums the segment counts, retrying while modification counts
+         * change, then gives up and locks all segments.
+         */
+        public int size() {
+            Segment<K,V>[] segs = segments;
+            int[] mc = new int[segs.length];
+            for (int k = 0; k < RETRIES_BEFORE_LOCK; ++k) {
+                long sum = 0;
+                int mcsum = 0;
+                for (int i = 0; i < segs.length; ++i) {
+                    sum += segs[i].count;
+                    mcsum += mc[i] = segs[i].modCount;
+                }
+                boolean clean = true;
+                if (mcsum != 0) {
+                    for (int i = 0; i < segs.length; ++i) {
+                        if (mc[i] != segs[i].modCount) {
+                            clean = false;
+                            break;
+                        }
+                    }
+                }
+                if (clean)
+                    return (int) Math.min(sum, Integer.MAX_VALUE);
+            }
+            long sum = 0;
+            for (Segment<K,V> s : segs)
+                s.lock();
+            try {
+                for (Segment<K,V> s : segs)
+                    sum += s.count;
+            } finally {
+                for (Segment<K,V> s : segs)
+                    s.unlock();
+            }
+            return (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
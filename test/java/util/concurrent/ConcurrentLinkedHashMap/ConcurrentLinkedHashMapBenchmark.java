@@ -0,0 +1,199 @@
+/*
+ * @(#)ConcurrentLinkedHashMapBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares ConcurrentLinkedHashMap, with each eviction policy, as a
+ * bounded cache with a LinkedHashMap in access order that removes its
+ * eldest entry when full, synchronized by Collections.synchronizedMap.
+ * This is a benchmark to be run by hand, not a regression test:
+ *
+ *   java ConcurrentLinkedHashMapBenchmark [maxThreads [capacity [keys [millis [rounds]]]]]
+ *
+ * Keys are drawn from a Zipf distribution with exponent 0.9 over the
+ * given number of keys, as cache keys commonly are: a precomputed trace
+ * of them is shared by all threads, each starting at its own offset.
+ * Each access gets the key and, on a miss, puts it.  The hit rate of
+ * each cache is first measured by a single thread running the trace
+ * once, after a pass to fill the cache.  Then for each thread count
+ * from 1 up to maxThreads, doubling, every thread runs accesses for
+ * the given number of milliseconds, and the best throughput over the
+ * given number of rounds is reported in accesses per microsecond,
+ * summed over all threads.  maxThreads defaults to the number of
+ * processors.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class ConcurrentLinkedHashMapBenchmark {
+
+    /** A bounded cache under test. */
+    static abstract class Subject {
+        final String name;
+        Subject(String name) { this.name = name; }
+        abstract Map<Integer,Integer> create(int capacity);
+    }
+
+    static final Subject[] SUBJECTS = {
+        new Subject("ConcurrentLinkedHashMap LRU") {
+            Map<Integer,Integer> create(int capacity) {
+                return new ConcurrentLinkedHashMap<Integer,Integer>(
+                    capacity, ConcurrentLinkedHashMap.EvictionPolicy.LRU);
+            }
+        },
+        new Subject("ConcurrentLinkedHashMap TINY_LFU") {
+            Map<Integer,Integer> create(int capacity) {
+                return new ConcurrentLinkedHashMap<Integer,Integer>(
+                    capacity, ConcurrentLinkedHashMap.EvictionPolicy.TINY_LFU);
+            }
+        },
+        new Subject("synchronized LinkedHashMap") {
+            Map<Integer,Integer> create(final int capacity) {
+                return Collections.synchronizedMap(
+                    new LinkedHashMap<Integer,Integer>(16, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+                        protected boolean removeEldestEntry(
+                            Map.Entry<Integer,Integer> eldest) {
+                            return size() > capacity;
+                        }
+                    });
+            }
+        },
+    };
+
+    static final int TRACE_SIZE = 1 << 20;
+    static final double EXPONENT = 0.9;
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : ncpu;
+        int capacity = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        int nkeys = (args.length > 2) ? Integer.parseInt(args[2]) : 1000000;
+        long millis = (args.length > 3) ? Long.parseLong(args[3]) : 1000;
+        int rounds = (args.length > 4) ? Integer.parseInt(args[4]) : 3;
+
+        Integer[] trace = zipfTrace(nkeys, EXPONENT, TRACE_SIZE, new Random(42));
+
+        System.out.printf("capacity %d, %d keys, Zipf exponent %.1f%n",
+                          capacity, nkeys, EXPONENT);
+        System.out.printf("%-34s %8s%n", "", "hit rate");
+        for (Subject s : SUBJECTS) {
+            Map<Integer,Integer> map = s.create(capacity);
+            access(map, trace, 0, trace.length);
+            long hits = access(map, trace, 0, trace.length);
+            System.out.printf("%-34s %7.2f%%%n", s.name,
+                              hits * 100.0 / trace.length);
+        }
+
+        System.out.printf("%n%d ms per run, best of %d rounds, " +
+                          "accesses/us over all threads%n%-34s",
+                          millis, rounds, "threads");
+        for (int n = 1; n <= maxThreads; n <<= 1)
+            System.out.printf(" %8d", n);
+        System.out.println();
+        for (Subject s : SUBJECTS) {
+            System.out.printf("%-34s", s.name);
+            for (int n = 1; n <= maxThreads; n <<= 1) {
+                double best = 0;
+                for (int r = 0; r < rounds; r++)
+                    best = Math.max(best, run(s, capacity, n, trace, millis));
+                System.out.printf(" %8.1f", best);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Returns a trace of keys in [0, nkeys) in which the key of rank k
+     * has a probability proportional to 1 / k^exponent.  Keys are
+     * scrambled so that popular keys are not adjacent integers.
+     */
+    static Integer[] zipfTrace(int nkeys, double exponent, int size,
+                               Random rnd) {
+        double[] cdf = new double[nkeys];
+        double sum = 0;
+        for (int k = 0; k < nkeys; k++)
+            cdf[k] = sum += 1.0 / Math.pow(k + 1, exponent);
+        Integer[] trace = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            int k = Arrays.binarySearch(cdf, rnd.nextDouble() * sum);
+            if (k < 0)
+                k = -k - 1;
+            trace[i] = Integer.valueOf(Math.min(k, nkeys - 1) * 0x9E3779B9);
+        }
+        return trace;
+    }
+
+    /**
+     * Accesses the keys of the trace from index lo to hi, putting
+     * those that miss, and returns the number of hits.
+     */
+    static long access(Map<Integer,Integer> map, Integer[] trace,
+                       int lo, int hi) {
+        long hits = 0;
+        for (int i = lo; i < hi; i++) {
+            Integer k = trace[i];
+            if (map.get(k) != null)
+                hits++;
+            else
+                map.put(k, k);
+        }
+        return hits;
+    }
+
+    /**
+     * Runs accesses on a new cache, filled by one pass of the trace,
+     * in the given number of threads, returning accesses per
+     * microsecond.
+     */
+    static double run(Subject s, int capacity, int nthreads,
+                      final Integer[] trace, long millis) throws Exception {
+        final Map<Integer,Integer> map = s.create(capacity);
+        access(map, trace, 0, trace.length);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(nthreads);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int t = 0; t < nthreads; t++) {
+            final int offset = (int) ((long) trace.length * t / nthreads);
+            threads[t] = new Thread() {
+                public void run() {
+                    int i = offset & ~63;
+                    long n = 0, hits = 0;
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (!stop.get()) {
+                        // Batches of accesses between checks of stop
+                        hits += access(map, trace, i, i + 64);
+                        i = (i + 64) & (trace.length - 1);
+                        n += 64;
+                    }
+                    ops.addAndGet(n);
+                    sink += hits;
+                }
+            };
+            threads[t].start();
+        }
+        ready.await();
+        long t0 = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - t0;
+        return ops.get() * 1000.0 / elapsed;
+    }
+}
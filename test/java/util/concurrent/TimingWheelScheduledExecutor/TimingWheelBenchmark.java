@@ -0,0 +1,196 @@
+/*
+ * @(#)TimingWheelBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares TimingWheelScheduledExecutor with java.util.Timer and
+ * ScheduledThreadPoolExecutor holding large numbers of pending
+ * timeouts.  This is a benchmark to be run by hand, not a regression
+ * test:
+ *
+ *   java TimingWheelBenchmark [pending [expiring]]
+ *
+ * For each scheduler it schedules the given number of tasks with
+ * random delays of one to two hours, as idle timeouts would be, and
+ * reports the time per schedule call, the heap retained per pending
+ * task, and the time per cancel call when all of them are cancelled.
+ * Cancelled Timer tasks are purged, and the executor is set to remove
+ * cancelled tasks, so that none of them retain cancelled tasks.  It
+ * then schedules the given number of tasks with random delays of up
+ * to one second, and reports how long after the last deadline the
+ * last of them ran.  The wheel uses its default tick of 10 ms.  The
+ * requested scale of ten million pending tasks needs a heap of about
+ * -Xmx4g.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TimingWheelBenchmark {
+
+    /** A scheduler under test, created by start and ended by stop. */
+    static abstract class Subject {
+        final String name;
+        Subject(String name) { this.name = name; }
+        abstract void start();
+        abstract Object schedule(Runnable task, long delayMillis);
+        abstract void cancel(Object handle);
+        /** Completes any clean-up of cancelled tasks. */
+        void cancelled() {}
+        abstract void stop();
+    }
+
+    static final Subject[] SUBJECTS = {
+        new Subject("Timer") {
+            Timer timer;
+            void start() { timer = new Timer(true); }
+            Object schedule(final Runnable task, long delayMillis) {
+                TimerTask t = new TimerTask() {
+                    public void run() { task.run(); }
+                };
+                timer.schedule(t, delayMillis);
+                return t;
+            }
+            void cancel(Object handle) { ((TimerTask) handle).cancel(); }
+            void cancelled() { timer.purge(); }
+            void stop() { timer.cancel(); }
+        },
+        new Subject("ScheduledThreadPool") {
+            ScheduledThreadPoolExecutor executor;
+            void start() {
+                executor = new ScheduledThreadPoolExecutor(1);
+                executor.setRemoveOnCancelPolicy(true);
+            }
+            Object schedule(Runnable task, long delayMillis) {
+                return executor.schedule(task, delayMillis,
+                                         TimeUnit.MILLISECONDS);
+            }
+            void cancel(Object handle) {
+                ((ScheduledFuture<?>) handle).cancel(false);
+            }
+            void stop() { executor.shutdownNow(); }
+        },
+        new Subject("TimingWheel") {
+            TimingWheelScheduledExecutor executor;
+            void start() { executor = new TimingWheelScheduledExecutor(); }
+            Object schedule(Runnable task, long delayMillis) {
+                return executor.schedule(task, delayMillis,
+                                         TimeUnit.MILLISECONDS);
+            }
+            void cancel(Object handle) {
+                ((ScheduledFuture<?>) handle).cancel(false);
+            }
+            void stop() { executor.shutdownNow(); }
+        },
+    };
+
+    static final long HOUR = 3600L * 1000L;
+
+    public static void main(String[] args) throws Exception {
+        int pending = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int expiring = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+
+        System.out.printf("%d pending, %d expiring%n", pending, expiring);
+        System.out.printf("%-20s %14s %12s %14s %12s%n", "",
+                          "schedule ns", "bytes/task", "cancel ns",
+                          "late ms");
+        for (Subject s : SUBJECTS) {
+            pendingRun(s, Math.min(pending, 100000));   // warm up
+            double[] r = pendingRun(s, pending);
+            long late = expiringRun(s, expiring);
+            System.out.printf("%-20s %14.1f %12.1f %14.1f %12d%n",
+                              s.name, r[0], r[1], r[2], late);
+        }
+    }
+
+    static final Runnable NOTHING = new Runnable() { public void run() {} };
+
+    /**
+     * Schedules and then cancels n long timeouts, returning the time
+     * per schedule, the bytes per pending task and the time per cancel.
+     */
+    static double[] pendingRun(Subject s, int n) {
+        Random rnd = new Random(42);
+        long[] delays = new long[n];
+        for (int i = 0; i < n; i++)
+            delays[i] = HOUR + (long) (rnd.nextDouble() * HOUR);
+        int[] order = new int[n];   // cancel in an order unrelated to deadlines
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        Object[] handles = new Object[n];
+        s.start();
+        try {
+            long before = usedMemory();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                handles[i] = s.schedule(NOTHING, delays[i]);
+            long t1 = System.nanoTime();
+            long after = usedMemory();
+            long t2 = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                s.cancel(handles[order[i]]);
+            s.cancelled();
+            long t3 = System.nanoTime();
+            return new double[] {
+                (double) (t1 - t0) / n,
+                (double) (after - before) / n,
+                (double) (t3 - t2) / n,
+            };
+        } finally {
+            s.stop();
+        }
+    }
+
+    /**
+     * Schedules n tasks with delays of up to one second, returning the
+     * milliseconds from the last deadline until the last task ran.
+     */
+    static long expiringRun(Subject s, int n) throws InterruptedException {
+        Random rnd = new Random(42);
+        final CountDownLatch done = new CountDownLatch(n);
+        Runnable task = new Runnable() {
+            public void run() { done.countDown(); }
+        };
+        s.start();
+        try {
+            long start = System.nanoTime();
+            long last = start;
+            for (int i = 0; i < n; i++) {
+                long delay = rnd.nextInt(1000);
+                s.schedule(task, delay);
+                last = Math.max(last, System.nanoTime() +
+                                TimeUnit.MILLISECONDS.toNanos(delay));
+            }
+            done.await();
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - last);
+        } finally {
+            s.stop();
+        }
+    }
+
+    static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collect until the used heap stops shrinking
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long u = rt.totalMemory() - rt.freeMemory();
+            if (u >= used)
+                break;
+            used = u;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * @(#)ForkJoinPoolBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares ForkJoinPool with a fixed ThreadPoolExecutor of the same
+ * parallelism on fine-grained tasks.  This is a benchmark to be run
+ * by hand, not a regression test:
+ *
+ *   java ForkJoinPoolBenchmark [parallelism [size [rounds]]]
+ *
+ * The divide-and-conquer part sums a function of every element of an
+ * array of the given size.  The ForkJoinPool splits the range with a
+ * RecursiveTask down to leaves of a given size; the executor, whose
+ * workers cannot wait for subtasks without risking starvation, is
+ * given the same leaves by the calling thread and their Futures are
+ * summed.  The submission part has one thread per worker execute
+ * size / 64 tiny tasks between them, and times until the pool has run
+ * them all and terminated, so that it measures contention on the shared
+ * queue of the executor against the submission queues of the
+ * ForkJoinPool.  Each time is the best over the given number of
+ * rounds, in milliseconds.  parallelism defaults to the number of
+ * processors.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ForkJoinPoolBenchmark {
+
+    static final int[] LEAF_SIZES = { 64, 1024, 16384 };
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        int parallelism = (args.length > 0) ? Integer.parseInt(args[0]) : ncpu;
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 1 << 22;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        int[] a = new int[size];
+        Random rnd = new Random(42);
+        for (int i = 0; i < size; i++)
+            a[i] = rnd.nextInt();
+        long expected = sum(a, 0, size);
+
+        System.out.printf("parallelism %d, %d elements, best of %d rounds, ms%n",
+                          parallelism, size, rounds);
+        System.out.printf("%-28s %14s %14s%n",
+                          "", "ForkJoinPool", "ThreadPool");
+        for (int leaf : LEAF_SIZES) {
+            long fj = Long.MAX_VALUE, tp = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                fj = Math.min(fj, forkJoinSum(parallelism, a, leaf, expected));
+                tp = Math.min(tp, executorSum(parallelism, a, leaf, expected));
+            }
+            System.out.printf("%-28s %14.1f %14.1f%n",
+                              "sum, leaves of " + leaf, fj / 1e6, tp / 1e6);
+        }
+        int tasks = Math.max(size / 64 / parallelism, 1);
+        long fj = Long.MAX_VALUE, tp = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            fj = Math.min(fj, flood(new ForkJoinPool(parallelism),
+                                    parallelism, tasks));
+            tp = Math.min(tp, flood(Executors.newFixedThreadPool(parallelism),
+                                    parallelism, tasks));
+        }
+        System.out.printf("%-28s %14.1f %14.1f%n",
+                          parallelism + " x " + tasks + " tiny tasks",
+                          fj / 1e6, tp / 1e6);
+    }
+
+    /** The work per element: a few dependent integer operations. */
+    static long f(int x) {
+        x ^= x << 13; x ^= x >>> 17; x ^= x << 5;
+        return x;
+    }
+
+    static long sum(int[] a, int lo, int hi) {
+        long s = 0;
+        for (int i = lo; i < hi; i++)
+            s += f(a[i]);
+        return s;
+    }
+
+    @SuppressWarnings("serial")
+    static final class SumTask extends RecursiveTask<Long> {
+        final int[] a;
+        final int lo, hi, leaf;
+        SumTask(int[] a, int lo, int hi, int leaf) {
+            this.a = a; this.lo = lo; this.hi = hi; this.leaf = leaf;
+        }
+        protected Long compute() {
+            if (hi - lo <= leaf)
+                return sum(a, lo, hi);
+            int mid = (lo + hi) >>> 1;
+            SumTask right = new SumTask(a, mid, hi, leaf);
+            right.fork();
+            long left = new SumTask(a, lo, mid, leaf).compute();
+            return left + right.join();
+        }
+    }
+
+    static long forkJoinSum(int parallelism, int[] a, int leaf, long expected)
+        throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SumTask(a, 0, a.length, Math.max(a.length, 1)));
+            long t0 = System.nanoTime();
+            long s = pool.invoke(new SumTask(a, 0, a.length, leaf));
+            long t = System.nanoTime() - t0;
+            check(s, expected);
+            return t;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static long executorSum(int parallelism, final int[] a, int leaf,
+                            long expected) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            pool.submit(new Runnable() { public void run() {} }).get();
+            long t0 = System.nanoTime();
+            List<Future<Long>> fs = new ArrayList<Future<Long>>();
+            for (int lo = 0; lo < a.length; lo += leaf) {
+                final int l = lo, h = Math.min(lo + leaf, a.length);
+                fs.add(pool.submit(new Callable<Long>() {
+                    public Long call() { return sum(a, l, h); }
+                }));
+            }
+            long s = 0;
+            for (Future<Long> f : fs)
+                s += f.get();
+            long t = System.nanoTime() - t0;
+            check(s, expected);
+            return t;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void check(long s, long expected) {
+        if (s != expected)
+            throw new AssertionError("sum " + s + " != " + expected);
+    }
+
+    /**
+     * Has the given number of threads each execute the given number
+     * of tiny tasks on the pool, then shuts it down, returning the
+     * time until it terminates.
+     */
+    static long flood(final ExecutorService pool, int submitters,
+                      final int tasks) throws Exception {
+        final Runnable task = new Runnable() {
+            public void run() {
+                if (f((int) System.nanoTime()) == 0)
+                    sink++;
+            }
+        };
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[submitters];
+        for (int t = 0; t < submitters; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < tasks; i++)
+                        pool.execute(task);
+                }
+            };
+            threads[t].start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+        pool.shutdown();
+        if (!pool.awaitTermination(10, TimeUnit.MINUTES))
+            throw new AssertionError("pool did not terminate");
+        return System.nanoTime() - t0;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * @(#)StampedLockBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares the read scalability of StampedLock, read optimistically or
+ * under its read lock, with the read lock of ReentrantReadWriteLock.
+ * This is a benchmark to be run by hand, not a regression test:
+ *
+ *   java StampedLockBenchmark [maxThreads [millis [rounds]]]
+ *
+ * The lock guards a pair of fields that writers always change
+ * together.  For each operation mix and each thread count from 1 up to
+ * maxThreads, doubling, every thread reads the pair, or occasionally
+ * writes it, for the given number of milliseconds; every read checks
+ * that it saw a consistent pair.  An optimistic read that fails
+ * validation is retried under the read lock.  The best throughput over
+ * the given number of rounds is reported in operations per
+ * microsecond, summed over all threads.  Thread counts beyond the
+ * number of processors show behavior under oversubscription.
+ */
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+public class StampedLockBenchmark {
+
+    /** A mix of operations: one write in every writeEvery, if nonzero. */
+    static final class Mix {
+        final String name;
+        final int writeEvery;
+        Mix(String name, int writeEvery) {
+            this.name = name;
+            this.writeEvery = writeEvery;
+        }
+    }
+
+    static final Mix[] MIXES = {
+        new Mix("read 100%",             0),
+        new Mix("read 99% write 1%",   100),
+    };
+
+    /** A guarded pair of fields; x == y whenever no writer holds the lock. */
+    static abstract class Subject {
+        final String name;
+        int x, y;
+        Subject(String name) { this.name = name; }
+        abstract Subject create();
+        /** Returns x + y, read consistently. */
+        abstract int read();
+        abstract void write();
+    }
+
+    static final class Optimistic extends Subject {
+        final StampedLock lock = new StampedLock();
+        Optimistic() { super("StampedLock optimistic"); }
+        Subject create() { return new Optimistic(); }
+        int read() {
+            long stamp = lock.tryOptimisticRead();
+            int a = x, b = y;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    a = x;
+                    b = y;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return check(a, b);
+        }
+        void write() {
+            long stamp = lock.writeLock();
+            try {
+                x++;
+                y++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    static final class StampedRead extends Subject {
+        final StampedLock lock = new StampedLock();
+        StampedRead() { super("StampedLock readLock"); }
+        Subject create() { return new StampedRead(); }
+        int read() {
+            long stamp = lock.readLock();
+            try {
+                return check(x, y);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        void write() {
+            long stamp = lock.writeLock();
+            try {
+                x++;
+                y++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    static final class ReadWrite extends Subject {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        ReadWrite() { super("ReentrantReadWriteLock"); }
+        Subject create() { return new ReadWrite(); }
+        int read() {
+            lock.readLock().lock();
+            try {
+                return check(x, y);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        void write() {
+            lock.writeLock().lock();
+            try {
+                x++;
+                y++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    static final Subject[] SUBJECTS = {
+        new Optimistic(), new StampedRead(), new ReadWrite(),
+    };
+
+    static int check(int a, int b) {
+        if (a != b)
+            throw new AssertionError("inconsistent read " + a + ", " + b);
+        return a + b;
+    }
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+        long millis = (args.length > 1) ? Long.parseLong(args[1]) : 1000;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+
+        System.out.printf("%d processors, %d ms per run, best of %d rounds, " +
+                          "ops/us over all threads%n",
+                          Runtime.getRuntime().availableProcessors(),
+                          millis, rounds);
+        for (Mix mix : MIXES) {
+            System.out.printf("%n%s%n%-24s", mix.name, "threads");
+            for (int n = 1; n <= maxThreads; n <<= 1)
+                System.out.printf(" %8d", n);
+            System.out.println();
+            for (Subject s : SUBJECTS) {
+                System.out.printf("%-24s", s.name);
+                for (int n = 1; n <= maxThreads; n <<= 1) {
+                    double best = 0;
+                    for (int r = 0; r < rounds; r++)
+                        best = Math.max(best, run(s.create(), mix, n, millis));
+                    System.out.printf(" %8.1f", best);
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Runs the given mix on the subject in the given number of
+     * threads, returning operations per microsecond.
+     */
+    static double run(final Subject s, final Mix mix, int nthreads,
+                      long millis) throws Exception {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(nthreads);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int t = 0; t < nthreads; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    long n = 0, sum = 0;
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (!stop.get()) {
+                        // Batches of operations between checks of stop
+                        for (int i = 0; i < 100; i++) {
+                            if (mix.writeEvery != 0 &&
+                                (n + i) % mix.writeEvery == 0)
+                                s.write();
+                            else
+                                sum += s.read();
+                        }
+                        n += 100;
+                    }
+                    ops.addAndGet(n);
+                    sink += sum;
+                }
+            };
+            threads[t].start();
+        }
+        ready.await();
+        long t0 = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - t0;
+        return ops.get() * 1000.0 / elapsed;
+    }
+}
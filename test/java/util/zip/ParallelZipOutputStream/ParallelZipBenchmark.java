@@ -0,0 +1,154 @@
+/*
+ * @(#)ParallelZipBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Compares ParallelZipOutputStream with ZipOutputStream writing an
+ * archive of many DEFLATED entries.  This is a benchmark to be run by
+ * hand, not a regression test:
+ *
+ *   java ParallelZipBenchmark [entries [entrySize [rounds]]]
+ *
+ * The entries hold text-like data made of random words, which
+ * compresses about as well as source files and class files do.  Each
+ * archive is written to a stream that only counts its bytes.  For each
+ * stream the best time over the given number of rounds is reported in
+ * milliseconds, with the throughput in megabytes of uncompressed data
+ * per second and the size of the archive.  ParallelZipOutputStream
+ * uses its shared compression threads, one per processor.  Before
+ * timing, an archive written by each stream is read back with
+ * ZipInputStream and checked against the original entries.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class ParallelZipBenchmark {
+
+    /** A ZIP output stream under test. */
+    static abstract class Subject {
+        final String name;
+        Subject(String name) { this.name = name; }
+        abstract ZipOutputStream create(OutputStream out);
+    }
+
+    static final Subject[] SUBJECTS = {
+        new Subject("ZipOutputStream") {
+            ZipOutputStream create(OutputStream out) {
+                return new ZipOutputStream(out);
+            }
+        },
+        new Subject("ParallelZipOutputStream") {
+            ZipOutputStream create(OutputStream out) {
+                return new ParallelZipOutputStream(out);
+            }
+        },
+    };
+
+    /** An output stream that discards its data, counting the bytes. */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+        public void write(int b) { count++; }
+        public void write(byte[] b, int off, int len) { count += len; }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nentries = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int entrySize = (args.length > 1) ? Integer.parseInt(args[1]) : 65536;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        byte[][] entries = new byte[nentries][];
+        Random rnd = new Random(42);
+        for (int i = 0; i < nentries; i++)
+            entries[i] = text(rnd, entrySize);
+
+        for (Subject s : SUBJECTS)
+            check(s, entries);
+
+        long total = (long) nentries * entrySize;
+        System.out.printf("%d processors, %d entries of %d bytes, " +
+                          "best of %d rounds%n",
+                          Runtime.getRuntime().availableProcessors(),
+                          nentries, entrySize, rounds);
+        System.out.printf("%-26s %10s %10s %14s%n",
+                          "", "ms", "MB/s", "archive bytes");
+        for (Subject s : SUBJECTS) {
+            write(s, entries, new CountingOutputStream());  // warm up
+            long best = Long.MAX_VALUE, size = 0;
+            for (int r = 0; r < rounds; r++) {
+                CountingOutputStream out = new CountingOutputStream();
+                long t0 = System.nanoTime();
+                write(s, entries, out);
+                best = Math.min(best, System.nanoTime() - t0);
+                size = out.count;
+            }
+            System.out.printf("%-26s %10.1f %10.1f %14d%n", s.name,
+                              best / 1e6, total * 1e3 / best, size);
+        }
+    }
+
+    static final String[] WORDS = {
+        "the", "of", "and", "to", "in", "is", "for", "return", "int",
+        "public", "static", "final", "class", "void", "if", "else",
+        "while", "new", "null", "this", "stream", "entry", "buffer",
+        "length", "offset", "throws", "IOException", "byte", "long",
+    };
+
+    /** Returns size bytes of random words and punctuation. */
+    static byte[] text(Random rnd, int size) {
+        byte[] b = new byte[size];
+        int i = 0;
+        while (i < size) {
+            String w = WORDS[Math.min(rnd.nextInt(WORDS.length),
+                                      rnd.nextInt(WORDS.length))];
+            for (int j = 0; j < w.length() && i < size; j++)
+                b[i++] = (byte) w.charAt(j);
+            if (i < size)
+                b[i++] = (byte) " ;\n(.".charAt(rnd.nextInt(5));
+        }
+        return b;
+    }
+
+    static void write(Subject s, byte[][] entries, OutputStream out)
+        throws IOException {
+        ZipOutputStream zos = s.create(out);
+        try {
+            for (int i = 0; i < entries.length; i++) {
+                zos.putNextEntry(new ZipEntry("entry" + i + ".txt"));
+                zos.write(entries[i], 0, entries[i].length);
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+    }
+
+    /** Writes an archive and checks that it reads back as written. */
+    static void check(Subject s, byte[][] entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(s, entries, bytes);
+        ZipInputStream zis = new ZipInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            byte[] buf = new byte[8192];
+            for (int i = 0; i < entries.length; i++) {
+                ZipEntry e = zis.getNextEntry();
+                if (e == null || !e.getName().equals("entry" + i + ".txt"))
+                    throw new AssertionError(s.name + ": bad entry " + e);
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                for (int n; (n = zis.read(buf, 0, buf.length)) > 0; )
+                    data.write(buf, 0, n);
+                if (!Arrays.equals(data.toByteArray(), entries[i]))
+                    throw new AssertionError(s.name + ": bad data in " + e);
+            }
+            if (zis.getNextEntry() != null)
+                throw new AssertionError(s.name + ": extra entries");
+        } finally {
+            zis.close();
+        }
+    }
+}
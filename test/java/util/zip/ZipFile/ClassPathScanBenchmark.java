@@ -0,0 +1,125 @@
+/*
+ * @(#)ClassPathScanBenchmark.java	1.1 10/03/23
+ *
+ * Copyright (c) 2010, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+/*
+ * Times the ZipFile operations of a class path scan at startup: opening
+ * many jar files, enumerating their entries, and looking entries up
+ * across all of them in class path order.  This is a benchmark to be
+ * run by hand, not a regression test:
+ *
+ *   java ClassPathScanBenchmark [rounds [path...]]
+ *
+ * Each path is a jar file or a directory searched recursively for jar
+ * files; the default is the java.home directory.  The lookup phase
+ * searches the jars in order for every entry name of every jar, as a
+ * class loader searching the class path would, so that most lookups
+ * miss in the jars before the one holding the name.  Each time is the
+ * best over the given number of rounds, in milliseconds, with the jar
+ * files opened afresh in every round.
+ *
+ * The central directory is read by the native zip library unless the
+ * system property sun.zip.javaCentralDirectory is true, in which case
+ * it is mapped and indexed in Java.  The property is read once, when
+ * ZipFile is initialized, so run the benchmark once with
+ * -Dsun.zip.javaCentralDirectory=true and once without to compare them.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class ClassPathScanBenchmark {
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        List<File> jars = new ArrayList<File>();
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++)
+                findJars(new File(args[i]), jars);
+        } else {
+            findJars(new File(System.getProperty("java.home")), jars);
+        }
+        if (jars.isEmpty())
+            throw new IllegalArgumentException("no jar files found");
+
+        // The names to look up: every entry of every jar
+        List<String> names = new ArrayList<String>();
+        for (File f : jars) {
+            ZipFile z = new ZipFile(f);
+            try {
+                for (Enumeration<? extends ZipEntry> e = z.entries();
+                     e.hasMoreElements(); )
+                    names.add(e.nextElement().getName());
+            } finally {
+                z.close();
+            }
+        }
+
+        System.out.printf("%d jar files, %d entries, best of %d rounds, ms, " +
+                          "sun.zip.javaCentralDirectory=%s%n",
+                          jars.size(), names.size(), rounds,
+                          System.getProperty("sun.zip.javaCentralDirectory"));
+        long open = Long.MAX_VALUE, entries = Long.MAX_VALUE;
+        long lookup = Long.MAX_VALUE, close = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            ZipFile[] zips = new ZipFile[jars.size()];
+            long t0 = System.nanoTime();
+            for (int i = 0; i < zips.length; i++)
+                zips[i] = new ZipFile(jars.get(i));
+            long t1 = System.nanoTime();
+            long count = 0;
+            for (ZipFile z : zips)
+                for (Enumeration<? extends ZipEntry> e = z.entries();
+                     e.hasMoreElements(); )
+                    count += e.nextElement().getName().length();
+            long t2 = System.nanoTime();
+            int found = 0;
+            for (String name : names) {
+                for (ZipFile z : zips) {
+                    ZipEntry e = z.getEntry(name);
+                    if (e != null) {
+                        count += e.getSize();
+                        found++;
+                        break;
+                    }
+                }
+            }
+            long t3 = System.nanoTime();
+            for (ZipFile z : zips)
+                z.close();
+            long t4 = System.nanoTime();
+            if (found != names.size())
+                throw new AssertionError(found + " of " + names.size() +
+                                         " entries found");
+            sink += count;
+            open = Math.min(open, t1 - t0);
+            entries = Math.min(entries, t2 - t1);
+            lookup = Math.min(lookup, t3 - t2);
+            close = Math.min(close, t4 - t3);
+        }
+        System.out.printf("%-12s %10.2f%n", "open", open / 1e6);
+        System.out.printf("%-12s %10.2f%n", "entries", entries / 1e6);
+        System.out.printf("%-12s %10.2f%n", "lookup", lookup / 1e6);
+        System.out.printf("%-12s %10.2f%n", "close", close / 1e6);
+    }
+
+    /** Adds the jar files at or below the given file, in sorted order. */
+    static void findJars(File f, List<File> jars) {
+        if (f.isDirectory()) {
+            File[] files = f.listFiles();
+            if (files == null)
+                return;
+            Arrays.sort(files);
+            for (File g : files)
+                findJars(g, jars);
+        } else if (f.getName().endsWith(".jar")) {
+            jars.add(f);
+        }
+    }
+}